@@ -83,6 +83,146 @@ public class Constants {
      */
     public static final String BCRYPT_WORK_ENV = "DOCS_BCRYPT_WORK";
 
+    /**
+     * Maximum delay in milliseconds before an index change is visible to searches.
+     */
+    public static final String LUCENE_REFRESH_INTERVAL_ENV = "DOCS_LUCENE_REFRESH_INTERVAL";
+
+    /**
+     * Delay in milliseconds between two index commits (0 to commit after every operation).
+     */
+    public static final String LUCENE_COMMIT_INTERVAL_ENV = "DOCS_LUCENE_COMMIT_INTERVAL";
+
+    /**
+     * Number of uncommitted index operations triggering an early commit.
+     */
+    public static final String LUCENE_COMMIT_MAX_PENDING_ENV = "DOCS_LUCENE_COMMIT_MAX_PENDING";
+
+    /**
+     * Delay in milliseconds between two refreshes of the search suggestions.
+     */
+    public static final String LUCENE_SUGGESTER_REFRESH_INTERVAL_ENV = "DOCS_LUCENE_SUGGESTER_REFRESH_INTERVAL";
+
+    /**
+     * Maximum number of characters of a file content highlighted in the search results.
+     */
+    public static final String LUCENE_HIGHLIGHT_MAX_LENGTH_ENV = "DOCS_LUCENE_HIGHLIGHT_MAX_LENGTH";
+
+    /**
+     * Number of threads indexing the documents and files while rebuilding the index.
+     */
+    public static final String LUCENE_REBUILD_THREADS_ENV = "DOCS_LUCENE_REBUILD_THREADS";
+
+    /**
+     * Number of files processed in parallel.
+     */
+    public static final String FILE_PROCESSING_THREADS_ENV = "DOCS_FILE_PROCESSING_THREADS";
+
+    /**
+     * Maximum number of files waiting to be processed.
+     */
+    public static final String FILE_PROCESSING_QUEUE_SIZE_ENV = "DOCS_FILE_PROCESSING_QUEUE_SIZE";
+
+    /**
+     * Number of queue slots kept for the files added by users.
+     */
+    public static final String FILE_PROCESSING_INTERACTIVE_SLOTS_ENV = "DOCS_FILE_PROCESSING_INTERACTIVE_SLOTS";
+
+    /**
+     * Number of thumbnails generated in parallel.
+     */
+    public static final String FILE_PROCESSING_THUMBNAIL_THREADS_ENV = "DOCS_FILE_PROCESSING_THUMBNAIL_THREADS";
+
+    /**
+     * Number of file contents extracted in parallel.
+     */
+    public static final String FILE_PROCESSING_EXTRACTION_THREADS_ENV = "DOCS_FILE_PROCESSING_EXTRACTION_THREADS";
+
+    /**
+     * Number of pages of a PDF OCR-ized in parallel.
+     */
+    public static final String OCR_PDF_PAGE_THREADS_ENV = "DOCS_OCR_PDF_PAGE_THREADS";
+
+    /**
+     * Maximum number of tesseract processes running at the same time.
+     */
+    public static final String OCR_MAX_PROCESSES_ENV = "DOCS_OCR_MAX_PROCESSES";
+
+    /**
+     * Time in seconds an authenticated user is kept in memory.
+     */
+    public static final String PRINCIPAL_CACHE_TTL_ENV = "DOCS_PRINCIPAL_CACHE_TTL";
+
+    /**
+     * Maximum number of authenticated users kept in memory.
+     */
+    public static final String PRINCIPAL_CACHE_SIZE_ENV = "DOCS_PRINCIPAL_CACHE_SIZE";
+
+    /**
+     * Time in seconds the configuration, tags, vocabularies, metadata and roles are kept in memory.
+     */
+    public static final String ENTITY_CACHE_TTL_ENV = "DOCS_ENTITY_CACHE_TTL";
+
+    /**
+     * Maximum number of entries of each kind kept in memory.
+     */
+    public static final String ENTITY_CACHE_SIZE_ENV = "DOCS_ENTITY_CACHE_SIZE";
+
+    /**
+     * Time in seconds before the signing keys of a JWT issuer are refreshed.
+     */
+    public static final String JWKS_REFRESH_INTERVAL_ENV = "DOCS_JWKS_REFRESH_INTERVAL";
+
+    /**
+     * Set to false to store the new files unencrypted, when the storage volume is already encrypted.
+     */
+    public static final String STORAGE_ENCRYPTION_ENV = "DOCS_STORAGE_ENCRYPTION";
+
+    /**
+     * Storage backend of the files: flat (default), sharded or s3.
+     */
+    public static final String STORAGE_BACKEND_ENV = "DOCS_STORAGE_BACKEND";
+
+    /**
+     * URL of the S3-compatible object store.
+     */
+    public static final String STORAGE_S3_ENDPOINT_ENV = "DOCS_STORAGE_S3_ENDPOINT";
+
+    /**
+     * Bucket of the S3-compatible object store.
+     */
+    public static final String STORAGE_S3_BUCKET_ENV = "DOCS_STORAGE_S3_BUCKET";
+
+    /**
+     * Region of the S3-compatible object store.
+     */
+    public static final String STORAGE_S3_REGION_ENV = "DOCS_STORAGE_S3_REGION";
+
+    /**
+     * Access key of the S3-compatible object store.
+     */
+    public static final String STORAGE_S3_ACCESS_KEY_ENV = "DOCS_STORAGE_S3_ACCESS_KEY";
+
+    /**
+     * Secret key of the S3-compatible object store.
+     */
+    public static final String STORAGE_S3_SECRET_KEY_ENV = "DOCS_STORAGE_S3_SECRET_KEY";
+
+    /**
+     * Time in seconds a derived encryption key is kept in memory after its last use.
+     */
+    public static final String ENCRYPTION_KEY_CACHE_TTL_ENV = "DOCS_ENCRYPTION_KEY_CACHE_TTL";
+
+    /**
+     * Maximum number of derived encryption keys kept in memory.
+     */
+    public static final String ENCRYPTION_KEY_CACHE_SIZE_ENV = "DOCS_ENCRYPTION_KEY_CACHE_SIZE";
+
+    /**
+     * Number of files sizes read in parallel.
+     */
+    public static final String FILE_SIZE_THREADS_ENV = "DOCS_FILE_SIZE_THREADS";
+
     /**
      * Expiration time of the password recovery in hours.
      */
@@ -0,0 +1,18 @@
+package com.sismics.docs.core.constant;
+
+/**
+ * Priority of a file processing.
+ *
+ * @author bgamard
+ */
+public enum FileProcessingPriority {
+    /**
+     * File added by a user, processed first.
+     */
+    INTERACTIVE,
+
+    /**
+     * File imported or reprocessed in bulk.
+     */
+    BULK
+}
@@ -7,12 +7,15 @@ import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.dto.AclDto;
 import com.sismics.docs.core.model.jpa.Acl;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.EntityCache;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
@@ -41,6 +44,11 @@ public class AclDao {
         // Create audit log
         AuditLogUtil.create(acl, AuditLogType.CREATE, userId);
 
+        updateEffectiveAcl(acl.getSourceId());
+
+        // The tags lists depend on the ACLs
+        EntityCache.invalidateAll(EntityCache.Region.TAG);
+
         return acl.getId();
     }
 
@@ -65,23 +73,34 @@ public class AclDao {
      * @param sourceId Source ID
      * @return ACL DTO list
      */
-    @SuppressWarnings("unchecked")
     public List<AclDto> getBySourceId(String sourceId, AclType type) {
+        return getBySourceIds(Collections.singleton(sourceId), type);
+    }
+
+    /**
+     * Search ACLs of several sources, in a single query.
+     *
+     * @param sourceIds Source IDs
+     * @param type ACL type, all types if null
+     * @return ACL DTO list
+     */
+    @SuppressWarnings("unchecked")
+    public List<AclDto> getBySourceIds(Collection<String> sourceIds, AclType type) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        StringBuilder sb = new StringBuilder("select a.ACL_ID_C, a.ACL_PERM_C, a.ACL_TARGETID_C, ")
+        StringBuilder sb = new StringBuilder("select a.ACL_ID_C, a.ACL_SOURCEID_C, a.ACL_PERM_C, a.ACL_TARGETID_C, ")
                 .append(" u.USE_USERNAME_C, s.SHA_ID_C, s.SHA_NAME_C, g.GRP_NAME_C ")
                 .append(" from T_ACL a ")
                 .append(" left join T_USER u on u.USE_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_SHARE s on s.SHA_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_GROUP g on g.GRP_ID_C = a.ACL_TARGETID_C ")
-                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C = :sourceId ");
+                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C in (:sourceIds) ");
         if (type != null) {
             sb.append(" and a.ACL_TYPE_C = :type");
         }
 
         // Perform the query
         Query q = em.createNativeQuery(sb.toString());
-        q.setParameter("sourceId", sourceId);
+        q.setParameter("sourceIds", sourceIds);
         if (type != null) {
             q.setParameter("type", type.name());
         }
@@ -93,6 +112,7 @@ public class AclDao {
             int i = 0;
             AclDto aclDto = new AclDto();
             aclDto.setId((String) o[i++]);
+            aclDto.setSourceId((String) o[i++]);
             aclDto.setPerm(PermType.valueOf((String) o[i++]));
             aclDto.setTargetId((String) o[i++]);
             String userName = (String) o[i++];
@@ -118,6 +138,7 @@ public class AclDao {
 
     /**
      * Check if a source is accessible to a target.
+     * The permissions inherited by a document from its tags are included.
      *
      * @param sourceId ACL source entity ID
      * @param perm Necessary permission
@@ -132,21 +153,26 @@ public class AclDao {
             return false;
         }
 
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        StringBuilder sb = new StringBuilder("select a.ACL_ID_C from T_ACL a ");
-        sb.append(" where a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = :sourceId and a.ACL_PERM_C = :perm and a.ACL_DELETEDATE_D is null ");
-        sb.append(" union all ");
-        sb.append(" select a.ACL_ID_C from T_ACL a, T_DOCUMENT_TAG dt, T_DOCUMENT d ");
-        sb.append(" where a.ACL_SOURCEID_C = dt.DOT_IDTAG_C and dt.DOT_IDDOCUMENT_C = d.DOC_ID_C and dt.DOT_DELETEDATE_D is null ");
-        sb.append(" and d.DOC_ID_C = :sourceId and d.DOC_DELETEDATE_D is null ");
-        sb.append(" and a.ACL_TARGETID_C in (:targetIdList) and a.ACL_PERM_C = :perm and a.ACL_DELETEDATE_D is null ");
-        Query q = em.createNativeQuery(sb.toString());
+        // The same permission is often checked several times during a request
+        ThreadLocalContext context = ThreadLocalContext.get();
+        List<Object> key = List.of(sourceId, perm, List.copyOf(targetIdList));
+        Boolean granted = context.getPermission(key);
+        if (granted != null) {
+            return granted;
+        }
+
+        EntityManager em = context.getEntityManager();
+        Query q = em.createNativeQuery("select ea.DEA_IDTARGET_C from T_DOCUMENT_EFFECTIVE_ACL ea " +
+                " where ea.DEA_IDSOURCE_C = :sourceId and ea.DEA_PERM_C = :perm and ea.DEA_IDTARGET_C in (:targetIdList)");
         q.setParameter("sourceId", sourceId);
         q.setParameter("perm", perm.name());
         q.setParameter("targetIdList", targetIdList);
+        q.setMaxResults(1);
 
         // We have a matching permission
-        return q.getResultList().size() > 0;
+        granted = !q.getResultList().isEmpty();
+        context.putPermission(key, granted);
+        return granted;
     }
 
     /**
@@ -181,5 +207,79 @@ public class AclDao {
         q.setParameter("type", type);
         q.setParameter("dateNow", new Date());
         q.executeUpdate();
+
+        updateEffectiveAcl(sourceId);
+        EntityCache.invalidateAll(EntityCache.Region.TAG);
+    }
+
+    /**
+     * Update the effective permissions of an ACL source.
+     * If the source is a tag, the effective permissions of the tagged documents are updated too.
+     *
+     * @param sourceId ACL source ID
+     */
+    public void updateEffectiveAcl(String sourceId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("delete from T_DOCUMENT_EFFECTIVE_ACL where " + getEffectiveAclSourceFilter("DEA_IDSOURCE_C"));
+        q.setParameter("sourceId", sourceId);
+        q.executeUpdate();
+
+        q = em.createNativeQuery(getEffectiveAclInsert(getEffectiveAclSourceFilter("a.ACL_SOURCEID_C"), getEffectiveAclSourceFilter("dt.DOT_IDDOCUMENT_C")));
+        q.setParameter("sourceId", sourceId);
+        q.executeUpdate();
+        ThreadLocalContext.get().clearPermissions();
+    }
+
+    /**
+     * Delete the effective permissions given to a deleted target.
+     *
+     * @param targetId Target ID
+     */
+    public void deleteEffectiveAclByTarget(String targetId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("delete from T_DOCUMENT_EFFECTIVE_ACL where DEA_IDTARGET_C = :targetId");
+        q.setParameter("targetId", targetId);
+        q.executeUpdate();
+        ThreadLocalContext.get().clearPermissions();
+    }
+
+    /**
+     * Rebuild all the effective permissions from the ACLs.
+     */
+    public void rebuildEffectiveAcl() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.createNativeQuery("delete from T_DOCUMENT_EFFECTIVE_ACL").executeUpdate();
+        em.createNativeQuery(getEffectiveAclInsert("1 = 1", "1 = 1")).executeUpdate();
+        ThreadLocalContext.get().clearPermissions();
+    }
+
+    /**
+     * Returns the filter on a source column matching a source and the documents tagged by it.
+     *
+     * @param column Source column
+     * @return SQL filter
+     */
+    private String getEffectiveAclSourceFilter(String column) {
+        return "(" + column + " = :sourceId or " + column + " in (select dts.DOT_IDDOCUMENT_C from T_DOCUMENT_TAG dts" +
+                " where dts.DOT_IDTAG_C = :sourceId and dts.DOT_DELETEDATE_D is null))";
+    }
+
+    /**
+     * Returns the query inserting the effective permissions: the ACLs of the sources,
+     * and the ACLs of the tags of the active documents.
+     *
+     * @param aclFilter Filter on the ACLs
+     * @param documentTagFilter Filter on the document tags
+     * @return SQL query
+     */
+    private String getEffectiveAclInsert(String aclFilter, String documentTagFilter) {
+        return "insert into T_DOCUMENT_EFFECTIVE_ACL (DEA_IDSOURCE_C, DEA_PERM_C, DEA_IDTARGET_C)" +
+                " select a.ACL_SOURCEID_C, a.ACL_PERM_C, a.ACL_TARGETID_C from T_ACL a" +
+                " where a.ACL_DELETEDATE_D is null and " + aclFilter +
+                " union" +
+                " select dt.DOT_IDDOCUMENT_C, a.ACL_PERM_C, a.ACL_TARGETID_C from T_DOCUMENT_TAG dt" +
+                " join T_DOCUMENT d on d.DOC_ID_C = dt.DOT_IDDOCUMENT_C and d.DOC_DELETEDATE_D is null" +
+                " join T_ACL a on a.ACL_SOURCEID_C = dt.DOT_IDTAG_C and a.ACL_DELETEDATE_D is null" +
+                " where dt.DOT_DELETEDATE_D is null and " + documentTagFilter;
     }
 }
\ No newline at end of file
@@ -40,6 +40,17 @@ public class AuditLogDao {
         return auditLog.getId();
     }
     
+    /**
+     * Returns the types of the sort key of a page of audit logs.
+     *
+     * @param sortCriteria Sort criteria
+     * @return Types of the sort key values
+     */
+    public List<Class<?>> getCursorKeyTypes(SortCriteria sortCriteria) {
+        return PaginatedLists.getCursorKeyTypes(sortCriteria, String.class, Date.class, String.class, String.class,
+                String.class, String.class, String.class);
+    }
+
     /**
      * Searches audit logs by criteria.
      * 
@@ -2,6 +2,7 @@ package com.sismics.docs.core.dao;
 
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.docs.core.util.EntityCache;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
@@ -51,5 +52,6 @@ public class ConfigDao {
         } else {
             config.setValue(value);
         }
+        EntityCache.invalidate(EntityCache.Region.CONFIG, id);
     }
 }
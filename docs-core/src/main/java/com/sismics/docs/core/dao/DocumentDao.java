@@ -45,16 +45,20 @@ public class DocumentDao {
     }
     
     /**
-     * Returns the list of all active documents.
+     * Returns a page of active documents ordered by ID.
+     * Pages are found from the last ID of the previous page, so deep pages are as fast as the first one.
      *
-     * @param offset Offset
+     * @param lastId Last ID of the previous page (null for the first page)
      * @param limit Limit
      * @return List of documents
      */
-    public List<Document> findAll(int offset, int limit) {
+    public List<Document> findAllAfterId(String lastId, int limit) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null", Document.class);
-        q.setFirstResult(offset);
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null"
+                + (lastId == null ? "" : " and d.id > :lastId") + " order by d.id", Document.class);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
         q.setMaxResults(limit);
         return q.getResultList();
     }
@@ -72,6 +76,21 @@ public class DocumentDao {
         return q.getResultList();
     }
     
+    /**
+     * Returns the active documents protected by the ACLs of a source.
+     * The source is either the document itself, or a tag on the documents.
+     *
+     * @param sourceId ACL source ID
+     * @return List of documents
+     */
+    public List<Document> findByAclSourceId(String sourceId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Document> q = em.createQuery("select d from Document d where d.deleteDate is null and (d.id = :sourceId" +
+                " or d.id in (select dt.documentId from DocumentTag dt where dt.tagId = :sourceId and dt.deleteDate is null))", Document.class);
+        q.setParameter("sourceId", sourceId);
+        return q.getResultList();
+    }
+
     /**
      * Returns an active document with permission checking.
      * 
@@ -166,6 +185,8 @@ public class DocumentDao {
         q.setParameter("documentId", id);
         q.setParameter("dateNow", dateNow);
         q.executeUpdate();
+
+        new AclDao().updateEffectiveAcl(id);
         
         // Create audit log
         AuditLogUtil.create(documentDb, AuditLogType.DELETE, userId);
@@ -233,7 +254,8 @@ public class DocumentDao {
     public void updateFileId(Document document) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         Query query = em.createNativeQuery("update T_DOCUMENT d set DOC_IDFILE_C = :fileId, DOC_UPDATEDATE_D = :updateDate where d.DOC_ID_C = :id");
-        query.setParameter("updateDate", new Date());
+        document.setUpdateDate(new Date());
+        query.setParameter("updateDate", document.getUpdateDate());
         query.setParameter("fileId", document.getFileId());
         query.setParameter("id", document.getId());
         query.executeUpdate();
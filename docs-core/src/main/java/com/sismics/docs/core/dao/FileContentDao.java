@@ -0,0 +1,142 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.core.model.jpa.FileContent;
+import com.sismics.util.context.ThreadLocalContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * File content DAO.
+ * The contents are stored compressed, they are compressed and decompressed by this DAO.
+ *
+ * @author bgamard
+ */
+public class FileContentDao {
+    /**
+     * Returns the content of a file.
+     *
+     * @param fileId File ID
+     * @return Content, null if the file has no content
+     */
+    public String getContent(String fileId) {
+        return getContents(Collections.singleton(fileId)).get(fileId);
+    }
+
+    /**
+     * Returns the content of several files, in a single query.
+     * The contents not moved yet from the file table are also returned.
+     *
+     * @param fileIds Files IDs
+     * @return Content by file ID, the files without content are absent
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, String> getContents(Collection<String> fileIds) {
+        Map<String, String> contentMap = new HashMap<>();
+        if (fileIds.isEmpty()) {
+            return contentMap;
+        }
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select f.FIL_ID_C, fc.FCT_CONTENT_B, f.FIL_CONTENT_C from T_FILE f " +
+                " left join T_FILE_CONTENT fc on fc.FCT_IDFILE_C = f.FIL_ID_C " +
+                " where f.FIL_ID_C in (:fileIds) and (fc.FCT_IDFILE_C is not null or f.FIL_CONTENT_C is not null)");
+        q.setParameter("fileIds", fileIds);
+        for (Object[] o : (List<Object[]>) q.getResultList()) {
+            byte[] compressedContent = (byte[]) o[1];
+            contentMap.put((String) o[0], compressedContent == null ? (String) o[2] : decompress(compressedContent));
+        }
+        return contentMap;
+    }
+
+    /**
+     * Updates the content of a file.
+     *
+     * @param fileId File ID
+     * @param content Content, null to remove it
+     */
+    public void update(String fileId, String content) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        FileContent fileContent = em.find(FileContent.class, fileId);
+        if (content == null) {
+            if (fileContent != null) {
+                em.remove(fileContent);
+            }
+        } else if (fileContent == null) {
+            em.persist(new FileContent()
+                    .setFileId(fileId)
+                    .setCompressedContent(compress(content)));
+        } else {
+            fileContent.setCompressedContent(compress(content));
+        }
+
+        // Forget the content stored before the content table existed
+        Query q = em.createNativeQuery("update T_FILE set FIL_CONTENT_C = null where FIL_ID_C = :fileId and FIL_CONTENT_C is not null");
+        q.setParameter("fileId", fileId);
+        q.executeUpdate();
+    }
+
+    /**
+     * Move contents stored before the content table existed to the content table.
+     *
+     * @param limit Maximum number of contents moved
+     * @return Number of contents moved
+     */
+    @SuppressWarnings("unchecked")
+    public int moveLegacyContents(int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select f.FIL_ID_C, f.FIL_CONTENT_C from T_FILE f where f.FIL_CONTENT_C is not null");
+        q.setMaxResults(limit);
+        List<Object[]> resultList = q.getResultList();
+        for (Object[] o : resultList) {
+            update((String) o[0], (String) o[1]);
+        }
+        return resultList.size();
+    }
+
+    /**
+     * Compress a content.
+     *
+     * @param content Content
+     * @return Compressed content
+     */
+    private static byte[] compress(String content) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(outputStream, deflater)) {
+            deflaterOutputStream.write(content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Decompress a content.
+     *
+     * @param compressedContent Compressed content
+     * @return Content
+     */
+    private static String decompress(byte[] compressedContent) {
+        try (InflaterInputStream inflaterInputStream = new InflaterInputStream(new ByteArrayInputStream(compressedContent))) {
+            return new String(inflaterInputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -59,6 +59,36 @@ public class FileDao {
         return q.getResultList();
     }
     
+    /**
+     * Returns a page of active files ordered by ID.
+     * Pages are found from the last ID of the previous page, so deep pages are as fast as the first one.
+     *
+     * @param lastId Last ID of the previous page (null for the first page)
+     * @param limit Limit
+     * @return List of files
+     */
+    public List<File> findAllAfterId(String lastId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where f.deleteDate is null"
+                + (lastId == null ? "" : " and f.id > :lastId") + " order by f.id", File.class);
+        if (lastId != null) {
+            q.setParameter("lastId", lastId);
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the number of active files.
+     *
+     * @return Number of files
+     */
+    public long getFileCount() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query query = em.createNativeQuery("select count(f.FIL_ID_C) from T_FILE f where f.FIL_DELETEDATE_D is null");
+        return ((Number) query.getSingleResult()).longValue();
+    }
+
     /**
      * Returns the list of all files from a user.
      * 
@@ -158,7 +188,6 @@ public class FileDao {
         // Update the file
         fileDb.setDocumentId(file.getDocumentId());
         fileDb.setName(file.getName());
-        fileDb.setContent(file.getContent());
         fileDb.setOrder(file.getOrder());
         fileDb.setMimeType(file.getMimeType());
         fileDb.setVersionId(file.getVersionId());
@@ -247,11 +276,45 @@ public class FileDao {
         return q.getResultList();
     }
 
-    public List<File> getFilesWithUnknownSize(int limit) {
+    /**
+     * Get the IDs of the files without size, ordered by ID.
+     *
+     * @param lastId Only the files with a greater ID are returned
+     * @param limit Maximum number of IDs
+     * @return List of files IDs
+     */
+    public List<String> getIdsWithUnknownSize(String lastId, int limit) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        TypedQuery<File> q = em.createQuery("select f from File f where f.size = :size and f.deleteDate is null order by f.order asc", File.class);
+        TypedQuery<String> q = em.createQuery("select f.id from File f where f.size = :size and f.id > :lastId and f.deleteDate is null order by f.id asc", String.class);
         q.setParameter("size", File.UNKNOWN_SIZE);
+        q.setParameter("lastId", lastId);
         q.setMaxResults(limit);
         return q.getResultList();
     }
+
+    /**
+     * Count the files without size.
+     *
+     * @return Number of files
+     */
+    public long countFilesWithUnknownSize() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Long> q = em.createQuery("select count(f) from File f where f.size = :size and f.deleteDate is null", Long.class);
+        q.setParameter("size", File.UNKNOWN_SIZE);
+        return q.getSingleResult();
+    }
+
+    /**
+     * Update the size of a file.
+     *
+     * @param id File ID
+     * @param size Size
+     */
+    public void updateSize(String id, long size) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update File f set f.size = :size where f.id = :id");
+        q.setParameter("size", size);
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
 }
@@ -71,6 +71,14 @@ public class GroupDao {
         // Create the group
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(group);
+
+        // Add the group to the hierarchy
+        Query q = em.createNativeQuery("insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) values (:groupId, :groupId, 0)");
+        q.setParameter("groupId", group.getId());
+        q.executeUpdate();
+        if (group.getParentId() != null) {
+            attachSubtree(group.getId(), group.getParentId());
+        }
         
         // Create audit log
         AuditLogUtil.create(group, AuditLogType.CREATE, userId);
@@ -106,11 +114,18 @@ public class GroupDao {
         q.setParameter("groupId", groupDb.getId());
         q.setParameter("dateNow", dateNow);
         q.executeUpdate();
+        new AclDao().deleteEffectiveAclByTarget(groupDb.getId());
 
         q = em.createQuery("update Group g set g.parentId = null where g.parentId = :groupId and g.deleteDate is null");
         q.setParameter("groupId", groupDb.getId());
         q.executeUpdate();
 
+        // Remove the group from the hierarchy, its children become root groups
+        detachSubtree(groupDb.getId());
+        q = em.createNativeQuery("delete from T_GROUP_CLOSURE where GCL_IDANCESTOR_C = :groupId or GCL_IDDESCENDANT_C = :groupId");
+        q.setParameter("groupId", groupDb.getId());
+        q.executeUpdate();
+
         // Create audit log
         AuditLogUtil.create(groupDb, AuditLogType.DELETE, userId);
     }
@@ -164,9 +179,6 @@ public class GroupDao {
         List<String> criteriaList = new ArrayList<>();
         
         StringBuilder sb = new StringBuilder("select g.GRP_ID_C as c0, g.GRP_NAME_C as c1, g.GRP_IDPARENT_C as c2, gp.GRP_NAME_C as c3, g.GRP_IDROLE_C ");
-        if (criteria.getUserId() != null) {
-            sb.append(" , ug.UGP_ID_C ");
-        }
         sb.append(" from T_GROUP g ");
         sb.append(" left join T_GROUP gp on g.GRP_IDPARENT_C = gp.GRP_ID_C ");
         
@@ -176,9 +188,13 @@ public class GroupDao {
             parameterMap.put("search", "%" + criteria.getSearch() + "%");
         }
         if (criteria.getUserId() != null) {
-            // Left join and post-filtering for recursive groups
-            sb.append(criteria.isRecursive() ? " left " : "");
-            sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            if (criteria.isRecursive()) {
+                // Groups of the user and all their ancestors
+                criteriaList.add("g.GRP_ID_C in (select gc.GCL_IDANCESTOR_C from T_GROUP_CLOSURE gc" +
+                        " join T_USER_GROUP ug on ug.UGP_IDGROUP_C = gc.GCL_IDDESCENDANT_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null)");
+            } else {
+                sb.append(" join T_USER_GROUP ug on ug.UGP_IDGROUP_C = g.GRP_ID_C and ug.UGP_IDUSER_C = :userId and ug.UGP_DELETEDATE_D is null ");
+            }
             parameterMap.put("userId", criteria.getUserId());
         }
         
@@ -194,7 +210,6 @@ public class GroupDao {
         
         // Assemble results
         List<GroupDto> groupDtoList = new ArrayList<>();
-        List<GroupDto> userGroupDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
             GroupDto groupDto = new GroupDto()
@@ -204,45 +219,11 @@ public class GroupDao {
                 .setParentName((String) o[i++])
                 .setRoleId((String) o[i++]);
             groupDtoList.add(groupDto);
-            if (criteria.getUserId() != null && o[i] != null) {
-                userGroupDtoList.add(groupDto);
-            }
-        }
-        
-        // Post-query filtering for recursive groups
-        if (criteria.getUserId() != null && criteria.isRecursive()) {
-            Set<GroupDto> filteredGroupDtoSet = new HashSet<>();
-            for (GroupDto userGroupDto : userGroupDtoList) {
-                filteredGroupDtoSet.add(userGroupDto); // Direct group
-                findGroupParentHierarchy(filteredGroupDtoSet, groupDtoList, userGroupDto, 0); // Indirect groups
-            }
-            groupDtoList = new ArrayList<>(filteredGroupDtoSet);
         }
         
         return groupDtoList;
     }
     
-    /**
-     * Recursively search group's parents.
-     * 
-     * @param parentGroupDtoSet Resulting parents
-     * @param groupDtoList All groups
-     * @param userGroupDto Reference group to search from
-     * @param depth Depth
-     */
-    private void findGroupParentHierarchy(Set<GroupDto> parentGroupDtoSet, List<GroupDto> groupDtoList, GroupDto userGroupDto, int depth) {
-        if (userGroupDto.getParentId() == null || depth == 10) { // Max depth 10 to avoid infinite loop
-            return;
-        }
-        
-        for (GroupDto groupDto : groupDtoList) {
-            if (groupDto.getId().equals(userGroupDto.getParentId())) {
-                parentGroupDtoSet.add(groupDto); // Add parent
-                findGroupParentHierarchy(parentGroupDtoSet, groupDtoList, groupDto, depth + 1); // Find parent's parents
-            }
-        }
-    }
-    
     /**
      * Update a group.
      * 
@@ -251,6 +232,14 @@ public class GroupDao {
      * @return Updated group
      */
     public Group update(Group group, String userId) {
+        // Move the group and its subgroups in the hierarchy
+        if (!Objects.equals(getParentId(group.getId()), group.getParentId())) {
+            detachSubtree(group.getId());
+            if (group.getParentId() != null) {
+                attachSubtree(group.getId(), group.getParentId());
+            }
+        }
+
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         
         // Get the group
@@ -267,5 +256,65 @@ public class GroupDao {
         
         return groupDb;
     }
-}
 
+    /**
+     * Returns true if a group is a subgroup of another group, or this group itself.
+     *
+     * @param groupId Group ID
+     * @param ancestorId Ancestor group ID
+     * @return True if the group is in the subgroups of the ancestor
+     */
+    public boolean isDescendant(String groupId, String ancestorId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select count(*) from T_GROUP_CLOSURE where GCL_IDANCESTOR_C = :ancestorId and GCL_IDDESCENDANT_C = :groupId");
+        q.setParameter("ancestorId", ancestorId);
+        q.setParameter("groupId", groupId);
+        return ((Number) q.getSingleResult()).intValue() > 0;
+    }
+
+    /**
+     * Returns the parent of a group in the hierarchy.
+     *
+     * @param groupId Group ID
+     * @return Parent group ID, null for a root group
+     */
+    private String getParentId(String groupId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("select GCL_IDANCESTOR_C from T_GROUP_CLOSURE where GCL_IDDESCENDANT_C = :groupId and GCL_DEPTH_N = 1");
+        q.setParameter("groupId", groupId);
+        @SuppressWarnings("unchecked")
+        List<String> parentIdList = q.getResultList();
+        return parentIdList.isEmpty() ? null : parentIdList.get(0);
+    }
+
+    /**
+     * Link a group and its subgroups to a parent and all its ancestors.
+     *
+     * @param groupId Group ID
+     * @param parentId Parent group ID
+     */
+    private void attachSubtree(String groupId, String parentId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N)" +
+                " select p.GCL_IDANCESTOR_C, c.GCL_IDDESCENDANT_C, p.GCL_DEPTH_N + c.GCL_DEPTH_N + 1" +
+                " from T_GROUP_CLOSURE p, T_GROUP_CLOSURE c" +
+                " where p.GCL_IDDESCENDANT_C = :parentId and c.GCL_IDANCESTOR_C = :groupId");
+        q.setParameter("parentId", parentId);
+        q.setParameter("groupId", groupId);
+        q.executeUpdate();
+    }
+
+    /**
+     * Unlink a group and its subgroups from all the ancestors of the group.
+     *
+     * @param groupId Group ID
+     */
+    private void detachSubtree(String groupId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createNativeQuery("delete from T_GROUP_CLOSURE" +
+                " where GCL_IDDESCENDANT_C in (select GCL_IDDESCENDANT_C from T_GROUP_CLOSURE where GCL_IDANCESTOR_C = :groupId)" +
+                " and GCL_IDANCESTOR_C not in (select GCL_IDDESCENDANT_C from T_GROUP_CLOSURE where GCL_IDANCESTOR_C = :groupId)");
+        q.setParameter("groupId", groupId);
+        q.executeUpdate();
+    }
+}
@@ -7,6 +7,7 @@ import com.sismics.docs.core.dao.criteria.MetadataCriteria;
 import com.sismics.docs.core.dao.dto.MetadataDto;
 import com.sismics.docs.core.model.jpa.Metadata;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.EntityCache;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -40,6 +41,7 @@ public class MetadataDao {
 
         // Create audit log
         AuditLogUtil.create(metadata, AuditLogType.CREATE, userId);
+        EntityCache.invalidateAll(EntityCache.Region.METADATA);
 
         return metadata.getId();
     }
@@ -64,6 +66,7 @@ public class MetadataDao {
 
         // Create audit log
         AuditLogUtil.create(metadataDb, AuditLogType.UPDATE, userId);
+        EntityCache.invalidateAll(EntityCache.Region.METADATA);
 
         return metadataDb;
     }
@@ -105,16 +108,32 @@ public class MetadataDao {
 
         // Create audit log
         AuditLogUtil.create(metadataDb, AuditLogType.DELETE, userId);
+        EntityCache.invalidateAll(EntityCache.Region.METADATA);
     }
 
     /**
      * Returns the list of all metadata.
+     * The list is kept in memory, it must not be modified.
      *
      * @param criteria Search criteria
      * @param sortCriteria Sort criteria
      * @return List of metadata
      */
     public List<MetadataDto> findByCriteria(MetadataCriteria criteria, SortCriteria sortCriteria) {
+        List<Object> key = Arrays.asList(sortCriteria == null ? null : sortCriteria.getColumn(),
+                sortCriteria == null ? null : sortCriteria.isAsc());
+        return EntityCache.get(EntityCache.Region.METADATA, key,
+                () -> Collections.unmodifiableList(findByCriteriaFromDatabase(criteria, sortCriteria)));
+    }
+
+    /**
+     * Returns the list of all metadata from the database.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return List of metadata
+     */
+    private List<MetadataDto> findByCriteriaFromDatabase(MetadataCriteria criteria, SortCriteria sortCriteria) {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
 
@@ -1,10 +1,12 @@
 package com.sismics.docs.core.dao;
 
-import com.google.common.collect.Sets;
+import com.google.common.collect.ImmutableSet;
+import com.sismics.docs.core.util.EntityCache;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -15,18 +17,21 @@ import java.util.Set;
 public class RoleBaseFunctionDao {
     /**
      * Find the set of base functions of a role.
+     * The roles are not modified by the application, their base functions are kept in memory.
      * 
      * @param roleIdSet Set of role ID
-     * @return Set of base functions
+     * @return Set of base functions, not modifiable
      */
     @SuppressWarnings("unchecked")
     public Set<String> findByRoleId(Set<String> roleIdSet) {
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        StringBuilder sb = new StringBuilder("select rbf.RBF_IDBASEFUNCTION_C from T_ROLE_BASE_FUNCTION rbf, T_ROLE r");
-        sb.append(" where rbf.RBF_IDROLE_C in (:roleIdSet) and rbf.RBF_DELETEDATE_D is null");
-        sb.append(" and r.ROL_ID_C = rbf.RBF_IDROLE_C and r.ROL_DELETEDATE_D is null");
-        Query q = em.createNativeQuery(sb.toString());
-        q.setParameter("roleIdSet", roleIdSet);
-        return Sets.newHashSet(q.getResultList());
+        return EntityCache.get(EntityCache.Region.ROLE_BASE_FUNCTION, ImmutableSet.copyOf(roleIdSet), () -> {
+            EntityManager em = ThreadLocalContext.get().getEntityManager();
+            StringBuilder sb = new StringBuilder("select rbf.RBF_IDBASEFUNCTION_C from T_ROLE_BASE_FUNCTION rbf, T_ROLE r");
+            sb.append(" where rbf.RBF_IDROLE_C in (:roleIdSet) and rbf.RBF_DELETEDATE_D is null");
+            sb.append(" and r.ROL_ID_C = rbf.RBF_IDROLE_C and r.ROL_DELETEDATE_D is null");
+            Query q = em.createNativeQuery(sb.toString());
+            q.setParameter("roleIdSet", roleIdSet);
+            return ImmutableSet.copyOf((List<String>) q.getResultList());
+        });
     }
 }
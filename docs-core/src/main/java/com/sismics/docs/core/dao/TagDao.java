@@ -7,6 +7,7 @@ import com.sismics.docs.core.dao.dto.TagDto;
 import com.sismics.docs.core.model.jpa.DocumentTag;
 import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.AuditLogUtil;
+import com.sismics.docs.core.util.EntityCache;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
@@ -79,6 +80,9 @@ public class TagDao {
                 em.persist(documentTag);
             }
         }
+
+        // Update the permissions inherited from the tags
+        new AclDao().updateEffectiveAcl(documentId);
     }
     
     /**
@@ -99,6 +103,7 @@ public class TagDao {
         
         // Create audit log
         AuditLogUtil.create(tag, AuditLogType.CREATE, userId);
+        EntityCache.invalidateAll(EntityCache.Region.TAG);
         
         return tag.getId();
     }
@@ -135,9 +140,12 @@ public class TagDao {
         q = em.createQuery("update Tag t set t.parentId = null where t.parentId = :tagId and t.deleteDate is null");
         q.setParameter("tagId", tagId);
         q.executeUpdate();
+
+        new AclDao().updateEffectiveAcl(tagId);
         
         // Create audit log
         AuditLogUtil.create(tagDb, AuditLogType.DELETE, userId);
+        EntityCache.invalidateAll(EntityCache.Region.TAG);
     }
     
     /**
@@ -162,18 +170,93 @@ public class TagDao {
         
         // Create audit log
         AuditLogUtil.create(tagDb, AuditLogType.UPDATE, userId);
+        EntityCache.invalidateAll(EntityCache.Region.TAG);
         
         return tagDb;
     }
 
     /**
      * Returns the list of all tags.
+     * The lists not restricted to a document are kept in memory, they must not be modified.
      *
      * @param criteria Search criteria
      * @param sortCriteria Sort criteria
      * @return List of groups
      */
     public List<TagDto> findByCriteria(TagCriteria criteria, SortCriteria sortCriteria) {
+        if (criteria.getDocumentId() != null) {
+            return findByCriteriaFromDatabase(criteria, sortCriteria);
+        }
+
+        List<String> targetIdList = criteria.getTargetIdList() == null ? null : new ArrayList<>(new TreeSet<>(criteria.getTargetIdList()));
+        List<Object> key = Arrays.asList(criteria.getId(), targetIdList,
+                sortCriteria == null ? null : sortCriteria.getColumn(),
+                sortCriteria == null ? null : sortCriteria.isAsc());
+        return EntityCache.get(EntityCache.Region.TAG, key,
+                () -> Collections.unmodifiableList(findByCriteriaFromDatabase(criteria, sortCriteria)));
+    }
+
+    /**
+     * Returns the tags of a list of documents, in a single query.
+     *
+     * @param documentIds Documents IDs
+     * @param targetIdList List of targets allowed to read the tags
+     * @return Tags sorted by name, by document ID
+     */
+    public Map<String, List<TagDto>> getByDocumentsIds(Collection<String> documentIds, List<String> targetIdList) {
+        Map<String, List<TagDto>> tagDtoMap = new HashMap<>();
+        if (documentIds.isEmpty()) {
+            return tagDtoMap;
+        }
+
+        Map<String, Object> parameterMap = new HashMap<>();
+        List<String> criteriaList = new ArrayList<>();
+
+        StringBuilder sb = new StringBuilder("select distinct dt.DOT_IDDOCUMENT_C as c0, t.TAG_ID_C as c1, t.TAG_NAME_C as c2, t.TAG_COLOR_C as c3, t.TAG_IDPARENT_C as c4, u.USE_USERNAME_C as c5 ");
+        sb.append(" from T_TAG t ");
+        sb.append(" join T_USER u on t.TAG_IDUSER_C = u.USE_ID_C ");
+        sb.append(" join T_DOCUMENT_TAG dt on dt.DOT_IDTAG_C = t.TAG_ID_C and dt.DOT_DELETEDATE_D is null ");
+        criteriaList.add("dt.DOT_IDDOCUMENT_C in (:documentIds)");
+        parameterMap.put("documentIds", documentIds);
+        if (targetIdList != null && !SecurityUtil.skipAclCheck(targetIdList)) {
+            sb.append(" left join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = t.TAG_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
+            criteriaList.add("a.ACL_ID_C is not null");
+            parameterMap.put("targetIdList", targetIdList);
+        }
+        criteriaList.add("t.TAG_DELETEDATE_D is null");
+
+        sb.append(" where ");
+        sb.append(Joiner.on(" and ").join(criteriaList));
+
+        // Perform the search
+        QueryParam queryParam = QueryUtil.getSortedQueryParam(new QueryParam(sb.toString(), parameterMap), new SortCriteria(2, true));
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
+
+        // Assemble results
+        for (Object[] o : l) {
+            int i = 0;
+            String documentId = (String) o[i++];
+            TagDto tagDto = new TagDto()
+                    .setId((String) o[i++])
+                    .setName((String) o[i++])
+                    .setColor((String) o[i++])
+                    .setParentId((String) o[i++])
+                    .setCreator((String) o[i]);
+            tagDtoMap.computeIfAbsent(documentId, k -> new ArrayList<>()).add(tagDto);
+        }
+
+        return tagDtoMap;
+    }
+
+    /**
+     * Returns the list of all tags from the database.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return List of groups
+     */
+    private List<TagDto> findByCriteriaFromDatabase(TagCriteria criteria, SortCriteria sortCriteria) {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
 
@@ -14,6 +14,8 @@ import com.sismics.docs.core.dao.dto.UserDto;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -251,6 +253,7 @@ public class UserDao {
         // Delete the user
         Date dateNow = new Date();
         userDb.setDeleteDate(dateNow);
+        EncryptionUtil.invalidateSecretKey(userDb.getPrivateKey());
 
         // Delete linked data
         q = em.createQuery("delete from AuthenticationToken at where at.userId = :userId");
@@ -271,6 +274,7 @@ public class UserDao {
         q.setParameter("userId", userDb.getId());
         q.setParameter("dateNow", dateNow);
         q.executeUpdate();
+        new AclDao().deleteEffectiveAclByTarget(userDb.getId());
         
         q = em.createQuery("update Comment c set c.deleteDate = :dateNow where c.userId = :userId and c.deleteDate is null");
         q.setParameter("userId", userDb.getId());
@@ -313,6 +317,42 @@ public class UserDao {
      * @return List of users
      */
     public List<UserDto> findByCriteria(UserCriteria criteria, SortCriteria sortCriteria) {
+        QueryParam queryParam = QueryUtil.getSortedQueryParam(buildCriteriaQuery(criteria), sortCriteria);
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
+        return assembleResults(l);
+    }
+
+    /**
+     * Searches users by criteria, one page at a time.
+     *
+     * @param paginatedList List of users (updated by side effects)
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     */
+    public void findByCriteria(PaginatedList<UserDto> paginatedList, UserCriteria criteria, SortCriteria sortCriteria) {
+        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, buildCriteriaQuery(criteria), sortCriteria);
+        paginatedList.setResultList(assembleResults(l));
+    }
+
+    /**
+     * Returns the types of the sort key of a page of users.
+     *
+     * @param sortCriteria Sort criteria
+     * @return Types of the sort key values
+     */
+    public List<Class<?>> getCursorKeyTypes(SortCriteria sortCriteria) {
+        return PaginatedLists.getCursorKeyTypes(sortCriteria, String.class, String.class, String.class, Date.class,
+                Long.class, Long.class, String.class, Date.class);
+    }
+
+    /**
+     * Builds the query of the users matching the criteria.
+     *
+     * @param criteria Search criteria
+     * @return Query parameters
+     */
+    private QueryParam buildCriteriaQuery(UserCriteria criteria) {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
         
@@ -344,12 +384,16 @@ public class UserDao {
             sb.append(Joiner.on(" and ").join(criteriaList));
         }
         
-        // Perform the search
-        QueryParam queryParam = QueryUtil.getSortedQueryParam(new QueryParam(sb.toString(), parameterMap), sortCriteria);
-        @SuppressWarnings("unchecked")
-        List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
-        
-        // Assemble results
+        return new QueryParam(sb.toString(), parameterMap);
+    }
+
+    /**
+     * Assembles the users from the query results.
+     *
+     * @param l Query results
+     * @return List of users
+     */
+    private List<UserDto> assembleResults(List<Object[]> l) {
         List<UserDto> userDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
@@ -1,11 +1,15 @@
 package com.sismics.docs.core.dao;
 
+import com.sismics.docs.core.dao.dto.VocabularyDto;
 import com.sismics.docs.core.model.jpa.Vocabulary;
+import com.sismics.docs.core.util.EntityCache;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -28,24 +32,32 @@ public class VocabularyDao {
         // Create the comment
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         em.persist(vocabulary);
+        EntityCache.invalidateAll(EntityCache.Region.VOCABULARY);
         
         return vocabulary.getId();
     }
 
     /**
      * Get all vocabulary entries sharing a single name.
+     * The entries are kept in memory, they are immutable and not attached to any entity manager.
      * 
      * @param name Name
      * @return Vocabulary entries
      */
     @SuppressWarnings("unchecked")
-    public List<Vocabulary> getByName(String name) {
-        EntityManager em = ThreadLocalContext.get().getEntityManager();
-        
-        // Get the entries
-        Query q = em.createQuery("select v from Vocabulary v where v.name = :name order by v.order");
-        q.setParameter("name", name);
-        return q.getResultList();
+    public List<VocabularyDto> getByName(String name) {
+        return EntityCache.get(EntityCache.Region.VOCABULARY, name, () -> {
+            EntityManager em = ThreadLocalContext.get().getEntityManager();
+
+            // Get the entries
+            Query q = em.createQuery("select v from Vocabulary v where v.name = :name order by v.order");
+            q.setParameter("name", name);
+            List<VocabularyDto> vocabularyDtoList = new ArrayList<>();
+            for (Vocabulary vocabulary : (List<Vocabulary>) q.getResultList()) {
+                vocabularyDtoList.add(new VocabularyDto(vocabulary.getId(), vocabulary.getName(), vocabulary.getValue(), vocabulary.getOrder()));
+            }
+            return Collections.unmodifiableList(vocabularyDtoList);
+        });
     }
 
     /**
@@ -80,6 +92,7 @@ public class VocabularyDao {
         vocabularyDb.setName(vocabulary.getName());
         vocabularyDb.setValue(vocabulary.getValue());
         vocabularyDb.setOrder(vocabulary.getOrder());
+        EntityCache.invalidateAll(EntityCache.Region.VOCABULARY);
         
         return vocabularyDb;
     }
@@ -98,5 +111,6 @@ public class VocabularyDao {
         Vocabulary vocabularyDb = (Vocabulary) q.getSingleResult();
         
         em.remove(vocabularyDb);
+        EntityCache.invalidateAll(EntityCache.Region.VOCABULARY);
     }
 }
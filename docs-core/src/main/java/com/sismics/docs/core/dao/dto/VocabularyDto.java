@@ -0,0 +1,52 @@
+package com.sismics.docs.core.dao.dto;
+
+/**
+ * Vocabulary entry DTO.
+ * Immutable, the entries are shared by the requests from memory.
+ *
+ * @author bgamard
+ */
+public class VocabularyDto {
+    /**
+     * Vocabulary ID.
+     */
+    private final String id;
+
+    /**
+     * Vocabulary name.
+     */
+    private final String name;
+
+    /**
+     * Entry value.
+     */
+    private final String value;
+
+    /**
+     * Entry order.
+     */
+    private final int order;
+
+    public VocabularyDto(String id, String name, String value, int order) {
+        this.id = id;
+        this.name = name;
+        this.value = value;
+        this.order = order;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public int getOrder() {
+        return order;
+    }
+}
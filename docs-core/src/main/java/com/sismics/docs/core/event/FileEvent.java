@@ -1,6 +1,7 @@
 package com.sismics.docs.core.event;
 
 import com.google.common.base.MoreObjects;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 
 import java.nio.file.Path;
 
@@ -25,6 +26,11 @@ public abstract class FileEvent extends UserEvent {
      */
     private Path unencryptedFile;
 
+    /**
+     * Processing priority.
+     */
+    private FileProcessingPriority priority = FileProcessingPriority.INTERACTIVE;
+
     public String getFileId() {
         return fileId;
     }
@@ -50,11 +56,21 @@ public abstract class FileEvent extends UserEvent {
         return this;
     }
 
+    public FileProcessingPriority getPriority() {
+        return priority;
+    }
+
+    public FileEvent setPriority(FileProcessingPriority priority) {
+        this.priority = priority;
+        return this;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
             .add("fileId", fileId)
             .add("language", language)
+            .add("priority", priority)
             .toString();
     }
 }
\ No newline at end of file
@@ -43,8 +43,8 @@ public class FileDeletedAsyncListener {
                 Long fileSize = event.getFileSize();
 
                 if (fileSize.equals(File.UNKNOWN_SIZE)) {
-                    // The file size was not in the database, in this case we need to get from the unencrypted size.
-                    fileSize = FileUtil.getFileSize(event.getFileId(), user);
+                    // The file size was not in the database, in this case we need to get it from the storage
+                    fileSize = FileUtil.getFileSize(event.getFileId());
                 }
 
                 if (! fileSize.equals(File.UNKNOWN_SIZE)) {
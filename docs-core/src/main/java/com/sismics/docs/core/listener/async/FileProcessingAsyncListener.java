@@ -2,6 +2,7 @@ package com.sismics.docs.core.listener.async;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.dao.FileContentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.FileCreatedAsyncEvent;
@@ -10,24 +11,25 @@ import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.format.FormatHandler;
 import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.docs.core.util.storage.StorageBackend;
 import com.sismics.util.ImageUtil;
 import com.sismics.util.Scalr;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherOutputStream;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.MessageFormat;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -53,7 +55,7 @@ public class FileProcessingAsyncListener {
             log.info("File created event: " + event.toString());
         }
 
-        processFile(event, true);
+        submit(event, true);
     }
 
     /**
@@ -66,7 +68,28 @@ public class FileProcessingAsyncListener {
     public void on(final FileUpdatedAsyncEvent event) {
         log.info("File updated event: " + event.toString());
 
-        processFile(event, false);
+        submit(event, false);
+    }
+
+    /**
+     * Queue the processing of a file.
+     * A file rejected because the queue is full is left unprocessed, it can be processed again later.
+     *
+     * @param event File event
+     * @param isFileCreated True if the file was just created
+     */
+    private void submit(FileEvent event, boolean isFileCreated) {
+        try {
+            AppContext.getInstance().getFileProcessingService().submit(event.getPriority(), () -> processFile(event, isFileCreated));
+        } catch (RejectedExecutionException e) {
+            log.error("File processing rejected, the file is left unprocessed: " + event.getFileId(), e);
+            try {
+                Files.deleteIfExists(event.getUnencryptedFile());
+            } catch (IOException ioe) {
+                // The temporary file is deleted when it is not referenced anymore
+            }
+            FileUtil.endProcessingFile(event.getFileId());
+        }
     }
 
     /**
@@ -105,7 +128,7 @@ public class FileProcessingAsyncListener {
 
         // Open a new transaction to save the file content
         TransactionUtil.handle(() -> {
-            // Save the file to database
+            // Save the file content to database
             FileDao fileDao = new FileDao();
             File freshFile = fileDao.getActiveById(event.getFileId());
             if (freshFile == null) {
@@ -113,8 +136,8 @@ public class FileProcessingAsyncListener {
                 return;
             }
 
-            freshFile.setContent(content);
-            fileDao.update(freshFile);
+            FileContentDao fileContentDao = new FileContentDao();
+            fileContentDao.update(freshFile.getId(), content);
 
             // Update index with the updated file
             if (isFileCreated) {
@@ -145,27 +168,12 @@ public class FileProcessingAsyncListener {
         }
 
         // Generate file variations
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
         try {
-            Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
-            BufferedImage image = formatHandler.generateThumbnail(event.getUnencryptedFile());
-            if (image != null) {
-                // Generate thumbnails from image
-                BufferedImage web = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 1280);
-                BufferedImage thumbnail = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 256);
-                image.flush();
-
-                // Write "web" encrypted image
-                Path outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_web");
-                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
-                    ImageUtil.writeJpeg(web, outputStream);
-                }
-
-                // Write "thumb" encrypted image
-                outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_thumb");
-                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
-                    ImageUtil.writeJpeg(thumbnail, outputStream);
-                }
-            }
+            fileProcessingService.runStage(FileProcessingService.Stage.THUMBNAIL, () -> {
+                generateThumbnails(formatHandler, event, user, file);
+                return null;
+            });
         } catch (Throwable e) {
             log.error("Unable to generate thumbnails for: " + file, e);
         }
@@ -175,7 +183,8 @@ public class FileProcessingAsyncListener {
         String content = null;
         log.info("Start extracting content from: " + file);
         try {
-            content = formatHandler.extractContent(event.getLanguage(), event.getUnencryptedFile());
+            content = fileProcessingService.runStage(FileProcessingService.Stage.EXTRACTION,
+                    () -> formatHandler.extractContent(event.getLanguage(), event.getUnencryptedFile()));
         } catch (Throwable e) {
             log.error("Error extracting content from: " + file, e);
         }
@@ -183,4 +192,39 @@ public class FileProcessingAsyncListener {
 
         return content;
     }
+
+    /**
+     * Generate the thumbnails of a file.
+     *
+     * @param formatHandler Format handler
+     * @param event File event
+     * @param user User whom created the file
+     * @param file Fresh file
+     * @throws Exception e
+     */
+    private void generateThumbnails(FormatHandler formatHandler, FileEvent event, User user, File file) throws Exception {
+        String privateKey = EncryptionUtil.getPrivateKey(file, user);
+        BufferedImage image = formatHandler.generateThumbnail(event.getUnencryptedFile());
+        if (image != null) {
+            // Generate thumbnails from image
+            BufferedImage web = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 1280);
+            BufferedImage thumbnail = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 256);
+            image.flush();
+
+            // Write "web" encrypted image
+            StorageBackend storageBackend = AppContext.getInstance().getStorageBackend();
+            Path outputFile = AppContext.getInstance().getFileService().createTemporaryFile();
+            try (OutputStream outputStream = EncryptionUtil.encryptOutputStream(Files.newOutputStream(outputFile), privateKey)) {
+                ImageUtil.writeJpeg(web, outputStream);
+            }
+            storageBackend.put(file.getId() + "_web", outputFile);
+
+            // Write "thumb" encrypted image
+            outputFile = AppContext.getInstance().getFileService().createTemporaryFile();
+            try (OutputStream outputStream = EncryptionUtil.encryptOutputStream(Files.newOutputStream(outputFile), privateKey)) {
+                ImageUtil.writeJpeg(thumbnail, outputStream);
+            }
+            storageBackend.put(file.getId() + "_thumb", outputFile);
+        }
+    }
 }
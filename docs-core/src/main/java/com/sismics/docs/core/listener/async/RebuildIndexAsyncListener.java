@@ -2,6 +2,8 @@ package com.sismics.docs.core.listener.async;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
@@ -9,14 +11,26 @@ import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.indexing.IndexingHandler;
+import com.sismics.docs.core.util.indexing.RebuildIndexProgress;
+import com.sismics.util.EnvironmentUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * Listener on rebuild index.
- * 
+ *
  * @author bgamard
  */
 public class RebuildIndexAsyncListener {
@@ -25,9 +39,14 @@ public class RebuildIndexAsyncListener {
      */
     private static final Logger log = LoggerFactory.getLogger(RebuildIndexAsyncListener.class);
 
+    /**
+     * Number of documents or files loaded per transaction.
+     */
+    private static final int PAGE_SIZE = 100;
+
     /**
      * Rebuild Lucene index.
-     * 
+     *
      * @param event Index rebuild event
      */
     @Subscribe
@@ -37,35 +56,177 @@ public class RebuildIndexAsyncListener {
             log.info("Rebuild index event: " + event.toString());
         }
 
-        // Clear the index
-        AppContext.getInstance().getIndexingHandler().clearIndex();
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        RebuildIndexProgress progress = AppContext.getInstance().getRebuildIndexProgress();
+        AtomicLong totalCount = new AtomicLong();
+        TransactionUtil.handle(() -> totalCount.set(new DocumentDao().getDocumentCount() + new FileDao().getFileCount()));
+        if (!progress.start(totalCount.get())) {
+            log.info("The index is already being rebuilt, ignoring this event");
+            return;
+        }
 
-        // Index all documents
-        TransactionUtil.handle(() -> {
-            int offset = 0;
-            DocumentDao documentDao = new DocumentDao();
-            List<Document> documentList;
-            do {
-                documentList = documentDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createDocuments(documentList);
-                offset += 100;
-            } while (documentList.size() > 0);
-        });
-
-        // Index all files
-        TransactionUtil.handle(() -> {
-            int offset = 0;
-            FileDao fileDao = new FileDao();
-            List<File> fileList;
-            do {
-                fileList = fileDao.findAll(offset, 100);
-                AppContext.getInstance().getIndexingHandler().createFiles(fileList);
-                offset += 100;
-            } while (fileList.size() > 0);
-        });
+        // The current index keeps serving searches while the new one is built
+        boolean success = false;
+        Rebuild rebuild = new Rebuild(progress);
+        try {
+            indexingHandler.startRebuild();
+            rebuild.indexAll(lastId -> new DocumentDao().findAllAfterId(lastId, PAGE_SIZE), Document::getId, indexingHandler::rebuildDocuments);
+            rebuild.indexAll(lastId -> new FileDao().findAllAfterId(lastId, PAGE_SIZE), File::getId, indexingHandler::rebuildFiles);
+            rebuild.awaitTermination();
+            success = true;
+        } catch (Throwable t) {
+            log.error("Error rebuilding the index", t);
+        } finally {
+            rebuild.close();
+            indexingHandler.finishRebuild(success);
+            progress.finish(success);
+        }
 
         if (log.isInfoEnabled()) {
-            log.info("Rebuilding index done");
+            log.info("Rebuilding index done: {} documents and files indexed at {} per second",
+                    progress.getIndexedCount(), Math.round(progress.getRate()));
+        }
+    }
+
+    /**
+     * A running index rebuild.
+     * Pages are loaded sequentially in their own transaction, and indexed in parallel.
+     */
+    private static class Rebuild {
+        /**
+         * Indexing executor.
+         */
+        private final ExecutorService executor;
+
+        /**
+         * Limits the number of pages held in memory.
+         */
+        private final Semaphore inFlightPages;
+
+        /**
+         * First indexing error.
+         */
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        /**
+         * Rebuild progress.
+         */
+        private final RebuildIndexProgress progress;
+
+        Rebuild(RebuildIndexProgress progress) {
+            int threadCount = EnvironmentUtil.getEnvInt(Constants.LUCENE_REBUILD_THREADS_ENV,
+                    Math.max(Runtime.getRuntime().availableProcessors(), 2));
+            this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                    .setNameFormat("rebuild-index-%d")
+                    .setDaemon(true)
+                    .build());
+            this.inFlightPages = new Semaphore(threadCount * 2);
+            this.progress = progress;
         }
+
+        /**
+         * Index all the entities returned page by page.
+         *
+         * @param pageLoader Loads the page following an ID
+         * @param idGetter Returns the ID of an entity
+         * @param indexer Indexes a page
+         * @throws Throwable e
+         */
+        <T> void indexAll(Function<String, List<T>> pageLoader, Function<T, String> idGetter, PageIndexer<T> indexer) throws Throwable {
+            String lastId = null;
+            List<T> page;
+            do {
+                page = loadPage(pageLoader, lastId);
+                if (page.isEmpty()) {
+                    break;
+                }
+                lastId = idGetter.apply(page.get(page.size() - 1));
+
+                inFlightPages.acquire();
+                List<T> indexedPage = page;
+                executor.execute(() -> {
+                    try {
+                        indexer.index(indexedPage);
+                        progress.addIndexedCount(indexedPage.size());
+                    } catch (Throwable t) {
+                        error.compareAndSet(null, t);
+                    } finally {
+                        inFlightPages.release();
+                    }
+                });
+                checkError();
+            } while (page.size() == PAGE_SIZE);
+        }
+
+        /**
+         * Load a page in its own transaction.
+         *
+         * @param pageLoader Loads the page following an ID
+         * @param lastId Last ID of the previous page
+         * @return Page
+         * @throws Exception e
+         */
+        private <T> List<T> loadPage(Function<String, List<T>> pageLoader, String lastId) throws Exception {
+            List<T> page = new ArrayList<>();
+            AtomicBoolean loaded = new AtomicBoolean();
+            TransactionUtil.handle(() -> {
+                page.addAll(pageLoader.apply(lastId));
+                loaded.set(true);
+            });
+            if (!loaded.get()) {
+                throw new Exception("Error loading the entities to index");
+            }
+            return page;
+        }
+
+        /**
+         * Wait for all the pages to be indexed.
+         *
+         * @throws Throwable e
+         */
+        void awaitTermination() throws Throwable {
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Waiting for the index rebuild to finish");
+            }
+            checkError();
+        }
+
+        /**
+         * Stop the indexing threads, letting the pages being indexed finish.
+         */
+        void close() {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Throw the first indexing error if any.
+         *
+         * @throws Throwable e
+         */
+        private void checkError() throws Throwable {
+            Throwable t = error.get();
+            if (t != null) {
+                throw t;
+            }
+        }
+    }
+
+    /**
+     * Indexes a page of entities.
+     */
+    private interface PageIndexer<T> {
+        /**
+         * Index a page.
+         *
+         * @param page Page
+         * @throws Exception e
+         */
+        void index(List<T> page) throws Exception;
     }
 }
@@ -8,11 +8,15 @@ import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.listener.async.*;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.FileContentService;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.FileService;
 import com.sismics.docs.core.service.FileSizeService;
 import com.sismics.docs.core.service.InboxService;
 import com.sismics.docs.core.util.PdfUtil;
 import com.sismics.docs.core.util.indexing.IndexingHandler;
+import com.sismics.docs.core.util.indexing.RebuildIndexProgress;
+import com.sismics.docs.core.util.storage.StorageBackend;
 import com.sismics.util.ClasspathScanner;
 import com.sismics.util.EnvironmentUtil;
 import org.slf4j.Logger;
@@ -56,6 +60,16 @@ public class AppContext {
      */
     private IndexingHandler indexingHandler;
 
+    /**
+     * Storage backend of the files.
+     */
+    private StorageBackend storageBackend;
+
+    /**
+     * Progress of the index rebuild.
+     */
+    private final RebuildIndexProgress rebuildIndexProgress = new RebuildIndexProgress();
+
     /**
      * Inbox scanning service.
      */
@@ -71,6 +85,16 @@ public class AppContext {
      */
     private FileSizeService fileSizeService;
 
+    /**
+     * File content service.
+     */
+    private FileContentService fileContentService;
+
+    /**
+     * File processing service.
+     */
+    private FileProcessingService fileProcessingService;
+
     /**
      * Asynchronous executors.
      */
@@ -82,6 +106,36 @@ public class AppContext {
     private void startUp() {
         resetEventBus();
 
+        // Start storage backend, the application cannot run without its files
+        try {
+            List<Class<? extends StorageBackend>> storageBackendList = Lists.newArrayList(
+                    new ClasspathScanner<StorageBackend>().findClasses(StorageBackend.class, "com.sismics.docs.core.util.storage"));
+            for (Class<? extends StorageBackend> backendClass : storageBackendList) {
+                StorageBackend backend = backendClass.getDeclaredConstructor().newInstance();
+                if (backend.accept()) {
+                    storageBackend = backend;
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Error loading the storage backends", e);
+        }
+        if (storageBackend == null) {
+            throw new IllegalStateException("Unknown storage backend " + System.getenv(Constants.STORAGE_BACKEND_ENV)
+                    + " in " + Constants.STORAGE_BACKEND_ENV);
+        }
+        try {
+            storageBackend.startUp();
+        } catch (Exception e) {
+            throw new IllegalStateException("Error starting the storage backend " + storageBackend.getClass().getSimpleName(), e);
+        }
+        log.info("Using the storage backend: " + storageBackend.getClass().getSimpleName());
+
+        // Start file processing service
+        fileProcessingService = new FileProcessingService();
+        fileProcessingService.startAsync();
+        fileProcessingService.awaitRunning();
+
         // Start indexing handler
         try {
             List<Class<? extends IndexingHandler>> indexingHandlerList = Lists.newArrayList(
@@ -108,10 +162,13 @@ public class AppContext {
         inboxService.startAsync();
         inboxService.awaitRunning();
 
-        // Start file size service
+        // Start file size service, it stops by itself once the sizes are known
         fileSizeService = new FileSizeService();
         fileSizeService.startAsync();
-        fileSizeService.awaitRunning();
+
+        // Start file content service, it stops by itself once the contents are moved
+        fileContentService = new FileContentService();
+        fileContentService.startAsync();
 
         // Register fonts
         PdfUtil.registerFonts();
@@ -202,6 +259,9 @@ public class AppContext {
         for (ThreadPoolExecutor executor : asyncExecutorList) {
             queueSize += executor.getTaskCount() - executor.getCompletedTaskCount();
         }
+        if (fileProcessingService != null) {
+            queueSize += fileProcessingService.getQueuedCount() + fileProcessingService.getActiveCount();
+        }
         return queueSize;
     }
 
@@ -217,6 +277,14 @@ public class AppContext {
         return indexingHandler;
     }
 
+    public StorageBackend getStorageBackend() {
+        return storageBackend;
+    }
+
+    public RebuildIndexProgress getRebuildIndexProgress() {
+        return rebuildIndexProgress;
+    }
+
     public InboxService getInboxService() {
         return inboxService;
     }
@@ -225,6 +293,10 @@ public class AppContext {
         return fileService;
     }
 
+    public FileProcessingService getFileProcessingService() {
+        return fileProcessingService;
+    }
+
     public void shutDown() {
         for (ExecutorService executor : asyncExecutorList) {
             // Shutdown executor, don't accept any more tasks (can cause error with nested events)
@@ -236,6 +308,12 @@ public class AppContext {
             }
         }
 
+        if (fileProcessingService != null) {
+            // Finish the running processings, they write in the index
+            fileProcessingService.stopAsync();
+            fileProcessingService.awaitTerminated();
+        }
+
         if (indexingHandler != null) {
             indexingHandler.shutDown();
         }
@@ -253,6 +331,10 @@ public class AppContext {
             fileSizeService.stopAsync();
         }
 
+        if (fileContentService != null) {
+            fileContentService.stopAsync();
+        }
+
         instance = null;
     }
 }
@@ -0,0 +1,55 @@
+package com.sismics.docs.core.model.jpa;
+
+import com.google.common.base.MoreObjects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * OCR-ized content of a file, kept apart from the file so it is only loaded when needed.
+ *
+ * @author bgamard
+ */
+@Entity
+@Table(name = "T_FILE_CONTENT")
+public class FileContent {
+    /**
+     * File ID.
+     */
+    @Id
+    @Column(name = "FCT_IDFILE_C", length = 36)
+    private String fileId;
+
+    /**
+     * Content, compressed with deflate.
+     */
+    @Column(name = "FCT_CONTENT_B", nullable = false)
+    private byte[] compressedContent;
+
+    public String getFileId() {
+        return fileId;
+    }
+
+    public FileContent setFileId(String fileId) {
+        this.fileId = fileId;
+        return this;
+    }
+
+    public byte[] getCompressedContent() {
+        return compressedContent;
+    }
+
+    public FileContent setCompressedContent(byte[] compressedContent) {
+        this.compressedContent = compressedContent;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("fileId", fileId)
+                .toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.dao.FileContentDao;
+import com.sismics.docs.core.util.TransactionUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service that moves the files contents stored in the file table to the compressed content table.
+ *
+ * @author bgamard
+ */
+public class FileContentService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FileContentService.class);
+
+    /**
+     * Number of contents moved in each transaction.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    @Override
+    protected void startUp() {
+        log.info("File content service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("File content service shutting down");
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            TransactionUtil.handle(() -> {
+                FileContentDao fileContentDao = new FileContentDao();
+                int count = fileContentDao.moveLegacyContents(BATCH_SIZE);
+                if (count > 0) {
+                    log.info("Compressed the content of " + count + " files");
+                }
+                if (count < BATCH_SIZE) {
+                    log.info("No more file content to compress, stopping the service");
+                    stopAsync();
+                }
+            });
+        } catch (Throwable e) {
+            log.error("Exception during file content service iteration", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(0, 1, TimeUnit.SECONDS);
+    }
+}
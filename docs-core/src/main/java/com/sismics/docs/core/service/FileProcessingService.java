@@ -0,0 +1,454 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.util.EnvironmentUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service processing the files (thumbnails, content extraction) in a dedicated thread pool.
+ * Waiting files are processed by priority, then in submission order.
+ * The number of waiting files is bounded, and some queue slots are kept for the files added by users.
+ * Submitters never wait, they are often the event bus threads: a file which cannot be queued is rejected.
+ * The pages of the scanned files are OCR-ized in a thread pool shared by all the files.
+ *
+ * @author bgamard
+ */
+public class FileProcessingService extends AbstractIdleService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FileProcessingService.class);
+
+    /**
+     * Default maximum number of files waiting to be processed.
+     */
+    private static final int DEFAULT_QUEUE_SIZE = 500;
+
+    /**
+     * Processing stages with their own concurrency limit.
+     */
+    public enum Stage {
+        /**
+         * Thumbnails generation.
+         */
+        THUMBNAIL,
+
+        /**
+         * Text content extraction.
+         */
+        EXTRACTION
+    }
+
+    /**
+     * Number of files processed in parallel.
+     */
+    private final int threadCount;
+
+    /**
+     * Maximum number of files waiting to be processed.
+     */
+    private final int queueSize;
+
+    /**
+     * Free slots in the queue, for all priorities.
+     */
+    private final Semaphore queueSlots;
+
+    /**
+     * Free slots in the queue for the bulk files, the other slots are kept for the files added by users.
+     */
+    private final Semaphore bulkSlots;
+
+    /**
+     * If true, the files are processed synchronously by the submitter.
+     */
+    private final boolean synchronous;
+
+    /**
+     * Concurrency limit of each stage.
+     */
+    private final Map<Stage, Semaphore> stageSemaphoreMap = new EnumMap<>(Stage.class);
+
+    /**
+     * Number of waiting files by priority.
+     */
+    private final Map<FileProcessingPriority, AtomicInteger> queuedCountMap = new EnumMap<>(FileProcessingPriority.class);
+
+    /**
+     * Submission counter, keeping the order of files with the same priority.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Number of processed files.
+     */
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /**
+     * Total time spent by the processed files in the queue.
+     */
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+
+    /**
+     * Longest time spent by a file in the queue.
+     */
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    /**
+     * Total processing time of the processed files.
+     */
+    private final AtomicLong totalProcessingMillis = new AtomicLong();
+
+    /**
+     * Processing executor.
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Number of pages OCR-ized in parallel, for all the files.
+     */
+    private final int ocrThreadCount;
+
+    /**
+     * OCR executor, shared by all the files.
+     */
+    private ThreadPoolExecutor ocrExecutor;
+
+    public FileProcessingService() {
+        this(EnvironmentUtil.getEnvInt(Constants.FILE_PROCESSING_THREADS_ENV, Math.max(Runtime.getRuntime().availableProcessors() / 2, 2)),
+                EnvironmentUtil.getEnvInt(Constants.FILE_PROCESSING_QUEUE_SIZE_ENV, DEFAULT_QUEUE_SIZE));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threadCount Number of files processed in parallel
+     * @param queueSize Maximum number of files waiting to be processed
+     */
+    private FileProcessingService(int threadCount, int queueSize) {
+        this(threadCount, queueSize,
+                EnvironmentUtil.getEnvInt(Constants.FILE_PROCESSING_INTERACTIVE_SLOTS_ENV, Math.max(queueSize / 5, 1)),
+                EnvironmentUtil.getEnvInt(Constants.FILE_PROCESSING_THUMBNAIL_THREADS_ENV, threadCount),
+                EnvironmentUtil.getEnvInt(Constants.FILE_PROCESSING_EXTRACTION_THREADS_ENV, threadCount),
+                EnvironmentUtil.isUnitTest());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param threadCount Number of files processed in parallel
+     * @param queueSize Maximum number of files waiting to be processed
+     * @param interactiveSlots Number of queue slots kept for the files added by users
+     * @param thumbnailThreadCount Number of thumbnails generated in parallel
+     * @param extractionThreadCount Number of file contents extracted in parallel
+     * @param synchronous If true, the files are processed synchronously by the submitter
+     */
+    FileProcessingService(int threadCount, int queueSize, int interactiveSlots,
+                          int thumbnailThreadCount, int extractionThreadCount, boolean synchronous) {
+        this.threadCount = threadCount;
+        this.queueSize = queueSize;
+        this.synchronous = synchronous;
+        ocrThreadCount = EnvironmentUtil.getEnvInt(Constants.OCR_PDF_PAGE_THREADS_ENV, Math.max(Runtime.getRuntime().availableProcessors() / 2, 1));
+        queueSlots = new Semaphore(queueSize);
+        bulkSlots = new Semaphore(Math.max(queueSize - interactiveSlots, 1));
+        stageSemaphoreMap.put(Stage.THUMBNAIL, new Semaphore(thumbnailThreadCount));
+        stageSemaphoreMap.put(Stage.EXTRACTION, new Semaphore(extractionThreadCount));
+        for (FileProcessingPriority priority : FileProcessingPriority.values()) {
+            queuedCountMap.put(priority, new AtomicInteger());
+        }
+    }
+
+    @Override
+    protected void startUp() {
+        executor = new ThreadPoolExecutor(threadCount, threadCount,
+                1L, TimeUnit.MINUTES,
+                new PriorityBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("file-processing-%d")
+                        .setDaemon(true)
+                        .build());
+        ocrExecutor = new ThreadPoolExecutor(ocrThreadCount, ocrThreadCount,
+                1L, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("file-ocr-%d")
+                        .setDaemon(true)
+                        .build());
+        log.info("File processing service starting up with {} threads and {} queue slots, {} for the bulk files",
+                threadCount, queueSize, bulkSlots.availablePermits());
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("File processing service shutting down");
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            // NOP
+        }
+        ocrExecutor.shutdownNow();
+    }
+
+    /**
+     * Queue a file processing.
+     * Never blocks: the bulk files can only take the queue slots which are not kept for the files added by users.
+     *
+     * @param priority Priority
+     * @param runnable Processing
+     * @throws RejectedExecutionException If the queue is full for this priority
+     */
+    public void submit(FileProcessingPriority priority, Runnable runnable) {
+        if (synchronous) {
+            // Unit tests process the files synchronously, like the events
+            runnable.run();
+            return;
+        }
+
+        if (!tryAcquireSlot(priority)) {
+            throw new RejectedExecutionException("File processing queue full for the " + priority + " files");
+        }
+        queuedCountMap.get(priority).incrementAndGet();
+        ProcessingTask task = new ProcessingTask(priority, sequence.getAndIncrement(), runnable);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            queuedCountMap.get(priority).decrementAndGet();
+            releaseSlot(priority);
+            throw e;
+        }
+    }
+
+    /**
+     * Take a queue slot for a file.
+     *
+     * @param priority Priority
+     * @return True if a slot was taken
+     */
+    private boolean tryAcquireSlot(FileProcessingPriority priority) {
+        if (priority == FileProcessingPriority.INTERACTIVE) {
+            return queueSlots.tryAcquire();
+        }
+        if (!bulkSlots.tryAcquire()) {
+            return false;
+        }
+        if (!queueSlots.tryAcquire()) {
+            bulkSlots.release();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Give back the queue slot of a file.
+     *
+     * @param priority Priority
+     */
+    private void releaseSlot(FileProcessingPriority priority) {
+        queueSlots.release();
+        if (priority != FileProcessingPriority.INTERACTIVE) {
+            bulkSlots.release();
+        }
+    }
+
+    /**
+     * Run a processing stage, waiting if too many files are in this stage.
+     *
+     * @param stage Stage
+     * @param callable Stage processing
+     * @param <T> Result type
+     * @return Stage result
+     * @throws Exception e
+     */
+    public <T> T runStage(Stage stage, Callable<T> callable) throws Exception {
+        Semaphore semaphore = stageSemaphoreMap.get(stage);
+        semaphore.acquire();
+        try {
+            return callable.call();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Returns the executor OCR-izing the pages of the files.
+     * Its queue is not bounded, each file waits for its pages being OCR-ized before queuing the next ones,
+     * and the files are extracted by a limited number of threads.
+     *
+     * @return OCR executor
+     */
+    public ExecutorService getOcrExecutor() {
+        return ocrExecutor;
+    }
+
+    /**
+     * Returns the number of pages OCR-ized in parallel.
+     *
+     * @return Number of OCR threads
+     */
+    public int getOcrThreadCount() {
+        return ocrThreadCount;
+    }
+
+    /**
+     * Returns true if a file can be queued.
+     *
+     * @param priority Priority
+     * @return True if the queue is not full for this priority
+     */
+    public boolean hasCapacity(FileProcessingPriority priority) {
+        return getFreeSlotCount(priority) > 0;
+    }
+
+    /**
+     * Returns the number of files which can be queued.
+     *
+     * @param priority Priority
+     * @return Number of free slots in the queue for this priority
+     */
+    public int getFreeSlotCount(FileProcessingPriority priority) {
+        if (priority == FileProcessingPriority.INTERACTIVE) {
+            return queueSlots.availablePermits();
+        }
+        return Math.min(bulkSlots.availablePermits(), queueSlots.availablePermits());
+    }
+
+    /**
+     * Returns the number of files waiting to be processed.
+     *
+     * @return Number of waiting files
+     */
+    public int getQueuedCount() {
+        return queueSize - queueSlots.availablePermits();
+    }
+
+    /**
+     * Returns the number of files waiting to be processed with a priority.
+     *
+     * @param priority Priority
+     * @return Number of waiting files
+     */
+    public int getQueuedCount(FileProcessingPriority priority) {
+        return queuedCountMap.get(priority).get();
+    }
+
+    /**
+     * Returns the number of files being processed.
+     *
+     * @return Number of files being processed
+     */
+    public int getActiveCount() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    /**
+     * Returns the number of processed files.
+     *
+     * @return Number of processed files
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * Returns the average time spent by the processed files in the queue.
+     *
+     * @return Average wait time in milliseconds
+     */
+    public long getAverageWaitMillis() {
+        long count = completedCount.get();
+        return count == 0 ? 0 : totalWaitMillis.get() / count;
+    }
+
+    /**
+     * Returns the longest time spent by a file in the queue.
+     *
+     * @return Maximum wait time in milliseconds
+     */
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    /**
+     * Returns the average processing time of the processed files.
+     *
+     * @return Average processing time in milliseconds
+     */
+    public long getAverageProcessingMillis() {
+        long count = completedCount.get();
+        return count == 0 ? 0 : totalProcessingMillis.get() / count;
+    }
+
+    /**
+     * Queued file processing, ordered by priority then by submission.
+     */
+    private class ProcessingTask implements Runnable, Comparable<ProcessingTask> {
+        /**
+         * Priority.
+         */
+        private final FileProcessingPriority priority;
+
+        /**
+         * Submission order.
+         */
+        private final long order;
+
+        /**
+         * Processing.
+         */
+        private final Runnable runnable;
+
+        /**
+         * Submission time.
+         */
+        private final long submitTime = System.currentTimeMillis();
+
+        ProcessingTask(FileProcessingPriority priority, long order, Runnable runnable) {
+            this.priority = priority;
+            this.order = order;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            queuedCountMap.get(priority).decrementAndGet();
+            releaseSlot(priority);
+
+            long startTime = System.currentTimeMillis();
+            long waitMillis = startTime - submitTime;
+            totalWaitMillis.addAndGet(waitMillis);
+            maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+            try {
+                runnable.run();
+            } catch (Throwable e) {
+                log.error("Error processing a file", e);
+            } finally {
+                totalProcessingMillis.addAndGet(System.currentTimeMillis() - startTime);
+                completedCount.incrementAndGet();
+            }
+        }
+
+        @Override
+        public int compareTo(ProcessingTask o) {
+            int result = priority.compareTo(o.priority);
+            return result != 0 ? result : Long.compare(order, o.order);
+        }
+    }
+}
@@ -59,7 +59,8 @@ public class FileService extends AbstractScheduledService {
     private void deleteTemporaryFiles() throws Exception {
         TemporaryPathReference ref;
         while ((ref = (TemporaryPathReference) referenceQueue.poll()) != null) {
-            Files.delete(Paths.get(ref.path));
+            // The file may have been moved to the storage
+            Files.deleteIfExists(Paths.get(ref.path));
             referenceSet.remove(ref);
         }
     }
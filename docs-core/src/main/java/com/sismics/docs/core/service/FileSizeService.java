@@ -1,20 +1,29 @@
 package com.sismics.docs.core.service;
 
 import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.FileDao;
-import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.File;
-import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.util.EnvironmentUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Service that retrieve files sizes when they are not in the database.
+ * The files are processed by batches in the order of their IDs, the sizes of a batch are read in parallel.
+ * The service stops once all the files are walked, after an error they are walked again later.
  */
 public class FileSizeService extends AbstractScheduledService {
     /**
@@ -22,8 +31,24 @@ public class FileSizeService extends AbstractScheduledService {
      */
     private static final Logger log = LoggerFactory.getLogger(FileSizeService.class);
 
-    public FileSizeService() {
-    }
+    /**
+     * Number of files processed in each transaction.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Delay in minutes before walking the files again after an error.
+     */
+    private static final int RETRY_DELAY_MINUTES = 1;
+
+    /**
+     * Thread pool reading the files sizes.
+     */
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            EnvironmentUtil.getEnvInt(Constants.FILE_SIZE_THREADS_ENV, 4), new ThreadFactoryBuilder()
+                    .setNameFormat("file-size-%d")
+                    .setDaemon(true)
+                    .build());
 
     @Override
     protected void startUp() {
@@ -32,47 +57,77 @@ public class FileSizeService extends AbstractScheduledService {
 
     @Override
     protected void shutDown() {
+        executor.shutdownNow();
         log.info("File size service shutting down");
     }
 
-    private static final int BATCH_SIZE = 30;
-    
     @Override
     protected void runOneIteration() {
         try {
-            TransactionUtil.handle(() -> {
-                FileDao fileDao = new FileDao();
-                List<File> files = fileDao.getFilesWithUnknownSize(BATCH_SIZE);
-                for(File file : files) {
-                    processFile(file);
+            long[] total = new long[1];
+            TransactionUtil.handle(() -> total[0] = new FileDao().countFilesWithUnknownSize());
+
+            String lastId = "";
+            long processed = 0;
+            while (isRunning()) {
+                List<String> fileIdList = processBatch(lastId);
+                processed += fileIdList.size();
+                if (!fileIdList.isEmpty()) {
+                    log.info("Computed the size of " + processed + "/" + total[0] + " files");
                 }
-                if(files.size() < BATCH_SIZE) {
-                    log.info("No more file to process, stopping the service");
-                    stopAsync();
+                if (fileIdList.size() < BATCH_SIZE) {
+                    break;
                 }
-            });
+                lastId = fileIdList.get(fileIdList.size() - 1);
+            }
         } catch (Throwable e) {
-            log.error("Exception during file service iteration", e);
+            // The files are walked again on the next iteration
+            log.error("Error computing the files sizes, retrying in " + RETRY_DELAY_MINUTES + " minute(s)", e);
+            return;
+        }
+
+        if (isRunning()) {
+            log.info("No more file to process, stopping the service");
+            stopAsync();
         }
     }
 
-    void processFile(File file) {
-        UserDao userDao = new UserDao();
-        User user = userDao.getById(file.getUserId());
-        if(user == null) {
-            return;
+    /**
+     * Compute the sizes of the next batch of files without size.
+     * The files whose size cannot be read keep an unknown size.
+     *
+     * @param lastId ID of the last file of the previous batch, empty for the first batch
+     * @return IDs of the files of the batch
+     * @throws Exception e
+     */
+    List<String> processBatch(String lastId) throws Exception {
+        List<String> fileIdList = new ArrayList<>();
+        TransactionUtil.handle(() -> fileIdList.addAll(new FileDao().getIdsWithUnknownSize(lastId, BATCH_SIZE)));
+
+        // The stored size is the size of the file, even for encrypted files
+        Map<String, Future<Long>> sizeMap = new LinkedHashMap<>();
+        for (String fileId : fileIdList) {
+            sizeMap.put(fileId, executor.submit(() -> FileUtil.getFileSize(fileId)));
+        }
+        Map<String, Long> knownSizeMap = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<Long>> entry : sizeMap.entrySet()) {
+            long size = entry.getValue().get();
+            if (size != File.UNKNOWN_SIZE) {
+                knownSizeMap.put(entry.getKey(), size);
+            }
         }
 
-        long fileSize = FileUtil.getFileSize(file.getId(), user);
-        if(fileSize != File.UNKNOWN_SIZE){
+        TransactionUtil.handle(() -> {
             FileDao fileDao = new FileDao();
-            file.setSize(fileSize);
-            fileDao.update(file);
-        }
+            for (Map.Entry<String, Long> entry : knownSizeMap.entrySet()) {
+                fileDao.updateSize(entry.getKey(), entry.getValue());
+            }
+        });
+        return fileIdList;
     }
 
     @Override
     protected Scheduler scheduler() {
-        return Scheduler.newFixedDelaySchedule(0, 1, TimeUnit.MINUTES);
+        return Scheduler.newFixedDelaySchedule(0, RETRY_DELAY_MINUTES, TimeUnit.MINUTES);
     }
 }
@@ -2,10 +2,12 @@ package com.sismics.docs.core.service;
 
 import com.google.common.util.concurrent.AbstractScheduledService;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.criteria.TagCriteria;
 import com.sismics.docs.core.dao.dto.TagDto;
 import com.sismics.docs.core.event.DocumentCreatedAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.Tag;
 import com.sismics.docs.core.util.ConfigUtil;
@@ -87,8 +89,16 @@ public class InboxService extends AbstractScheduledService {
                 inbox = openInbox();
                 Message[] messages = inbox.search(new FlagTerm(new Flags(Flags.Flag.SEEN), false));
                 log.info(messages.length + " messages found");
+
+                // The files are queued for processing at the end of the synchronization
+                int freeSlotCount = AppContext.getInstance().getFileProcessingService().getFreeSlotCount(FileProcessingPriority.BULK);
                 for (Message message : messages) {
-                    importMessage(message, tagsNameToId);
+                    if (freeSlotCount <= 0) {
+                        // Unread messages are imported on the next synchronization
+                        log.info("File processing queue full, stopping the inbox synchronization");
+                        break;
+                    }
+                    freeSlotCount -= importMessage(message, tagsNameToId);
                     lastSyncMessageCount++;
                 }
             } catch (FolderClosedException e) {
@@ -188,9 +198,10 @@ public class InboxService extends AbstractScheduledService {
      * Import an email.
      *
      * @param message Message
+     * @return Number of imported files
      * @throws Exception e
      */
-    private void importMessage(Message message, Map<String, String> tags) throws Exception {
+    private int importMessage(Message message, Map<String, String> tags) throws Exception {
         log.info("Importing message: " + message.getSubject());
 
         // Parse the mail
@@ -260,12 +271,14 @@ public class InboxService extends AbstractScheduledService {
         // Add files to the document
         for (EmailUtil.FileContent fileContent : mailContent.getFileContentList()) {
             FileUtil.createFile(fileContent.getName(), null, fileContent.getFile(), fileContent.getSize(),
-                    document.getLanguage(), "admin", document.getId());
+                    document.getLanguage(), "admin", document.getId(), FileProcessingPriority.BULK);
         }
 
         if (ConfigUtil.getConfigBooleanValue(ConfigType.INBOX_DELETE_IMPORTED)) {
             message.setFlag(Flags.Flag.DELETED, true);
         }
+
+        return mailContent.getFileContentList().size();
     }
 
     /**
@@ -4,6 +4,7 @@ import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.model.jpa.Config;
 
+import java.util.Optional;
 import java.util.ResourceBundle;
 
 /**
@@ -19,12 +20,15 @@ public class ConfigUtil {
      * @throws IllegalStateException Configuration parameter undefined
      */
     public static String getConfigStringValue(ConfigType configType) {
-        ConfigDao configDao = new ConfigDao();
-        Config config = configDao.getById(configType);
-        if (config == null) {
+        Optional<String> value = EntityCache.get(EntityCache.Region.CONFIG, configType, () -> {
+            ConfigDao configDao = new ConfigDao();
+            Config config = configDao.getById(configType);
+            return config == null ? null : Optional.ofNullable(config.getValue());
+        });
+        if (value == null) {
             throw new IllegalStateException("Config parameter not found: " + configType);
         }
-        return config.getValue();
+        return value.orElse(null);
     }
 
     /**
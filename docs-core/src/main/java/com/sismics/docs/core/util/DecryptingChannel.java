@@ -0,0 +1,167 @@
+package com.sismics.docs.core.util;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only channel decrypting an AES/CTR encrypted content.
+ * Changing the position restarts the decryption at the block containing it,
+ * without decrypting the data before.
+ *
+ * @author bgamard
+ */
+public class DecryptingChannel implements SeekableByteChannel {
+    /**
+     * Maximum size of the encrypted data read at once.
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Encrypted content.
+     */
+    private final SeekableByteChannel channel;
+
+    /**
+     * Private key.
+     */
+    private final String privateKey;
+
+    /**
+     * Position in the decrypted data.
+     */
+    private long position;
+
+    /**
+     * Cipher decrypting from the current position, null if the position has changed.
+     */
+    private Cipher cipher;
+
+    /**
+     * Decrypted bytes before the current position in the first block, to discard.
+     */
+    private int skipCount;
+
+    /**
+     * Decrypted data not read yet.
+     */
+    private ByteBuffer decryptedBuffer = ByteBuffer.allocate(0);
+
+    /**
+     * Encrypted data read from the content.
+     */
+    private final byte[] encryptedChunk = new byte[CHUNK_SIZE];
+
+    /**
+     * Decrypted data, with the room for an incomplete block kept by the cipher.
+     */
+    private final byte[] decryptedChunk = new byte[CHUNK_SIZE + EncryptionUtil.BLOCK_SIZE];
+
+    /**
+     * Constructor.
+     *
+     * @param channel Encrypted content
+     * @param privateKey Private key
+     */
+    DecryptingChannel(SeekableByteChannel channel, String privateKey) {
+        this.channel = channel;
+        this.privateKey = privateKey;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        long size = channel.size();
+        if (position >= size) {
+            return -1;
+        }
+
+        if (cipher == null) {
+            long blockIndex = position / EncryptionUtil.BLOCK_SIZE;
+            try {
+                cipher = EncryptionUtil.getDecryptionCipher(privateKey, blockIndex);
+            } catch (Exception e) {
+                throw new IOException("Error initializing the decryption", e);
+            }
+            channel.position(blockIndex * EncryptionUtil.BLOCK_SIZE);
+            skipCount = (int) (position % EncryptionUtil.BLOCK_SIZE);
+            decryptedBuffer = ByteBuffer.allocate(0);
+        }
+
+        // The cipher may keep an incomplete block until the next bytes or the end of the content
+        while (!decryptedBuffer.hasRemaining()) {
+            int length = channel.read(ByteBuffer.wrap(encryptedChunk));
+            boolean end = length <= 0 || channel.position() >= size;
+            int decryptedLength;
+            try {
+                if (end) {
+                    decryptedLength = cipher.doFinal(encryptedChunk, 0, Math.max(length, 0), decryptedChunk, 0);
+                } else {
+                    decryptedLength = cipher.update(encryptedChunk, 0, length, decryptedChunk, 0);
+                }
+            } catch (Exception e) {
+                throw new IOException("Error decrypting the file", e);
+            }
+
+            int skip = Math.min(skipCount, decryptedLength);
+            skipCount -= skip;
+            decryptedBuffer = ByteBuffer.wrap(decryptedChunk, skip, decryptedLength - skip);
+            if (end && !decryptedBuffer.hasRemaining()) {
+                return -1;
+            }
+        }
+
+        int count = Math.min(dst.remaining(), decryptedBuffer.remaining());
+        dst.put(decryptedChunk, decryptedBuffer.position(), count);
+        decryptedBuffer.position(decryptedBuffer.position() + count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        if (newPosition != position) {
+            position = newPosition;
+            cipher = null;
+        }
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,22 +1,41 @@
 package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.EnvironmentUtil;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Encryption utilities.
@@ -28,6 +47,36 @@ public class EncryptionUtil {
      * Salt.
      */
     private static final String SALT = "LEpxZmm2SMu2PeKzPNrar2rhVAS6LrrgvXKeL9uyXC4vgKHg";
+
+    /**
+     * Size of an AES block, the CTR counter is incremented once per block.
+     */
+    public static final int BLOCK_SIZE = 16;
+
+    /**
+     * Size of the buffers used to encrypt and decrypt the files.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Default time in seconds a derived key is kept in memory after its last use.
+     */
+    private static final int DEFAULT_SECRET_KEY_TTL = 3600;
+
+    /**
+     * Default maximum number of derived keys kept in memory.
+     */
+    private static final int DEFAULT_SECRET_KEY_CACHE_SIZE = 1000;
+
+    /**
+     * Derived keys by private key, one per user.
+     * The key derivation is slow on purpose, it is done once per user instead of once per file read.
+     */
+    private static final Cache<String, SecretKeyMaterial> secretKeyCache = CacheBuilder.newBuilder()
+            .maximumSize(EnvironmentUtil.getEnvInt(Constants.ENCRYPTION_KEY_CACHE_SIZE_ENV, DEFAULT_SECRET_KEY_CACHE_SIZE))
+            .expireAfterAccess(EnvironmentUtil.getEnvInt(Constants.ENCRYPTION_KEY_CACHE_TTL_ENV, DEFAULT_SECRET_KEY_TTL), TimeUnit.SECONDS)
+            .removalListener((RemovalListener<String, SecretKeyMaterial>) notification -> notification.getValue().destroy())
+            .build();
     
     static {
         // Initialize Bouncy Castle provider
@@ -49,39 +98,160 @@ public class EncryptionUtil {
         }
     }
     
+    /**
+     * Returns true if the new files are stored encrypted.
+     *
+     * @return True if the new files are encrypted
+     */
+    public static boolean isStorageEncrypted() {
+        return !"false".equalsIgnoreCase(System.getenv(Constants.STORAGE_ENCRYPTION_ENV));
+    }
+
+    /**
+     * Returns the private key of a stored file.
+     *
+     * @param file File
+     * @param user Creator of the file
+     * @return Private key, null if the file is stored unencrypted
+     */
+    public static String getPrivateKey(File file, User user) {
+        return file.isEncrypted() ? user.getPrivateKey() : null;
+    }
+
     /**
      * Decrypt an InputStream using the specified private key.
      * 
      * @param is InputStream to encrypt
-     * @param privateKey Private key
+     * @param privateKey Private key, null if the data is not encrypted
      * @return Encrypted stream
      * @throws Exception  e
      */
     public static InputStream decryptInputStream(InputStream is, String privateKey) throws Exception {
+        if (privateKey == null) {
+            return is;
+        }
         return new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE));
     }
 
     /**
-     * Decrypt a file to a temporary file using the specified private key.
+     * Open an encrypted file for reading at any position.
+     * AES/CTR keeps the size of the data, the positions in the decrypted data are the same as in the file.
      *
      * @param file Encrypted file
-     * @param privateKey Private key
-     * @return Decrypted temporary file
-     * @throws Exception e
+     * @param privateKey Private key, null if the file is not encrypted
+     * @return Decrypted channel, the file channel itself if not encrypted
+     * @throws IOException e
+     */
+    public static SeekableByteChannel decryptChannel(Path file, String privateKey) throws IOException {
+        return decryptChannel(FileChannel.open(file, StandardOpenOption.READ), privateKey);
+    }
+
+    /**
+     * Decrypt a channel for reading at any position.
+     *
+     * @param channel Encrypted channel
+     * @param privateKey Private key, null if the data is not encrypted
+     * @return Decrypted channel, the channel itself if not encrypted
      */
-    public static Path decryptFile(Path file, String privateKey) throws Exception {
+    public static SeekableByteChannel decryptChannel(SeekableByteChannel channel, String privateKey) {
         if (privateKey == null) {
-            // For unit testing
-            return file;
+            return channel;
         }
+        return new DecryptingChannel(channel, privateKey);
+    }
 
+    /**
+     * Decrypt a stored content to a temporary file using the specified private key.
+     *
+     * @param channel Encrypted channel, closed after the decryption
+     * @param privateKey Private key, null if the data is not encrypted
+     * @return Decrypted temporary file
+     * @throws Exception e
+     */
+    public static Path decryptFile(SeekableByteChannel channel, String privateKey) throws Exception {
         Path tmpFile = AppContext.getInstance().getFileService().createTemporaryFile();
-        try (InputStream is = Files.newInputStream(file)) {
-            Files.copy(new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE)), tmpFile, StandardCopyOption.REPLACE_EXISTING);
+        try (SeekableByteChannel inputChannel = decryptChannel(channel, privateKey);
+             FileChannel outputChannel = FileChannel.open(tmpFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (inputChannel instanceof FileChannel) {
+                // Unencrypted local file, the copy is done by the operating system if possible
+                FileChannel fileChannel = (FileChannel) inputChannel;
+                long size = fileChannel.size();
+                long position = 0;
+                while (position < size) {
+                    position += fileChannel.transferTo(position, size - position, outputChannel);
+                }
+                return tmpFile;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            while (inputChannel.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    outputChannel.write(buffer);
+                }
+                buffer.clear();
+            }
         }
         return tmpFile;
     }
 
+    /**
+     * Store a file, encrypted with the specified private key.
+     * The data is encrypted by large blocks, without the small buffers of the cipher streams.
+     *
+     * @param file Unencrypted file
+     * @param storedFile Stored file, replaced if it exists
+     * @param privateKey Private key, null to store the file unencrypted
+     * @throws Exception e
+     */
+    public static void encryptFile(Path file, Path storedFile, String privateKey) throws Exception {
+        if (privateKey == null) {
+            // The copy is done by the operating system if possible
+            Files.copy(file, storedFile, StandardCopyOption.REPLACE_EXISTING);
+            return;
+        }
+
+        Cipher cipher = getEncryptionCipher(privateKey);
+        try (FileChannel inputChannel = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel outputChannel = FileChannel.open(storedFile, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer inputBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            // The cipher may keep an incomplete block from the previous update
+            ByteBuffer outputBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE + BLOCK_SIZE);
+            boolean end = false;
+            while (!end) {
+                end = inputChannel.read(inputBuffer) == -1;
+                inputBuffer.flip();
+                if (end) {
+                    cipher.doFinal(inputBuffer, outputBuffer);
+                } else {
+                    cipher.update(inputBuffer, outputBuffer);
+                }
+                inputBuffer.compact();
+                outputBuffer.flip();
+                while (outputBuffer.hasRemaining()) {
+                    outputChannel.write(outputBuffer);
+                }
+                outputBuffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Encrypt an OutputStream using the specified private key.
+     *
+     * @param os OutputStream to encrypt
+     * @param privateKey Private key, null to write the data unencrypted
+     * @return Encrypting stream
+     * @throws Exception e
+     */
+    public static OutputStream encryptOutputStream(OutputStream os, String privateKey) throws Exception {
+        if (privateKey == null) {
+            return os;
+        }
+        return new CipherOutputStream(os, getEncryptionCipher(privateKey));
+    }
+
     /**
      * Return an encryption cipher.
      * 
@@ -96,6 +266,29 @@ public class EncryptionUtil {
         return getCipher(privateKey, Cipher.ENCRYPT_MODE);
     }
     
+    /**
+     * Return a decryption cipher starting at a block of the data.
+     *
+     * @param privateKey Private key
+     * @param blockIndex Index of the first block to decrypt
+     * @return Decryption cipher
+     * @throws Exception e
+     */
+    public static Cipher getDecryptionCipher(String privateKey, long blockIndex) throws Exception {
+        return getCipher(privateKey, Cipher.DECRYPT_MODE, blockIndex);
+    }
+
+    /**
+     * Forget the derived key of a private key, when its user is deleted.
+     *
+     * @param privateKey Private key
+     */
+    public static void invalidateSecretKey(String privateKey) {
+        if (privateKey != null) {
+            secretKeyCache.invalidate(privateKey);
+        }
+    }
+
     /**
      * Initialize a Cipher.
      * 
@@ -105,11 +298,120 @@ public class EncryptionUtil {
      * @throws Exception e
      */
     private static Cipher getCipher(String privateKey, int mode) throws Exception {
+        return getCipher(privateKey, mode, 0);
+    }
+
+    /**
+     * Initialize a Cipher starting at a block of the data.
+     *
+     * @param privateKey Private key
+     * @param mode Mode (encrypt or decrypt)
+     * @param blockIndex Index of the first block
+     * @return Cipher
+     * @throws Exception e
+     */
+    private static Cipher getCipher(String privateKey, int mode, long blockIndex) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
+        while (true) {
+            SecretKeyMaterial secretKeyMaterial;
+            try {
+                secretKeyMaterial = secretKeyCache.get(privateKey, () -> deriveSecretKey(privateKey));
+            } catch (ExecutionException e) {
+                throw (Exception) e.getCause();
+            }
+            if (secretKeyMaterial.init(cipher, mode, blockIndex)) {
+                return cipher;
+            }
+
+            // Evicted and zeroed in the meantime
+            secretKeyCache.asMap().remove(privateKey, secretKeyMaterial);
+        }
+    }
+
+    /**
+     * Derive the secret key and the initial counter of a private key.
+     *
+     * @param privateKey Private key
+     * @return Secret key material
+     * @throws Exception e
+     */
+    private static SecretKeyMaterial deriveSecretKey(String privateKey) throws Exception {
         PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
         SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
-        SecretKey desKey = skf.generateSecret(keySpec);
+        SecretKey secretKey = skf.generateSecret(keySpec);
+        keySpec.clearPassword();
+
+        // The initial counter is derived with the key
         Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
-        cipher.init(mode, desKey);
-        return cipher;
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+        return new SecretKeyMaterial(secretKey.getEncoded(), cipher.getIV());
+    }
+
+    /**
+     * Derived secret key and initial counter, zeroed when evicted from the memory.
+     *
+     * @author bgamard
+     */
+    private static final class SecretKeyMaterial {
+        /**
+         * AES key.
+         */
+        private final byte[] key;
+
+        /**
+         * Initial counter.
+         */
+        private final byte[] counter;
+
+        /**
+         * True if the key has been zeroed.
+         */
+        private boolean destroyed;
+
+        /**
+         * Constructor.
+         *
+         * @param key AES key
+         * @param counter Initial counter
+         */
+        SecretKeyMaterial(byte[] key, byte[] counter) {
+            this.key = key;
+            this.counter = counter;
+        }
+
+        /**
+         * Initialize a cipher starting at a block of the data.
+         *
+         * @param cipher Cipher
+         * @param mode Mode (encrypt or decrypt)
+         * @param blockIndex Index of the first block
+         * @return False if the key has been zeroed
+         * @throws Exception e
+         */
+        synchronized boolean init(Cipher cipher, int mode, long blockIndex) throws Exception {
+            if (destroyed) {
+                return false;
+            }
+
+            // Add the block index to the initial counter, as a 128 bits big-endian number
+            byte[] blockCounter = counter.clone();
+            long carry = blockIndex;
+            for (int i = blockCounter.length - 1; i >= 0 && carry != 0; i--) {
+                long sum = (blockCounter[i] & 0xff) + (carry & 0xff);
+                blockCounter[i] = (byte) sum;
+                carry = (carry >>> 8) + (sum >>> 8);
+            }
+            cipher.init(mode, new SecretKeySpec(key, "AES"), new IvParameterSpec(blockCounter));
+            return true;
+        }
+
+        /**
+         * Zero the key.
+         */
+        synchronized void destroy() {
+            Arrays.fill(key, (byte) 0);
+            Arrays.fill(counter, (byte) 0);
+            destroyed = true;
+        }
     }
 }
@@ -0,0 +1,201 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.util.EnvironmentUtil;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Read-mostly data kept in memory: configuration, tags, vocabularies, metadata and roles.
+ * Entries expire after a few minutes, so changes made by another node are eventually seen.
+ * Changes made by this node invalidate the entries immediately, and again after the
+ * transaction commit. Each invalidation moves the region to a new generation, and a value
+ * loaded during an older generation is not kept, so a concurrent transaction cannot cache
+ * the data being replaced.
+ * Cached values are shared between threads and must not be modified.
+ *
+ * @author bgamard
+ */
+public final class EntityCache {
+    /**
+     * Default time in seconds an entry is kept in memory.
+     */
+    private static final int DEFAULT_TTL = 300;
+
+    /**
+     * Default maximum number of entries in each region.
+     */
+    private static final int DEFAULT_SIZE = 1000;
+
+    /**
+     * Cache regions.
+     */
+    public enum Region {
+        /**
+         * Configuration values by type.
+         */
+        CONFIG,
+
+        /**
+         * Tags lists by criteria.
+         */
+        TAG,
+
+        /**
+         * Vocabulary entries by vocabulary name.
+         */
+        VOCABULARY,
+
+        /**
+         * Metadata lists by sort.
+         */
+        METADATA,
+
+        /**
+         * Base functions by set of roles.
+         */
+        ROLE_BASE_FUNCTION
+    }
+
+    /**
+     * Caches by region.
+     */
+    private static final Map<Region, Cache<Object, Object>> cacheMap = new EnumMap<>(Region.class);
+
+    /**
+     * Generation of each region, incremented by each invalidation.
+     * Also the lock making the generation check and the invalidations atomic.
+     */
+    private static final Map<Region, AtomicLong> generationMap = new EnumMap<>(Region.class);
+
+    static {
+        int size = EnvironmentUtil.getEnvInt(Constants.ENTITY_CACHE_SIZE_ENV, DEFAULT_SIZE);
+        int ttl = EnvironmentUtil.getEnvInt(Constants.ENTITY_CACHE_TTL_ENV, DEFAULT_TTL);
+        for (Region region : Region.values()) {
+            cacheMap.put(region, CacheBuilder.newBuilder()
+                    .maximumSize(size)
+                    .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                    .recordStats()
+                    .build());
+            generationMap.put(region, new AtomicLong());
+        }
+    }
+
+    /**
+     * Invalidations to replay after the commit of the current transaction.
+     */
+    private static final ThreadLocal<List<Runnable>> pendingInvalidationList = ThreadLocal.withInitial(ArrayList::new);
+
+    /**
+     * Static class.
+     */
+    private EntityCache() {
+    }
+
+    /**
+     * Returns a value from the memory, or loads it.
+     *
+     * @param region Region
+     * @param key Key
+     * @param loader Loader of the value, a null value is not kept in memory
+     * @param <V> Value type
+     * @return Value
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V get(Region region, Object key, Supplier<V> loader) {
+        Cache<Object, Object> cache = cacheMap.get(region);
+        V value = (V) cache.getIfPresent(key);
+        if (value == null) {
+            AtomicLong generation = generationMap.get(region);
+            long loadGeneration = generation.get();
+            value = loader.get();
+            if (value != null) {
+                synchronized (generation) {
+                    // The region was invalidated while loading, the value may be outdated
+                    if (generation.get() == loadGeneration) {
+                        cache.put(key, value);
+                    }
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Forget a value.
+     *
+     * @param region Region
+     * @param key Key
+     */
+    public static void invalidate(Region region, Object key) {
+        invalidate(region, cache -> cache.invalidate(key));
+    }
+
+    /**
+     * Forget all the values of a region.
+     *
+     * @param region Region
+     */
+    public static void invalidateAll(Region region) {
+        invalidate(region, Cache::invalidateAll);
+    }
+
+    /**
+     * Invalidate now and after the commit of the current transaction.
+     *
+     * @param region Region
+     * @param cacheInvalidation Invalidation of the region cache
+     */
+    private static void invalidate(Region region, Consumer<Cache<Object, Object>> cacheInvalidation) {
+        Runnable invalidation = () -> {
+            AtomicLong generation = generationMap.get(region);
+            synchronized (generation) {
+                generation.incrementAndGet();
+                cacheInvalidation.accept(cacheMap.get(region));
+            }
+        };
+        invalidation.run();
+        pendingInvalidationList.get().add(invalidation);
+    }
+
+    /**
+     * Replay the invalidations of the current transaction, once it is over.
+     */
+    public static void flushInvalidations() {
+        List<Runnable> invalidationList = pendingInvalidationList.get();
+        for (Runnable invalidation : invalidationList) {
+            invalidation.run();
+        }
+        pendingInvalidationList.remove();
+    }
+
+    /**
+     * Returns the number of values in memory in a region.
+     *
+     * @param region Region
+     * @return Number of values
+     */
+    public static long size(Region region) {
+        return cacheMap.get(region).size();
+    }
+
+    /**
+     * Returns the hits and misses statistics of a region.
+     *
+     * @param region Region
+     * @return Statistics
+     */
+    public static CacheStats getStats(Region region) {
+        return cacheMap.get(region).stats();
+    }
+}
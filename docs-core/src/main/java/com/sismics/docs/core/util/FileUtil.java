@@ -4,6 +4,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.CharStreams;
 import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
@@ -11,29 +12,26 @@ import com.sismics.docs.core.event.FileCreatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.storage.StorageBackend;
+import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.ImageDeskew;
 import com.sismics.util.Scalr;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.io.InputStreamReaderThread;
 import com.sismics.util.mime.MimeTypeUtil;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.CountingInputStream;
-import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Semaphore;
 
 /**
  * File entity utilities.
@@ -50,6 +48,12 @@ public class FileUtil {
      * File ID of files currently being processed.
      */
     private static final Set<String> processingFileSet = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * Running tesseract processes, shared by all the OCR-ized files and pages.
+     */
+    private static final Semaphore tesseractSemaphore = new Semaphore(EnvironmentUtil.getEnvInt(Constants.OCR_MAX_PROCESSES_ENV,
+            Runtime.getRuntime().availableProcessors()));
     
     /**
      * Optical character recognition on an image.
@@ -71,37 +75,35 @@ public class FileUtil {
 
         List<String> result = Lists.newLinkedList(Arrays.asList("tesseract", tmpFile.toAbsolutePath().toString(), "stdout", "-l", language));
         ProcessBuilder pb = new ProcessBuilder(result);
-        Process process = pb.start();
+        tesseractSemaphore.acquire();
+        try {
+            Process process = pb.start();
 
-        // Consume the process error stream
-        final String commandName = pb.command().get(0);
-        new InputStreamReaderThread(process.getErrorStream(), commandName).start();
+            // Consume the process error stream
+            final String commandName = pb.command().get(0);
+            new InputStreamReaderThread(process.getErrorStream(), commandName).start();
 
-        // Consume the data as text
-        try (InputStream is = process.getInputStream()) {
-            return CharStreams.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
+            // Consume the data as text
+            try (InputStream is = process.getInputStream()) {
+                String content = CharStreams.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
+                process.waitFor();
+                return content;
+            }
+        } finally {
+            tesseractSemaphore.release();
         }
     }
 
     /**
-     * Remove a file from the storage filesystem.
+     * Remove a file from the storage.
      * 
      * @param fileId ID of file to delete
      */
     public static void delete(String fileId) throws IOException {
-        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-        Path webFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_web");
-        Path thumbnailFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_thumb");
-        
-        if (Files.exists(storedFile)) {
-            Files.delete(storedFile);
-        }
-        if (Files.exists(webFile)) {
-            Files.delete(webFile);
-        }
-        if (Files.exists(thumbnailFile)) {
-            Files.delete(thumbnailFile);
-        }
+        StorageBackend storageBackend = AppContext.getInstance().getStorageBackend();
+        storageBackend.delete(fileId);
+        storageBackend.delete(fileId + "_web");
+        storageBackend.delete(fileId + "_thumb");
     }
 
     /**
@@ -118,6 +120,25 @@ public class FileUtil {
      * @throws Exception e
      */
     public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId) throws Exception {
+        return createFile(name, previousFileId, unencryptedFile, fileSize, language, userId, documentId, FileProcessingPriority.INTERACTIVE);
+    }
+
+    /**
+     * Create a new file.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param unencryptedFile Path to the unencrypted file
+     * @param fileSize File size
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @param priority Processing priority
+     * @return File ID
+     * @throws Exception e
+     */
+    public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId,
+                                    FileProcessingPriority priority) throws Exception {
         // Validate mime type
         String mimeType;
         try {
@@ -153,6 +174,7 @@ public class FileUtil {
         file.setMimeType(mimeType);
         file.setUserId(userId);
         file.setSize(fileSize);
+        file.setEncrypted(EncryptionUtil.isStorageEncrypted());
 
         // Get files of this document
         FileDao fileDao = new FileDao();
@@ -186,11 +208,9 @@ public class FileUtil {
         String fileId = fileDao.create(file, userId);
 
         // Save the file
-        Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
-        Path path = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-        try (InputStream inputStream = Files.newInputStream(unencryptedFile)) {
-            Files.copy(new CipherInputStream(inputStream, cipher), path);
-        }
+        Path storedFile = AppContext.getInstance().getFileService().createTemporaryFile();
+        EncryptionUtil.encryptFile(unencryptedFile, storedFile, EncryptionUtil.getPrivateKey(file, user));
+        AppContext.getInstance().getStorageBackend().put(file.getId(), storedFile);
 
         // Update the user quota
         user.setStorageCurrent(user.getStorageCurrent() + fileSize);
@@ -203,6 +223,7 @@ public class FileUtil {
         fileCreatedAsyncEvent.setLanguage(language);
         fileCreatedAsyncEvent.setFileId(file.getId());
         fileCreatedAsyncEvent.setUnencryptedFile(unencryptedFile);
+        fileCreatedAsyncEvent.setPriority(priority);
         ThreadLocalContext.get().addAsyncEvent(fileCreatedAsyncEvent);
 
         if (documentId != null) {
@@ -246,27 +267,17 @@ public class FileUtil {
     }
 
     /**
-     * Get the size of a file on disk.
+     * Get the size of a stored file.
+     * The files are encrypted with AES in CTR mode, which doesn't change their size,
+     * so the stored size is the size of the file.
      *
      * @param fileId the file id
-     * @param user   the file owner
      * @return the size or -1 if something went wrong
      */
-    public static long getFileSize(String fileId, User user) {
-        // To get the size we copy the decrypted content into a null output stream
-        // and count the copied byte size.
-        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-        if (! Files.exists(storedFile)) {
-            log.debug("File does not exist " + fileId);
-            return File.UNKNOWN_SIZE;
-        }
-        try (InputStream fileInputStream = Files.newInputStream(storedFile);
-             InputStream inputStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey());
-             CountingInputStream countingInputStream = new CountingInputStream(inputStream);
-        ) {
-            IOUtils.copy(countingInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
-            return countingInputStream.getByteCount();
-        } catch (Exception e) {
+    public static long getFileSize(String fileId) {
+        try {
+            return AppContext.getInstance().getStorageBackend().size(fileId);
+        } catch (IOException e) {
             log.debug("Can't find size of file " + fileId, e);
             return File.UNKNOWN_SIZE;
         }
@@ -157,9 +157,18 @@ public class MetadataUtil {
      */
     public static void addMetadata(JsonObjectBuilder json, String documentId) {
         DocumentMetadataDao documentMetadataDao = new DocumentMetadataDao();
+        addMetadata(json, documentMetadataDao.getByDocumentId(documentId));
+    }
+
+    /**
+     * Add custom metadata to a JSON response.
+     *
+     * @param json JSON
+     * @param documentMetadataDtoList Metadata values of the document
+     */
+    public static void addMetadata(JsonObjectBuilder json, List<DocumentMetadataDto> documentMetadataDtoList) {
         MetadataDao metadataDao = new MetadataDao();
         List<MetadataDto> metadataDtoList = metadataDao.findByCriteria(new MetadataCriteria(), new SortCriteria(1, true));
-        List<DocumentMetadataDto> documentMetadataDtoList = documentMetadataDao.getByDocumentId(documentId);
         JsonArrayBuilder metadata = Json.createArrayBuilder();
         for (MetadataDto metadataDto : metadataDtoList) {
             JsonObjectBuilder meta = Json.createObjectBuilder()
@@ -47,6 +47,7 @@ public class TransactionUtil {
             runnable.run();
         } catch (Exception e) {
             ThreadLocalContext.cleanup();
+            EntityCache.flushInvalidations();
             
             log.error("An exception occured, rolling back current transaction", e);
 
@@ -82,6 +83,9 @@ public class TransactionUtil {
         // This way, all modifications done during this request are available in the listeners.
         context.fireAllAsyncEvents();
 
+        // Invalidate the cached data again, a concurrent transaction may have loaded it before the commit
+        EntityCache.flushInvalidations();
+
         ThreadLocalContext.cleanup();
     }
     
@@ -1,12 +1,13 @@
 package com.sismics.docs.core.util.action;
 
+import com.sismics.docs.core.constant.FileProcessingPriority;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.util.context.ThreadLocalContext;
@@ -34,14 +35,22 @@ public class ProcessFilesAction implements Action {
         List<File> fileList = fileDao.getByDocumentId(null, documentDto.getId());
 
         try {
+            // The files are queued for processing after the transaction, in the queue slots for the bulk files
+            int freeSlotCount = AppContext.getInstance().getFileProcessingService().getFreeSlotCount(FileProcessingPriority.BULK);
             for (File file : fileList) {
+                if (freeSlotCount <= 0) {
+                    log.warn("File processing queue full, the remaining files of the document are not processed: " + documentDto.getId());
+                    break;
+                }
+                freeSlotCount--;
+
                 // Get the creating user
                 UserDao userDao = new UserDao();
                 User user = userDao.getById(file.getUserId());
 
                 // Decrypt the file
-                Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-                Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+                Path unencryptedFile = EncryptionUtil.decryptFile(
+                        AppContext.getInstance().getStorageBackend().open(file.getId()), EncryptionUtil.getPrivateKey(file, user));
 
                 // Start the asynchronous processing
                 FileUtil.startProcessingFile(file.getId());
@@ -50,6 +59,7 @@ public class ProcessFilesAction implements Action {
                 event.setLanguage(documentDto.getLanguage());
                 event.setFileId(file.getId());
                 event.setUnencryptedFile(unencryptedFile);
+                event.setPriority(FileProcessingPriority.BULK);
                 ThreadLocalContext.get().addAsyncEvent(event);
             }
         } catch (Exception e) {
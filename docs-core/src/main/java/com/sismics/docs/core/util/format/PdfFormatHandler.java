@@ -4,6 +4,8 @@ import com.google.common.io.Closer;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.util.mime.MimeType;
 import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.multipdf.PDFMergerUtility;
@@ -18,6 +20,12 @@ import java.awt.image.BufferedImage;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * PDF format handler.
@@ -56,16 +64,8 @@ public class PdfFormatHandler implements FormatHandler {
 
         // No text content, try to OCR it
         if (language != null && content != null && content.trim().isEmpty() && ConfigUtil.getConfigBooleanValue(ConfigType.OCR_ENABLED, true)) {
-            StringBuilder sb = new StringBuilder();
-            try (InputStream inputStream = Files.newInputStream(file);
-                 PDDocument pdfDocument = PDDocument.load(inputStream)) {
-                PDFRenderer renderer = new PDFRenderer(pdfDocument);
-                for (int pageIndex = 0; pageIndex < pdfDocument.getNumberOfPages(); pageIndex++) {
-                    log.info("OCR page " + (pageIndex + 1) + "/" + pdfDocument.getNumberOfPages() + " of PDF file containing only images");
-                    sb.append(" ");
-                    sb.append(FileUtil.ocrFile(language, renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY)));
-                }
-                return sb.toString();
+            try {
+                return ocrPdf(language, file);
             } catch (Exception e) {
                 log.error("Error while OCR-izing the PDF", e);
             }
@@ -74,6 +74,95 @@ public class PdfFormatHandler implements FormatHandler {
         return content;
     }
 
+    /**
+     * OCR all pages of a PDF in the shared OCR thread pool.
+     *
+     * @param language Language to OCR
+     * @param file PDF file
+     * @return Content of all pages, in the pages order
+     * @throws Exception e
+     */
+    private String ocrPdf(String language, Path file) throws Exception {
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
+        try (InputStream inputStream = Files.newInputStream(file);
+             PDDocument pdfDocument = PDDocument.load(inputStream)) {
+            return ocrPages(pdfDocument, fileProcessingService.getOcrExecutor(), fileProcessingService.getOcrThreadCount(),
+                    image -> FileUtil.ocrFile(language, image));
+        }
+    }
+
+    /**
+     * OCR all pages of a PDF, several pages at a time.
+     * Pages are rendered one by one when a page is done, so only the pages being OCR-ized are in memory.
+     *
+     * @param pdfDocument PDF document
+     * @param executor Executor OCR-izing the pages
+     * @param pageWindow Maximum number of pages being OCR-ized at the same time
+     * @param pageOcr OCR of a page
+     * @return Content of all pages, in the pages order
+     * @throws Exception e
+     */
+    static String ocrPages(PDDocument pdfDocument, ExecutorService executor, int pageWindow, PageOcr pageOcr) throws Exception {
+        Semaphore pageSemaphore = new Semaphore(pageWindow);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<String>> pageContentList = new ArrayList<>();
+        try {
+            // The PDF is not thread-safe, it is only rendered by this thread
+            PDFRenderer renderer = new PDFRenderer(pdfDocument);
+            int pageCount = pdfDocument.getNumberOfPages();
+            for (int pageIndex = 0; pageIndex < pageCount && !failed.get(); pageIndex++) {
+                pageSemaphore.acquire();
+                BufferedImage image;
+                try {
+                    image = renderer.renderImageWithDPI(pageIndex, 300, ImageType.GRAY);
+                } catch (Exception e) {
+                    pageSemaphore.release();
+                    throw e;
+                }
+
+                int pageNumber = pageIndex + 1;
+                pageContentList.add(executor.submit(() -> {
+                    try {
+                        log.info("OCR page " + pageNumber + "/" + pageCount + " of PDF file containing only images");
+                        return pageOcr.ocr(image);
+                    } catch (Exception e) {
+                        // Stop rendering the next pages
+                        failed.set(true);
+                        throw e;
+                    } finally {
+                        pageSemaphore.release();
+                    }
+                }));
+            }
+
+            StringBuilder sb = new StringBuilder();
+            for (Future<String> pageContent : pageContentList) {
+                sb.append(" ");
+                sb.append(pageContent.get());
+            }
+            return sb.toString();
+        } finally {
+            // The executor is shared, only the pages of this PDF are stopped
+            for (Future<String> pageContent : pageContentList) {
+                pageContent.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * OCR of a page.
+     */
+    interface PageOcr {
+        /**
+         * OCR a page image.
+         *
+         * @param image Page image
+         * @return Page content
+         * @throws Exception e
+         */
+        String ocr(BufferedImage image) throws Exception;
+    }
+
     @Override
     public void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception {
         PDDocument mergeDoc = PDDocument.load(file.toFile(), memUsageSettings);
@@ -0,0 +1,132 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.collect.Maps;
+import com.sismics.docs.core.util.jpa.QueryParam;
+import com.sismics.docs.core.util.jpa.QueryUtil;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Search criteria of a document stored in the index alongside its metadata.
+ * They are loaded from the database in batch, for several documents at once.
+ *
+ * @author bgamard
+ */
+class DocumentSearchFields {
+    /**
+     * Targets allowed to read the document, directly or through a tag.
+     */
+    private final Set<String> readTargetIdSet = new HashSet<>();
+
+    /**
+     * Tags of the document.
+     */
+    private final Set<String> tagIdSet = new HashSet<>();
+
+    /**
+     * MIME types of the files.
+     */
+    private final Set<String> mimeTypeSet = new HashSet<>();
+
+    /**
+     * Targets of the current route step.
+     */
+    private final Set<String> routeTargetIdSet = new HashSet<>();
+
+    /**
+     * Number of shares.
+     */
+    private long shareCount;
+
+    /**
+     * Load the search fields of a list of documents.
+     * Must be called inside a transaction.
+     *
+     * @param documentIdList List of document IDs
+     * @return Search fields by document ID
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, DocumentSearchFields> load(Collection<String> documentIdList) {
+        Map<String, DocumentSearchFields> fieldsMap = Maps.newHashMap();
+        for (String documentId : documentIdList) {
+            fieldsMap.put(documentId, new DocumentSearchFields());
+        }
+        if (documentIdList.isEmpty()) {
+            return fieldsMap;
+        }
+        Map<String, Object> parameterMap = Maps.newHashMap();
+        parameterMap.put("documentIdList", documentIdList);
+
+        // Read permission on the document itself and through the tags
+        List<Object[]> resultList = QueryUtil.getNativeQuery(new QueryParam("select ea.DEA_IDSOURCE_C, ea.DEA_IDTARGET_C from T_DOCUMENT_EFFECTIVE_ACL ea " +
+                " where ea.DEA_IDSOURCE_C in (:documentIdList) and ea.DEA_PERM_C = 'READ'", parameterMap))
+                .getResultList();
+        for (Object[] o : resultList) {
+            fieldsMap.get((String) o[0]).readTargetIdSet.add((String) o[1]);
+        }
+
+        // Tags
+        resultList = QueryUtil.getNativeQuery(new QueryParam("select dt.DOT_IDDOCUMENT_C, dt.DOT_IDTAG_C from T_DOCUMENT_TAG dt " +
+                " where dt.DOT_IDDOCUMENT_C in (:documentIdList) and dt.DOT_DELETEDATE_D is null", parameterMap))
+                .getResultList();
+        for (Object[] o : resultList) {
+            fieldsMap.get((String) o[0]).tagIdSet.add((String) o[1]);
+        }
+
+        // MIME types of the files
+        resultList = QueryUtil.getNativeQuery(new QueryParam("select f.FIL_IDDOC_C, f.FIL_MIMETYPE_C from T_FILE f " +
+                " where f.FIL_IDDOC_C in (:documentIdList) and f.FIL_DELETEDATE_D is null", parameterMap))
+                .getResultList();
+        for (Object[] o : resultList) {
+            if (o[1] != null) {
+                fieldsMap.get((String) o[0]).mimeTypeSet.add((String) o[1]);
+            }
+        }
+
+        // Number of shares
+        resultList = QueryUtil.getNativeQuery(new QueryParam("select ac.ACL_SOURCEID_C, count(s.SHA_ID_C) from T_SHARE s, T_ACL ac " +
+                " where ac.ACL_TARGETID_C = s.SHA_ID_C and ac.ACL_DELETEDATE_D is null and s.SHA_DELETEDATE_D is null " +
+                " and ac.ACL_SOURCEID_C in (:documentIdList) group by ac.ACL_SOURCEID_C", parameterMap))
+                .getResultList();
+        for (Object[] o : resultList) {
+            fieldsMap.get((String) o[0]).shareCount = ((Number) o[1]).longValue();
+        }
+
+        // Targets of the current route steps
+        resultList = QueryUtil.getNativeQuery(new QueryParam("select rs3.idDocument, rs.RTP_IDTARGET_C from T_ROUTE_STEP rs " +
+                " join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs " +
+                "   join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null " +
+                "   where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null and r.RTE_IDDOCUMENT_C in (:documentIdList) " +
+                "   group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder", parameterMap))
+                .getResultList();
+        for (Object[] o : resultList) {
+            fieldsMap.get((String) o[0]).routeTargetIdSet.add((String) o[1]);
+        }
+
+        return fieldsMap;
+    }
+
+    Set<String> getReadTargetIdSet() {
+        return readTargetIdSet;
+    }
+
+    Set<String> getTagIdSet() {
+        return tagIdSet;
+    }
+
+    Set<String> getMimeTypeSet() {
+        return mimeTypeSet;
+    }
+
+    Set<String> getRouteTargetIdSet() {
+        return routeTargetIdSet;
+    }
+
+    long getShareCount() {
+        return shareCount;
+    }
+}
@@ -36,23 +36,35 @@ public interface IndexingHandler {
     void shutDown();
 
     /**
-     * Clear the index.
+     * Start building a new index from scratch.
+     * The current index keeps serving searches and receiving writes until the rebuild is finished.
+     *
+     * @throws Exception e
      */
-    void clearIndex();
+    void startRebuild() throws Exception;
 
     /**
-     * Index a list of documents.
+     * Index a list of documents in the index being rebuilt.
      *
-     * @param documentList All documents
+     * @param documentList Documents
+     * @throws Exception e
      */
-    void createDocuments(List<Document> documentList);
+    void rebuildDocuments(List<Document> documentList) throws Exception;
 
     /**
-     * Index a list of files.
+     * Index a list of files in the index being rebuilt.
      *
-     * @param fileList All files
+     * @param fileList Files
+     * @throws Exception e
      */
-    void createFiles(List<File> fileList);
+    void rebuildFiles(List<File> fileList) throws Exception;
+
+    /**
+     * Finish the index rebuild.
+     *
+     * @param success If true, the new index replaces the current one, otherwise it is discarded
+     */
+    void finishRebuild(boolean success);
 
     /**
      * Index a new document.
@@ -117,4 +129,31 @@ public interface IndexingHandler {
      * @throws Exception e
      */
     void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception;
+
+    /**
+     * Returns the types of the sort key in the continuation tokens of a search.
+     *
+     * @param sortCriteria Sort criteria
+     * @return Types of the sort key values
+     */
+    List<Class<?>> getCursorKeyTypes(SortCriteria sortCriteria);
+
+    /**
+     * Suggest search terms completing the last word of a query.
+     * Only the terms of documents readable by the targets are suggested.
+     *
+     * @param search Search query
+     * @param targetIdList Targets of the current user
+     * @param count Maximum number of suggestions
+     * @return Suggestions
+     * @throws Exception e
+     */
+    List<String> suggest(String search, List<String> targetIdList, int count) throws Exception;
+
+    /**
+     * Returns the number of index operations not yet durably committed.
+     *
+     * @return Number of pending operations
+     */
+    long getPendingOperationCount();
 }
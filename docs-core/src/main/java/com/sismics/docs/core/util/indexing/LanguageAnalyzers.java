@@ -0,0 +1,159 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.ar.ArabicAnalyzer;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.analysis.cz.CzechAnalyzer;
+import org.apache.lucene.analysis.da.DanishAnalyzer;
+import org.apache.lucene.analysis.de.GermanAnalyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.es.SpanishAnalyzer;
+import org.apache.lucene.analysis.fi.FinnishAnalyzer;
+import org.apache.lucene.analysis.fr.FrenchAnalyzer;
+import org.apache.lucene.analysis.hi.HindiAnalyzer;
+import org.apache.lucene.analysis.hu.HungarianAnalyzer;
+import org.apache.lucene.analysis.it.ItalianAnalyzer;
+import org.apache.lucene.analysis.lv.LatvianAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.nl.DutchAnalyzer;
+import org.apache.lucene.analysis.no.NorwegianAnalyzer;
+import org.apache.lucene.analysis.pt.PortugueseAnalyzer;
+import org.apache.lucene.analysis.ru.RussianAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.sv.SwedishAnalyzer;
+import org.apache.lucene.analysis.th.ThaiAnalyzer;
+import org.apache.lucene.analysis.tr.TurkishAnalyzer;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registry of the Lucene analyzers by document language.
+ * Natural language fields are indexed once per language (eg. "title_fra"),
+ * with the stemming and stopwords of this language.
+ * Analyzers are thread-safe and shared by the indexing and the searches.
+ *
+ * @author bgamard
+ */
+final class LanguageAnalyzers {
+    /**
+     * Fields analyzed with the analyzer of the document language.
+     */
+    static final Set<String> LANGUAGE_FIELDS = Sets.newHashSet("title", "description", "subject", "coverage", "rights", "content");
+
+    /**
+     * Analyzer of the other fields and of the languages without a specific analyzer.
+     */
+    private static final Analyzer STANDARD_ANALYZER = new StandardAnalyzer();
+
+    /**
+     * Analyzers by language.
+     * Polish, Ukrainian, Hebrew, Vietnamese and Albanian fall back to the standard analyzer.
+     */
+    private static final Map<String, Analyzer> ANALYZER_MAP = ImmutableMap.<String, Analyzer>builder()
+            .put("eng", new EnglishAnalyzer())
+            .put("fra", new FrenchAnalyzer())
+            .put("ita", new ItalianAnalyzer())
+            .put("deu", new GermanAnalyzer())
+            .put("spa", new SpanishAnalyzer())
+            .put("por", new PortugueseAnalyzer())
+            .put("rus", new RussianAnalyzer())
+            .put("ara", new ArabicAnalyzer())
+            .put("hin", new HindiAnalyzer())
+            .put("chi_sim", new CJKAnalyzer())
+            .put("chi_tra", new CJKAnalyzer())
+            .put("jpn", new CJKAnalyzer())
+            .put("kor", new CJKAnalyzer())
+            .put("tha", new ThaiAnalyzer())
+            .put("nld", new DutchAnalyzer())
+            .put("tur", new TurkishAnalyzer())
+            .put("hun", new HungarianAnalyzer())
+            .put("fin", new FinnishAnalyzer())
+            .put("swe", new SwedishAnalyzer())
+            .put("lav", new LatvianAnalyzer())
+            .put("dan", new DanishAnalyzer())
+            .put("nor", new NorwegianAnalyzer())
+            .put("ces", new CzechAnalyzer())
+            .build();
+
+    /**
+     * Analyzer used by the index writers, choosing the analyzer from the field name.
+     */
+    private static final Analyzer INDEX_ANALYZER = buildIndexAnalyzer();
+
+    /**
+     * Static class.
+     */
+    private LanguageAnalyzers() {
+    }
+
+    /**
+     * Build the analyzer of the index writers.
+     *
+     * @return Analyzer
+     */
+    private static Analyzer buildIndexAnalyzer() {
+        ImmutableMap.Builder<String, Analyzer> fieldAnalyzers = ImmutableMap.builder();
+        for (Map.Entry<String, Analyzer> entry : ANALYZER_MAP.entrySet()) {
+            for (String field : LANGUAGE_FIELDS) {
+                fieldAnalyzers.put(getField(field, entry.getKey()), entry.getValue());
+            }
+        }
+        return new PerFieldAnalyzerWrapper(STANDARD_ANALYZER, fieldAnalyzers.build());
+    }
+
+    /**
+     * Returns the analyzer of the index writers.
+     *
+     * @return Analyzer
+     */
+    static Analyzer getIndexAnalyzer() {
+        return INDEX_ANALYZER;
+    }
+
+    /**
+     * Returns the standard analyzer.
+     *
+     * @return Analyzer
+     */
+    static Analyzer getStandardAnalyzer() {
+        return STANDARD_ANALYZER;
+    }
+
+    /**
+     * Returns the analyzer of a language.
+     *
+     * @param language Language, may be null
+     * @return Analyzer, the standard analyzer if the language has no specific analyzer
+     */
+    static Analyzer getAnalyzer(String language) {
+        Analyzer analyzer = language == null ? null : ANALYZER_MAP.get(language);
+        return analyzer == null ? STANDARD_ANALYZER : analyzer;
+    }
+
+    /**
+     * Returns true if a language has a specific analyzer.
+     *
+     * @param language Language, may be null
+     * @return True if the language has a specific analyzer
+     */
+    static boolean hasAnalyzer(String language) {
+        return language != null && ANALYZER_MAP.containsKey(language);
+    }
+
+    /**
+     * Returns the name of a field in a language.
+     *
+     * @param field Field
+     * @param language Language, may be null
+     * @return Field name, unchanged for the other fields and the languages without a specific analyzer
+     */
+    static String getField(String field, String language) {
+        if (!LANGUAGE_FIELDS.contains(field) || !hasAnalyzer(language)) {
+            return field;
+        }
+        return field + "_" + language;
+    }
+}
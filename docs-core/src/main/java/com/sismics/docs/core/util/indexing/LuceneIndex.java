@@ -0,0 +1,249 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sismics.util.EnvironmentUtil;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.ControlledRealTimeReopenThread;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Lucene index with its writer and near-real-time searchers.
+ *
+ * @author bgamard
+ */
+class LuceneIndex {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(LuceneIndex.class);
+
+    /**
+     * Minimum staleness of the searcher in milliseconds, when someone is waiting for a change.
+     */
+    private static final long MIN_STALE_MILLIS = 25L;
+
+    /**
+     * Lucene directory.
+     */
+    private final Directory directory;
+
+    /**
+     * Path of the directory on the disk (null if stored in memory).
+     */
+    private final Path path;
+
+    /**
+     * Index writer.
+     */
+    private final IndexWriter indexWriter;
+
+    /**
+     * Near-real-time searcher manager, opened from the index writer.
+     */
+    private SearcherManager searcherManager;
+
+    /**
+     * Background thread refreshing the searcher manager.
+     */
+    private ControlledRealTimeReopenThread<IndexSearcher> reopenThread;
+
+    /**
+     * Scheduler of the periodic index commits (null if every write is committed).
+     */
+    private ScheduledExecutorService commitScheduler;
+
+    /**
+     * Number of uncommitted operations triggering an early commit.
+     */
+    private long commitMaxPending;
+
+    /**
+     * Sequence number of the last commit.
+     */
+    private final AtomicLong lastCommitSequenceNumber = new AtomicLong();
+
+    /**
+     * Open an index writer on a directory.
+     *
+     * @param directory Lucene directory
+     * @param path Path of the directory on the disk (null if stored in memory)
+     * @param config Index writer configuration
+     * @throws IOException e
+     */
+    LuceneIndex(Directory directory, Path path, IndexWriterConfig config) throws IOException {
+        this.directory = directory;
+        this.path = path;
+        this.indexWriter = new IndexWriter(directory, config);
+        lastCommitSequenceNumber.set(indexWriter.getMaxCompletedSequenceNumber());
+    }
+
+    /**
+     * Start serving searches from this index.
+     *
+     * @param refreshInterval Maximum delay in milliseconds before a change is visible
+     * @throws IOException e
+     */
+    void startSearching(long refreshInterval) throws IOException {
+        // Searchers are refreshed in the background, searches never reopen the index themselves
+        searcherManager = new SearcherManager(indexWriter, null);
+        reopenThread = new ControlledRealTimeReopenThread<>(indexWriter, searcherManager,
+                refreshInterval / 1000d, Math.min(refreshInterval, MIN_STALE_MILLIS) / 1000d);
+        reopenThread.setName("Lucene NRT reopen thread");
+        reopenThread.setDaemon(true);
+        reopenThread.start();
+    }
+
+    /**
+     * Start committing the writes periodically instead of after every operation.
+     * A commit syncs every new segment file to the disk.
+     *
+     * @param commitInterval Delay in milliseconds between two commits
+     * @param commitMaxPending Number of uncommitted operations triggering an early commit
+     */
+    void startCommitting(long commitInterval, long commitMaxPending) {
+        this.commitMaxPending = commitMaxPending;
+        commitScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lucene-commit-%d")
+                .setDaemon(true)
+                .build());
+        commitScheduler.scheduleWithFixedDelay(this::commit, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a searcher pinned on the current state of the index.
+     * It must be released after use.
+     *
+     * @return Index searcher
+     * @throws IOException e
+     */
+    IndexSearcher acquire() throws IOException {
+        return searcherManager.acquire();
+    }
+
+    /**
+     * Release a searcher obtained with acquire().
+     *
+     * @param searcher Index searcher
+     * @throws IOException e
+     */
+    void release(IndexSearcher searcher) throws IOException {
+        searcherManager.release(searcher);
+    }
+
+    /**
+     * Apply the commit policy after a write.
+     */
+    void afterWrite() {
+        if (commitScheduler == null || getPendingOperationCount() >= commitMaxPending) {
+            commit();
+        }
+
+        if (reopenThread != null && EnvironmentUtil.isUnitTest()) {
+            // Events are processed synchronously in unit tests, make the changes visible right away
+            try {
+                reopenThread.waitForGeneration(indexWriter.getMaxCompletedSequenceNumber());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Commit the pending operations to the disk.
+     */
+    void commit() {
+        try {
+            if (indexWriter.hasUncommittedChanges()) {
+                lastCommitSequenceNumber.set(indexWriter.commit());
+            }
+        } catch (Exception e) {
+            log.error("Cannot commit index writer", e);
+        }
+    }
+
+    /**
+     * Returns the number of operations not yet committed.
+     *
+     * @return Number of pending operations
+     */
+    long getPendingOperationCount() {
+        if (!indexWriter.hasUncommittedChanges()) {
+            return 0L;
+        }
+        return Math.max(indexWriter.getMaxCompletedSequenceNumber() - lastCommitSequenceNumber.get(), 0L);
+    }
+
+    /**
+     * Close the index.
+     *
+     * @param commit If true, commit the pending operations, otherwise discard them
+     */
+    void close(boolean commit) {
+        if (commitScheduler != null) {
+            commitScheduler.shutdown();
+            try {
+                commitScheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (commit) {
+            // Flush the pending operations before closing anything
+            commit();
+        }
+        if (reopenThread != null) {
+            reopenThread.close();
+        }
+        if (searcherManager != null) {
+            try {
+                searcherManager.close();
+            } catch (IOException e) {
+                log.error("Error closing the searcher manager", e);
+            }
+        }
+        try {
+            if (commit) {
+                indexWriter.close();
+            } else {
+                indexWriter.rollback();
+            }
+        } catch (IOException e) {
+            log.error("Error closing the index writer, index may be corrupt", e);
+        }
+        try {
+            directory.close();
+        } catch (IOException e) {
+            log.error("Error closing Lucene index", e);
+        }
+    }
+
+    /**
+     * Getter of indexWriter.
+     *
+     * @return indexWriter
+     */
+    IndexWriter getIndexWriter() {
+        return indexWriter;
+    }
+
+    /**
+     * Getter of path.
+     *
+     * @return path
+     */
+    Path getPath() {
+        return path;
+    }
+}
@@ -1,12 +1,17 @@
 package com.sismics.docs.core.util.indexing;
 
-import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileContentDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
@@ -16,39 +21,67 @@ import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.SecurityUtil;
+import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
+import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.ClasspathScanner;
+import com.sismics.util.EnvironmentUtil;
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.CheckIndex;
 import org.apache.lucene.index.ConcurrentMergeScheduler;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.MultiTerms;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.queryparser.simple.SimpleQueryParser;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
-import org.apache.lucene.search.highlight.Highlighter;
-import org.apache.lucene.search.highlight.QueryScorer;
-import org.apache.lucene.search.highlight.SimpleHTMLEncoder;
-import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
-import org.apache.lucene.search.spell.LuceneDictionary;
-import org.apache.lucene.search.suggest.Lookup;
-import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.search.uhighlight.DefaultPassageFormatter;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.FileSwitchDirectory;
+import org.apache.lucene.store.LockFactory;
+import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NativeFSLockFactory;
 import org.apache.lucene.store.NoLockFactory;
 import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,17 +89,36 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Timestamp;
+import java.text.BreakIterator;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Lucene indexing handler.
- * Documents and files are indexed in Lucene, but only used for fulltext search.
- * Other search criteria are still using the database.
+ * Documents are indexed in Lucene with their search criteria, files with their content.
+ * Searches are filtered, sorted and paginated in the index, the database only returns the current page.
  *
  * @author bgamard
  */
@@ -78,19 +130,149 @@ public class LuceneIndexingHandler implements IndexingHandler {
     private static final Logger log = LoggerFactory.getLogger(LuceneIndexingHandler.class);
 
     /**
-     * Lucene directory.
+     * Default maximum staleness of the searcher in milliseconds.
      */
-    private Directory directory;
+    private static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 1000L;
 
     /**
-     * Directory reader.
+     * Default delay in milliseconds between two index commits.
      */
-    private DirectoryReader directoryReader;
+    private static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 5000L;
 
     /**
-     * Index writer.
+     * Default number of uncommitted operations triggering an early commit.
      */
-    private IndexWriter indexWriter;
+    private static final long DEFAULT_COMMIT_MAX_PENDING = 1000L;
+
+    /**
+     * Indexing buffer size while rebuilding the index.
+     */
+    private static final double REBUILD_RAM_BUFFER_MB = 64;
+
+    /**
+     * Number of locks ordering the live writes and the rebuild writes of the same IDs.
+     */
+    private static final int REBUILD_LOCK_STRIPES = 256;
+
+    /**
+     * Prefix of the index directories inside the Lucene directory.
+     */
+    private static final String INDEX_DIRECTORY_PREFIX = "index-";
+
+    /**
+     * Index files read randomly, memory mapped in the hybrid storage.
+     * Term dictionaries, postings, norms, doc values, points and compound files.
+     */
+    private static final Set<String> MMAP_EXTENSIONS = Sets.newHashSet(
+            "tim", "tip", "tmd", "doc", "pos", "pay", "nvd", "nvm", "dvd", "dvm", "kdd", "kdi", "kdm", "cfs");
+
+    /**
+     * Key of the index version in the commit data.
+     */
+    private static final String INDEX_VERSION_KEY = "version";
+
+    /**
+     * Version of the indexed fields, an index with another version is rebuilt.
+     */
+    private static final String INDEX_VERSION = "4";
+
+    /**
+     * Number of documents reindexed at once when an ACL changes.
+     */
+    private static final int REINDEX_BATCH_SIZE = 100;
+
+    /**
+     * Default delay in milliseconds between two refreshes of the search suggestions.
+     */
+    private static final long DEFAULT_SUGGESTER_REFRESH_INTERVAL_MILLIS = 60000L;
+
+    /**
+     * Number of suggestions returned with the search results.
+     */
+    private static final int SEARCH_SUGGESTION_COUNT = 10;
+
+    /**
+     * Maximum number of searches filling a page with readable documents, when the index grants outdated permissions.
+     */
+    private static final int PAGE_FILL_MAX_SEARCHES = 10;
+
+    /**
+     * Number of candidate suggestions looked up for each suggestion returned, most are filtered out by the permissions.
+     */
+    private static final int SUGGESTION_CANDIDATE_FACTOR = 5;
+
+    /**
+     * Fulltext searchable fields of the documents metadata.
+     */
+    private static final List<String> DOCUMENT_TEXT_FIELDS = Lists.newArrayList("title", "description", "subject",
+            "identifier", "publisher", "format", "source", "type", "coverage", "rights");
+
+    /**
+     * Default maximum number of characters of a file content highlighted.
+     */
+    private static final int DEFAULT_HIGHLIGHT_MAX_LENGTH = 50 * 1024;
+
+    /**
+     * Target length of a highlighted passage.
+     */
+    private static final int HIGHLIGHT_PASSAGE_LENGTH = 100;
+
+    /**
+     * Stored file content, with the offsets in the postings for the highlighting.
+     */
+    private static final FieldType CONTENT_FIELD_TYPE = new FieldType(TextField.TYPE_STORED);
+
+    static {
+        CONTENT_FIELD_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        CONTENT_FIELD_TYPE.freeze();
+    }
+
+    /**
+     * Lucene storage type.
+     * RAM, or on the disk: FILE (best directory for the platform), MMAP, NIO or HYBRID (MMAP for the index, NIO for the stored fields).
+     */
+    private String luceneStorage;
+
+    /**
+     * Index serving the searches.
+     */
+    private volatile LuceneIndex index;
+
+    /**
+     * Index being rebuilt, null if no rebuild is running.
+     */
+    private volatile LuceneIndex rebuildIndex;
+
+    /**
+     * Lock protecting the swap of the serving index against writes and searches.
+     */
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    /**
+     * IDs written live to the index being rebuilt.
+     * The rebuild loaded them earlier, its state is older and must not overwrite them.
+     */
+    private final Set<String> rebuildLiveIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Locks ordering the live writes and the rebuild writes of an ID in the index being rebuilt.
+     */
+    private final Striped<Lock> rebuildIdLocks = Striped.lock(REBUILD_LOCK_STRIPES);
+
+    /**
+     * Search suggestions, served from memory.
+     */
+    private final LuceneSuggester suggester = new LuceneSuggester();
+
+    /**
+     * Scheduler of the search suggestions refresh.
+     */
+    private ScheduledExecutorService suggesterScheduler;
+
+    /**
+     * Maximum number of characters of a file content highlighted.
+     */
+    private int highlightMaxLength = DEFAULT_HIGHLIGHT_MAX_LENGTH;
 
     @Override
     public boolean accept() {
@@ -102,6 +284,9 @@ public class LuceneIndexingHandler implements IndexingHandler {
     public void startUp() throws Exception {
         try {
             initLucene();
+        } catch (LockObtainFailedException e) {
+            // Another process is using the index, never delete it
+            throw new Exception("The Lucene index is locked by another process", e);
         } catch (Exception e) {
             // An error occurred initializing Lucene, the index is out of date or broken, delete everything
             log.info("Unable to initialize Lucene, cleaning up the index: " + e.getMessage());
@@ -116,28 +301,45 @@ public class LuceneIndexingHandler implements IndexingHandler {
             RebuildIndexAsyncEvent rebuildIndexAsyncEvent = new RebuildIndexAsyncEvent();
             AppContext.getInstance().getAsyncEventBus().post(rebuildIndexAsyncEvent);
         }
+
+        highlightMaxLength = (int) Math.min(Math.max(EnvironmentUtil.getEnvLong(Constants.LUCENE_HIGHLIGHT_MAX_LENGTH_ENV, DEFAULT_HIGHLIGHT_MAX_LENGTH), 1L), Integer.MAX_VALUE);
+
+        // Build the search suggestions in the background, then refresh them if the index has changed
+        long suggesterRefreshInterval = Math.max(EnvironmentUtil.getEnvLong(Constants.LUCENE_SUGGESTER_REFRESH_INTERVAL_ENV, DEFAULT_SUGGESTER_REFRESH_INTERVAL_MILLIS), 1L);
+        suggesterScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("lucene-suggester-%d")
+                .setDaemon(true)
+                .build());
+        suggesterScheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refreshSuggester();
+            } catch (Exception e) {
+                log.error("Error building the search suggestions", e);
+            }
+        }, 0, suggesterRefreshInterval, TimeUnit.MILLISECONDS);
+        log.info("Search suggestions refreshed every {}ms", suggesterRefreshInterval);
     }
 
     private void initLucene() throws Exception {
         ConfigDao configDao = new ConfigDao();
         Config luceneStorageConfig = configDao.getById(ConfigType.LUCENE_DIRECTORY_STORAGE);
-        String luceneStorage = luceneStorageConfig == null ? null : luceneStorageConfig.getValue();
+        luceneStorage = luceneStorageConfig == null ? null : luceneStorageConfig.getValue();
 
-        // RAM directory storage by default
-        if (luceneStorage == null || luceneStorage.equals("RAM")) {
-            directory = new RAMDirectory();
-            log.info("Using RAM Lucene storage");
-        } else if (luceneStorage.equals("FILE")) {
+        // Find the current index, a rebuild may have left newer or older directories around
+        Path indexPath = null;
+        if (isFileStorage()) {
             Path luceneDirectory = DirectoryUtil.getLuceneDirectory();
-            log.info("Using file Lucene storage: {}", luceneDirectory);
-            directory = new NIOFSDirectory(luceneDirectory, NoLockFactory.INSTANCE);
+            try (Directory directory = FSDirectory.open(luceneDirectory, NoLockFactory.INSTANCE)) {
+                if (DirectoryReader.indexExists(directory)) {
+                    throw new Exception("Index layout is outdated");
+                }
+            }
+            indexPath = findIndexPath(luceneDirectory);
+            log.info("Using {} Lucene storage: {}", luceneStorage, indexPath);
+        } else {
+            log.info("Using RAM Lucene storage");
         }
-
-        // Create an index writer
-        IndexWriterConfig config = new IndexWriterConfig(new StandardAnalyzer());
-        config.setCommitOnClose(true);
-        config.setMergeScheduler(new ConcurrentMergeScheduler());
-        indexWriter = new IndexWriter(directory, config);
+        Directory directory = createDirectory(indexPath);
 
         // Check index version and rebuild it if necessary
         if (DirectoryReader.indexExists(directory)) {
@@ -148,222 +350,808 @@ public class LuceneIndexingHandler implements IndexingHandler {
                     throw new Exception("Index is dirty");
                 }
             }
+            String version = SegmentInfos.readLatestCommit(directory).getUserData().get(INDEX_VERSION_KEY);
+            if (!INDEX_VERSION.equals(version)) {
+                throw new Exception("Index version is outdated");
+            }
+        }
+
+        index = openIndex(directory, indexPath, createIndexWriterConfig());
+        startServing(index);
+    }
+
+    /**
+     * Open an index, its commits are tagged with the current index version.
+     *
+     * @param directory Lucene directory
+     * @param indexPath Index path, null if stored in memory
+     * @param config Index writer configuration
+     * @return Lucene index
+     * @throws IOException e
+     */
+    private LuceneIndex openIndex(Directory directory, Path indexPath, IndexWriterConfig config) throws IOException {
+        LuceneIndex luceneIndex = new LuceneIndex(directory, indexPath, config);
+        luceneIndex.getIndexWriter().setLiveCommitData(Collections.singletonMap(INDEX_VERSION_KEY, INDEX_VERSION).entrySet());
+        return luceneIndex;
+    }
+
+    /**
+     * Returns true if the index is stored on the disk.
+     *
+     * @return True if stored on the disk
+     */
+    private boolean isFileStorage() {
+        return luceneStorage != null && !"RAM".equals(luceneStorage);
+    }
+
+    /**
+     * Returns the path of the most recent complete index, and delete all the others.
+     *
+     * @param luceneDirectory Lucene directory
+     * @return Path of the index (a new path if there is no index yet)
+     * @throws IOException e
+     */
+    private Path findIndexPath(Path luceneDirectory) throws IOException {
+        List<Path> indexPathList;
+        try (Stream<Path> stream = Files.list(luceneDirectory)) {
+            indexPathList = stream
+                    .filter(path -> path.getFileName().toString().startsWith(INDEX_DIRECTORY_PREFIX))
+                    .sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList());
+        }
+
+        Path indexPath = null;
+        for (Path path : indexPathList) {
+            try (Directory directory = FSDirectory.open(path, NativeFSLockFactory.INSTANCE)) {
+                if (indexPath == null && DirectoryReader.indexExists(directory)) {
+                    indexPath = path;
+                    continue;
+                }
+
+                // Fails if another process is writing in this directory
+                directory.obtainLock(IndexWriter.WRITE_LOCK_NAME).close();
+            }
+            deleteIndexDirectory(path);
+        }
+
+        return indexPath == null ? newIndexPath() : indexPath;
+    }
+
+    /**
+     * Returns a new unique index path.
+     *
+     * @return Index path
+     */
+    private Path newIndexPath() {
+        return DirectoryUtil.getLuceneDirectory().resolve(INDEX_DIRECTORY_PREFIX + System.currentTimeMillis());
+    }
+
+    /**
+     * Delete an index directory from the disk.
+     *
+     * @param path Index path
+     */
+    private void deleteIndexDirectory(Path path) {
+        try (Stream<Path> stream = Files.walk(path)) {
+            stream.sorted(Comparator.reverseOrder())
+                    .map(Path::toFile)
+                    .forEach(java.io.File::delete);
+        } catch (IOException e) {
+            log.error("Error deleting the index directory: " + path, e);
+        }
+    }
+
+    /**
+     * Create a Lucene directory.
+     *
+     * @param indexPath Index path, null to store the index in memory
+     * @return Lucene directory
+     * @throws IOException e
+     */
+    private Directory createDirectory(Path indexPath) throws IOException {
+        if (indexPath == null) {
+            return new RAMDirectory();
+        }
+
+        // The index is locked at the OS level, another process cannot open a writer on it
+        LockFactory lockFactory = NativeFSLockFactory.INSTANCE;
+        switch (luceneStorage) {
+            case "MMAP":
+                return createMMapDirectory(indexPath, lockFactory);
+            case "NIO":
+                return new NIOFSDirectory(indexPath, lockFactory);
+            case "HYBRID":
+                // Both directories share the same path, files are dispatched by extension
+                return new FileSwitchDirectory(MMAP_EXTENSIONS, createMMapDirectory(indexPath, lockFactory),
+                        new NIOFSDirectory(indexPath, lockFactory), true);
+            default:
+                return FSDirectory.open(indexPath, lockFactory);
+        }
+    }
+
+    /**
+     * Create a memory mapped directory.
+     *
+     * @param indexPath Index path
+     * @param lockFactory Lock factory
+     * @return Lucene directory
+     * @throws IOException e
+     */
+    private Directory createMMapDirectory(Path indexPath, LockFactory lockFactory) throws IOException {
+        if (!MMapDirectory.UNMAP_SUPPORTED) {
+            log.warn("Memory mapped files cannot be unmapped, closed index files will use memory until garbage collected: {}",
+                    MMapDirectory.UNMAP_NOT_SUPPORTED_REASON);
+        }
+        return new MMapDirectory(indexPath, lockFactory);
+    }
+
+    /**
+     * Create an index writer configuration.
+     *
+     * @return Index writer configuration
+     */
+    private IndexWriterConfig createIndexWriterConfig() {
+        IndexWriterConfig config = new IndexWriterConfig(LanguageAnalyzers.getIndexAnalyzer());
+        config.setCommitOnClose(true);
+        config.setMergeScheduler(new ConcurrentMergeScheduler());
+        return config;
+    }
+
+    /**
+     * Start serving searches and committing writes from an index.
+     *
+     * @param luceneIndex Lucene index
+     * @throws IOException e
+     */
+    private void startServing(LuceneIndex luceneIndex) throws IOException {
+        long refreshInterval = Math.max(EnvironmentUtil.getEnvLong(Constants.LUCENE_REFRESH_INTERVAL_ENV, DEFAULT_REFRESH_INTERVAL_MILLIS), 1L);
+        luceneIndex.startSearching(refreshInterval);
+        log.info("Lucene searcher refreshed every {}ms", refreshInterval);
+
+        long commitInterval = EnvironmentUtil.getEnvLong(Constants.LUCENE_COMMIT_INTERVAL_ENV, DEFAULT_COMMIT_INTERVAL_MILLIS);
+        long commitMaxPending = EnvironmentUtil.getEnvLong(Constants.LUCENE_COMMIT_MAX_PENDING_ENV, DEFAULT_COMMIT_MAX_PENDING);
+        if (commitInterval > 0) {
+            luceneIndex.startCommitting(commitInterval, commitMaxPending);
+            log.info("Lucene index committed every {}ms or {} operations", commitInterval, commitMaxPending);
+        } else {
+            log.info("Lucene index committed after every operation");
         }
     }
 
     @Override
     public void shutDown() {
-        if (directoryReader != null) {
-            try {
-                directoryReader.close();
-            } catch (IOException e) {
-                log.error("Error closing the index reader", e);
-            }
+        if (suggesterScheduler != null) {
+            suggesterScheduler.shutdownNow();
         }
-        if (indexWriter != null) {
-            try {
-                indexWriter.close();
-            } catch (IOException e) {
-                log.error("Error closing the index writer, index may be corrupt", e);
-            }
+        finishRebuild(false);
+        if (index != null) {
+            index.close(true);
         }
-        if (directory != null) {
-            try {
-                directory.close();
-            } catch (IOException e) {
-                log.error("Error closing Lucene index", e);
+    }
+
+    @Override
+    public void startRebuild() throws Exception {
+        swapLock.writeLock().lock();
+        try {
+            if (rebuildIndex != null) {
+                throw new IllegalStateException("The index is already being rebuilt");
             }
+
+            // Build a new index next to the current one
+            Path indexPath = isFileStorage() ? newIndexPath() : null;
+            IndexWriterConfig config = createIndexWriterConfig();
+            config.setRAMBufferSizeMB(REBUILD_RAM_BUFFER_MB);
+            rebuildIndex = openIndex(createDirectory(indexPath), indexPath, config);
+            rebuildLiveIdSet.clear();
+            log.info("Rebuilding the index in: {}", indexPath == null ? "RAM" : indexPath);
+        } finally {
+            swapLock.writeLock().unlock();
         }
     }
 
     @Override
-    public void clearIndex() {
-        handle(IndexWriter::deleteAll);
+    public void rebuildDocuments(List<Document> documentList) throws Exception {
+        Map<String, DocumentSearchFields> fieldsMap = loadSearchFields(documentList);
+        Map<String, org.apache.lucene.document.Document> luceneDocumentMap = new LinkedHashMap<>();
+        for (Document document : documentList) {
+            luceneDocumentMap.put(document.getId(), getDocumentFromDocument(document, fieldsMap.get(document.getId())));
+        }
+        rebuildWrite(luceneDocumentMap);
     }
 
     @Override
-    public void createDocuments(List<Document> documentList) {
-        handle(indexWriter -> {
-            for (Document document : documentList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-                indexWriter.addDocument(luceneDocument);
+    public void rebuildFiles(List<File> fileList) throws Exception {
+        Map<String, String> languageMap = loadFileLanguages(fileList);
+        Map<String, String> contentMap = loadFileContents(fileList);
+        Map<String, org.apache.lucene.document.Document> luceneDocumentMap = new LinkedHashMap<>();
+        for (File file : fileList) {
+            luceneDocumentMap.put(file.getId(), getDocumentFromFile(file, languageMap.get(file.getId()), contentMap.get(file.getId())));
+        }
+        rebuildWrite(luceneDocumentMap);
+    }
+
+    /**
+     * Write a page loaded by the rebuild to the index being rebuilt.
+     * The rebuild cannot be finished or discarded while the page is written.
+     *
+     * @param luceneDocumentMap Lucene documents by document or file ID
+     * @throws IOException e
+     * @throws IllegalStateException If the index is not being rebuilt anymore
+     */
+    private void rebuildWrite(Map<String, org.apache.lucene.document.Document> luceneDocumentMap) throws IOException {
+        swapLock.readLock().lock();
+        try {
+            LuceneIndex luceneIndex = rebuildIndex;
+            if (luceneIndex == null) {
+                throw new IllegalStateException("The index is not being rebuilt");
             }
-        });
+            IndexWriter indexWriter = luceneIndex.getIndexWriter();
+            for (Map.Entry<String, org.apache.lucene.document.Document> entry : luceneDocumentMap.entrySet()) {
+                rebuildWrite(indexWriter, entry.getKey(), entry.getValue());
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write a document loaded by the rebuild to the index being rebuilt.
+     * A live write of the same ID since the rebuild started is more recent, the document is skipped.
+     *
+     * @param indexWriter Index writer of the index being rebuilt
+     * @param id Document or file ID
+     * @param luceneDocument Lucene document
+     * @throws IOException e
+     */
+    private void rebuildWrite(IndexWriter indexWriter, String id, org.apache.lucene.document.Document luceneDocument) throws IOException {
+        Lock lock = rebuildIdLocks.get(id);
+        lock.lock();
+        try {
+            if (!rebuildLiveIdSet.contains(id)) {
+                indexWriter.updateDocument(new Term("id", id), luceneDocument);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
-    public void createFiles(List<File> fileList) {
-        handle(indexWriter -> {
-            for (File file : fileList) {
-                org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-                indexWriter.addDocument(luceneDocument);
+    public void finishRebuild(boolean success) {
+        LuceneIndex newIndex = rebuildIndex;
+        if (newIndex == null) {
+            return;
+        }
+
+        if (success) {
+            try {
+                newIndex.commit();
+                startServing(newIndex);
+            } catch (Exception e) {
+                log.error("Error opening the rebuilt index", e);
+                success = false;
             }
-        });
+        }
+
+        // Swap the indexes, writes and searches now go to the new one
+        LuceneIndex oldIndex;
+        swapLock.writeLock().lock();
+        try {
+            if (rebuildIndex != newIndex) {
+                // Already finished by another thread
+                return;
+            }
+            oldIndex = success ? index : newIndex;
+            if (success) {
+                index = newIndex;
+            }
+            rebuildIndex = null;
+            rebuildLiveIdSet.clear();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        // Pending searches keep their own reference on the old index files
+        oldIndex.close(false);
+        if (oldIndex.getPath() != null) {
+            deleteIndexDirectory(oldIndex.getPath());
+        }
+        log.info(success ? "Rebuilt index now serving searches" : "Index rebuild discarded");
     }
 
     @Override
     public void createDocument(final Document document) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-            indexWriter.addDocument(luceneDocument);
-        });
+        updateDocuments(Collections.singletonList(document));
     }
 
     @Override
     public void createFile(final File file) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
-            indexWriter.addDocument(luceneDocument);
-        });
+        updateFile(file);
     }
 
     @Override
     public void updateFile(final File file) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file);
+        Map<String, String> languageMap;
+        Map<String, String> contentMap;
+        try {
+            languageMap = loadFileLanguages(Collections.singletonList(file));
+            contentMap = loadFileContents(Collections.singletonList(file));
+        } catch (Exception e) {
+            log.error("Error loading the file language and content", e);
+            return;
+        }
+
+        handle(Collections.singletonList(file.getId()), indexWriter -> {
+            org.apache.lucene.document.Document luceneDocument = getDocumentFromFile(file, languageMap.get(file.getId()), contentMap.get(file.getId()));
             indexWriter.updateDocument(new Term("id", file.getId()), luceneDocument);
         });
     }
 
     @Override
     public void updateDocument(final Document document) {
-        handle(indexWriter -> {
-            org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document);
-            indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
+        updateDocuments(Collections.singletonList(document));
+    }
+
+    /**
+     * Index documents with their search fields.
+     *
+     * @param documentList Documents
+     */
+    private void updateDocuments(List<Document> documentList) {
+        Map<String, DocumentSearchFields> fieldsMap;
+        try {
+            fieldsMap = loadSearchFields(documentList);
+        } catch (Exception e) {
+            log.error("Error loading the search fields", e);
+            return;
+        }
+
+        List<String> documentIdList = documentList.stream()
+                .map(Document::getId)
+                .collect(Collectors.toList());
+        handle(documentIdList, indexWriter -> {
+            for (Document document : documentList) {
+                org.apache.lucene.document.Document luceneDocument = getDocumentFromDocument(document, fieldsMap.get(document.getId()));
+                indexWriter.updateDocument(new Term("id", document.getId()), luceneDocument);
+            }
+        });
+    }
+
+    /**
+     * Load the search fields of documents, in a new transaction if needed.
+     *
+     * @param documentList Documents
+     * @return Search fields by document ID
+     * @throws Exception e
+     */
+    private Map<String, DocumentSearchFields> loadSearchFields(List<Document> documentList) throws Exception {
+        List<String> documentIdList = documentList.stream()
+                .map(Document::getId)
+                .collect(Collectors.toList());
+        Map<String, DocumentSearchFields> fieldsMap = new HashMap<>();
+        AtomicBoolean loaded = new AtomicBoolean();
+        TransactionUtil.handle(() -> {
+            fieldsMap.putAll(DocumentSearchFields.load(documentIdList));
+            loaded.set(true);
+        });
+        if (!loaded.get()) {
+            throw new Exception("Error loading the search fields");
+        }
+        return fieldsMap;
+    }
+
+    /**
+     * Load the language of files from their document, in a new transaction if needed.
+     *
+     * @param fileList Files
+     * @return Language by file ID, files without document are absent
+     * @throws Exception e
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, String> loadFileLanguages(List<File> fileList) throws Exception {
+        Set<String> documentIdSet = fileList.stream()
+                .map(File::getDocumentId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, String> documentLanguageMap = new HashMap<>();
+        if (!documentIdSet.isEmpty()) {
+            Map<String, Object> parameterMap = new HashMap<>();
+            parameterMap.put("documentIdList", documentIdSet);
+            AtomicBoolean loaded = new AtomicBoolean();
+            TransactionUtil.handle(() -> {
+                List<Object[]> resultList = QueryUtil.getNativeQuery(new QueryParam("select d.DOC_ID_C, d.DOC_LANGUAGE_C from T_DOCUMENT d " +
+                        " where d.DOC_ID_C in (:documentIdList)", parameterMap)).getResultList();
+                for (Object[] o : resultList) {
+                    documentLanguageMap.put((String) o[0], (String) o[1]);
+                }
+                loaded.set(true);
+            });
+            if (!loaded.get()) {
+                throw new Exception("Error loading the file languages");
+            }
+        }
+
+        Map<String, String> languageMap = new HashMap<>();
+        for (File file : fileList) {
+            String language = documentLanguageMap.get(file.getDocumentId());
+            if (language != null) {
+                languageMap.put(file.getId(), language);
+            }
+        }
+        return languageMap;
+    }
+
+    /**
+     * Load the content of files, in a new transaction if needed.
+     *
+     * @param fileList Files
+     * @return Content by file ID, files without content are absent
+     * @throws Exception e
+     */
+    private Map<String, String> loadFileContents(List<File> fileList) throws Exception {
+        List<String> fileIdList = fileList.stream()
+                .map(File::getId)
+                .collect(Collectors.toList());
+        Map<String, String> contentMap = new HashMap<>();
+        AtomicBoolean loaded = new AtomicBoolean();
+        TransactionUtil.handle(() -> {
+            contentMap.putAll(new FileContentDao().getContents(fileIdList));
+            loaded.set(true);
         });
+        if (!loaded.get()) {
+            throw new Exception("Error loading the file contents");
+        }
+        return contentMap;
     }
 
     @Override
     public void deleteDocument(final String id) {
-        handle(indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
+        handle(Collections.singletonList(id), indexWriter -> indexWriter.deleteDocuments(new Term("id", id)));
     }
 
     @Override
     public void createAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        updateAclSource(sourceId, perm);
     }
 
     @Override
     public void deleteAcl(String sourceId, PermType perm, String targetId) {
-        // Lucene does not index ACLs
+        updateAclSource(sourceId, perm);
+    }
+
+    /**
+     * Reindex the documents protected by an ACL source.
+     *
+     * @param sourceId ACL source ID (a document or a tag)
+     * @param perm Permission type
+     */
+    private void updateAclSource(String sourceId, PermType perm) {
+        if (perm != PermType.READ) {
+            // Only the read permission is indexed
+            return;
+        }
+
+        List<Document> documentList = new DocumentDao().findByAclSourceId(sourceId);
+        for (List<Document> partition : Lists.partition(documentList, REINDEX_BATCH_SIZE)) {
+            updateDocuments(partition);
+        }
     }
 
     @Override
     public void findByCriteria(PaginatedList<DocumentDto> paginatedList, List<String> suggestionList, DocumentCriteria criteria, SortCriteria sortCriteria) throws Exception {
-        Map<String, Object> parameterMap = new HashMap<>();
-        List<String> criteriaList = new ArrayList<>();
-        Map<String, String> documentSearchMap = Maps.newHashMap();
+        boolean textSearch = !Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch());
+        if (textSearch) {
+            suggestionList.addAll(suggest(criteria.getFullSearch(), criteria.getTargetIdList(), SEARCH_SUGGESTION_COUNT));
+        }
 
-        StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
-        sb.append(" s.count c5, ");
-        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
-        sb.append(" from T_DOCUMENT d ");
-        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
-                "   FROM T_SHARE s, T_ACL ac " +
-                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
-                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
-        sb.append(" left join (select rs.*, rs3.idDocument " +
-                "from T_ROUTE_STEP rs " +
-                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
-                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        // Filter, sort and paginate in the index
+        List<String> documentIdList = new ArrayList<>();
+        Map<String, DocumentDto> documentDtoMap = Maps.newHashMap();
+        Map<String, String> highlightMap = Maps.newHashMap();
+        handleSearch(searcher -> {
+            BooleanQuery.Builder builder = new BooleanQuery.Builder()
+                    .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER);
+            addCriteria(builder, criteria);
+            Query fileTextQuery = null;
+            Set<String> languageSet = Collections.emptySet();
+            if (textSearch) {
+                // Full text queries on documents metadata and on files, in each indexed language
+                languageSet = criteria.getLanguage() == null ?
+                        findIndexedLanguages(searcher.getIndexReader()) : Collections.singleton(criteria.getLanguage());
+                Query documentTextQuery = buildDocumentTextQuery(criteria.getSimpleSearch(), criteria.getFullSearch(), languageSet);
+                fileTextQuery = buildFileTextQuery(criteria.getSimpleSearch(), criteria.getFullSearch(), languageSet);
 
-        // Add search criterias
-        if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
-            // Read permission is enough for searching
-            sb.append(" left join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = d.DOC_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
-            sb.append(" left join T_DOCUMENT_TAG dta on dta.DOT_IDDOCUMENT_C = d.DOC_ID_C and dta.DOT_DELETEDATE_D is null ");
-            sb.append(" left join T_ACL a2 on a2.ACL_TARGETID_C in (:targetIdList) and a2.ACL_SOURCEID_C = dta.DOT_IDTAG_C and a2.ACL_PERM_C = 'READ' and a2.ACL_DELETEDATE_D is null ");
-            criteriaList.add("(a.ACL_ID_C is not null or a2.ACL_ID_C is not null)");
+                // A document matches on its metadata or on one of its files
+                builder.add(new BooleanQuery.Builder()
+                        .add(documentTextQuery, BooleanClause.Occur.SHOULD)
+                        .add(new TermInSetQuery("id", findFileDocumentIds(searcher, fileTextQuery)), BooleanClause.Occur.SHOULD)
+                        .build(), BooleanClause.Occur.MUST);
+            }
+
+            if (paginatedList.isCursor()) {
+                searchAfter(searcher, builder.build(), paginatedList, sortCriteria, documentIdList);
+                documentDtoMap.putAll(findDocumentDtos(documentIdList, criteria.getTargetIdList()));
+            } else {
+                searchPage(searcher, builder.build(), paginatedList, sortCriteria, criteria.getTargetIdList(), documentIdList, documentDtoMap);
+            }
+
+            if (fileTextQuery != null) {
+                highlightMap.putAll(highlight(searcher, fileTextQuery, documentIdList, languageSet));
+            }
+            return null;
+        });
+
+        // Assemble results from the database, in the index order
+        List<DocumentDto> documentDtoList = new ArrayList<>();
+        for (String documentId : documentIdList) {
+            DocumentDto documentDto = documentDtoMap.get(documentId);
+            if (documentDto != null) {
+                documentDto.setHighlight(highlightMap.get(documentId));
+                documentDtoList.add(documentDto);
+            }
+        }
+
+        paginatedList.setResultList(documentDtoList);
+    }
+
+    @Override
+    public List<Class<?>> getCursorKeyTypes(SortCriteria sortCriteria) {
+        // The string values are sorted by their bytes
+        List<Class<?>> keyTypeList = new ArrayList<>();
+        for (SortField sortField : buildSort(sortCriteria).getSort()) {
+            keyTypeList.add(sortField.getType() == SortField.Type.LONG ? Long.class : byte[].class);
         }
-        parameterMap.put("targetIdList", criteria.getTargetIdList());
-        if (!Strings.isNullOrEmpty(criteria.getSimpleSearch()) || !Strings.isNullOrEmpty(criteria.getFullSearch())) {
-            documentSearchMap = search(criteria.getSimpleSearch(), criteria.getFullSearch());
-            if (documentSearchMap.isEmpty()) {
-                // If the search doesn't find any document, the request should return nothing
-                documentSearchMap.put(UUID.randomUUID().toString(), null);
+        return keyTypeList;
+    }
+
+    /**
+     * Search the page at an offset.
+     * The permissions in the index are updated asynchronously, the documents not readable anymore are dropped
+     * and the page is filled with the next hits. The results count doesn't include the dropped hits.
+     *
+     * @param searcher Searcher
+     * @param query Query
+     * @param paginatedList Paginated list, the results count is set by side effects
+     * @param sortCriteria Sort criteria
+     * @param targetIdList Targets of the current user
+     * @param documentIdList Document IDs of the page (updated by side effects)
+     * @param documentDtoMap Documents of the page by ID (updated by side effects)
+     * @throws IOException e
+     */
+    private void searchPage(IndexSearcher searcher, Query query, PaginatedList<DocumentDto> paginatedList, SortCriteria sortCriteria,
+                            List<String> targetIdList, List<String> documentIdList, Map<String, DocumentDto> documentDtoMap) throws IOException {
+        int limit = paginatedList.getLimit();
+        TopFieldCollector collector = TopFieldCollector.create(buildSort(sortCriteria),
+                Math.max(paginatedList.getOffset() + limit, 1), Integer.MAX_VALUE);
+        searcher.search(query, collector);
+        int totalHits = collector.getTotalHits();
+        ScoreDoc[] scoreDocs = collector.topDocs(paginatedList.getOffset(), limit).scoreDocs;
+
+        int droppedCount = 0;
+        for (int searchCount = 1; scoreDocs.length > 0; searchCount++) {
+            List<String> hitIdList = new ArrayList<>();
+            for (ScoreDoc scoreDoc : scoreDocs) {
+                hitIdList.add(searcher.doc(scoreDoc.doc, Collections.singleton("id")).get("id"));
+            }
+            Map<String, DocumentDto> hitDtoMap = findDocumentDtos(hitIdList, targetIdList);
+            for (String documentId : hitIdList) {
+                DocumentDto documentDto = hitDtoMap.get(documentId);
+                if (documentDto == null) {
+                    droppedCount++;
+                } else if (documentIdList.size() < limit) {
+                    documentIdList.add(documentId);
+                    documentDtoMap.put(documentId, documentDto);
+                }
+            }
+            if (documentIdList.size() >= limit || searchCount >= PAGE_FILL_MAX_SEARCHES) {
+                break;
             }
-            criteriaList.add("d.DOC_ID_C in :documentIdList");
-            parameterMap.put("documentIdList", documentSearchMap.keySet());
 
-            suggestSearchTerms(criteria.getFullSearch(), suggestionList);
+            // Fill the page with the hits following the last one
+            collector = TopFieldCollector.create(buildSort(sortCriteria), limit,
+                    (FieldDoc) scoreDocs[scoreDocs.length - 1], Integer.MAX_VALUE);
+            searcher.search(query, collector);
+            scoreDocs = collector.topDocs().scoreDocs;
         }
-        if (criteria.getCreateDateMin() != null) {
-            criteriaList.add("d.DOC_CREATEDATE_D >= :createDateMin");
-            parameterMap.put("createDateMin", criteria.getCreateDateMin());
+        paginatedList.setResultCount(totalHits - droppedCount);
+    }
+
+    /**
+     * Search the page following the sort key of a continuation token.
+     * Only the hits of the page are collected, whatever the position of the page.
+     *
+     * @param searcher Searcher
+     * @param query Query
+     * @param paginatedList Paginated list, the results count and the next continuation token are set by side effects
+     * @param sortCriteria Sort criteria
+     * @param documentIdList Document IDs of the page (updated by side effects)
+     * @throws IOException e
+     */
+    private void searchAfter(IndexSearcher searcher, Query query, PaginatedList<DocumentDto> paginatedList,
+                             SortCriteria sortCriteria, List<String> documentIdList) throws IOException {
+        FieldDoc after = null;
+        List<Object> keyList = paginatedList.getCursorKeyList();
+        if (!keyList.isEmpty()) {
+            Object[] fields = new Object[keyList.size()];
+            for (int i = 0; i < fields.length; i++) {
+                Object value = keyList.get(i);
+                fields[i] = value instanceof byte[] ? new BytesRef((byte[]) value) : value;
+            }
+            // The sort ends with the ID, no other document has the same sort values
+            after = new FieldDoc(Integer.MAX_VALUE, Float.NaN, fields);
         }
-        if (criteria.getCreateDateMax() != null) {
-            criteriaList.add("d.DOC_CREATEDATE_D <= :createDateMax");
-            parameterMap.put("createDateMax", criteria.getCreateDateMax());
+
+        // One more hit tells if there is a next page
+        int hitCount = paginatedList.getLimit() + 1;
+        TopFieldCollector collector = TopFieldCollector.create(buildSort(sortCriteria), hitCount, after,
+                paginatedList.isCountTotal() ? Integer.MAX_VALUE : hitCount);
+        searcher.search(query, collector);
+        TopDocs topDocs = collector.topDocs();
+        paginatedList.setResultCount((int) topDocs.totalHits.value);
+        paginatedList.setResultCountExact(topDocs.totalHits.relation == TotalHits.Relation.EQUAL_TO);
+
+        ScoreDoc[] scoreDocs = topDocs.scoreDocs;
+        for (int i = 0; i < Math.min(scoreDocs.length, paginatedList.getLimit()); i++) {
+            documentIdList.add(searcher.doc(scoreDocs[i].doc, Collections.singleton("id")).get("id"));
         }
-        if (criteria.getUpdateDateMin() != null) {
-            criteriaList.add("d.DOC_UPDATEDATE_D >= :updateDateMin");
-            parameterMap.put("updateDateMin", criteria.getUpdateDateMin());
+        if (scoreDocs.length > paginatedList.getLimit()) {
+            List<Object> nextKeyList = new ArrayList<>();
+            for (Object value : ((FieldDoc) scoreDocs[paginatedList.getLimit() - 1]).fields) {
+                nextKeyList.add(value instanceof BytesRef ? BytesRef.deepCopyOf((BytesRef) value).bytes : value);
+            }
+            paginatedList.setNextCursor(PaginatedLists.encodeCursor(sortCriteria, nextKeyList));
         }
-        if (criteria.getUpdateDateMax() != null) {
-            criteriaList.add("d.DOC_UPDATEDATE_D <= :updateDateMax");
-            parameterMap.put("updateDateMax", criteria.getUpdateDateMax());
+    }
+
+    /**
+     * Add the search criteria to a query.
+     *
+     * @param builder Query builder
+     * @param criteria Search criteria
+     */
+    private void addCriteria(BooleanQuery.Builder builder, DocumentCriteria criteria) {
+        if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+            // Read permission is enough for searching
+            builder.add(buildTermInSetQuery("acl", criteria.getTargetIdList()), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getCreateDateMin() != null || criteria.getCreateDateMax() != null) {
+            builder.add(buildDateRangeQuery("create_date", criteria.getCreateDateMin(), criteria.getCreateDateMax()), BooleanClause.Occur.FILTER);
+        }
+        if (criteria.getUpdateDateMin() != null || criteria.getUpdateDateMax() != null) {
+            builder.add(buildDateRangeQuery("update_date", criteria.getUpdateDateMin(), criteria.getUpdateDateMax()), BooleanClause.Occur.FILTER);
         }
         if (!criteria.getTitleList().isEmpty()) {
-            criteriaList.add("d.DOC_TITLE_C in :title");
-            parameterMap.put("title", criteria.getTitleList());
-        }
-        if (!criteria.getTagIdList().isEmpty()) {
-            int index = 0;
-            for (List<String> tagIdList : criteria.getTagIdList()) {
-                List<String> tagCriteriaList = Lists.newArrayList();
-                for (String tagId : tagIdList) {
-                    sb.append(String.format("left join T_DOCUMENT_TAG dt%d on dt%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dt%d.DOT_IDTAG_C = :tagId%d and dt%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
-                    parameterMap.put("tagId" + index, tagId);
-                    tagCriteriaList.add(String.format("dt%d.DOT_ID_C is not null", index));
-                    index++;
-                }
-                criteriaList.add("(" + Joiner.on(" OR ").join(tagCriteriaList) + ")");
-            }
-        }
-        if (!criteria.getExcludedTagIdList().isEmpty()) {
-            int index = 0;
-            for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
-                List<String> tagCriteriaList = Lists.newArrayList();
-                for (String tagId : tagIdList) {
-                    sb.append(String.format("left join T_DOCUMENT_TAG dtex%d on dtex%d.DOT_IDDOCUMENT_C = d.DOC_ID_C and dtex%d.DOT_IDTAG_C = :tagIdEx%d and dtex%d.DOT_DELETEDATE_D is null ", index, index, index, index, index));
-                    parameterMap.put("tagIdEx" + index, tagId);
-                    tagCriteriaList.add(String.format("dtex%d.DOT_ID_C is null", index));
-                    index++;
-                }
-                criteriaList.add("(" + Joiner.on(" AND ").join(tagCriteriaList) + ")");
-            }
+            builder.add(buildTermInSetQuery("title_exact", criteria.getTitleList()), BooleanClause.Occur.FILTER);
+        }
+        for (List<String> tagIdList : criteria.getTagIdList()) {
+            // One of the tags is enough
+            builder.add(buildTermInSetQuery("tag", tagIdList), BooleanClause.Occur.FILTER);
+        }
+        for (List<String> tagIdList : criteria.getExcludedTagIdList()) {
+            // None of the tags is allowed
+            builder.add(buildTermInSetQuery("tag", tagIdList), BooleanClause.Occur.MUST_NOT);
         }
         if (criteria.getShared() != null && criteria.getShared()) {
-            criteriaList.add("s.count > 0");
+            builder.add(LongPoint.newRangeQuery("share_count", 1, Long.MAX_VALUE), BooleanClause.Occur.FILTER);
         }
         if (criteria.getMimeType() != null) {
-            sb.append("left join T_FILE f0 on f0.FIL_IDDOC_C = d.DOC_ID_C and f0.FIL_MIMETYPE_C = :mimeType and f0.FIL_DELETEDATE_D is null");
-            parameterMap.put("mimeType", criteria.getMimeType());
-            criteriaList.add("f0.FIL_ID_C is not null");
+            builder.add(new TermQuery(new Term("mimetype", criteria.getMimeType())), BooleanClause.Occur.FILTER);
         }
         if (criteria.getLanguage() != null) {
-            criteriaList.add("d.DOC_LANGUAGE_C = :language");
-            parameterMap.put("language", criteria.getLanguage());
+            builder.add(new TermQuery(new Term("language", criteria.getLanguage())), BooleanClause.Occur.FILTER);
         }
         if (criteria.getCreatorId() != null) {
-            criteriaList.add("d.DOC_IDUSER_C = :creatorId");
-            parameterMap.put("creatorId", criteria.getCreatorId());
+            builder.add(new TermQuery(new Term("creator", criteria.getCreatorId())), BooleanClause.Occur.FILTER);
         }
         if (criteria.getActiveRoute() != null && criteria.getActiveRoute()) {
-            criteriaList.add("rs2.RTP_ID_C is not null");
+            builder.add(buildTermInSetQuery("route_target", criteria.getTargetIdList()), BooleanClause.Occur.FILTER);
         }
+    }
 
-        criteriaList.add("d.DOC_DELETEDATE_D is null");
+    /**
+     * Build a query matching any of the values.
+     *
+     * @param field Field
+     * @param valueList Values
+     * @return Query
+     */
+    private Query buildTermInSetQuery(String field, Collection<String> valueList) {
+        return new TermInSetQuery(field, valueList.stream()
+                .map(BytesRef::new)
+                .collect(Collectors.toList()));
+    }
 
-        sb.append(" where ");
-        sb.append(Joiner.on(" and ").join(criteriaList));
+    /**
+     * Build a query on a date range.
+     *
+     * @param field Field
+     * @param min Minimum date (inclusive), null if unbounded
+     * @param max Maximum date (inclusive), null if unbounded
+     * @return Query
+     */
+    private Query buildDateRangeQuery(String field, Date min, Date max) {
+        return LongPoint.newRangeQuery(field,
+                min == null ? Long.MIN_VALUE : min.getTime(),
+                max == null ? Long.MAX_VALUE : max.getTime());
+    }
 
-        // Perform the search
-        QueryParam queryParam = new QueryParam(sb.toString(), parameterMap);
-        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, queryParam, sortCriteria);
+    /**
+     * Build the sort of the documents.
+     * Columns are the same as the database result (0: ID, 1: title, 2: description, 3: create date,
+     * 4: language, 5: share count, 8: update date), unknown columns sort by ID.
+     *
+     * @param sortCriteria Sort criteria
+     * @return Sort
+     */
+    private Sort buildSort(SortCriteria sortCriteria) {
+        boolean reverse = sortCriteria != null && !sortCriteria.isAsc();
+        SortField sortField;
+        switch (sortCriteria == null ? 0 : sortCriteria.getColumn()) {
+            case 1:
+                sortField = new SortField("title_exact", SortField.Type.STRING, reverse);
+                break;
+            case 2:
+                sortField = new SortField("description_sort", SortField.Type.STRING, reverse);
+                break;
+            case 3:
+                sortField = new SortField("create_date", SortField.Type.LONG, reverse);
+                break;
+            case 4:
+                sortField = new SortField("language", SortField.Type.STRING, reverse);
+                break;
+            case 5:
+                sortField = new SortField("share_count", SortField.Type.LONG, reverse);
+                break;
+            case 8:
+                sortField = new SortField("update_date", SortField.Type.LONG, reverse);
+                break;
+            default:
+                sortField = new SortField("id_sort", SortField.Type.STRING, reverse);
+                break;
+        }
+
+        // Documents with the same sort value are always returned in the same order
+        return new Sort(sortField, new SortField("id_sort", SortField.Type.STRING));
+    }
+
+    /**
+     * Returns the documents of the current page from the database.
+     * The documents not readable anymore by the targets are absent.
+     *
+     * @param documentIdList Document IDs
+     * @param targetIdList Targets of the current user
+     * @return Documents by ID
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, DocumentDto> findDocumentDtos(List<String> documentIdList, List<String> targetIdList) {
+        Map<String, DocumentDto> documentDtoMap = Maps.newHashMap();
+        if (documentIdList.isEmpty()) {
+            return documentDtoMap;
+        }
+
+        StringBuilder sb = new StringBuilder("select d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
+        sb.append(" s.count c5, ");
+        sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
+        sb.append(" from T_DOCUMENT d ");
+        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
+                "   FROM T_SHARE s, T_ACL ac " +
+                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
+                "         s.SHA_DELETEDATE_D IS NULL AND ac.ACL_SOURCEID_C in (:documentIdList) group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
+        sb.append(" left join (select rs.*, rs3.idDocument " +
+                "from T_ROUTE_STEP rs " +
+                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null and r.RTE_IDDOCUMENT_C in (:documentIdList) group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
+                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        sb.append(" where d.DOC_ID_C in (:documentIdList) and d.DOC_DELETEDATE_D is null ");
+        if (!SecurityUtil.skipAclCheck(targetIdList)) {
+            // The permissions in the index are updated asynchronously, the database has the final word
+            sb.append(" and exists (select 1 from T_DOCUMENT_EFFECTIVE_ACL ea where ea.DEA_IDSOURCE_C = d.DOC_ID_C" +
+                    " and ea.DEA_IDTARGET_C in (:targetIdList) and ea.DEA_PERM_C = 'READ') ");
+        }
+
+        Map<String, Object> parameterMap = new HashMap<>();
+        parameterMap.put("documentIdList", documentIdList);
+        parameterMap.put("targetIdList", targetIdList);
+        List<Object[]> l = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap)).getResultList();
 
-        // Assemble results
-        List<DocumentDto> documentDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
             DocumentDto documentDto = new DocumentDto();
@@ -378,105 +1166,235 @@ public class LuceneIndexingHandler implements IndexingHandler {
             documentDto.setActiveRoute(o[i++] != null);
             documentDto.setCurrentStepName((String) o[i++]);
             documentDto.setUpdateTimestamp(((Timestamp) o[i]).getTime());
-            documentDto.setHighlight(documentSearchMap.get(documentDto.getId()));
-            documentDtoList.add(documentDto);
+            documentDtoMap.putIfAbsent(documentDto.getId(), documentDto);
         }
 
-        paginatedList.setResultList(documentDtoList);
+        return documentDtoMap;
+    }
+
+    @Override
+    public List<String> suggest(String search, List<String> targetIdList, int count) throws Exception {
+        if (EnvironmentUtil.isUnitTest()) {
+            // Events are processed synchronously in unit tests, suggest from the latest changes
+            refreshSuggester();
+        }
+
+        // Only the last word is completed
+        String word = search.substring(search.lastIndexOf(' ') + 1);
+        if (word.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> candidateList = suggester.lookup(word, count * SUGGESTION_CANDIDATE_FACTOR);
+        if (candidateList.isEmpty()) {
+            return candidateList;
+        }
+
+        // The suggester holds the terms of all the titles, keep those of a readable document
+        return handleSearch(searcher -> {
+            List<String> suggestionList = new ArrayList<>();
+            for (String candidate : candidateList) {
+                if (suggestionList.size() >= count) {
+                    break;
+                }
+                BooleanQuery.Builder builder = new BooleanQuery.Builder()
+                        .add(new TermQuery(new Term("doctype", "document")), BooleanClause.Occur.FILTER)
+                        .add(new TermQuery(new Term("title", candidate)), BooleanClause.Occur.FILTER);
+                if (!SecurityUtil.skipAclCheck(targetIdList)) {
+                    builder.add(buildTermInSetQuery("acl", targetIdList), BooleanClause.Occur.FILTER);
+                }
+                if (searcher.count(builder.build()) > 0) {
+                    suggestionList.add(candidate);
+                }
+            }
+            return suggestionList;
+        });
     }
 
     /**
-     * Suggest search terms according to the user query.
+     * Rebuild the search suggestions if the index has changed.
      *
-     * @param search User search query
-     * @param suggestionList Suggestion of search query (updated by side effects)
      * @throws Exception e
      */
-    private void suggestSearchTerms(String search, List<String> suggestionList) throws Exception {
-        DirectoryReader directoryReader = getDirectoryReader();
-        if (directoryReader == null) {
-            return;
-        }
+    private void refreshSuggester() throws Exception {
+        handleSearch(searcher -> {
+            suggester.refresh(searcher.getIndexReader());
+            return null;
+        });
+    }
 
-        FuzzySuggester suggester = new FuzzySuggester(directory, "", new StandardAnalyzer());
-        LuceneDictionary dictionary = new LuceneDictionary(directoryReader, "title");
-        suggester.build(dictionary);
-        int lastIndex = search.lastIndexOf(' ');
-        String suggestQuery = search.substring(Math.max(lastIndex, 0));
-        List<Lookup.LookupResult> lookupResultList = suggester.lookup(suggestQuery, false, 10);
-        for (Lookup.LookupResult lookupResult : lookupResultList) {
-            suggestionList.add(lookupResult.key.toString());
+    /**
+     * Returns the languages of the indexed documents.
+     *
+     * @param reader Index reader
+     * @return Languages
+     * @throws IOException e
+     */
+    private Set<String> findIndexedLanguages(IndexReader reader) throws IOException {
+        Set<String> languageSet = new HashSet<>();
+        Terms terms = MultiTerms.getTerms(reader, "language");
+        if (terms != null) {
+            TermsEnum termsEnum = terms.iterator();
+            BytesRef term;
+            while ((term = termsEnum.next()) != null) {
+                languageSet.add(term.utf8ToString());
+            }
         }
+        return languageSet;
     }
 
     /**
-     * Fulltext search in files and documents.
+     * Build the fulltext query on documents metadata.
      *
      * @param simpleSearchQuery Search query on metadatas
      * @param fullSearchQuery Search query on all fields
-     * @return Map of document IDs as key and highlight as value
-     * @throws Exception e
+     * @param languageSet Languages to search in
+     * @return Query
      */
-    private Map<String, String> search(String simpleSearchQuery, String fullSearchQuery) throws Exception {
+    private Query buildDocumentTextQuery(String simpleSearchQuery, String fullSearchQuery, Set<String> languageSet) {
         // The fulltext query searches in all fields
         String searchQuery = simpleSearchQuery + " " + fullSearchQuery;
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (String field : DOCUMENT_TEXT_FIELDS) {
+            addTextQuery(builder, field, searchQuery, languageSet);
+        }
+        return builder.build();
+    }
 
-        // Build search query
-        Analyzer analyzer = new StandardAnalyzer();
-
-        // Search on documents and files
-        BooleanQuery query = new BooleanQuery.Builder()
-                .add(buildQueryParser(analyzer, "title").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "description").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "subject").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "identifier").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "publisher").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "format").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "source").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "type").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "coverage").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "rights").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "filename").parse(searchQuery), BooleanClause.Occur.SHOULD)
-                .add(buildQueryParser(analyzer, "content").parse(fullSearchQuery), BooleanClause.Occur.SHOULD)
+    /**
+     * Build the fulltext query on files.
+     *
+     * @param simpleSearchQuery Search query on metadatas
+     * @param fullSearchQuery Search query on all fields
+     * @param languageSet Languages to search in
+     * @return Query
+     */
+    private Query buildFileTextQuery(String simpleSearchQuery, String fullSearchQuery, Set<String> languageSet) {
+        String searchQuery = simpleSearchQuery + " " + fullSearchQuery;
+        BooleanQuery.Builder textBuilder = new BooleanQuery.Builder();
+        addTextQuery(textBuilder, "filename", searchQuery, languageSet);
+        addTextQuery(textBuilder, "content", fullSearchQuery, languageSet);
+        return new BooleanQuery.Builder()
+                .add(new TermQuery(new Term("doctype", "file")), BooleanClause.Occur.FILTER)
+                .add(textBuilder.build(), BooleanClause.Occur.MUST)
                 .build();
+    }
+
+    /**
+     * Add the optional queries on a field, in each language it is indexed in.
+     *
+     * @param builder Query builder
+     * @param field Field
+     * @param searchQuery Search query
+     * @param languageSet Languages to search in
+     */
+    private void addTextQuery(BooleanQuery.Builder builder, String field, String searchQuery, Set<String> languageSet) {
+        // Without a specific analyzer, the field is indexed under its own name
+        builder.add(buildQueryParser(LanguageAnalyzers.getStandardAnalyzer(), field).parse(searchQuery), BooleanClause.Occur.SHOULD);
+        if (LanguageAnalyzers.LANGUAGE_FIELDS.contains(field)) {
+            for (String language : languageSet) {
+                if (LanguageAnalyzers.hasAnalyzer(language)) {
+                    builder.add(buildQueryParser(LanguageAnalyzers.getAnalyzer(language), LanguageAnalyzers.getField(field, language))
+                            .parse(searchQuery), BooleanClause.Occur.SHOULD);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of the documents having a file matching a query.
+     * The IDs are read from the doc values, the stored fields are not loaded.
+     *
+     * @param searcher Index searcher
+     * @param fileQuery Query on files
+     * @return Document IDs
+     * @throws IOException e
+     */
+    private Set<BytesRef> findFileDocumentIds(IndexSearcher searcher, Query fileQuery) throws IOException {
+        Set<BytesRef> documentIdSet = new HashSet<>();
+        searcher.search(fileQuery, new SimpleCollector() {
+            private SortedDocValues documentIdValues;
 
-        // Search
-        DirectoryReader directoryReader = getDirectoryReader();
-        Map<String, String> documentMap = Maps.newHashMap();
-        if (directoryReader == null) {
-            // The directory reader is not yet initialized (probably because there is nothing indexed)
-            return documentMap;
-        }
-        IndexSearcher searcher = new IndexSearcher(directoryReader);
-        TopDocs topDocs = searcher.search(query, Integer.MAX_VALUE);
-        ScoreDoc[] docs = topDocs.scoreDocs;
-
-        SimpleHTMLFormatter simpleHTMLFormatter = new SimpleHTMLFormatter("<strong>", "</strong>");
-        SimpleHTMLEncoder simpleHTMLEncoder = new SimpleHTMLEncoder();
-        Highlighter highlighter = new Highlighter(simpleHTMLFormatter, simpleHTMLEncoder, new QueryScorer(query));
-
-        // Extract document IDs and highlights
-        for (ScoreDoc doc : docs) {
-            org.apache.lucene.document.Document document = searcher.doc(doc.doc);
-            String type = document.get("doctype");
-            String documentId = null;
-            String highlight = null;
-            if (type.equals("document")) {
-                documentId = document.get("id");
-            } else if (type.equals("file")) {
-                documentId = document.get("document_id");
-                String content = document.get("content");
-                if (content != null) {
-                    highlight = highlighter.getBestFragment(analyzer, "content", content);
+            @Override
+            protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                documentIdValues = DocValues.getSorted(context.reader(), "document_id");
+            }
+
+            @Override
+            public void collect(int doc) throws IOException {
+                if (documentIdValues.advanceExact(doc)) {
+                    documentIdSet.add(BytesRef.deepCopyOf(documentIdValues.binaryValue()));
                 }
             }
 
-            if (documentId != null) {
-                documentMap.put(documentId, highlight);
+            @Override
+            public ScoreMode scoreMode() {
+                return ScoreMode.COMPLETE_NO_SCORES;
+            }
+        });
+        return documentIdSet;
+    }
+
+    /**
+     * Highlight the best matching file content of each document.
+     * The matches are read from the offsets stored in the postings, the content is not analyzed again.
+     *
+     * @param searcher Index searcher
+     * @param fileQuery Query on files
+     * @param documentIdList Documents to highlight
+     * @param languageSet Languages searched in
+     * @return Highlight by document ID
+     * @throws IOException e
+     */
+    private Map<String, String> highlight(IndexSearcher searcher, Query fileQuery, List<String> documentIdList, Set<String> languageSet) throws IOException {
+        Map<String, String> highlightMap = Maps.newHashMap();
+        if (documentIdList.isEmpty()) {
+            return highlightMap;
+        }
+
+        // Only the files of the current page are highlighted
+        Query query = new BooleanQuery.Builder()
+                .add(fileQuery, BooleanClause.Occur.MUST)
+                .add(buildTermInSetQuery("document_id", documentIdList), BooleanClause.Occur.FILTER)
+                .build();
+        TopDocs topDocs = searcher.search(query, Math.max(searcher.count(query), 1));
+        if (topDocs.scoreDocs.length == 0) {
+            return highlightMap;
+        }
+
+        // The content of a file is indexed in the field of its language
+        Set<String> fieldSet = new HashSet<>();
+        fieldSet.add("content");
+        for (String language : languageSet) {
+            fieldSet.add(LanguageAnalyzers.getField("content", language));
+        }
+        String[] fields = fieldSet.toArray(new String[0]);
+        int[] maxPassages = new int[fields.length];
+        Arrays.fill(maxPassages, 1);
+
+        UnifiedHighlighter highlighter = new UnifiedHighlighter(searcher, LanguageAnalyzers.getIndexAnalyzer());
+        highlighter.setMaxLength(highlightMaxLength);
+        highlighter.setMaxNoHighlightPassages(0);
+        highlighter.setFormatter(new DefaultPassageFormatter("<strong>", "</strong>", "... ", true));
+        highlighter.setBreakIterator(() -> LengthGoalBreakIterator.createClosestToLength(
+                BreakIterator.getWordInstance(Locale.ROOT), HIGHLIGHT_PASSAGE_LENGTH));
+        Map<String, String[]> fieldHighlightMap = highlighter.highlightFields(fields, query, topDocs, maxPassages);
+
+        // The best matching file of each document is kept
+        for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+            String documentId = searcher.doc(topDocs.scoreDocs[i].doc, Collections.singleton("document_id")).get("document_id");
+            if (highlightMap.containsKey(documentId)) {
+                continue;
+            }
+            for (String field : fields) {
+                String highlight = fieldHighlightMap.get(field)[i];
+                if (highlight != null) {
+                    highlightMap.put(documentId, highlight);
+                    break;
+                }
             }
         }
 
-        return documentMap;
+        return highlightMap;
     }
 
     /**
@@ -496,18 +1414,25 @@ public class LuceneIndexingHandler implements IndexingHandler {
      * Build Lucene document from database document.
      *
      * @param document Document
+     * @param fields Search fields of the document
      * @return Document
      */
-    private org.apache.lucene.document.Document getDocumentFromDocument(Document document) {
+    private org.apache.lucene.document.Document getDocumentFromDocument(Document document, DocumentSearchFields fields) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", document.getId(), Field.Store.YES));
+        luceneDocument.add(new SortedDocValuesField("id_sort", new BytesRef(document.getId())));
         luceneDocument.add(new StringField("doctype", "document", Field.Store.YES));
+        String language = document.getLanguage();
         luceneDocument.add(new TextField("title", document.getTitle(), Field.Store.NO));
+        if (LanguageAnalyzers.hasAnalyzer(language)) {
+            // The title is also kept without stemming for the suggestions
+            luceneDocument.add(new TextField(LanguageAnalyzers.getField("title", language), document.getTitle(), Field.Store.NO));
+        }
         if (document.getDescription() != null) {
-            luceneDocument.add(new TextField("description", document.getDescription(), Field.Store.NO));
+            luceneDocument.add(new TextField(LanguageAnalyzers.getField("description", language), document.getDescription(), Field.Store.NO));
         }
         if (document.getSubject() != null) {
-            luceneDocument.add(new TextField("subject", document.getSubject(), Field.Store.NO));
+            luceneDocument.add(new TextField(LanguageAnalyzers.getField("subject", language), document.getSubject(), Field.Store.NO));
         }
         if (document.getIdentifier() != null) {
             luceneDocument.add(new TextField("identifier", document.getIdentifier(), Field.Store.NO));
@@ -525,22 +1450,70 @@ public class LuceneIndexingHandler implements IndexingHandler {
             luceneDocument.add(new TextField("type", document.getType(), Field.Store.NO));
         }
         if (document.getCoverage() != null) {
-            luceneDocument.add(new TextField("coverage", document.getCoverage(), Field.Store.NO));
+            luceneDocument.add(new TextField(LanguageAnalyzers.getField("coverage", language), document.getCoverage(), Field.Store.NO));
         }
         if (document.getRights() != null) {
-            luceneDocument.add(new TextField("rights", document.getRights(), Field.Store.NO));
+            luceneDocument.add(new TextField(LanguageAnalyzers.getField("rights", language), document.getRights(), Field.Store.NO));
+        }
+
+        // Search criteria, filtered and sorted in the index
+        luceneDocument.add(new StringField("title_exact", document.getTitle(), Field.Store.NO));
+        luceneDocument.add(new SortedDocValuesField("title_exact", new BytesRef(document.getTitle())));
+        if (document.getDescription() != null) {
+            luceneDocument.add(new SortedDocValuesField("description_sort", new BytesRef(document.getDescription())));
+        }
+        if (language != null) {
+            luceneDocument.add(new StringField("language", language, Field.Store.NO));
+            luceneDocument.add(new SortedDocValuesField("language", new BytesRef(language)));
+        }
+        if (document.getUserId() != null) {
+            luceneDocument.add(new StringField("creator", document.getUserId(), Field.Store.NO));
+        }
+        addDateField(luceneDocument, "create_date", document.getCreateDate());
+        addDateField(luceneDocument, "update_date", document.getUpdateDate());
+        if (fields != null) {
+            for (String targetId : fields.getReadTargetIdSet()) {
+                luceneDocument.add(new StringField("acl", targetId, Field.Store.NO));
+            }
+            for (String tagId : fields.getTagIdSet()) {
+                luceneDocument.add(new StringField("tag", tagId, Field.Store.NO));
+            }
+            for (String mimeType : fields.getMimeTypeSet()) {
+                luceneDocument.add(new StringField("mimetype", mimeType, Field.Store.NO));
+            }
+            for (String targetId : fields.getRouteTargetIdSet()) {
+                luceneDocument.add(new StringField("route_target", targetId, Field.Store.NO));
+            }
+            luceneDocument.add(new LongPoint("share_count", fields.getShareCount()));
+            luceneDocument.add(new NumericDocValuesField("share_count", fields.getShareCount()));
         }
 
         return luceneDocument;
     }
 
+    /**
+     * Add a date field, searchable by range and sortable.
+     *
+     * @param luceneDocument Lucene document
+     * @param field Field
+     * @param date Date
+     */
+    private void addDateField(org.apache.lucene.document.Document luceneDocument, String field, Date date) {
+        if (date != null) {
+            luceneDocument.add(new LongPoint(field, date.getTime()));
+            luceneDocument.add(new NumericDocValuesField(field, date.getTime()));
+        }
+    }
+
     /**
      * Build Lucene document from file.
      *
      * @param file File
+     * @param language Language of the document of the file, null if none
+     * @param content Content of the file, null if none
      * @return Document
      */
-    private org.apache.lucene.document.Document getDocumentFromFile(File file) {
+    private org.apache.lucene.document.Document getDocumentFromFile(File file, String language, String content) {
         org.apache.lucene.document.Document luceneDocument = new org.apache.lucene.document.Document();
         luceneDocument.add(new StringField("id", file.getId(), Field.Store.YES));
         luceneDocument.add(new StringField("doctype", "file", Field.Store.YES));
@@ -549,64 +1522,89 @@ public class LuceneIndexingHandler implements IndexingHandler {
         }
         if (file.getDocumentId() != null) {
             luceneDocument.add(new StringField("document_id", file.getDocumentId(), Field.Store.YES));
+            luceneDocument.add(new SortedDocValuesField("document_id", new BytesRef(file.getDocumentId())));
+        }
+        if (language != null) {
+            luceneDocument.add(new StringField("language", language, Field.Store.YES));
         }
-        if (file.getContent() != null) {
-            luceneDocument.add(new TextField("content", file.getContent(), Field.Store.YES));
+        if (content != null) {
+            luceneDocument.add(new Field(LanguageAnalyzers.getField("content", language), content, CONTENT_FIELD_TYPE));
         }
 
         return luceneDocument;
     }
 
     /**
-     * Returns a valid directory reader.
-     * Take care of reopening the reader if the index has changed
-     * and closing the previous one.
+     * Encapsulate a process into a Lucene context.
+     * While the index is being rebuilt, the process is also applied to the new index,
+     * and the rebuild doesn't overwrite the written IDs anymore.
      *
-     * @return the directoryReader
+     * @param idList IDs of the documents and files written
+     * @param runnable Runnable
      */
-    private DirectoryReader getDirectoryReader() {
-        if (directoryReader == null) {
+    private void handle(List<String> idList, LuceneRunnable runnable) {
+        LuceneIndex luceneIndex;
+        swapLock.readLock().lock();
+        try {
+            luceneIndex = index;
             try {
-                if (!DirectoryReader.indexExists(directory)) {
-                    return null;
-                }
-                directoryReader = DirectoryReader.open(directory);
-            } catch (IOException e) {
-                log.error("Error creating the directory reader", e);
+                runnable.run(luceneIndex.getIndexWriter());
+            } catch (Exception e) {
+                log.error("Error in running index writing", e);
             }
-        } else {
-            try {
-                DirectoryReader newReader = DirectoryReader.openIfChanged(directoryReader);
-                if (newReader != null) {
-                    directoryReader.close();
-                    directoryReader = newReader;
+
+            LuceneIndex newIndex = rebuildIndex;
+            if (newIndex != null) {
+                // Locks taken in the stripes order, the writes of other IDs can't deadlock with this one
+                List<Lock> lockList = Lists.newArrayList(rebuildIdLocks.bulkGet(idList));
+                lockList.forEach(Lock::lock);
+                try {
+                    rebuildLiveIdSet.addAll(idList);
+                    runnable.run(newIndex.getIndexWriter());
+                } catch (Exception e) {
+                    log.error("Error in running index writing on the rebuilt index", e);
+                } finally {
+                    lockList.forEach(Lock::unlock);
                 }
-            } catch (IOException e) {
-                log.error("Error while reopening the directory reader", e);
             }
+        } finally {
+            swapLock.readLock().unlock();
         }
-        return directoryReader;
+
+        luceneIndex.afterWrite();
     }
 
     /**
-     * Encapsulate a process into a Lucene context.
+     * Encapsulate a search into a Lucene context.
+     * The searcher is pinned on the current state of the serving index during the search.
      *
-     * @param runnable Runnable
+     * @param callable Search to run
+     * @return Search result
+     * @throws Exception e
      */
-    private void handle(LuceneRunnable runnable) {
+    private <T> T handleSearch(LuceneSearchCallable<T> callable) throws Exception {
+        LuceneIndex luceneIndex;
+        IndexSearcher searcher;
+        swapLock.readLock().lock();
         try {
-            runnable.run(indexWriter);
-        } catch (Exception e) {
-            log.error("Error in running index writing", e);
+            luceneIndex = index;
+            searcher = luceneIndex.acquire();
+        } finally {
+            swapLock.readLock().unlock();
         }
 
         try {
-            indexWriter.commit();
-        } catch (IOException e) {
-            log.error("Cannot commit index writer", e);
+            return callable.call(searcher);
+        } finally {
+            luceneIndex.release(searcher);
         }
     }
 
+    @Override
+    public long getPendingOperationCount() {
+        return index.getPendingOperationCount();
+    }
+
     /**
      * Lucene runnable.
      *
@@ -621,4 +1619,20 @@ public class LuceneIndexingHandler implements IndexingHandler {
          */
         void run(IndexWriter indexWriter) throws Exception;
     }
+
+    /**
+     * Lucene search callable.
+     *
+     * @author bgamard
+     */
+    private interface LuceneSearchCallable<T> {
+        /**
+         * Code to run with a searcher.
+         *
+         * @param searcher Index searcher
+         * @return Search result
+         * @throws Exception e
+         */
+        T call(IndexSearcher searcher) throws Exception;
+    }
 }
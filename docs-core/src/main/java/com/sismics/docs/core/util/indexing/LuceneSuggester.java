@@ -0,0 +1,85 @@
+package com.sismics.docs.core.util.indexing;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.spell.LuceneDictionary;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Search suggestions from the terms of the documents titles.
+ * The suggester is held in memory and rebuilt only when the index has changed.
+ * It holds the terms of all the documents, the suggestions are filtered by permission afterwards.
+ *
+ * @author bgamard
+ */
+class LuceneSuggester {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(LuceneSuggester.class);
+
+    /**
+     * Current suggester, null until built for the first time.
+     */
+    private volatile FuzzySuggester suggester;
+
+    /**
+     * Key of the index reader the suggester has been built from.
+     */
+    private IndexReader.CacheKey readerKey;
+
+    /**
+     * Rebuild the suggester if the index has changed since the last build.
+     *
+     * @param reader Current index reader
+     * @throws IOException e
+     */
+    synchronized void refresh(IndexReader reader) throws IOException {
+        // A new reader is opened only when the index has changed
+        IndexReader.CacheKey key = reader.getReaderCacheHelper().getKey();
+        if (key == readerKey) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        try (Directory tempDirectory = new ByteBuffersDirectory()) {
+            // The temporary directory is only used to sort the terms while building,
+            // the terms are analyzed like the title field they come from
+            FuzzySuggester newSuggester = new FuzzySuggester(tempDirectory, "", LanguageAnalyzers.getStandardAnalyzer());
+            newSuggester.build(new LuceneDictionary(reader, "title"));
+            suggester = newSuggester;
+            readerKey = key;
+        }
+        log.debug("Search suggestions built in {}ms", System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Returns the suggestions for a word.
+     *
+     * @param word Word, possibly incomplete or misspelled
+     * @param count Maximum number of suggestions
+     * @return Suggestions
+     * @throws IOException e
+     */
+    List<String> lookup(String word, int count) throws IOException {
+        FuzzySuggester currentSuggester = suggester;
+        if (currentSuggester == null || currentSuggester.getCount() == 0) {
+            return Collections.emptyList();
+        }
+
+        List<String> suggestionList = new ArrayList<>();
+        for (Lookup.LookupResult lookupResult : currentSuggester.lookup(word, false, count)) {
+            suggestionList.add(lookupResult.key.toString());
+        }
+        return suggestionList;
+    }
+}
@@ -0,0 +1,131 @@
+package com.sismics.docs.core.util.indexing;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of the last index rebuild.
+ *
+ * @author bgamard
+ */
+public class RebuildIndexProgress {
+    /**
+     * True if a rebuild is running.
+     */
+    private boolean running;
+
+    /**
+     * Rebuild start date.
+     */
+    private Date startDate;
+
+    /**
+     * Rebuild end date.
+     */
+    private Date endDate;
+
+    /**
+     * True if the last rebuild failed.
+     */
+    private boolean failed;
+
+    /**
+     * Number of documents and files to index.
+     */
+    private long totalCount;
+
+    /**
+     * Number of documents and files indexed so far.
+     */
+    private final AtomicLong indexedCount = new AtomicLong();
+
+    /**
+     * Start tracking a new rebuild.
+     *
+     * @param totalCount Number of documents and files to index
+     * @return False if a rebuild is already running
+     */
+    public synchronized boolean start(long totalCount) {
+        if (running) {
+            return false;
+        }
+        running = true;
+        failed = false;
+        startDate = new Date();
+        endDate = null;
+        this.totalCount = totalCount;
+        indexedCount.set(0);
+        return true;
+    }
+
+    /**
+     * Record indexed documents or files.
+     *
+     * @param count Number of documents or files indexed
+     */
+    public void addIndexedCount(int count) {
+        indexedCount.addAndGet(count);
+    }
+
+    /**
+     * Stop tracking the current rebuild.
+     *
+     * @param success True if the rebuild succeeded
+     */
+    public synchronized void finish(boolean success) {
+        running = false;
+        failed = !success;
+        endDate = new Date();
+    }
+
+    /**
+     * Returns the indexing rate.
+     *
+     * @return Documents and files indexed per second
+     */
+    public synchronized double getRate() {
+        if (startDate == null) {
+            return 0;
+        }
+        long end = endDate == null ? System.currentTimeMillis() : endDate.getTime();
+        long elapsed = Math.max(end - startDate.getTime(), 1L);
+        return indexedCount.get() * 1000d / elapsed;
+    }
+
+    /**
+     * Returns the estimated remaining time of the running rebuild.
+     *
+     * @return Remaining time in seconds, null if unknown
+     */
+    public synchronized Long getEta() {
+        double rate = getRate();
+        if (!running || rate <= 0) {
+            return null;
+        }
+        return Math.round(Math.max(totalCount - indexedCount.get(), 0L) / rate);
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public synchronized Date getStartDate() {
+        return startDate;
+    }
+
+    public synchronized Date getEndDate() {
+        return endDate;
+    }
+
+    public synchronized boolean isFailed() {
+        return failed;
+    }
+
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getIndexedCount() {
+        return indexedCount.get();
+    }
+}
@@ -8,6 +8,11 @@ import java.util.List;
  * @author jtremeaux
  */
 public class PaginatedList<T> {
+    /**
+     * Continuation token of the first page.
+     */
+    public static final String FIRST_CURSOR = "*";
+
     /**
      * Size of a page.
      */
@@ -23,11 +28,32 @@ public class PaginatedList<T> {
      */
     private int resultCount;
     
+    /**
+     * True if the total number of records is exact, false if it is a lower bound.
+     */
+    private boolean resultCountExact = true;
+
     /**
      * List of records of the current page.
      */
     private List<T> resultList;
-    
+
+    /**
+     * Sort key of the last record of the previous page, null for offset pagination.
+     * The page starts after this key, whatever its position in the results.
+     */
+    private List<Object> cursorKeyList;
+
+    /**
+     * True if the total number of records must be counted, else it may be a lower bound.
+     */
+    private boolean countTotal = true;
+
+    /**
+     * Continuation token of the next page, null if this is the last page or for offset pagination.
+     */
+    private String nextCursor;
+
     /**
      * Constructor of PaginatedList.
      * 
@@ -39,6 +65,19 @@ public class PaginatedList<T> {
         this.offset = offset;
     }
 
+    /**
+     * Constructor of a PaginatedList starting after a sort key.
+     *
+     * @param pageSize Page size
+     * @param cursorKeyList Sort key of the last record of the previous page, empty for the first page
+     * @param countTotal True if the total number of records must be counted
+     */
+    public PaginatedList(int pageSize, List<Object> cursorKeyList, boolean countTotal) {
+        this.limit = pageSize;
+        this.cursorKeyList = cursorKeyList;
+        this.countTotal = countTotal;
+    }
+
     /**
      * Getter of resultCount.
      *
@@ -92,4 +131,67 @@ public class PaginatedList<T> {
     public int getOffset() {
         return offset;
     }
+
+    /**
+     * Getter of resultCountExact.
+     *
+     * @return resultCountExact
+     */
+    public boolean isResultCountExact() {
+        return resultCountExact;
+    }
+
+    /**
+     * Setter of resultCountExact.
+     *
+     * @param resultCountExact resultCountExact
+     */
+    public void setResultCountExact(boolean resultCountExact) {
+        this.resultCountExact = resultCountExact;
+    }
+
+    /**
+     * Returns true if the page starts after a sort key instead of an offset.
+     *
+     * @return True for cursor pagination
+     */
+    public boolean isCursor() {
+        return cursorKeyList != null;
+    }
+
+    /**
+     * Getter of cursorKeyList.
+     *
+     * @return cursorKeyList
+     */
+    public List<Object> getCursorKeyList() {
+        return cursorKeyList;
+    }
+
+    /**
+     * Getter of countTotal.
+     *
+     * @return countTotal
+     */
+    public boolean isCountTotal() {
+        return countTotal;
+    }
+
+    /**
+     * Getter of nextCursor.
+     *
+     * @return nextCursor
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Setter of nextCursor.
+     *
+     * @param nextCursor nextCursor
+     */
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
@@ -1,7 +1,21 @@
 package com.sismics.docs.core.util.jpa;
 
 import jakarta.persistence.Query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Utilities for paginated lists.
@@ -19,6 +33,15 @@ public class PaginatedLists {
      */
     private static final int MAX_PAGE_SIZE = 100;
 
+    /**
+     * Types of the values in a continuation token.
+     */
+    private static final byte NULL_TYPE = 0;
+    private static final byte STRING_TYPE = 1;
+    private static final byte LONG_TYPE = 2;
+    private static final byte TIMESTAMP_TYPE = 3;
+    private static final byte BYTES_TYPE = 4;
+
     /**
      * Constructs a paginated list.
      * 
@@ -39,6 +62,28 @@ public class PaginatedLists {
         return new PaginatedList<>(pageSize, offset);
     }
     
+    /**
+     * Constructs a paginated list starting after a continuation token.
+     *
+     * @param pageSize Size of the page
+     * @param cursor Continuation token returned with the previous page, or PaginatedList.FIRST_CURSOR
+     * @param sortCriteria Sort criteria, must be the same as the previous page
+     * @param countTotal True if the total number of results must be counted, else it may be a lower bound
+     * @param keyTypeList Types of the sort key values
+     * @return Paginated list
+     * @throws IllegalArgumentException If the token is invalid
+     */
+    public static <E> PaginatedList<E> create(Integer pageSize, String cursor, SortCriteria sortCriteria, boolean countTotal,
+                                              List<Class<?>> keyTypeList) {
+        if (pageSize == null) {
+            pageSize = DEFAULT_PAGE_SIZE;
+        }
+        if (pageSize > MAX_PAGE_SIZE) {
+            pageSize = MAX_PAGE_SIZE;
+        }
+        return new PaginatedList<>(pageSize, decodeCursor(cursor, sortCriteria, keyTypeList), countTotal);
+    }
+
     /**
      * Constructs a paginated list with default parameters.
      * 
@@ -85,6 +130,8 @@ public class PaginatedLists {
 
     /**
      * Executes a paginated request with 2 native queries (one to count the number of results, and one to return the page).
+     * With a continuation token, the page starts after the sort key of the previous page instead of skipping
+     * the previous records, and the results are only counted if requested.
      * 
      * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
      * @param queryParam Query parameters
@@ -92,8 +139,206 @@ public class PaginatedLists {
      * @return List of results
      */
     public static <E> List<Object[]> executePaginatedQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria) {
+        if (paginatedList.isCursor()) {
+            return executeCursorQuery(paginatedList, queryParam, sortCriteria);
+        }
+
         QueryParam sortedQueryParam = QueryUtil.getSortedQueryParam(queryParam, sortCriteria);
         executeCountQuery(paginatedList, sortedQueryParam);
         return executeResultQuery(paginatedList, sortedQueryParam);
     }
+
+    /**
+     * Executes a query and returns the page following the continuation token.
+     * The results are sorted by the sort column then by ID (column 0), nulls first.
+     *
+     * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
+     * @param queryParam Query parameters
+     * @param sortCriteria Sort criteria
+     * @return List of results
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> List<Object[]> executeCursorQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria) {
+        if (paginatedList.isCountTotal()) {
+            executeCountQuery(paginatedList, queryParam);
+        }
+
+        int column = sortCriteria == null ? 0 : sortCriteria.getColumn();
+        boolean asc = sortCriteria == null || sortCriteria.isAsc();
+        String sortColumn = "t1.c" + column;
+        List<Object> keyList = paginatedList.getCursorKeyList();
+        Map<String, Object> parameterMap = new HashMap<>(queryParam.getParameterMap());
+        StringBuilder sb = new StringBuilder("select * from (");
+        sb.append(queryParam.getQueryString());
+        sb.append(") as t1");
+        if (column == 0) {
+            if (!keyList.isEmpty()) {
+                sb.append(" where t1.c0 ").append(asc ? ">" : "<").append(" :cursorId");
+                parameterMap.put("cursorId", keyList.get(0));
+            }
+            sb.append(" order by t1.c0").append(asc ? " asc" : " desc");
+        } else {
+            if (!keyList.isEmpty()) {
+                // Same sort value and greater ID, or after the sort value
+                Object value = keyList.get(0);
+                if (value == null) {
+                    sb.append(" where (").append(sortColumn).append(" is null and t1.c0 > :cursorId)");
+                    if (asc) {
+                        sb.append(" or ").append(sortColumn).append(" is not null");
+                    }
+                } else {
+                    sb.append(" where (").append(sortColumn).append(" = :cursorValue and t1.c0 > :cursorId) or ")
+                            .append(sortColumn).append(asc ? " > " : " < ").append(":cursorValue");
+                    if (!asc) {
+                        sb.append(" or ").append(sortColumn).append(" is null");
+                    }
+                    parameterMap.put("cursorValue", value);
+                }
+                parameterMap.put("cursorId", keyList.get(1));
+            }
+            sb.append(" order by ").append(sortColumn).append(asc ? " asc nulls first" : " desc nulls last").append(", t1.c0 asc");
+        }
+
+        // One more result tells if there is a next page
+        Query q = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap));
+        q.setMaxResults(paginatedList.getLimit() + 1);
+        List<Object[]> resultList = new ArrayList<>(q.getResultList());
+        if (resultList.size() > paginatedList.getLimit()) {
+            resultList = resultList.subList(0, paginatedList.getLimit());
+            Object[] last = resultList.get(resultList.size() - 1);
+            List<Object> nextKeyList = new ArrayList<>();
+            if (column != 0) {
+                nextKeyList.add(last[column]);
+            }
+            nextKeyList.add(last[0]);
+            paginatedList.setNextCursor(encodeCursor(sortCriteria, nextKeyList));
+        }
+
+        if (!paginatedList.isCountTotal()) {
+            // The records of this page at least
+            paginatedList.setResultCount(resultList.size());
+            paginatedList.setResultCountExact(false);
+        }
+        return resultList;
+    }
+
+    /**
+     * Encodes the sort key of the last result of a page into an opaque continuation token.
+     *
+     * @param sortCriteria Sort criteria
+     * @param keyList Sort key values (null, String, Number, Date or byte[])
+     * @return Continuation token
+     */
+    public static String encodeCursor(SortCriteria sortCriteria, List<Object> keyList) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(sortCriteria == null ? 0 : sortCriteria.getColumn());
+            out.writeBoolean(sortCriteria == null || sortCriteria.isAsc());
+            out.writeInt(keyList.size());
+            for (Object value : keyList) {
+                if (value == null) {
+                    out.writeByte(NULL_TYPE);
+                } else if (value instanceof String) {
+                    out.writeByte(STRING_TYPE);
+                    out.writeUTF((String) value);
+                } else if (value instanceof Number) {
+                    out.writeByte(LONG_TYPE);
+                    out.writeLong(((Number) value).longValue());
+                } else if (value instanceof Date) {
+                    out.writeByte(TIMESTAMP_TYPE);
+                    out.writeLong(((Date) value).getTime());
+                } else if (value instanceof byte[]) {
+                    out.writeByte(BYTES_TYPE);
+                    out.writeInt(((byte[]) value).length);
+                    out.write((byte[]) value);
+                } else {
+                    throw new IllegalArgumentException("Unsupported sort key: " + value.getClass());
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Returns the types of the sort key of a paginated query: the value of the sorted column, then the ID.
+     *
+     * @param sortCriteria Sort criteria
+     * @param columnTypes Types of the columns of the query, the first one is the ID
+     * @return Types of the sort key values
+     */
+    public static List<Class<?>> getCursorKeyTypes(SortCriteria sortCriteria, Class<?>... columnTypes) {
+        int column = sortCriteria == null ? 0 : sortCriteria.getColumn();
+        if (column == 0) {
+            return Collections.singletonList(columnTypes[0]);
+        }
+        return Arrays.asList(column < columnTypes.length ? columnTypes[column] : Object.class, columnTypes[0]);
+    }
+
+    /**
+     * Decodes a continuation token into the sort key of the last result of the previous page.
+     *
+     * @param cursor Continuation token, or PaginatedList.FIRST_CURSOR
+     * @param sortCriteria Sort criteria, must be the same as the one of the token
+     * @param keyTypeList Types of the sort key values, only the last one is never null
+     * @return Sort key values, empty for the first page
+     * @throws IllegalArgumentException If the token is invalid
+     */
+    public static List<Object> decodeCursor(String cursor, SortCriteria sortCriteria, List<Class<?>> keyTypeList) {
+        if (cursor == null || PaginatedList.FIRST_CURSOR.equals(cursor)) {
+            return Collections.emptyList();
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            int column = in.readInt();
+            boolean asc = in.readBoolean();
+            if (column != (sortCriteria == null ? 0 : sortCriteria.getColumn())
+                    || asc != (sortCriteria == null || sortCriteria.isAsc())) {
+                throw new IllegalArgumentException("The cursor was returned with another sort");
+            }
+            int size = in.readInt();
+            if (size != keyTypeList.size()) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            List<Object> keyList = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                byte type = in.readByte();
+                switch (type) {
+                    case NULL_TYPE:
+                        keyList.add(null);
+                        break;
+                    case STRING_TYPE:
+                        keyList.add(in.readUTF());
+                        break;
+                    case LONG_TYPE:
+                        keyList.add(in.readLong());
+                        break;
+                    case TIMESTAMP_TYPE:
+                        keyList.add(new Timestamp(in.readLong()));
+                        break;
+                    case BYTES_TYPE:
+                        int length = in.readInt();
+                        if (length < 0 || length > in.available()) {
+                            throw new IllegalArgumentException("Invalid cursor");
+                        }
+                        byte[] value = new byte[length];
+                        in.readFully(value);
+                        keyList.add(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid cursor");
+                }
+
+                // A value of another type would fail in the query
+                Object value = keyList.get(i);
+                if (value == null ? i == size - 1 : !keyTypeList.get(i).isInstance(value)) {
+                    throw new IllegalArgumentException("Invalid cursor");
+                }
+            }
+            return keyList;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage in a local directory, one file per key.
+ *
+ * @author bgamard
+ */
+public abstract class FileSystemStorageBackend implements StorageBackend {
+    /**
+     * Storage directory.
+     */
+    protected final Path directory;
+
+    /**
+     * Constructor.
+     *
+     * @param directory Storage directory
+     */
+    protected FileSystemStorageBackend(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the location of a new content.
+     *
+     * @param key Key
+     * @return Path
+     */
+    protected abstract Path resolve(String key);
+
+    /**
+     * Returns the location of an existing content.
+     *
+     * @param key Key
+     * @return Path
+     */
+    protected Path find(String key) {
+        return resolve(key);
+    }
+
+    @Override
+    public void startUp() {
+        // Nothing to do, the directory is created on demand
+    }
+
+    @Override
+    public void put(String key, Path file) throws IOException {
+        Path storedFile = resolve(key);
+        Files.createDirectories(storedFile.getParent());
+        Files.move(file, storedFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return Files.newInputStream(find(key));
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        SeekableByteChannel channel = open(key);
+        channel.position(offset);
+        return ByteStreams.limit(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public SeekableByteChannel open(String key) throws IOException {
+        return FileChannel.open(find(key), StandardOpenOption.READ);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(find(key));
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        return Files.size(find(key));
+    }
+
+    @Override
+    public long lastModified(String key) throws IOException {
+        return Files.getLastModifiedTime(find(key)).toMillis();
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(find(key));
+    }
+
+    @Override
+    public List<String> list() throws IOException {
+        try (Stream<Path> pathStream = Files.walk(directory)) {
+            return pathStream
+                    .filter(Files::isRegularFile)
+                    .map(path -> path.getFileName().toString())
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.base.Strings;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.util.DirectoryUtil;
+
+import java.nio.file.Path;
+
+/**
+ * Storage of all the files in the storage directory.
+ * This is the default storage backend.
+ *
+ * @author bgamard
+ */
+public class FlatStorageBackend extends FileSystemStorageBackend {
+    /**
+     * Storage backend in the storage directory.
+     */
+    public FlatStorageBackend() {
+        this(DirectoryUtil.getStorageDirectory());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory Storage directory
+     */
+    public FlatStorageBackend(Path directory) {
+        super(directory);
+    }
+
+    @Override
+    public boolean accept() {
+        String backend = System.getenv(Constants.STORAGE_BACKEND_ENV);
+        return Strings.isNullOrEmpty(backend) || "flat".equals(backend);
+    }
+
+    @Override
+    protected Path resolve(String key) {
+        return directory.resolve(key);
+    }
+}
@@ -0,0 +1,146 @@
+package com.sismics.docs.core.util.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read-only channel on an object of an S3-compatible object store.
+ * The object is streamed from the current position, changing the position starts a new range request.
+ *
+ * @author bgamard
+ */
+class S3ObjectChannel implements SeekableByteChannel {
+    /**
+     * Storage backend.
+     */
+    private final S3StorageBackend storageBackend;
+
+    /**
+     * Key.
+     */
+    private final String key;
+
+    /**
+     * Object size.
+     */
+    private final long size;
+
+    /**
+     * Position in the object.
+     */
+    private long position;
+
+    /**
+     * Object content from the current position, null if the position has changed.
+     */
+    private InputStream inputStream;
+
+    /**
+     * True if the channel is open.
+     */
+    private boolean open = true;
+
+    /**
+     * Constructor.
+     *
+     * @param storageBackend Storage backend
+     * @param key Key
+     * @param size Object size
+     */
+    S3ObjectChannel(S3StorageBackend storageBackend, String key, long size) {
+        this.storageBackend = storageBackend;
+        this.key = key;
+        this.size = size;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        if (position >= size) {
+            return -1;
+        }
+        if (inputStream == null) {
+            inputStream = storageBackend.get(key, position, size - position);
+        }
+
+        int length;
+        if (dst.hasArray()) {
+            length = inputStream.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+            if (length > 0) {
+                dst.position(dst.position() + length);
+            }
+        } else {
+            byte[] buffer = new byte[Math.min(dst.remaining(), 64 * 1024)];
+            length = inputStream.read(buffer);
+            if (length > 0) {
+                dst.put(buffer, 0, length);
+            }
+        }
+        if (length == -1) {
+            throw new IOException("Unexpected end of " + key + " at " + position);
+        }
+        position += length;
+        return length;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        if (newPosition != position) {
+            position = newPosition;
+            closeStream();
+        }
+        return this;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        closeStream();
+    }
+
+    /**
+     * Close the content stream.
+     *
+     * @throws IOException e
+     */
+    private void closeStream() throws IOException {
+        if (inputStream != null) {
+            inputStream.close();
+            inputStream = null;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.sismics.docs.core.constant.Constants;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage in a bucket of an S3-compatible object store (AWS S3, MinIO...), one object per key.
+ * The requests are authenticated with the AWS signature version 4, the bucket is addressed in the path.
+ *
+ * @author bgamard
+ */
+public class S3StorageBackend implements StorageBackend {
+    /**
+     * Hash of the payload sent in the requests, the payloads are not signed.
+     */
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    /**
+     * Default region.
+     */
+    private static final String DEFAULT_REGION = "us-east-1";
+
+    /**
+     * Format of the request date.
+     */
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    /**
+     * OkHttp client.
+     */
+    private static final OkHttpClient client = new OkHttpClient.Builder()
+            .readTimeout(5, TimeUnit.MINUTES)
+            .writeTimeout(5, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * Object store URL.
+     */
+    private final HttpUrl endpoint;
+
+    /**
+     * Bucket.
+     */
+    private final String bucket;
+
+    /**
+     * Region.
+     */
+    private final String region;
+
+    /**
+     * Access key.
+     */
+    private final String accessKey;
+
+    /**
+     * Secret key.
+     */
+    private final String secretKey;
+
+    /**
+     * Storage backend configured from the environment.
+     */
+    public S3StorageBackend() {
+        this(System.getenv(Constants.STORAGE_S3_ENDPOINT_ENV),
+                System.getenv(Constants.STORAGE_S3_BUCKET_ENV),
+                System.getenv(Constants.STORAGE_S3_REGION_ENV),
+                System.getenv(Constants.STORAGE_S3_ACCESS_KEY_ENV),
+                System.getenv(Constants.STORAGE_S3_SECRET_KEY_ENV));
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param endpoint Object store URL
+     * @param bucket Bucket
+     * @param region Region, null for the default region
+     * @param accessKey Access key
+     * @param secretKey Secret key
+     */
+    public S3StorageBackend(String endpoint, String bucket, String region, String accessKey, String secretKey) {
+        this.endpoint = endpoint == null ? null : HttpUrl.parse(endpoint);
+        this.bucket = bucket;
+        this.region = Strings.isNullOrEmpty(region) ? DEFAULT_REGION : region;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+    }
+
+    @Override
+    public boolean accept() {
+        return "s3".equals(System.getenv(Constants.STORAGE_BACKEND_ENV));
+    }
+
+    @Override
+    public void startUp() throws Exception {
+        if (endpoint == null || Strings.isNullOrEmpty(bucket)) {
+            throw new IllegalStateException("The S3 endpoint and bucket are required");
+        }
+
+        // Create the bucket if needed
+        HttpUrl url = bucketUrl().build();
+        try (Response response = execute("HEAD", url, null, null)) {
+            if (response.code() == 404) {
+                try (Response createResponse = execute("PUT", url, RequestBody.create(new byte[0]), null)) {
+                    checkResponse(createResponse, bucket);
+                }
+            } else {
+                checkResponse(response, bucket);
+            }
+        }
+    }
+
+    @Override
+    public void put(String key, Path file) throws IOException {
+        RequestBody body = RequestBody.create(file.toFile(), MediaType.get("application/octet-stream"));
+        try (Response response = execute("PUT", objectUrl(key), body, null)) {
+            checkResponse(response, key);
+        }
+        Files.delete(file);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return body(execute("GET", objectUrl(key), null, null), key).byteStream();
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        String range = "bytes=" + offset + "-" + (offset + length - 1);
+        Response response = execute("GET", objectUrl(key), null, range);
+        if (response.code() == 416) {
+            // The range starts after the end of the content
+            response.close();
+            return InputStream.nullInputStream();
+        }
+        return body(response, key).byteStream();
+    }
+
+    @Override
+    public SeekableByteChannel open(String key) throws IOException {
+        return new S3ObjectChannel(this, key, size(key));
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        try (Response response = execute("HEAD", objectUrl(key), null, null)) {
+            if (response.code() == 404) {
+                return false;
+            }
+            checkResponse(response, key);
+            return true;
+        }
+    }
+
+    @Override
+    public long size(String key) throws IOException {
+        try (Response response = execute("HEAD", objectUrl(key), null, null)) {
+            checkResponse(response, key);
+            String contentLength = response.header("Content-Length");
+            if (contentLength == null) {
+                throw new IOException("No size returned for " + key);
+            }
+            return Long.parseLong(contentLength);
+        }
+    }
+
+    @Override
+    public long lastModified(String key) throws IOException {
+        try (Response response = execute("HEAD", objectUrl(key), null, null)) {
+            checkResponse(response, key);
+            String lastModified = response.header("Last-Modified");
+            if (lastModified == null) {
+                throw new IOException("No modification time returned for " + key);
+            }
+            try {
+                return Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(lastModified)).toEpochMilli();
+            } catch (DateTimeParseException e) {
+                throw new IOException("Invalid modification time returned for " + key + ": " + lastModified, e);
+            }
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try (Response response = execute("DELETE", objectUrl(key), null, null)) {
+            if (response.code() != 404) {
+                checkResponse(response, key);
+            }
+        }
+    }
+
+    @Override
+    public List<String> list() throws IOException {
+        List<String> keyList = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            HttpUrl.Builder urlBuilder = bucketUrl().addQueryParameter("list-type", "2");
+            if (continuationToken != null) {
+                urlBuilder.addQueryParameter("continuation-token", continuationToken);
+            }
+
+            Document document;
+            try (Response response = execute("GET", urlBuilder.build(), null, null);
+                 InputStream inputStream = body(response, bucket).byteStream()) {
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                document = factory.newDocumentBuilder().parse(inputStream);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Error reading the objects list", e);
+            }
+
+            NodeList keyNodeList = document.getElementsByTagName("Key");
+            for (int i = 0; i < keyNodeList.getLength(); i++) {
+                keyList.add(keyNodeList.item(i).getTextContent());
+            }
+            NodeList tokenNodeList = document.getElementsByTagName("NextContinuationToken");
+            NodeList truncatedNodeList = document.getElementsByTagName("IsTruncated");
+            boolean truncated = truncatedNodeList.getLength() > 0 && "true".equals(truncatedNodeList.item(0).getTextContent());
+            continuationToken = truncated && tokenNodeList.getLength() > 0 ? tokenNodeList.item(0).getTextContent() : null;
+        } while (continuationToken != null);
+        return keyList;
+    }
+
+    /**
+     * Returns the URL of the bucket.
+     *
+     * @return URL builder
+     */
+    private HttpUrl.Builder bucketUrl() {
+        return endpoint.newBuilder().addEncodedPathSegment(uriEncode(bucket));
+    }
+
+    /**
+     * Returns the URL of an object.
+     *
+     * @param key Key
+     * @return URL
+     */
+    private HttpUrl objectUrl(String key) {
+        return bucketUrl().addEncodedPathSegment(uriEncode(key)).build();
+    }
+
+    /**
+     * Execute a signed request.
+     *
+     * @param method HTTP method
+     * @param url URL
+     * @param body Body, null if none
+     * @param range Range header, null if none
+     * @return Response
+     * @throws IOException e
+     */
+    private Response execute(String method, HttpUrl url, RequestBody body, String range) throws IOException {
+        SortedMap<String, String> headerMap = new TreeMap<>();
+        headerMap.put("host", hostHeader(url));
+        headerMap.put("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+        headerMap.put("x-amz-date", DATE_TIME_FORMATTER.format(Instant.now()));
+        if (range != null) {
+            headerMap.put("range", range);
+        }
+
+        Request.Builder requestBuilder = new Request.Builder()
+                .url(url)
+                .method(method, body)
+                .header("Authorization", authorization(method, url, headerMap));
+        for (Map.Entry<String, String> header : headerMap.entrySet()) {
+            if (!header.getKey().equals("host")) {
+                requestBuilder.header(header.getKey(), header.getValue());
+            }
+        }
+        return client.newCall(requestBuilder.build()).execute();
+    }
+
+    /**
+     * Compute the authorization header of a request.
+     *
+     * @param method HTTP method
+     * @param url URL
+     * @param headerMap Signed headers, with lowercase names, including host, x-amz-date and x-amz-content-sha256
+     * @return Authorization header
+     */
+    String authorization(String method, HttpUrl url, SortedMap<String, String> headerMap) {
+        String dateTime = headerMap.get("x-amz-date");
+        String date = dateTime.substring(0, 8);
+
+        // Canonical request
+        SortedMap<String, String> queryMap = new TreeMap<>();
+        for (String name : url.queryParameterNames()) {
+            String value = url.queryParameter(name);
+            queryMap.put(uriEncode(name), uriEncode(value == null ? "" : value));
+        }
+        StringBuilder canonicalQuery = new StringBuilder();
+        for (Map.Entry<String, String> parameter : queryMap.entrySet()) {
+            if (canonicalQuery.length() > 0) {
+                canonicalQuery.append('&');
+            }
+            canonicalQuery.append(parameter.getKey()).append('=').append(parameter.getValue());
+        }
+        StringBuilder canonicalHeaders = new StringBuilder();
+        for (Map.Entry<String, String> header : headerMap.entrySet()) {
+            canonicalHeaders.append(header.getKey()).append(':').append(header.getValue().trim()).append('\n');
+        }
+        String signedHeaders = String.join(";", headerMap.keySet());
+        String canonicalRequest = method + "\n"
+                + url.encodedPath() + "\n"
+                + canonicalQuery + "\n"
+                + canonicalHeaders + "\n"
+                + signedHeaders + "\n"
+                + headerMap.get("x-amz-content-sha256");
+
+        // String to sign
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n"
+                + dateTime + "\n"
+                + scope + "\n"
+                + Hashing.sha256().hashString(canonicalRequest, StandardCharsets.UTF_8);
+
+        // Signature
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = Hashing.hmacSha256(signingKey).hashString(stringToSign, StandardCharsets.UTF_8).toString();
+
+        return "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                + ", SignedHeaders=" + signedHeaders
+                + ", Signature=" + signature;
+    }
+
+    /**
+     * Compute a HMAC-SHA256.
+     *
+     * @param key Key
+     * @param data Data
+     * @return HMAC
+     */
+    private static byte[] hmac(byte[] key, String data) {
+        return Hashing.hmacSha256(key).hashString(data, StandardCharsets.UTF_8).asBytes();
+    }
+
+    /**
+     * Returns the host header sent with a request.
+     *
+     * @param url URL
+     * @return Host header
+     */
+    private static String hostHeader(HttpUrl url) {
+        if (url.port() == HttpUrl.defaultPort(url.scheme())) {
+            return url.host();
+        }
+        return url.host() + ":" + url.port();
+    }
+
+    /**
+     * Encode a value in an URI, as expected by the signature.
+     *
+     * @param value Value
+     * @return Encoded value
+     */
+    private static String uriEncode(String value) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '_' || c == '.' || c == '~') {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the body of a successful response.
+     *
+     * @param response Response
+     * @param key Requested key
+     * @return Body
+     * @throws IOException e
+     */
+    private static ResponseBody body(Response response, String key) throws IOException {
+        try {
+            checkResponse(response, key);
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+        return response.body();
+    }
+
+    /**
+     * Check the status of a response.
+     *
+     * @param response Response
+     * @param key Requested key
+     * @throws IOException e
+     */
+    private static void checkResponse(Response response, String key) throws IOException {
+        if (response.code() == 404) {
+            throw new NoSuchFileException(key);
+        }
+        if (!response.isSuccessful()) {
+            throw new IOException("Object store error " + response.code() + " on " + key);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.sismics.docs.core.util.storage;
+
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.util.DirectoryUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Storage of the files in two levels of subdirectories named after the first characters of the key,
+ * so a single directory does not hold millions of entries.
+ * The files of a flat storage directory are still found, and moved on their next write.
+ *
+ * @author bgamard
+ */
+public class ShardedStorageBackend extends FileSystemStorageBackend {
+    /**
+     * Number of characters of the key used in each subdirectory name.
+     */
+    private static final int SHARD_LENGTH = 2;
+
+    /**
+     * Storage backend in the storage directory.
+     */
+    public ShardedStorageBackend() {
+        this(DirectoryUtil.getStorageDirectory());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param directory Storage directory
+     */
+    public ShardedStorageBackend(Path directory) {
+        super(directory);
+    }
+
+    @Override
+    public boolean accept() {
+        return "sharded".equals(System.getenv(Constants.STORAGE_BACKEND_ENV));
+    }
+
+    @Override
+    protected Path resolve(String key) {
+        if (key.length() < SHARD_LENGTH * 2) {
+            return directory.resolve(key);
+        }
+        return directory
+                .resolve(key.substring(0, SHARD_LENGTH))
+                .resolve(key.substring(SHARD_LENGTH, SHARD_LENGTH * 2))
+                .resolve(key);
+    }
+
+    @Override
+    protected Path find(String key) {
+        Path storedFile = resolve(key);
+        if (!Files.exists(storedFile)) {
+            Path flatFile = directory.resolve(key);
+            if (Files.exists(flatFile)) {
+                return flatFile;
+            }
+        }
+        return storedFile;
+    }
+
+    @Override
+    public void put(String key, Path file) throws IOException {
+        super.put(key, file);
+        if (!resolve(key).equals(directory.resolve(key))) {
+            Files.deleteIfExists(directory.resolve(key));
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+        Files.deleteIfExists(directory.resolve(key));
+    }
+}
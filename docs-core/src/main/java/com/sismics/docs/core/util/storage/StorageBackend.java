@@ -0,0 +1,117 @@
+package com.sismics.docs.core.util.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Storage of the files content.
+ * The content is stored as is, already encrypted if needed.
+ * The keys are the file IDs, suffixed with "_web" and "_thumb" for the generated images.
+ *
+ * @author bgamard
+ */
+public interface StorageBackend {
+    /**
+     * Return true if this storage backend is configured.
+     *
+     * @return True if able to start
+     */
+    boolean accept();
+
+    /**
+     * Start the storage backend.
+     *
+     * @throws Exception e
+     */
+    void startUp() throws Exception;
+
+    /**
+     * Store a file, replacing the existing content.
+     * The file is moved into the storage and does not exist anymore after this call.
+     *
+     * @param key Key
+     * @param file File to store
+     * @throws IOException e
+     */
+    void put(String key, Path file) throws IOException;
+
+    /**
+     * Read a stored content.
+     *
+     * @param key Key
+     * @return Content
+     * @throws java.nio.file.NoSuchFileException If nothing is stored under this key
+     * @throws IOException e
+     */
+    InputStream get(String key) throws IOException;
+
+    /**
+     * Read a range of a stored content.
+     *
+     * @param key Key
+     * @param offset Offset of the first byte
+     * @param length Number of bytes to read, less bytes are returned at the end of the content
+     * @return Content
+     * @throws java.nio.file.NoSuchFileException If nothing is stored under this key
+     * @throws IOException e
+     */
+    InputStream get(String key, long offset, long length) throws IOException;
+
+    /**
+     * Open a stored content for reading at any position.
+     *
+     * @param key Key
+     * @return Read-only channel
+     * @throws java.nio.file.NoSuchFileException If nothing is stored under this key
+     * @throws IOException e
+     */
+    SeekableByteChannel open(String key) throws IOException;
+
+    /**
+     * Return true if a content is stored under a key.
+     *
+     * @param key Key
+     * @return True if it exists
+     * @throws IOException e
+     */
+    boolean exists(String key) throws IOException;
+
+    /**
+     * Returns the size of a stored content.
+     *
+     * @param key Key
+     * @return Size in bytes
+     * @throws java.nio.file.NoSuchFileException If nothing is stored under this key
+     * @throws IOException e
+     */
+    long size(String key) throws IOException;
+
+    /**
+     * Returns the last modification time of a stored content.
+     *
+     * @param key Key
+     * @return Time in milliseconds since the epoch
+     * @throws java.nio.file.NoSuchFileException If nothing is stored under this key
+     * @throws IOException e
+     */
+    long lastModified(String key) throws IOException;
+
+    /**
+     * Delete a stored content, if it exists.
+     *
+     * @param key Key
+     * @throws IOException e
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Returns all the stored keys.
+     *
+     * @return Keys
+     * @throws IOException e
+     */
+    List<String> list() throws IOException;
+}
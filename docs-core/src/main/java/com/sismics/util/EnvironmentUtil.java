@@ -94,6 +94,44 @@ public class EnvironmentUtil {
         return TEEDY_HOME;
     }
 
+    /**
+     * Returns a positive numeric setting from the environment.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Value if the environment variable is not set or invalid
+     * @return Setting value
+     */
+    public static int getEnvInt(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value != null && !value.isEmpty()) {
+            try {
+                return Math.max(Integer.parseInt(value), 1);
+            } catch (NumberFormatException e) {
+                // Use the default value
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns a positive or zero numeric setting from the environment.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Value if the environment variable is not set or invalid
+     * @return Setting value
+     */
+    public static long getEnvLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value != null && !value.isEmpty()) {
+            try {
+                return Math.max(Long.parseLong(value), 0L);
+            } catch (NumberFormatException e) {
+                // Use the default value
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Getter of webappContext.
      *
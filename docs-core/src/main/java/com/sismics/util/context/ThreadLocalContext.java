@@ -1,11 +1,13 @@
 package com.sismics.util.context;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.sismics.docs.core.model.context.AppContext;
 
 import jakarta.persistence.EntityManager;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Context associated to a user request, and stored in a ThreadLocal.
@@ -28,6 +30,11 @@ public class ThreadLocalContext {
      */
     private List<Object> asyncEventList = Lists.newArrayList();
 
+    /**
+     * Permissions checked during this transaction.
+     */
+    private Map<List<Object>, Boolean> permissionMap = Maps.newHashMap();
+
     /**
      * Private constructor.
      */
@@ -77,6 +84,34 @@ public class ThreadLocalContext {
      */
     public void setEntityManager(EntityManager entityManager) {
         this.entityManager = entityManager;
+        permissionMap.clear();
+    }
+
+    /**
+     * Returns a permission already checked during this transaction.
+     *
+     * @param key Permission key: source, permission and targets
+     * @return True if granted, false if denied, null if not checked yet
+     */
+    public Boolean getPermission(List<Object> key) {
+        return permissionMap.get(key);
+    }
+
+    /**
+     * Remember a permission for the rest of this transaction.
+     *
+     * @param key Permission key: source, permission and targets
+     * @param granted True if granted
+     */
+    public void putPermission(List<Object> key, boolean granted) {
+        permissionMap.put(key, granted);
+    }
+
+    /**
+     * Forget the permissions checked during this transaction.
+     */
+    public void clearPermissions() {
+        permissionMap.clear();
     }
 
     /**
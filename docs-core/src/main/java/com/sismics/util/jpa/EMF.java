@@ -3,6 +3,8 @@ package com.sismics.util.jpa;
 import com.google.common.base.Strings;
 import com.sismics.docs.core.util.DirectoryUtil;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.internal.util.config.ConfigurationHelper;
 import org.hibernate.service.ServiceRegistry;
 import org.slf4j.Logger;
@@ -53,7 +55,9 @@ public final class EMF {
             openHelper.open();
             
             emfInstance = Persistence.createEntityManagerFactory("transactions-optional", getEntityManagerProperties());
-            
+
+            // Close the connections used by the database update, once the entity manager has its own
+            StandardServiceRegistryBuilder.destroy(reg);
         } catch (Throwable t) {
             log.error("Error creating EMF", t);
         }
@@ -83,6 +87,14 @@ public final class EMF {
         if(databasePoolSize == null) {
             databasePoolSize = "10";
         }
+        String databasePoolProvider = System.getenv("DATABASE_POOL_PROVIDER");
+        String databasePoolMaxLifetime = System.getenv("DATABASE_POOL_MAX_LIFETIME");
+        String databasePoolConnectionTimeout = System.getenv("DATABASE_POOL_CONNECTION_TIMEOUT");
+        String databasePoolLeakDetection = System.getenv("DATABASE_POOL_LEAK_DETECTION");
+        String databaseStatementCacheSize = System.getenv("DATABASE_STATEMENT_CACHE_SIZE");
+        if (databaseStatementCacheSize == null) {
+            databaseStatementCacheSize = "256";
+        }
 
         log.info("Configuring EntityManager from environment parameters");
         Properties props = new Properties();
@@ -100,6 +112,10 @@ public final class EMF {
             props.put("hibernate.connection.url", databaseUrl);
             props.put("hibernate.connection.username", databaseUsername);
             props.put("hibernate.connection.password", databasePassword);
+
+            // Server-side prepared statements, kept by the driver on each pooled connection
+            props.put("hibernate.connection.prepareThreshold", "3");
+            props.put("hibernate.connection.preparedStatementCacheQueries", databaseStatementCacheSize);
         }
         props.put("hibernate.hbm2ddl.auto", "");
         props.put("hibernate.show_sql", "false");
@@ -109,6 +125,18 @@ public final class EMF {
         props.put("hibernate.connection.initial_pool_size", "1");
         props.put("hibernate.connection.pool_size", databasePoolSize);
         props.put("hibernate.connection.pool_validation_interval", "5");
+        if (!"hibernate".equals(databasePoolProvider)) {
+            props.put("hibernate.connection.provider_class", PooledConnectionProvider.class.getName());
+            if (!Strings.isNullOrEmpty(databasePoolMaxLifetime)) {
+                props.put(PooledConnectionProvider.MAX_LIFETIME, databasePoolMaxLifetime);
+            }
+            if (!Strings.isNullOrEmpty(databasePoolConnectionTimeout)) {
+                props.put(PooledConnectionProvider.CONNECTION_TIMEOUT, databasePoolConnectionTimeout);
+            }
+            if (!Strings.isNullOrEmpty(databasePoolLeakDetection)) {
+                props.put(PooledConnectionProvider.LEAK_DETECTION_THRESHOLD, databasePoolLeakDetection);
+            }
+        }
         return props;
     }
     
@@ -127,6 +155,23 @@ public final class EMF {
         return emfInstance;
     }
 
+    /**
+     * Returns the connection pool of the entity manager factory.
+     *
+     * @return Connection pool, null if the connections are not pooled by {@link PooledConnectionProvider}
+     */
+    public static PooledConnectionProvider getConnectionPool() {
+        if (emfInstance == null) {
+            return null;
+        }
+        ConnectionProvider connectionProvider = emfInstance.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(ConnectionProvider.class);
+        if (connectionProvider == null || !connectionProvider.isUnwrappableAs(PooledConnectionProvider.class)) {
+            return null;
+        }
+        return connectionProvider.unwrap(PooledConnectionProvider.class);
+    }
+
     public static boolean isDriverH2() {
         String driver = getDriver();
         return driver.contains("h2");
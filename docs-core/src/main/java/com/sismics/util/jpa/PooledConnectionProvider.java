@@ -0,0 +1,741 @@
+package com.sismics.util.jpa;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.internal.ConnectionProviderInitiator;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JDBC connection pool, replacing the Hibernate built-in pool which is not meant for production.
+ * Threads waiting for a connection are served in order, up to a timeout.
+ * Connections are replaced after a maximum lifetime, validated when they have been idle,
+ * reset to their initial state when returned, and connections kept too long by a thread are reported as leaks.
+ *
+ * @author bgamard
+ */
+public class PooledConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(PooledConnectionProvider.class);
+
+    /**
+     * Maximum lifetime of a connection in milliseconds.
+     */
+    public static final String MAX_LIFETIME = "hibernate.connection.max_lifetime";
+
+    /**
+     * Maximum time in milliseconds to wait for a connection.
+     */
+    public static final String CONNECTION_TIMEOUT = "hibernate.connection.connection_timeout";
+
+    /**
+     * Time in milliseconds after which a connection not returned is reported as a leak, 0 to disable.
+     */
+    public static final String LEAK_DETECTION_THRESHOLD = "hibernate.connection.leak_detection_threshold";
+
+    /**
+     * Idle time in milliseconds after which a connection is validated before use.
+     */
+    public static final String VALIDATION_INTERVAL = "hibernate.connection.validation_interval";
+
+    /**
+     * Settings consumed by the pool and not passed to the driver.
+     */
+    private static final String[] POOL_SETTINGS = { MAX_LIFETIME, CONNECTION_TIMEOUT, LEAK_DETECTION_THRESHOLD, VALIDATION_INTERVAL,
+            AvailableSettings.POOL_SIZE, "hibernate.connection.initial_pool_size", "hibernate.connection.pool_validation_interval",
+            AvailableSettings.AUTOCOMMIT };
+
+    /**
+     * Timeout in seconds of a connection validation.
+     */
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    /**
+     * Interval in milliseconds between two pool maintenances.
+     */
+    private static final long HOUSEKEEPING_INTERVAL_MILLIS = 10000;
+
+    /**
+     * JDBC driver.
+     */
+    private Driver driver;
+
+    /**
+     * JDBC URL.
+     */
+    private String url;
+
+    /**
+     * Driver connection properties.
+     */
+    private Properties connectionProperties;
+
+    /**
+     * Auto-commit mode of the connections.
+     */
+    private boolean autoCommit;
+
+    /**
+     * Maximum number of connections.
+     */
+    private int maxSize;
+
+    /**
+     * Number of connections kept open when idle.
+     */
+    private int minIdle;
+
+    /**
+     * Maximum lifetime of a connection in milliseconds.
+     */
+    private long maxLifetimeMillis;
+
+    /**
+     * Maximum time in milliseconds to wait for a connection.
+     */
+    private long connectionTimeoutMillis;
+
+    /**
+     * Time in milliseconds after which a connection not returned is reported as a leak, 0 if disabled.
+     */
+    private long leakDetectionThresholdMillis;
+
+    /**
+     * Idle time in milliseconds after which a connection is validated before use.
+     */
+    private long validationIntervalMillis;
+
+    /**
+     * Permits to use a connection, fair to serve the waiting threads in order.
+     */
+    private Semaphore permits;
+
+    /**
+     * Idle connections, the most recently used first.
+     */
+    private final LinkedBlockingDeque<PooledConnection> idleDeque = new LinkedBlockingDeque<>();
+
+    /**
+     * Connections in use.
+     */
+    private final Map<Connection, PooledConnection> activeMap = new ConcurrentHashMap<>();
+
+    /**
+     * Number of connections open or being opened, never above the maximum.
+     */
+    private final AtomicInteger totalCount = new AtomicInteger();
+
+    /**
+     * Number of threads waiting for a connection.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * Number of connections given.
+     */
+    private final AtomicLong acquireCount = new AtomicLong();
+
+    /**
+     * Total time in nanoseconds spent waiting for a connection.
+     */
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * Longest time in nanoseconds spent waiting for a connection.
+     */
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Number of connections not given before the timeout.
+     */
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * Number of connections opened.
+     */
+    private final AtomicLong createdCount = new AtomicLong();
+
+    /**
+     * Number of connections reported as leaks.
+     */
+    private final AtomicLong leakCount = new AtomicLong();
+
+    /**
+     * Executor of the pool maintenance.
+     */
+    private ScheduledExecutorService housekeeper;
+
+    @Override
+    public void configure(Map<String, Object> configurationValues) {
+        String driverClassName = (String) configurationValues.get(AvailableSettings.DRIVER);
+        url = (String) configurationValues.get(AvailableSettings.URL);
+        if (url == null) {
+            throw new HibernateException("No JDBC URL specified by " + AvailableSettings.URL);
+        }
+        try {
+            driver = (Driver) Class.forName(driverClassName).getConstructor().newInstance();
+        } catch (Exception e) {
+            throw new HibernateException("Unable to load the JDBC driver " + driverClassName, e);
+        }
+
+        connectionProperties = ConnectionProviderInitiator.getConnectionProperties(configurationValues);
+        for (String setting : POOL_SETTINGS) {
+            connectionProperties.remove(setting.substring("hibernate.connection.".length()));
+        }
+        autoCommit = ConfigurationHelper.getBoolean(AvailableSettings.AUTOCOMMIT, configurationValues, false);
+        maxSize = ConfigurationHelper.getInt(AvailableSettings.POOL_SIZE, configurationValues, 10);
+        minIdle = Math.min(ConfigurationHelper.getInt("hibernate.connection.initial_pool_size", configurationValues, 1), maxSize);
+        maxLifetimeMillis = ConfigurationHelper.getLong(MAX_LIFETIME, configurationValues, 30 * 60 * 1000);
+        connectionTimeoutMillis = ConfigurationHelper.getLong(CONNECTION_TIMEOUT, configurationValues, 30 * 1000);
+        leakDetectionThresholdMillis = ConfigurationHelper.getLong(LEAK_DETECTION_THRESHOLD, configurationValues, 0);
+        validationIntervalMillis = ConfigurationHelper.getLong(VALIDATION_INTERVAL, configurationValues, 30 * 1000);
+        permits = new Semaphore(maxSize, true);
+
+        try {
+            fillIdle(0);
+        } catch (SQLException e) {
+            throw new HibernateException("Unable to open the initial database connections", e);
+        }
+
+        long housekeepingInterval = Math.min(HOUSEKEEPING_INTERVAL_MILLIS, Math.max(maxLifetimeMillis / 4, 100));
+        if (leakDetectionThresholdMillis > 0) {
+            housekeepingInterval = Math.min(housekeepingInterval, Math.max(leakDetectionThresholdMillis / 2, 100));
+        }
+        housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("connection-pool-housekeeper-%d")
+                .setDaemon(true)
+                .build());
+        housekeeper.scheduleWithFixedDelay(this::houseKeep, housekeepingInterval, housekeepingInterval, TimeUnit.MILLISECONDS);
+        log.info("Connection pool started with {} connections maximum, {} idle minimum", maxSize, minIdle);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long startTime = System.nanoTime();
+        pendingCount.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(connectionTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            pendingCount.decrementAndGet();
+        }
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException("No database connection available after " + connectionTimeoutMillis + "ms ("
+                    + getActiveCount() + " active, " + getIdleCount() + " idle, " + getPendingCount() + " waiting)");
+        }
+
+        PooledConnection pooledConnection;
+        try {
+            pooledConnection = borrow();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        long waitNanos = System.nanoTime() - startTime;
+        acquireCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+        pooledConnection.borrowTime = System.currentTimeMillis();
+        pooledConnection.borrowStack = leakDetectionThresholdMillis > 0 ? new Exception("Connection acquired here") : null;
+        pooledConnection.leakReported = false;
+        activeMap.put(pooledConnection.proxy, pooledConnection);
+        return pooledConnection.proxy;
+    }
+
+    /**
+     * Take an idle connection still usable, or open a new one.
+     *
+     * @return Connection
+     * @throws SQLException e
+     */
+    private PooledConnection borrow() throws SQLException {
+        long deadline = System.currentTimeMillis() + connectionTimeoutMillis;
+        while (true) {
+            PooledConnection pooledConnection = idleDeque.pollFirst();
+            if (pooledConnection == null) {
+                if (reserve()) {
+                    return open();
+                }
+
+                // The pool is full, a connection being opened by the maintenance will be idle soon
+                try {
+                    pooledConnection = idleDeque.pollFirst(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection", e);
+                }
+                if (pooledConnection == null) {
+                    throw new SQLException("No database connection available after " + connectionTimeoutMillis + "ms");
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            if (pooledConnection.isExpired(now)) {
+                closeQuietly(pooledConnection);
+                continue;
+            }
+            if (now - pooledConnection.returnTime > validationIntervalMillis
+                    && !isValid(pooledConnection.connection)) {
+                log.warn("Closing an invalid database connection");
+                closeQuietly(pooledConnection);
+                continue;
+            }
+            return pooledConnection;
+        }
+    }
+
+    /**
+     * Reserve a place for a new connection.
+     *
+     * @return True if reserved, false if the pool is full
+     */
+    private boolean reserve() {
+        while (true) {
+            int count = totalCount.get();
+            if (count >= maxSize) {
+                return false;
+            }
+            if (totalCount.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        PooledConnection pooledConnection = activeMap.remove(connection);
+        if (pooledConnection == null) {
+            // Not from this pool, or the pool is stopped
+            connection.close();
+            return;
+        }
+
+        try {
+            if (pooledConnection.leakReported) {
+                log.info("Previously reported leaked connection returned after {}ms",
+                        System.currentTimeMillis() - pooledConnection.borrowTime);
+            }
+            pooledConnection.borrowStack = null;
+            if (pooledConnection.connection.isClosed() || pooledConnection.isExpired(System.currentTimeMillis())) {
+                closeQuietly(pooledConnection);
+            } else {
+                reset(pooledConnection);
+                pooledConnection.returnTime = System.currentTimeMillis();
+                idleDeque.offerFirst(pooledConnection);
+            }
+        } catch (SQLException e) {
+            log.warn("Closing a database connection in error", e);
+            closeQuietly(pooledConnection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Reset a returned connection to its initial state, so that nothing is left to the next borrower.
+     *
+     * @param pooledConnection Connection
+     * @throws SQLException e
+     */
+    private void reset(PooledConnection pooledConnection) throws SQLException {
+        Connection connection = pooledConnection.connection;
+        if (!connection.getAutoCommit()) {
+            // Discard a transaction left open
+            connection.rollback();
+        }
+        if (pooledConnection.readOnlyChanged) {
+            connection.setReadOnly(pooledConnection.initialReadOnly);
+        }
+        if (pooledConnection.isolationChanged) {
+            connection.setTransactionIsolation(pooledConnection.initialIsolation);
+        }
+        if (pooledConnection.catalogChanged) {
+            connection.setCatalog(pooledConnection.initialCatalog);
+        }
+        if (connection.getAutoCommit() != autoCommit) {
+            connection.setAutoCommit(autoCommit);
+        }
+        connection.clearWarnings();
+        pooledConnection.readOnlyChanged = false;
+        pooledConnection.isolationChanged = false;
+        pooledConnection.catalogChanged = false;
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType) || PooledConnectionProvider.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (isUnwrappableAs(unwrapType)) {
+            return (T) this;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    @Override
+    public void stop() {
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        PooledConnection pooledConnection;
+        while ((pooledConnection = idleDeque.pollFirst()) != null) {
+            closeQuietly(pooledConnection);
+        }
+        if (!activeMap.isEmpty()) {
+            log.warn("Connection pool stopped with {} connections still in use", activeMap.size());
+        }
+        activeMap.clear();
+        log.info("Connection pool stopped");
+    }
+
+    /**
+     * Pool maintenance: report the leaks, replace the expired idle connections and keep the minimum idle connections.
+     */
+    private void houseKeep() {
+        try {
+            long now = System.currentTimeMillis();
+            if (leakDetectionThresholdMillis > 0) {
+                for (PooledConnection pooledConnection : activeMap.values()) {
+                    Exception borrowStack = pooledConnection.borrowStack;
+                    if (!pooledConnection.leakReported && borrowStack != null
+                            && now - pooledConnection.borrowTime > leakDetectionThresholdMillis) {
+                        pooledConnection.leakReported = true;
+                        leakCount.incrementAndGet();
+                        log.warn("Connection leak detected, a connection is used for more than "
+                                + leakDetectionThresholdMillis + "ms", borrowStack);
+                    }
+                }
+            }
+
+            // The replacements are opened before the expired connections are closed if the pool is not full,
+            // an in-memory database is dropped with its last connection
+            List<PooledConnection> expiredList = new ArrayList<>();
+            for (PooledConnection pooledConnection : idleDeque) {
+                if (pooledConnection.isExpired(now) && idleDeque.remove(pooledConnection)) {
+                    expiredList.add(pooledConnection);
+                }
+            }
+            fillIdle(expiredList.size());
+            for (PooledConnection pooledConnection : expiredList) {
+                closeQuietly(pooledConnection);
+            }
+            fillIdle(0);
+        } catch (Throwable e) {
+            log.error("Error maintaining the connection pool", e);
+        }
+    }
+
+    /**
+     * Open connections until the minimum number of connections is reached.
+     *
+     * @param closingCount Number of connections about to be closed
+     * @throws SQLException e
+     */
+    private void fillIdle(int closingCount) throws SQLException {
+        while (totalCount.get() - closingCount < minIdle && reserve()) {
+            PooledConnection pooledConnection = open();
+            pooledConnection.returnTime = System.currentTimeMillis();
+            idleDeque.offerLast(pooledConnection);
+        }
+    }
+
+    /**
+     * Open a new connection in a place reserved.
+     *
+     * @return Connection
+     * @throws SQLException e
+     */
+    private PooledConnection open() throws SQLException {
+        Connection connection = null;
+        try {
+            connection = driver.connect(url, connectionProperties);
+            if (connection == null) {
+                throw new SQLException("The JDBC driver does not accept the URL " + url);
+            }
+            connection.setAutoCommit(autoCommit);
+
+            // Spread the expiration so that the connections are not replaced all at once
+            long lifetime = maxLifetimeMillis - ThreadLocalRandom.current().nextLong(maxLifetimeMillis / 40 + 1);
+            PooledConnection pooledConnection = new PooledConnection(connection, System.currentTimeMillis() + lifetime);
+            createdCount.incrementAndGet();
+            return pooledConnection;
+        } catch (SQLException | RuntimeException e) {
+            totalCount.decrementAndGet();
+            if (connection != null) {
+                connection.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if a connection is still usable.
+     *
+     * @param connection Connection
+     * @return True if usable
+     */
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Close a connection, ignoring the errors.
+     *
+     * @param pooledConnection Connection
+     */
+    private void closeQuietly(PooledConnection pooledConnection) {
+        totalCount.decrementAndGet();
+        try {
+            pooledConnection.connection.close();
+        } catch (SQLException e) {
+            log.warn("Error closing a database connection", e);
+        }
+    }
+
+    /**
+     * Returns the number of connections in use.
+     *
+     * @return Number of connections in use
+     */
+    public int getActiveCount() {
+        return activeMap.size();
+    }
+
+    /**
+     * Returns the number of idle connections.
+     *
+     * @return Number of idle connections
+     */
+    public int getIdleCount() {
+        return idleDeque.size();
+    }
+
+    /**
+     * Returns the number of threads waiting for a connection.
+     *
+     * @return Number of waiting threads
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Returns the maximum number of connections.
+     *
+     * @return Maximum number of connections
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of connections given.
+     *
+     * @return Number of connections given
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * Returns the average time spent waiting for a connection.
+     *
+     * @return Average wait time in milliseconds
+     */
+    public long getAverageWaitMillis() {
+        long count = acquireCount.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get() / count);
+    }
+
+    /**
+     * Returns the longest time spent waiting for a connection.
+     *
+     * @return Maximum wait time in milliseconds
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    /**
+     * Returns the number of connections not given before the timeout.
+     *
+     * @return Number of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Returns the number of connections opened.
+     *
+     * @return Number of connections opened
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * Returns the number of connections reported as leaks.
+     *
+     * @return Number of leaks
+     */
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * Connection of the pool.
+     */
+    private static class PooledConnection {
+        /**
+         * JDBC connection.
+         */
+        private final Connection connection;
+
+        /**
+         * Connection given to the borrowers, recording the changes of state.
+         */
+        private final Connection proxy;
+
+        /**
+         * Time after which the connection is replaced.
+         */
+        private final long expirationTime;
+
+        /**
+         * Initial read-only mode.
+         */
+        private final boolean initialReadOnly;
+
+        /**
+         * Initial transaction isolation level.
+         */
+        private final int initialIsolation;
+
+        /**
+         * Initial catalog.
+         */
+        private final String initialCatalog;
+
+        /**
+         * True if the read-only mode has been changed by the borrower.
+         */
+        private boolean readOnlyChanged;
+
+        /**
+         * True if the transaction isolation level has been changed by the borrower.
+         */
+        private boolean isolationChanged;
+
+        /**
+         * True if the catalog has been changed by the borrower.
+         */
+        private boolean catalogChanged;
+
+        /**
+         * Time of the last return to the pool.
+         */
+        private volatile long returnTime;
+
+        /**
+         * Time of the last borrow from the pool.
+         */
+        private volatile long borrowTime;
+
+        /**
+         * Location of the last borrow, if the leak detection is enabled.
+         */
+        private volatile Exception borrowStack;
+
+        /**
+         * True if the current borrow has been reported as a leak.
+         */
+        private volatile boolean leakReported;
+
+        PooledConnection(Connection connection, long expirationTime) throws SQLException {
+            this.connection = connection;
+            this.expirationTime = expirationTime;
+            this.initialReadOnly = connection.isReadOnly();
+            this.initialIsolation = connection.getTransactionIsolation();
+            this.initialCatalog = connection.getCatalog();
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "setReadOnly":
+                                readOnlyChanged = true;
+                                break;
+                            case "setTransactionIsolation":
+                                isolationChanged = true;
+                                break;
+                            case "setCatalog":
+                                catalogChanged = true;
+                                break;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+
+        /**
+         * Returns true if the connection has reached its maximum lifetime.
+         *
+         * @param now Current time
+         * @return True if expired
+         */
+        boolean isExpired(long now) {
+            return now >= expirationTime;
+        }
+    }
+}
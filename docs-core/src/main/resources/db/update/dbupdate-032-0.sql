@@ -0,0 +1,11 @@
+-- DBUPDATE-032-0.SQL
+
+-- Ancestors of each group, the group itself included with a depth of 0
+create memory table T_GROUP_CLOSURE ( GCL_IDANCESTOR_C varchar(36) not null, GCL_IDDESCENDANT_C varchar(36) not null, GCL_DEPTH_N int not null, primary key (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C) );
+create index IDX_GCL_IDDESCENDANT_C on T_GROUP_CLOSURE (GCL_IDDESCENDANT_C);
+
+-- Fill it from the existing hierarchy at any depth, the depth is bounded by the number of groups in case of a cycle
+insert into T_GROUP_CLOSURE (GCL_IDANCESTOR_C, GCL_IDDESCENDANT_C, GCL_DEPTH_N) with recursive gc (ANCESTOR_ID, DESCENDANT_ID, DEPTH) as (select GRP_ID_C, GRP_ID_C, 0 from T_GROUP where GRP_DELETEDATE_D is null union all select gc.ANCESTOR_ID, g.GRP_ID_C, gc.DEPTH + 1 from gc join T_GROUP g on g.GRP_IDPARENT_C = gc.DESCENDANT_ID and g.GRP_DELETEDATE_D is null where gc.DEPTH < (select count(*) from T_GROUP)) select ANCESTOR_ID, DESCENDANT_ID, min(DEPTH) from gc group by ANCESTOR_ID, DESCENDANT_ID;
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '32' where CFG_ID_C = 'DB_VERSION';
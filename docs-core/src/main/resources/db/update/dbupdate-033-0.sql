@@ -0,0 +1,9 @@
+-- DBUPDATE-033-0.SQL
+
+-- Effective permissions of each ACL source, with the permissions inherited by the documents from their tags
+create cached table T_DOCUMENT_EFFECTIVE_ACL ( DEA_IDSOURCE_C varchar(36) not null, DEA_PERM_C varchar(30) not null, DEA_IDTARGET_C varchar(36) not null, primary key (DEA_IDSOURCE_C, DEA_PERM_C, DEA_IDTARGET_C) );
+create index IDX_DEA_IDTARGET_C on T_DOCUMENT_EFFECTIVE_ACL (DEA_IDTARGET_C);
+insert into T_DOCUMENT_EFFECTIVE_ACL (DEA_IDSOURCE_C, DEA_PERM_C, DEA_IDTARGET_C) select a.ACL_SOURCEID_C, a.ACL_PERM_C, a.ACL_TARGETID_C from T_ACL a where a.ACL_DELETEDATE_D is null union select dt.DOT_IDDOCUMENT_C, a.ACL_PERM_C, a.ACL_TARGETID_C from T_DOCUMENT_TAG dt join T_DOCUMENT d on d.DOC_ID_C = dt.DOT_IDDOCUMENT_C and d.DOC_DELETEDATE_D is null join T_ACL a on a.ACL_SOURCEID_C = dt.DOT_IDTAG_C and a.ACL_DELETEDATE_D is null where dt.DOT_DELETEDATE_D is null;
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '33' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,8 @@
+-- DBUPDATE-035-0.SQL
+
+-- Compressed contents of the files, out of T_FILE so they are only read when needed
+create cached table T_FILE_CONTENT ( FCT_IDFILE_C varchar(36) not null, FCT_CONTENT_B longvarbinary not null, primary key (FCT_IDFILE_C) );
+alter table T_FILE_CONTENT add constraint FK_FCT_IDFILE_C foreign key (FCT_IDFILE_C) references T_FILE (FIL_ID_C) on delete restrict on update restrict;
+
+-- Update the database version
+update T_CONFIG set CFG_VALUE_C = '35' where CFG_ID_C = 'DB_VERSION';
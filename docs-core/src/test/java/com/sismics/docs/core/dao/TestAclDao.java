@@ -0,0 +1,181 @@
+package com.sismics.docs.core.dao;
+
+import com.google.common.collect.Sets;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.Tag;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.context.ThreadLocalContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import jakarta.persistence.Query;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class TestAclDao extends BaseTransactionalTest {
+
+    @Test
+    public void documentAclTest() throws Exception {
+        User user = createUser("documentAclTest");
+        Document document = createDocument(user);
+        Assert.assertTrue(getEffectiveTargets(document.getId(), PermType.READ).isEmpty());
+
+        // The ACLs of a document are effective as soon as they are added, and until they are removed
+        AclDao aclDao = new AclDao();
+        createAcl(document.getId(), PermType.READ, user);
+        Assert.assertEquals(Collections.singletonList(user.getId()), getEffectiveTargets(document.getId(), PermType.READ));
+        Assert.assertTrue(getEffectiveTargets(document.getId(), PermType.WRITE).isEmpty());
+        Assert.assertTrue(aclDao.checkPermission(document.getId(), PermType.READ, Collections.singletonList(user.getId())));
+
+        aclDao.delete(document.getId(), PermType.READ, user.getId(), user.getId(), AclType.USER);
+        Assert.assertTrue(getEffectiveTargets(document.getId(), PermType.READ).isEmpty());
+        Assert.assertFalse(aclDao.checkPermission(document.getId(), PermType.READ, Collections.singletonList(user.getId())));
+    }
+
+    @Test
+    public void documentTagTest() throws Exception {
+        User user = createUser("documentTagTest");
+        User tagUser = createUser("documentTagTestTag");
+        Document document = createDocument(user);
+        createAcl(document.getId(), PermType.READ, user);
+        Tag tag = createTag(user);
+        createAcl(tag.getId(), PermType.READ, tagUser);
+
+        // A document inherits the ACLs of its tags while it is tagged
+        TagDao tagDao = new TagDao();
+        tagDao.updateTagList(document.getId(), Sets.newHashSet(tag.getId()));
+        Assert.assertEquals(Sets.newHashSet(user.getId(), tagUser.getId()),
+                Sets.newHashSet(getEffectiveTargets(document.getId(), PermType.READ)));
+
+        tagDao.updateTagList(document.getId(), Collections.emptySet());
+        Assert.assertEquals(Collections.singletonList(user.getId()), getEffectiveTargets(document.getId(), PermType.READ));
+        Assert.assertEquals(Collections.singletonList(tagUser.getId()), getEffectiveTargets(tag.getId(), PermType.READ));
+    }
+
+    @Test
+    public void tagAclTest() throws Exception {
+        User user = createUser("tagAclTest");
+        User tagUser = createUser("tagAclTestTag");
+        Document document = createDocument(user);
+        Tag tag = createTag(user);
+        new TagDao().updateTagList(document.getId(), Sets.newHashSet(tag.getId()));
+        Assert.assertTrue(getEffectiveTargets(document.getId(), PermType.WRITE).isEmpty());
+
+        // The ACLs added to a tag are given to the tagged documents, and taken back when removed
+        createAcl(tag.getId(), PermType.WRITE, tagUser);
+        Assert.assertEquals(Collections.singletonList(tagUser.getId()), getEffectiveTargets(document.getId(), PermType.WRITE));
+
+        new AclDao().delete(tag.getId(), PermType.WRITE, tagUser.getId(), user.getId(), AclType.USER);
+        Assert.assertTrue(getEffectiveTargets(document.getId(), PermType.WRITE).isEmpty());
+        Assert.assertTrue(getEffectiveTargets(tag.getId(), PermType.WRITE).isEmpty());
+    }
+
+    @Test
+    public void tagParentTest() throws Exception {
+        User user = createUser("tagParentTest");
+        User parentUser = createUser("tagParentTestParent");
+        User childUser = createUser("tagParentTestChild");
+        Document document = createDocument(user);
+        Tag parentTag = createTag(user);
+        createAcl(parentTag.getId(), PermType.READ, parentUser);
+        Tag childTag = createTag(user);
+        createAcl(childTag.getId(), PermType.READ, childUser);
+        new TagDao().updateTagList(document.getId(), Sets.newHashSet(childTag.getId()));
+
+        // Only the ACLs of the tags directly on a document are inherited, the parent tags don't change them
+        childTag.setParentId(parentTag.getId());
+        new TagDao().update(childTag, user.getId());
+        Assert.assertEquals(Collections.singletonList(childUser.getId()), getEffectiveTargets(document.getId(), PermType.READ));
+        Assert.assertEquals(Collections.singletonList(childUser.getId()), getEffectiveTargets(childTag.getId(), PermType.READ));
+        Assert.assertEquals(Collections.singletonList(parentUser.getId()), getEffectiveTargets(parentTag.getId(), PermType.READ));
+
+        childTag.setParentId(null);
+        new TagDao().update(childTag, user.getId());
+        Assert.assertEquals(Collections.singletonList(childUser.getId()), getEffectiveTargets(document.getId(), PermType.READ));
+    }
+
+    @Test
+    public void deleteDocumentTest() throws Exception {
+        User user = createUser("deleteDocumentTest");
+        User tagUser = createUser("deleteDocumentTestTag");
+        Document document = createDocument(user);
+        createAcl(document.getId(), PermType.READ, user);
+        Tag tag = createTag(user);
+        createAcl(tag.getId(), PermType.READ, tagUser);
+        new TagDao().updateTagList(document.getId(), Sets.newHashSet(tag.getId()));
+        Assert.assertEquals(2, getEffectiveTargets(document.getId(), PermType.READ).size());
+
+        // A deleted document has no effective permission left, its tags keep theirs
+        new DocumentDao().delete(document.getId(), user.getId());
+        Assert.assertTrue(getEffectiveTargets(document.getId(), PermType.READ).isEmpty());
+        Assert.assertEquals(Collections.singletonList(tagUser.getId()), getEffectiveTargets(tag.getId(), PermType.READ));
+    }
+
+    /**
+     * Create a document.
+     *
+     * @param user Creator
+     * @return Document
+     */
+    private Document createDocument(User user) {
+        Document document = new Document();
+        document.setUserId(user.getId());
+        document.setLanguage("eng");
+        document.setTitle("Effective ACL");
+        document.setCreateDate(new Date());
+        new DocumentDao().create(document, user.getId());
+        return document;
+    }
+
+    /**
+     * Create a tag.
+     *
+     * @param user Creator
+     * @return Tag
+     */
+    private Tag createTag(User user) {
+        Tag tag = new Tag();
+        tag.setName("tag" + System.nanoTime());
+        tag.setColor("#ff0000");
+        tag.setUserId(user.getId());
+        new TagDao().create(tag, user.getId());
+        return tag;
+    }
+
+    /**
+     * Give a permission on a source to a user.
+     *
+     * @param sourceId Source ID
+     * @param perm Permission
+     * @param user User
+     */
+    private void createAcl(String sourceId, PermType perm, User user) {
+        Acl acl = new Acl();
+        acl.setPerm(perm);
+        acl.setType(AclType.USER);
+        acl.setSourceId(sourceId);
+        acl.setTargetId(user.getId());
+        new AclDao().create(acl, user.getId());
+    }
+
+    /**
+     * Returns the targets given a permission on a source in T_DOCUMENT_EFFECTIVE_ACL.
+     *
+     * @param sourceId Source ID
+     * @param perm Permission
+     * @return Target IDs
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> getEffectiveTargets(String sourceId, PermType perm) {
+        Query q = ThreadLocalContext.get().getEntityManager().createNativeQuery("select DEA_IDTARGET_C from T_DOCUMENT_EFFECTIVE_ACL" +
+                " where DEA_IDSOURCE_C = :sourceId and DEA_PERM_C = :perm");
+        q.setParameter("sourceId", sourceId);
+        q.setParameter("perm", perm.name());
+        return q.getResultList();
+    }
+}
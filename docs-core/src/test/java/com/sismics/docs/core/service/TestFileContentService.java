@@ -0,0 +1,42 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.base.Strings;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.FileContentDao;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.FileContent;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.context.ThreadLocalContext;
+import jakarta.persistence.EntityManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestFileContentService extends BaseTransactionalTest {
+
+    @Test
+    public void moveLegacyContentTest() throws Exception {
+        User user = createUser("moveLegacyContentTest");
+        File file = createFile(user, FILE_JPG_SIZE);
+
+        // Content stored in the file table before the content table existed
+        String content = Strings.repeat("Apollo 11 portrait of Neil Armstrong. ", 1000);
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.createNativeQuery("update T_FILE set FIL_CONTENT_C = :content where FIL_ID_C = :id")
+                .setParameter("content", content)
+                .setParameter("id", file.getId())
+                .executeUpdate();
+        FileContentDao fileContentDao = new FileContentDao();
+        Assert.assertEquals(content, fileContentDao.getContent(file.getId()));
+
+        // The content is moved to the content table, compressed
+        new FileContentService().runOneIteration();
+        Assert.assertEquals(0, fileContentDao.moveLegacyContents(100));
+        Assert.assertEquals(content, fileContentDao.getContent(file.getId()));
+        FileContent fileContent = em.find(FileContent.class, file.getId());
+        Assert.assertTrue(fileContent.getCompressedContent().length < content.length() / 10);
+
+        // Remove the content
+        fileContentDao.update(file.getId(), null);
+        Assert.assertNull(fileContentDao.getContent(file.getId()));
+    }
+}
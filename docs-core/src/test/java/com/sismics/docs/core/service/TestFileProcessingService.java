@@ -0,0 +1,173 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.collect.Lists;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test of the file processing service.
+ *
+ * @author bgamard
+ */
+public class TestFileProcessingService {
+    /**
+     * Service under test.
+     */
+    private FileProcessingService fileProcessingService;
+
+    @After
+    public void tearDown() {
+        if (fileProcessingService != null) {
+            fileProcessingService.stopAsync().awaitTerminated();
+        }
+    }
+
+    @Test
+    public void priorityOrderTest() throws Exception {
+        fileProcessingService = start(1, 10);
+        CountDownLatch blockerLatch = block();
+
+        // Waiting files are processed by priority, then in submission order
+        List<String> processedList = Collections.synchronizedList(Lists.newArrayList());
+        CountDownLatch processedLatch = new CountDownLatch(5);
+        for (String name : Lists.newArrayList("bulk1", "interactive1", "bulk2", "interactive2", "bulk3")) {
+            FileProcessingPriority priority = name.startsWith("bulk") ? FileProcessingPriority.BULK : FileProcessingPriority.INTERACTIVE;
+            fileProcessingService.submit(priority, () -> {
+                processedList.add(name);
+                processedLatch.countDown();
+            });
+        }
+        Assert.assertEquals(5, fileProcessingService.getQueuedCount());
+        Assert.assertEquals(2, fileProcessingService.getQueuedCount(FileProcessingPriority.INTERACTIVE));
+        Assert.assertEquals(3, fileProcessingService.getQueuedCount(FileProcessingPriority.BULK));
+
+        blockerLatch.countDown();
+        Assert.assertTrue(processedLatch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Lists.newArrayList("interactive1", "interactive2", "bulk1", "bulk2", "bulk3"), processedList);
+    }
+
+    @Test
+    public void queueBoundTest() throws Exception {
+        fileProcessingService = start(1, 5);
+        CountDownLatch blockerLatch = block();
+
+        // The bulk files cannot take the slot kept for the files added by users
+        CountDownLatch processedLatch = new CountDownLatch(5);
+        for (int i = 0; i < 4; i++) {
+            fileProcessingService.submit(FileProcessingPriority.BULK, processedLatch::countDown);
+        }
+        Assert.assertFalse(fileProcessingService.hasCapacity(FileProcessingPriority.BULK));
+        Assert.assertEquals(1, fileProcessingService.getFreeSlotCount(FileProcessingPriority.INTERACTIVE));
+        try {
+            fileProcessingService.submit(FileProcessingPriority.BULK, processedLatch::countDown);
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // OK
+        }
+
+        // The files added by users are rejected once the queue is full
+        fileProcessingService.submit(FileProcessingPriority.INTERACTIVE, processedLatch::countDown);
+        Assert.assertFalse(fileProcessingService.hasCapacity(FileProcessingPriority.INTERACTIVE));
+        try {
+            fileProcessingService.submit(FileProcessingPriority.INTERACTIVE, processedLatch::countDown);
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // OK
+        }
+        Assert.assertEquals(5, fileProcessingService.getQueuedCount());
+
+        // The slots are freed as the files are processed
+        blockerLatch.countDown();
+        Assert.assertTrue(processedLatch.await(10, TimeUnit.SECONDS));
+        fileProcessingService.stopAsync().awaitTerminated();
+        Assert.assertEquals(0, fileProcessingService.getQueuedCount());
+        Assert.assertEquals(4, fileProcessingService.getFreeSlotCount(FileProcessingPriority.BULK));
+        Assert.assertEquals(5, fileProcessingService.getFreeSlotCount(FileProcessingPriority.INTERACTIVE));
+        Assert.assertEquals(6, fileProcessingService.getCompletedCount());
+    }
+
+    @Test
+    public void stageTest() throws Exception {
+        fileProcessingService = start(2, 10);
+
+        // A file waits for the stage it enters to have a free place, the other stages are not limited by it
+        CountDownLatch enteredLatch = new CountDownLatch(1);
+        CountDownLatch stageLatch = new CountDownLatch(1);
+        AtomicBoolean secondEntered = new AtomicBoolean();
+        CountDownLatch processedLatch = new CountDownLatch(2);
+        fileProcessingService.submit(FileProcessingPriority.INTERACTIVE, () -> {
+            try {
+                fileProcessingService.runStage(FileProcessingService.Stage.THUMBNAIL, () -> {
+                    enteredLatch.countDown();
+                    return stageLatch.await(10, TimeUnit.SECONDS);
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            processedLatch.countDown();
+        });
+        Assert.assertTrue(enteredLatch.await(10, TimeUnit.SECONDS));
+        fileProcessingService.submit(FileProcessingPriority.INTERACTIVE, () -> {
+            try {
+                fileProcessingService.runStage(FileProcessingService.Stage.THUMBNAIL, () -> {
+                    secondEntered.set(true);
+                    return null;
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            processedLatch.countDown();
+        });
+
+        Assert.assertEquals("extracted", fileProcessingService.runStage(FileProcessingService.Stage.EXTRACTION, () -> "extracted"));
+        Thread.sleep(200);
+        Assert.assertFalse(secondEntered.get());
+
+        stageLatch.countDown();
+        Assert.assertTrue(processedLatch.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(secondEntered.get());
+    }
+
+    /**
+     * Start a file processing service with one queue slot kept for the users, one thumbnail and one extraction at a time.
+     *
+     * @param threadCount Number of files processed in parallel
+     * @param queueSize Maximum number of files waiting to be processed
+     * @return File processing service
+     */
+    private FileProcessingService start(int threadCount, int queueSize) {
+        FileProcessingService service = new FileProcessingService(threadCount, queueSize, 1, 1, 1, false);
+        service.startAsync().awaitRunning();
+        return service;
+    }
+
+    /**
+     * Occupy the single processing thread until the returned latch is released.
+     *
+     * @return Latch releasing the processing thread
+     * @throws Exception e
+     */
+    private CountDownLatch block() throws Exception {
+        CountDownLatch startedLatch = new CountDownLatch(1);
+        CountDownLatch blockerLatch = new CountDownLatch(1);
+        fileProcessingService.submit(FileProcessingPriority.INTERACTIVE, () -> {
+            startedLatch.countDown();
+            try {
+                blockerLatch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assert.assertTrue(startedLatch.await(10, TimeUnit.SECONDS));
+        return blockerLatch;
+    }
+}
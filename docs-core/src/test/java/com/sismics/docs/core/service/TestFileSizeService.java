@@ -2,11 +2,15 @@ package com.sismics.docs.core.service;
 
 import com.sismics.docs.BaseTransactionalTest;
 import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.context.ThreadLocalContext;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.List;
+
 public class TestFileSizeService extends BaseTransactionalTest {
 
     @Test
@@ -16,7 +20,27 @@ public class TestFileSizeService extends BaseTransactionalTest {
         FileDao fileDao = new FileDao();
         File file = createFile(user, File.UNKNOWN_SIZE);
         FileSizeService fileSizeService = new FileSizeService();
-        fileSizeService.processFile(file);
+        List<String> fileIdList = fileSizeService.processBatch("");
+        Assert.assertTrue(fileIdList.contains(file.getId()));
+        ThreadLocalContext.get().getEntityManager().clear();
+        Assert.assertEquals(fileDao.getFile(file.getId()).getSize(), Long.valueOf(FILE_JPG_SIZE));
+        Assert.assertEquals(0, fileDao.countFilesWithUnknownSize());
+    }
+
+    @Test
+    public void processMissingFileTest() throws Exception {
+        User user = createUser("processMissingFileTest");
+
+        // A file without stored content keeps an unknown size, the other files are still processed
+        FileDao fileDao = new FileDao();
+        File missingFile = createFile(user, File.UNKNOWN_SIZE);
+        AppContext.getInstance().getStorageBackend().delete(missingFile.getId());
+        File file = createFile(user, File.UNKNOWN_SIZE);
+        FileSizeService fileSizeService = new FileSizeService();
+        fileSizeService.processBatch("");
+        ThreadLocalContext.get().getEntityManager().clear();
+        Assert.assertEquals(File.UNKNOWN_SIZE, fileDao.getFile(missingFile.getId()).getSize());
         Assert.assertEquals(fileDao.getFile(file.getId()).getSize(), Long.valueOf(FILE_JPG_SIZE));
+        Assert.assertEquals(1, fileDao.countFilesWithUnknownSize());
     }
 }
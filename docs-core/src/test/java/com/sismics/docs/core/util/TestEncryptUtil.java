@@ -8,7 +8,17 @@ import org.junit.Test;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 /**
  * Test of the encryption utilities.
@@ -48,4 +58,87 @@ public class TestEncryptUtil extends BaseTest {
         
         Assert.assertEquals(encryptedData.length, assertData.length);
     }
+
+    @Test
+    public void decryptChannelTest() throws Exception {
+        byte[] assertData = ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF));
+        Path encryptedFile = Paths.get(getResource(FILE_PDF_ENCRYPTED).toURI());
+        try (SeekableByteChannel channel = EncryptionUtil.decryptChannel(encryptedFile, "OnceUponATime")) {
+            // Whole file
+            Assert.assertEquals(assertData.length, channel.size());
+            byte[] decryptedData = ByteStreams.toByteArray(Channels.newInputStream(channel));
+            Assert.assertArrayEquals(assertData, decryptedData);
+
+            // Any position, aligned or not on a block
+            for (int position : new int[] { 0, 1, 15, 16, 17, 4099, assertData.length - 20 }) {
+                channel.position(position);
+                ByteBuffer buffer = ByteBuffer.allocate(100);
+                while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                    // Read until the buffer is full or the end of the file
+                }
+                Assert.assertArrayEquals(Arrays.copyOfRange(assertData, position, Math.min(position + 100, assertData.length)),
+                        Arrays.copyOf(buffer.array(), buffer.position()));
+            }
+
+            // End of the file
+            channel.position(assertData.length);
+            Assert.assertEquals(-1, channel.read(ByteBuffer.allocate(10)));
+        }
+    }
+
+    @Test
+    public void encryptFileTest() throws Exception {
+        Path file = Paths.get(getResource(FILE_PDF).toURI());
+        Path storedFile = Files.createTempFile("encrypted", null);
+        Path plainFile = Files.createTempFile("plain", null);
+        Files.delete(storedFile);
+        Files.delete(plainFile);
+        try {
+            // Same data as the cipher streams
+            EncryptionUtil.encryptFile(file, storedFile, "OnceUponATime");
+            byte[] assertData = ByteStreams.toByteArray(new CipherInputStream(Files.newInputStream(file),
+                    EncryptionUtil.getEncryptionCipher("OnceUponATime")));
+            Assert.assertArrayEquals(assertData, Files.readAllBytes(storedFile));
+            try (InputStream inputStream = EncryptionUtil.decryptInputStream(Files.newInputStream(storedFile), "OnceUponATime")) {
+                Assert.assertArrayEquals(Files.readAllBytes(file), ByteStreams.toByteArray(inputStream));
+            }
+
+            // Unencrypted storage
+            EncryptionUtil.encryptFile(file, plainFile, null);
+            Assert.assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(plainFile));
+            try (SeekableByteChannel channel = EncryptionUtil.decryptChannel(plainFile, null)) {
+                Assert.assertArrayEquals(Files.readAllBytes(file), ByteStreams.toByteArray(Channels.newInputStream(channel)));
+            }
+        } finally {
+            Files.deleteIfExists(storedFile);
+            Files.deleteIfExists(plainFile);
+        }
+    }
+
+    @Test
+    public void secretKeyCacheTest() throws Exception {
+        // Same data as with the key derived on each use
+        PBEKeySpec keySpec = new PBEKeySpec("OnceUponATime".toCharArray(),
+                "LEpxZmm2SMu2PeKzPNrar2rhVAS6LrrgvXKeL9uyXC4vgKHg".getBytes(), 2000, 256);
+        SecretKey secretKey = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC").generateSecret(keySpec);
+        Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
+        cipher.init(Cipher.ENCRYPT_MODE, secretKey);
+        byte[] assertData = ByteStreams.toByteArray(new CipherInputStream(getSystemResourceAsStream(FILE_PDF), cipher));
+        for (int i = 0; i < 2; i++) {
+            byte[] encryptedData = ByteStreams.toByteArray(new CipherInputStream(getSystemResourceAsStream(FILE_PDF),
+                    EncryptionUtil.getEncryptionCipher("OnceUponATime")));
+            Assert.assertArrayEquals(assertData, encryptedData);
+        }
+
+        // Files encrypted before are still readable
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(getSystemResourceAsStream(FILE_PDF_ENCRYPTED), "OnceUponATime")) {
+            Assert.assertArrayEquals(ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF)), ByteStreams.toByteArray(inputStream));
+        }
+
+        // The key is derived again once forgotten
+        EncryptionUtil.invalidateSecretKey("OnceUponATime");
+        byte[] encryptedData = ByteStreams.toByteArray(new CipherInputStream(getSystemResourceAsStream(FILE_PDF),
+                EncryptionUtil.getEncryptionCipher("OnceUponATime")));
+        Assert.assertArrayEquals(assertData, encryptedData);
+    }
 }
@@ -0,0 +1,43 @@
+package com.sismics.docs.core.util;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test of the read-mostly data kept in memory.
+ *
+ * @author bgamard
+ */
+public class TestEntityCache {
+    @After
+    public void tearDown() {
+        EntityCache.invalidateAll(EntityCache.Region.VOCABULARY);
+        EntityCache.flushInvalidations();
+    }
+
+    @Test
+    public void testGet() {
+        Assert.assertEquals("value1", EntityCache.get(EntityCache.Region.VOCABULARY, "key", () -> "value1"));
+        Assert.assertEquals("value1", EntityCache.get(EntityCache.Region.VOCABULARY, "key", () -> "value2"));
+
+        EntityCache.invalidate(EntityCache.Region.VOCABULARY, "key");
+        Assert.assertEquals("value2", EntityCache.get(EntityCache.Region.VOCABULARY, "key", () -> "value2"));
+    }
+
+    @Test
+    public void testInvalidateWhileLoading() {
+        // The data is replaced by another thread while this thread loads it, the loaded value is not kept
+        String value = EntityCache.get(EntityCache.Region.VOCABULARY, "key", () -> {
+            CompletableFuture.runAsync(() -> {
+                EntityCache.invalidate(EntityCache.Region.VOCABULARY, "key");
+                EntityCache.flushInvalidations();
+            }).join();
+            return "outdated";
+        });
+        Assert.assertEquals("outdated", value);
+        Assert.assertEquals("fresh", EntityCache.get(EntityCache.Region.VOCABULARY, "key", () -> "fresh"));
+    }
+}
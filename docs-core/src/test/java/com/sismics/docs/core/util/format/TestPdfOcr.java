@@ -0,0 +1,51 @@
+package com.sismics.docs.core.util.format;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of the OCR of the PDF pages.
+ *
+ * @author bgamard
+ */
+public class TestPdfOcr {
+    @Test
+    public void pageOrderTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (PDDocument pdfDocument = new PDDocument()) {
+            // Each page has its own width, the first pages are the slowest to OCR-ize
+            int pageCount = 5;
+            for (int i = 0; i < pageCount; i++) {
+                pdfDocument.addPage(new PDPage(new PDRectangle(72 * (i + 1), 72)));
+            }
+            List<Integer> completedList = Collections.synchronizedList(new ArrayList<>());
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            String content = PdfFormatHandler.ocrPages(pdfDocument, executor, 3, image -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                int pageNumber = Math.round(image.getWidth() / 300f);
+                Thread.sleep((pageCount - pageNumber) * 50L);
+                completedList.add(pageNumber);
+                running.decrementAndGet();
+                return "page" + pageNumber;
+            });
+
+            // The pages are completed out of order, the content is in the pages order
+            Assert.assertEquals(" page1 page2 page3 page4 page5", content);
+            Assert.assertNotEquals(List.of(1, 2, 3, 4, 5), completedList);
+            Assert.assertTrue(maxRunning.get() <= 3);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.collect.Lists;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test of the language analyzers.
+ *
+ * @author bgamard
+ */
+public class TestLanguageAnalyzers {
+
+    @Test
+    public void stemmedLanguageTest() throws Exception {
+        // The natural language fields are indexed with the stemming and stopwords of the language
+        Assert.assertTrue(LanguageAnalyzers.hasAnalyzer("eng"));
+        Assert.assertEquals("title_eng", LanguageAnalyzers.getField("title", "eng"));
+        Assert.assertEquals(Lists.newArrayList("run", "document"),
+                analyze(LanguageAnalyzers.getIndexAnalyzer(), "title_eng", "Running the documents"));
+        Assert.assertEquals(Lists.newArrayList("run", "document"),
+                analyze(LanguageAnalyzers.getAnalyzer("eng"), "title_eng", "Running the documents"));
+
+        // The other fields are not
+        Assert.assertEquals("tags", LanguageAnalyzers.getField("tags", "eng"));
+    }
+
+    @Test
+    public void cjkLanguageTest() throws Exception {
+        // Words are not separated by spaces, the text is indexed by bigrams
+        Assert.assertEquals("content_jpn", LanguageAnalyzers.getField("content", "jpn"));
+        Assert.assertEquals(Lists.newArrayList("東京", "京都"),
+                analyze(LanguageAnalyzers.getIndexAnalyzer(), "content_jpn", "東京都"));
+    }
+
+    @Test
+    public void fallbackLanguageTest() throws Exception {
+        // A language without a specific analyzer uses the standard fields and analyzer
+        Assert.assertFalse(LanguageAnalyzers.hasAnalyzer("pol"));
+        Assert.assertEquals("title", LanguageAnalyzers.getField("title", "pol"));
+        Assert.assertSame(LanguageAnalyzers.getStandardAnalyzer(), LanguageAnalyzers.getAnalyzer("pol"));
+        Assert.assertEquals(Lists.newArrayList("running", "the", "documents"),
+                analyze(LanguageAnalyzers.getIndexAnalyzer(), "title", "Running the documents"));
+    }
+
+    @Test
+    public void unknownLanguageTest() {
+        // An unknown or missing language code is handled as a language without a specific analyzer
+        for (String language : Lists.newArrayList("xyz", "", null)) {
+            Assert.assertFalse(LanguageAnalyzers.hasAnalyzer(language));
+            Assert.assertEquals("title", LanguageAnalyzers.getField("title", language));
+            Assert.assertSame(LanguageAnalyzers.getStandardAnalyzer(), LanguageAnalyzers.getAnalyzer(language));
+        }
+    }
+
+    /**
+     * Analyze a text.
+     *
+     * @param analyzer Analyzer
+     * @param field Field name
+     * @param text Text
+     * @return Terms
+     * @throws IOException e
+     */
+    private List<String> analyze(Analyzer analyzer, String field, String text) throws IOException {
+        List<String> termList = new ArrayList<>();
+        try (TokenStream tokenStream = analyzer.tokenStream(field, text)) {
+            CharTermAttribute termAttribute = tokenStream.addAttribute(CharTermAttribute.class);
+            tokenStream.reset();
+            while (tokenStream.incrementToken()) {
+                termList.add(termAttribute.toString());
+            }
+            tokenStream.end();
+        }
+        return termList;
+    }
+}
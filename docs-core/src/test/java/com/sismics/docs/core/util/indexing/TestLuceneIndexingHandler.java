@@ -0,0 +1,175 @@
+package com.sismics.docs.core.util.indexing;
+
+import com.google.common.collect.Lists;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.Acl;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class TestLuceneIndexingHandler extends BaseTransactionalTest {
+
+    @Test
+    public void rebuildConcurrentDeleteTest() throws Exception {
+        User user = createUser("rebuildConcurrentDeleteTest");
+        Document document = createDocument(user, "Rebuild concurrent delete");
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        indexingHandler.createDocument(document);
+        Assert.assertTrue(search(Lists.newArrayList("admin")).contains(document.getId()));
+
+        // The rebuild loaded the document before it was removed from the index, and writes it after
+        indexingHandler.startRebuild();
+        try {
+            indexingHandler.deleteDocument(document.getId());
+            indexingHandler.rebuildDocuments(Collections.singletonList(document));
+        } finally {
+            indexingHandler.finishRebuild(true);
+        }
+        Assert.assertFalse(search(Lists.newArrayList("admin")).contains(document.getId()));
+    }
+
+    @Test
+    public void rebuildDiscardedTest() throws Exception {
+        User user = createUser("rebuildDiscardedTest");
+        Document document = createDocument(user, "Rebuild discarded");
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+
+        // A page indexed after the rebuild is discarded fails, the serving index is untouched
+        indexingHandler.startRebuild();
+        indexingHandler.finishRebuild(false);
+        try {
+            indexingHandler.rebuildDocuments(Collections.singletonList(document));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // OK
+        }
+        Assert.assertFalse(search(Lists.newArrayList("admin")).contains(document.getId()));
+    }
+
+    @Test
+    public void searchRevokedAclTest() throws Exception {
+        User user = createUser("searchRevokedAclTest");
+        Document document = createDocument(user, "Search revoked ACL");
+        createReadAcl(document, user);
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        indexingHandler.createDocument(document);
+        Assert.assertTrue(search(Lists.newArrayList(user.getId())).contains(document.getId()));
+
+        // The index still grants the read permission until the document is reindexed
+        new AclDao().delete(document.getId(), PermType.READ, user.getId(), user.getId(), AclType.USER);
+        Assert.assertFalse(search(Lists.newArrayList(user.getId())).contains(document.getId()));
+        Assert.assertTrue(search(Lists.newArrayList("admin")).contains(document.getId()));
+    }
+
+    @Test
+    public void searchRevokedAclPageTest() throws Exception {
+        User user = createUser("searchRevokedAclPageTest");
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        for (int i = 0; i < 4; i++) {
+            Document document = createDocument(user, "Search revoked ACL page " + i);
+            createReadAcl(document, user);
+            indexingHandler.createDocument(document);
+        }
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(Lists.newArrayList(user.getId()));
+        criteria.setCreatorId(user.getId());
+        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(2, 0);
+        indexingHandler.findByCriteria(paginatedList, new ArrayList<>(), criteria, null);
+        Assert.assertEquals(4, paginatedList.getResultCount());
+
+        // The first page is filled with the next readable documents, and the count excludes the documents not readable anymore
+        for (DocumentDto documentDto : paginatedList.getResultList()) {
+            new AclDao().delete(documentDto.getId(), PermType.READ, user.getId(), user.getId(), AclType.USER);
+        }
+        paginatedList = PaginatedLists.create(2, 0);
+        indexingHandler.findByCriteria(paginatedList, new ArrayList<>(), criteria, null);
+        Assert.assertEquals(2, paginatedList.getResultList().size());
+        Assert.assertEquals(2, paginatedList.getResultCount());
+    }
+
+    @Test
+    public void suggestReadableTest() throws Exception {
+        User user = createUser("suggestReadableTest");
+        User otherUser = createUser("suggestReadableTestOther");
+        Document document = createDocument(user, "Zanzibar expedition");
+        createReadAcl(document, user);
+        Document otherDocument = createDocument(otherUser, "Zanzibarian secret");
+        createReadAcl(otherDocument, otherUser);
+        IndexingHandler indexingHandler = AppContext.getInstance().getIndexingHandler();
+        indexingHandler.createDocument(document);
+        indexingHandler.createDocument(otherDocument);
+
+        // Only the titles of the readable documents are suggested
+        List<String> suggestionList = indexingHandler.suggest("zanzib", Lists.newArrayList(user.getId()), 10);
+        Assert.assertTrue(suggestionList.contains("zanzibar"));
+        Assert.assertFalse(suggestionList.contains("zanzibarian"));
+        suggestionList = indexingHandler.suggest("zanzib", Lists.newArrayList("admin"), 10);
+        Assert.assertTrue(suggestionList.contains("zanzibar"));
+        Assert.assertTrue(suggestionList.contains("zanzibarian"));
+    }
+
+    /**
+     * Create a document.
+     *
+     * @param user Creator
+     * @param title Title
+     * @return Document
+     */
+    private Document createDocument(User user, String title) {
+        Document document = new Document();
+        document.setUserId(user.getId());
+        document.setLanguage("eng");
+        document.setTitle(title);
+        document.setCreateDate(new Date());
+        new DocumentDao().create(document, user.getId());
+        return document;
+    }
+
+    /**
+     * Give the read permission on a document to a user.
+     *
+     * @param document Document
+     * @param user User
+     */
+    private void createReadAcl(Document document, User user) {
+        Acl acl = new Acl();
+        acl.setPerm(PermType.READ);
+        acl.setType(AclType.USER);
+        acl.setSourceId(document.getId());
+        acl.setTargetId(user.getId());
+        new AclDao().create(acl, user.getId());
+    }
+
+    /**
+     * Search all the documents readable by targets.
+     *
+     * @param targetIdList Targets
+     * @return IDs of the documents found
+     * @throws Exception e
+     */
+    private List<String> search(List<String> targetIdList) throws Exception {
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(targetIdList);
+        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(100, 0);
+        AppContext.getInstance().getIndexingHandler().findByCriteria(paginatedList, new ArrayList<>(), criteria, null);
+        return paginatedList.getResultList().stream()
+                .map(DocumentDto::getId)
+                .collect(Collectors.toList());
+    }
+}
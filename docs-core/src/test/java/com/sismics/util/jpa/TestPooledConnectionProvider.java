@@ -0,0 +1,166 @@
+package com.sismics.util.jpa;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test of the JDBC connection pool.
+ *
+ * @author bgamard
+ */
+public class TestPooledConnectionProvider {
+    /**
+     * Pool under test.
+     */
+    private PooledConnectionProvider pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        pool = createPool("pool_reuse", Map.of());
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertEquals(1, pool.getCreatedCount());
+
+        // The idle connection is reused
+        Connection connection = pool.getConnection();
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+        Assert.assertFalse(connection.getAutoCommit());
+        pool.closeConnection(connection);
+        Assert.assertSame(connection, pool.getConnection());
+        Assert.assertEquals(1, pool.getCreatedCount());
+
+        // A second connection is opened while the first one is in use
+        Connection connection2 = pool.getConnection();
+        Assert.assertNotSame(connection, connection2);
+        Assert.assertEquals(2, pool.getActiveCount());
+        Assert.assertEquals(2, pool.getCreatedCount());
+        pool.closeConnection(connection);
+        pool.closeConnection(connection2);
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(2, pool.getIdleCount());
+        Assert.assertEquals(3, pool.getAcquireCount());
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        pool = createPool("pool_reset", Map.of(AvailableSettings.POOL_SIZE, "1"));
+        Connection connection = pool.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table T_POOL (ID int)");
+        }
+        connection.commit();
+
+        // The state left by a borrower is not seen by the next one
+        connection.setReadOnly(true);
+        connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        connection.setAutoCommit(true);
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("insert into T_POOL (ID) values (1)");
+        }
+        pool.closeConnection(connection);
+        connection = pool.getConnection();
+        Assert.assertFalse(connection.isReadOnly());
+        Assert.assertEquals(Connection.TRANSACTION_READ_COMMITTED, connection.getTransactionIsolation());
+        Assert.assertFalse(connection.getAutoCommit());
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select count(*) from T_POOL")) {
+            Assert.assertTrue(resultSet.next());
+            Assert.assertEquals(0, resultSet.getInt(1));
+        }
+        pool.closeConnection(connection);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        pool = createPool("pool_timeout", Map.of(
+                AvailableSettings.POOL_SIZE, "1",
+                PooledConnectionProvider.CONNECTION_TIMEOUT, "100"));
+
+        // No connection is available while the only one is in use
+        Connection connection = pool.getConnection();
+        try {
+            pool.getConnection();
+            Assert.fail();
+        } catch (SQLException e) {
+            // Expected
+        }
+        Assert.assertEquals(1, pool.getTimeoutCount());
+        Assert.assertTrue(pool.getMaxWaitMillis() < 100);
+
+        // The connection is given to the next thread once returned
+        pool.closeConnection(connection);
+        Assert.assertSame(connection, pool.getConnection());
+    }
+
+    @Test
+    public void testLeakDetection() throws Exception {
+        pool = createPool("pool_leak", Map.of(PooledConnectionProvider.LEAK_DETECTION_THRESHOLD, "100"));
+
+        // A connection not returned is reported once
+        Connection connection = pool.getConnection();
+        for (int i = 0; i < 100 && pool.getLeakCount() == 0; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(1, pool.getLeakCount());
+        pool.closeConnection(connection);
+        Thread.sleep(300);
+        Assert.assertEquals(1, pool.getLeakCount());
+    }
+
+    @Test
+    public void testMaxLifetime() throws Exception {
+        pool = createPool("pool_lifetime", Map.of(PooledConnectionProvider.MAX_LIFETIME, "200"));
+        Connection connection = pool.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table T_POOL (ID int)");
+        }
+        connection.commit();
+        pool.closeConnection(connection);
+
+        // The connection is replaced, the in-memory database is kept
+        Thread.sleep(500);
+        Connection connection2 = pool.getConnection();
+        Assert.assertNotSame(connection, connection2);
+        Assert.assertTrue(connection.isClosed());
+        try (Statement statement = connection2.createStatement();
+             ResultSet resultSet = statement.executeQuery("select count(*) from T_POOL")) {
+            Assert.assertTrue(resultSet.next());
+        }
+        pool.closeConnection(connection2);
+    }
+
+    /**
+     * Create a pool on a dedicated in-memory database.
+     *
+     * @param database Database name
+     * @param settings Pool settings
+     * @return Pool
+     */
+    private PooledConnectionProvider createPool(String database, Map<String, String> settings) {
+        Map<String, Object> configurationValues = new HashMap<>(settings);
+        configurationValues.put(AvailableSettings.DRIVER, "org.h2.Driver");
+        configurationValues.put(AvailableSettings.URL, "jdbc:h2:mem:" + database);
+        configurationValues.put(AvailableSettings.USER, "sa");
+        configurationValues.put(AvailableSettings.PASS, "");
+        PooledConnectionProvider pool = new PooledConnectionProvider();
+        pool.configure(configurationValues);
+        return pool;
+    }
+}
@@ -0,0 +1,34 @@
+package com.sismics.rest.exception;
+
+import jakarta.json.Json;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+
+/**
+ * Server too busy to accept the request exception.
+ *
+ * @author bgamard
+ */
+public class ServerBusyException extends WebApplicationException {
+    /**
+     * Serial UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor of ServerBusyException.
+     *
+     * @param type Error type (e.g. ProcessingQueueFull)
+     * @param message Human readable error message
+     * @param retryAfter Delay in seconds before retrying
+     */
+    public ServerBusyException(String type, String message, int retryAfter) {
+        super(Response.status(Status.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, retryAfter)
+            .entity(Json.createObjectBuilder()
+                .add("type", type)
+                .add("message", message).build()).build());
+    }
+}
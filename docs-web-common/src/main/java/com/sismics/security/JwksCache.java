@@ -0,0 +1,291 @@
+package com.sismics.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.JWTVerifier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import jakarta.json.JsonValue;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Signing keys of the JWT issuers, kept in memory by key ID.
+ * The keys are fetched from the JWKS endpoint of the issuer, then refreshed in the background
+ * while the current keys are still used. An unknown key ID triggers an immediate refresh,
+ * in case the issuer has rotated its keys, at most once per minimum refresh interval.
+ *
+ * @author bgamard
+ */
+public class JwksCache {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(JwksCache.class);
+
+    /**
+     * Maximum number of issuers kept in memory.
+     * The issuer is read from a token not verified yet, so it must be bounded.
+     */
+    private static final int MAX_ISSUERS = 16;
+
+    /**
+     * HTTP client.
+     */
+    private final OkHttpClient client;
+
+    /**
+     * Time in milliseconds before the keys are refreshed in the background.
+     */
+    private final long refreshIntervalMillis;
+
+    /**
+     * Minimum time in milliseconds between two fetches of the keys of an issuer.
+     */
+    private final long minRefreshIntervalMillis;
+
+    /**
+     * Signing keys by issuer.
+     */
+    private final Cache<String, IssuerKeys> issuerCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ISSUERS)
+            .build();
+
+    /**
+     * Executor of the background refreshes.
+     */
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("jwks-refresh-%d")
+            .setDaemon(true)
+            .build());
+
+    /**
+     * Number of fetches of the JWKS endpoints.
+     */
+    private final AtomicInteger fetchCount = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param client HTTP client
+     * @param refreshIntervalMillis Time in milliseconds before the keys are refreshed in the background
+     * @param minRefreshIntervalMillis Minimum time in milliseconds between two fetches of the keys of an issuer
+     */
+    public JwksCache(OkHttpClient client, long refreshIntervalMillis, long minRefreshIntervalMillis) {
+        this.client = client;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.minRefreshIntervalMillis = minRefreshIntervalMillis;
+    }
+
+    /**
+     * Returns the verifier of the tokens signed by a key of an issuer.
+     *
+     * @param issuer Issuer
+     * @param keyId Key ID
+     * @return Verifier, null if the issuer has no such key
+     */
+    public JWTVerifier getVerifier(String issuer, String keyId) {
+        if (issuer == null || keyId == null) {
+            return null;
+        }
+
+        IssuerKeys issuerKeys;
+        try {
+            issuerKeys = issuerCache.get(issuer, () -> new IssuerKeys(issuer + "/protocol/openid-connect/certs"));
+        } catch (ExecutionException e) {
+            return null;
+        }
+        return issuerKeys.getVerifier(keyId);
+    }
+
+    /**
+     * Returns the number of fetches of the JWKS endpoints.
+     *
+     * @return Number of fetches
+     */
+    public int getFetchCount() {
+        return fetchCount.get();
+    }
+
+    /**
+     * Signing keys of an issuer.
+     */
+    private class IssuerKeys {
+        /**
+         * URL of the JWKS endpoint.
+         */
+        private final String certsUrl;
+
+        /**
+         * Verifiers by key ID.
+         */
+        private volatile Map<String, JWTVerifier> verifierMap = Collections.emptyMap();
+
+        /**
+         * Time of the last successful fetch, 0 if never fetched.
+         */
+        private volatile long fetchTime;
+
+        /**
+         * Time of the last fetch attempt.
+         */
+        private long attemptTime;
+
+        /**
+         * True while a background refresh is queued or running.
+         */
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        IssuerKeys(String certsUrl) {
+            this.certsUrl = certsUrl;
+        }
+
+        /**
+         * Returns the verifier of a key.
+         *
+         * @param keyId Key ID
+         * @return Verifier, null if unknown
+         */
+        JWTVerifier getVerifier(String keyId) {
+            JWTVerifier verifier = verifierMap.get(keyId);
+            if (verifier == null) {
+                // Never fetched or the issuer has rotated its keys
+                if (refresh()) {
+                    verifier = verifierMap.get(keyId);
+                }
+            } else if (System.currentTimeMillis() - fetchTime > refreshIntervalMillis
+                    && refreshing.compareAndSet(false, true)) {
+                // The current keys are used until the refresh is done
+                try {
+                    refreshExecutor.execute(() -> {
+                        try {
+                            refresh();
+                        } finally {
+                            refreshing.set(false);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    refreshing.set(false);
+                }
+            }
+            return verifier;
+        }
+
+        /**
+         * Fetch the keys, unless they have been fetched less than the minimum refresh interval ago.
+         *
+         * @return True if the keys have been fetched
+         */
+        synchronized boolean refresh() {
+            long now = System.currentTimeMillis();
+            if (attemptTime != 0 && now - attemptTime < minRefreshIntervalMillis) {
+                return false;
+            }
+            attemptTime = now;
+
+            Map<String, JWTVerifier> newVerifierMap = fetch();
+            if (newVerifierMap == null) {
+                return false;
+            }
+            verifierMap = newVerifierMap;
+            fetchTime = now;
+            return true;
+        }
+
+        /**
+         * Fetch the keys from the JWKS endpoint.
+         *
+         * @return Verifiers by key ID, null if the endpoint cannot be read
+         */
+        private Map<String, JWTVerifier> fetch() {
+            fetchCount.incrementAndGet();
+            Request request = new Request.Builder()
+                    .url(certsUrl)
+                    .get()
+                    .build();
+            try (Response response = client.newCall(request).execute()) {
+                log.info("Successfully called the jwt issuer at: " + certsUrl + " - " + response.code());
+                if (!response.isSuccessful() || response.body() == null) {
+                    return null;
+                }
+
+                Map<String, JWTVerifier> newVerifierMap = new HashMap<>();
+                try (Reader reader = response.body().charStream();
+                     JsonReader jsonReader = Json.createReader(reader)) {
+                    JsonArray keys = jsonReader.readObject().getJsonArray("keys");
+                    for (JsonValue value : keys) {
+                        JsonObject key = value.asJsonObject();
+                        String keyId = key.getString("kid", null);
+                        if (keyId == null) {
+                            continue;
+                        }
+                        try {
+                            RSAPublicKey publicKey = readPublicKey(key);
+                            if (publicKey != null) {
+                                newVerifierMap.put(keyId, JWT.require(Algorithm.RSA256(publicKey, null)).build());
+                            }
+                        } catch (Exception e) {
+                            log.warn("Error reading the key " + keyId + " of the jwt issuer at: " + certsUrl, e);
+                        }
+                    }
+                }
+                return newVerifierMap;
+            } catch (Exception e) {
+                log.error("Error calling the jwt issuer at: " + certsUrl, e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Read a RSA public key from a JWK, from its certificate or from its modulus and exponent.
+     *
+     * @param key JWK
+     * @return Public key, null if not a RSA key
+     * @throws Exception e
+     */
+    private static RSAPublicKey readPublicKey(JsonObject key) throws Exception {
+        JsonArray x5c = key.getJsonArray("x5c");
+        if (x5c != null && !x5c.isEmpty()) {
+            byte[] certificate = Base64.getDecoder().decode(x5c.getString(0));
+            PublicKey publicKey = CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(certificate))
+                    .getPublicKey();
+            return publicKey instanceof RSAPublicKey ? (RSAPublicKey) publicKey : null;
+        }
+
+        if (!"RSA".equals(key.getString("kty", null)) || !key.containsKey("n") || !key.containsKey("e")) {
+            return null;
+        }
+        BigInteger modulus = new BigInteger(1, Base64.getUrlDecoder().decode(key.getString("n")));
+        BigInteger exponent = new BigInteger(1, Base64.getUrlDecoder().decode(key.getString("e")));
+        return (RSAPublicKey) KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(modulus, exponent));
+    }
+}
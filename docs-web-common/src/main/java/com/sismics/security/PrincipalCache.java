@@ -0,0 +1,167 @@
+package com.sismics.security;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.util.EnvironmentUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authenticated users kept in memory by authentication token, to avoid loading
+ * the token, the user, its groups and its base functions on each request.
+ * Entries expire after a short time, so changes made by another node are eventually seen,
+ * and never outlive their authentication token.
+ * Changes made by this node invalidate the entries immediately, and again after the
+ * transaction commit, so a concurrent request cannot cache the data being replaced.
+ *
+ * @author bgamard
+ */
+public final class PrincipalCache {
+    /**
+     * Default time in seconds an authenticated user is kept in memory.
+     */
+    private static final int DEFAULT_TTL = 60;
+
+    /**
+     * Default maximum number of authenticated users kept in memory.
+     */
+    private static final int DEFAULT_SIZE = 10000;
+
+    /**
+     * Authenticated users by authentication token.
+     */
+    private static final Cache<String, Entry> cache = CacheBuilder.newBuilder()
+            .maximumSize(EnvironmentUtil.getEnvInt(Constants.PRINCIPAL_CACHE_SIZE_ENV, DEFAULT_SIZE))
+            .expireAfterWrite(EnvironmentUtil.getEnvInt(Constants.PRINCIPAL_CACHE_TTL_ENV, DEFAULT_TTL), TimeUnit.SECONDS)
+            .recordStats()
+            .build();
+
+    /**
+     * Invalidations to replay after the commit of the current request.
+     */
+    private static final ThreadLocal<List<Runnable>> pendingInvalidationList = ThreadLocal.withInitial(ArrayList::new);
+
+    /**
+     * Static class.
+     */
+    private PrincipalCache() {
+    }
+
+    /**
+     * Returns an authenticated user.
+     *
+     * @param authToken Authentication token
+     * @return Authenticated user, null if not in memory
+     */
+    public static UserPrincipal get(String authToken) {
+        Entry entry = cache.getIfPresent(authToken);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() >= entry.expirationTime) {
+            // The authentication token has expired
+            cache.asMap().remove(authToken, entry);
+            return null;
+        }
+        return entry.userPrincipal;
+    }
+
+    /**
+     * Keep an authenticated user in memory.
+     *
+     * @param authToken Authentication token
+     * @param userPrincipal Authenticated user
+     * @param expirationTime Expiration time of the authentication token, in milliseconds since the epoch
+     */
+    public static void put(String authToken, UserPrincipal userPrincipal, long expirationTime) {
+        cache.put(authToken, new Entry(userPrincipal, expirationTime));
+    }
+
+    /**
+     * Forget an authentication token.
+     *
+     * @param authToken Authentication token
+     */
+    public static void invalidateToken(String authToken) {
+        invalidate(() -> cache.invalidate(authToken));
+    }
+
+    /**
+     * Forget all the authentication tokens of a user.
+     *
+     * @param userId User ID
+     */
+    public static void invalidateUser(String userId) {
+        invalidate(() -> cache.asMap().values().removeIf(entry -> entry.userPrincipal.getId().equals(userId)));
+    }
+
+    /**
+     * Forget all the authenticated users.
+     */
+    public static void invalidateAll() {
+        invalidate(cache::invalidateAll);
+    }
+
+    /**
+     * Invalidate now and after the commit of the current request.
+     *
+     * @param invalidation Invalidation
+     */
+    private static void invalidate(Runnable invalidation) {
+        invalidation.run();
+        pendingInvalidationList.get().add(invalidation);
+    }
+
+    /**
+     * Replay the invalidations of the current request, once its transaction is over.
+     */
+    public static void flushInvalidations() {
+        List<Runnable> invalidationList = pendingInvalidationList.get();
+        for (Runnable invalidation : invalidationList) {
+            invalidation.run();
+        }
+        pendingInvalidationList.remove();
+    }
+
+    /**
+     * Returns the number of authenticated users in memory.
+     *
+     * @return Number of authenticated users
+     */
+    public static long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the hits and misses statistics.
+     *
+     * @return Statistics
+     */
+    public static CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Authenticated user in memory.
+     */
+    private static final class Entry {
+        /**
+         * Authenticated user.
+         */
+        private final UserPrincipal userPrincipal;
+
+        /**
+         * Expiration time of the authentication token.
+         */
+        private final long expirationTime;
+
+        Entry(UserPrincipal userPrincipal, long expirationTime) {
+            this.userPrincipal = userPrincipal;
+            this.expirationTime = expirationTime;
+        }
+    }
+}
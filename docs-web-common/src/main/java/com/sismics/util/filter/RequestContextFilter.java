@@ -2,7 +2,9 @@ package com.sismics.util.filter;
 
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.EntityCache;
 import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.security.PrincipalCache;
 import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.jpa.EMF;
@@ -89,6 +91,8 @@ public class RequestContextFilter implements Filter {
             filterChain.doFilter(request, response);
         } catch (Exception e) {
             ThreadLocalContext.cleanup();
+            PrincipalCache.flushInvalidations();
+            EntityCache.flushInvalidations();
             
             // IOException are thrown if the client closes the connection before completion
             if (!(e instanceof IOException)) {
@@ -138,6 +142,10 @@ public class RequestContextFilter implements Filter {
         // This way, all modifications done during this request are available in the listeners.
         context.fireAllAsyncEvents();
 
+        // Invalidate the authenticated users and the cached data again, a concurrent request may have loaded them before the commit
+        PrincipalCache.flushInvalidations();
+        EntityCache.flushInvalidations();
+
         ThreadLocalContext.cleanup();
     }
 
@@ -8,6 +8,7 @@ import com.sismics.docs.core.dao.criteria.GroupCriteria;
 import com.sismics.docs.core.dao.dto.GroupDto;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.security.AnonymousPrincipal;
+import com.sismics.security.PrincipalCache;
 import com.sismics.security.UserPrincipal;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
@@ -54,11 +55,15 @@ public abstract class SecurityFilter implements Filter {
      *
      * @param request HTTP request
      * @param user nullable User to inject
+     * @param cacheKey Key of the authenticated user in memory, null if it must not be kept
      */
-    private void injectUser(HttpServletRequest request, User user) {
+    private void injectUser(HttpServletRequest request, User user, String cacheKey) {
         // Check if the user is still valid
         if (user != null && user.getDeleteDate() == null && user.getDisableDate() == null) {
-            injectAuthenticatedUser(request, user);
+            UserPrincipal userPrincipal = injectAuthenticatedUser(request, user);
+            if (cacheKey != null) {
+                PrincipalCache.put(cacheKey, userPrincipal, getPrincipalCacheExpiration(request));
+            }
         } else {
             injectAnonymousUser(request);
         }
@@ -69,8 +74,9 @@ public abstract class SecurityFilter implements Filter {
      *
      * @param request HTTP request
      * @param user User to inject
+     * @return Injected principal
      */
-    private void injectAuthenticatedUser(HttpServletRequest request, User user) {
+    private UserPrincipal injectAuthenticatedUser(HttpServletRequest request, User user) {
         UserPrincipal userPrincipal = new UserPrincipal(user.getId(), user.getUsername());
 
         // Add groups
@@ -98,6 +104,7 @@ public abstract class SecurityFilter implements Filter {
         userPrincipal.setEmail(user.getEmail());
 
         request.setAttribute(PRINCIPAL_ATTRIBUTE, userPrincipal);
+        return userPrincipal;
     }
 
     /**
@@ -127,8 +134,14 @@ public abstract class SecurityFilter implements Filter {
         HttpServletRequest request = (HttpServletRequest) req;
 
         if (!hasIdentifiedUser(request)) {
-            User user = authenticate(request);
-            injectUser(request, user);
+            String cacheKey = getPrincipalCacheKey(request);
+            UserPrincipal userPrincipal = cacheKey == null ? null : PrincipalCache.get(cacheKey);
+            if (userPrincipal != null) {
+                request.setAttribute(PRINCIPAL_ATTRIBUTE, userPrincipal);
+            } else {
+                User user = authenticate(request);
+                injectUser(request, user, cacheKey);
+            }
         }
 
         filterChain.doFilter(request, response);
@@ -142,4 +155,26 @@ public abstract class SecurityFilter implements Filter {
      */
     protected abstract User authenticate(HttpServletRequest request);
 
+    /**
+     * Returns the key of the authenticated user in memory.
+     * By default, users are authenticated on each request.
+     *
+     * @param request HTTP request
+     * @return Key, null if the authenticated user must not be kept in memory
+     */
+    protected String getPrincipalCacheKey(HttpServletRequest request) {
+        return null;
+    }
+
+    /**
+     * Returns the time after which the authenticated user must not be taken from memory anymore.
+     * Called after a successful authentication of the request.
+     *
+     * @param request HTTP request
+     * @return Expiration time in milliseconds since the epoch
+     */
+    protected long getPrincipalCacheExpiration(HttpServletRequest request) {
+        return Long.MAX_VALUE;
+    }
+
 }
\ No newline at end of file
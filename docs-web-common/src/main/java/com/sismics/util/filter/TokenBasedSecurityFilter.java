@@ -34,6 +34,11 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
      */
     private static final int TOKEN_SESSION_LIFETIME = 3600 * 24;
 
+    /**
+     * Request attribute holding the expiration time of the authentication token.
+     */
+    private static final String TOKEN_EXPIRATION_ATTRIBUTE = "tokenExpiration";
+
     /**
      * Extracts and returns an authentication token from a cookie list.
      *
@@ -67,23 +72,33 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
     }
 
     /**
-     * Returns true if the token is expired.
+     * Returns the expiration time of a token.
      * 
      * @param authenticationToken Authentication token
-     * @return Token expired
+     * @return Expiration time in milliseconds since the epoch
      */
-    private boolean isTokenExpired(AuthenticationToken authenticationToken) {
-        final long now = new Date().getTime();
+    private long getTokenExpiration(AuthenticationToken authenticationToken) {
         final long creationDate = authenticationToken.getCreationDate().getTime();
         if (authenticationToken.isLongLasted()) {
-            return now >= creationDate + ((long) TOKEN_LONG_LIFETIME) * 1000L;
+            return creationDate + ((long) TOKEN_LONG_LIFETIME) * 1000L;
         } else {
             long date = authenticationToken.getLastConnectionDate() != null ?
                     authenticationToken.getLastConnectionDate().getTime() : creationDate;
-            return now >= date + ((long) TOKEN_SESSION_LIFETIME) * 1000L;
+            return date + ((long) TOKEN_SESSION_LIFETIME) * 1000L;
         }
     }
 
+    @Override
+    protected String getPrincipalCacheKey(HttpServletRequest request) {
+        return extractAuthToken(request.getCookies());
+    }
+
+    @Override
+    protected long getPrincipalCacheExpiration(HttpServletRequest request) {
+        Object expiration = request.getAttribute(TOKEN_EXPIRATION_ATTRIBUTE);
+        return expiration == null ? 0 : (Long) expiration;
+    }
+
     @Override
     protected User authenticate(HttpServletRequest request) {
         // Get the value of the client authentication token
@@ -99,10 +114,12 @@ public class TokenBasedSecurityFilter extends SecurityFilter {
             return null;
         }
 
-        if (isTokenExpired(authToken)) {
+        long expiration = getTokenExpiration(authToken);
+        if (new Date().getTime() >= expiration) {
             handleExpiredToken(authTokenDao, authTokenId);
             return null;
         }
+        request.setAttribute(TOKEN_EXPIRATION_ATTRIBUTE, expiration);
 
         return new UserDao().getById(authToken.getUserId());
     }
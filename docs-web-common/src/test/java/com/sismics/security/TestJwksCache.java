@@ -0,0 +1,176 @@
+package com.sismics.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.JWTVerifier;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+
+/**
+ * Test the JWKS cache against a stub issuer.
+ *
+ * @author bgamard
+ */
+public class TestJwksCache {
+    /**
+     * Stub issuer.
+     */
+    private HttpServer server;
+
+    /**
+     * Issuer URL.
+     */
+    private String issuer;
+
+    /**
+     * JWKS served by the stub issuer.
+     */
+    private volatile String jwks;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/realms/test/protocol/openid-connect/certs", exchange -> {
+            byte[] body = jwks.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        issuer = "http://localhost:" + server.getAddress().getPort() + "/realms/test";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCachedKeys() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        jwks = buildJwks("key1", keyPair);
+        JwksCache jwksCache = new JwksCache(new OkHttpClient(), 60000, 60000);
+
+        // The keys are fetched once, then the verifier is reused
+        JWTVerifier verifier = jwksCache.getVerifier(issuer, "key1");
+        Assert.assertNotNull(verifier);
+        verifier.verify(sign("key1", keyPair));
+        Assert.assertSame(verifier, jwksCache.getVerifier(issuer, "key1"));
+        Assert.assertEquals(1, jwksCache.getFetchCount());
+
+        // Unknown keys are fetched again, but not more than once per minimum refresh interval
+        Assert.assertNull(jwksCache.getVerifier(issuer, "key2"));
+        Assert.assertNull(jwksCache.getVerifier(issuer, "key2"));
+        Assert.assertEquals(1, jwksCache.getFetchCount());
+
+        // Unknown issuer
+        Assert.assertNull(jwksCache.getVerifier(null, "key1"));
+        Assert.assertNull(jwksCache.getVerifier("http://localhost:" + server.getAddress().getPort() + "/realms/unknown", "key1"));
+    }
+
+    @Test
+    public void testKeyRotation() throws Exception {
+        KeyPair keyPair1 = generateKeyPair();
+        KeyPair keyPair2 = generateKeyPair();
+        jwks = buildJwks("key1", keyPair1);
+        JwksCache jwksCache = new JwksCache(new OkHttpClient(), 60000, 0);
+        Assert.assertNotNull(jwksCache.getVerifier(issuer, "key1"));
+
+        // The issuer rotates its keys, the new key is fetched on its first use
+        jwks = buildJwks("key2", keyPair2);
+        JWTVerifier verifier = jwksCache.getVerifier(issuer, "key2");
+        Assert.assertNotNull(verifier);
+        verifier.verify(sign("key2", keyPair2));
+        Assert.assertEquals(2, jwksCache.getFetchCount());
+        Assert.assertNull(jwksCache.getVerifier(issuer, "key1"));
+    }
+
+    @Test
+    public void testBackgroundRefresh() throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        jwks = buildJwks("key1", keyPair);
+        JwksCache jwksCache = new JwksCache(new OkHttpClient(), 0, 0);
+        Assert.assertNotNull(jwksCache.getVerifier(issuer, "key1"));
+
+        // Expired keys are still used while refreshed in the background
+        Thread.sleep(10);
+        Assert.assertNotNull(jwksCache.getVerifier(issuer, "key1"));
+        for (int i = 0; i < 100 && jwksCache.getFetchCount() < 2; i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(2, jwksCache.getFetchCount());
+    }
+
+    /**
+     * Generate a RSA key pair.
+     *
+     * @return Key pair
+     * @throws Exception e
+     */
+    private KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * Build a JWKS with a single key.
+     *
+     * @param keyId Key ID
+     * @param keyPair Key pair
+     * @return JWKS
+     */
+    private String buildJwks(String keyId, KeyPair keyPair) {
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        return "{\"keys\":[{\"kid\":\"" + keyId + "\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\","
+                + "\"n\":\"" + base64Url(publicKey.getModulus()) + "\","
+                + "\"e\":\"" + base64Url(publicKey.getPublicExponent()) + "\"}]}";
+    }
+
+    /**
+     * Encode a big integer in unsigned base64url.
+     *
+     * @param value Value
+     * @return Encoded value
+     */
+    private String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0) {
+            byte[] unsigned = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, unsigned, 0, unsigned.length);
+            bytes = unsigned;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Sign a token.
+     *
+     * @param keyId Key ID
+     * @param keyPair Key pair
+     * @return Token
+     */
+    private String sign(String keyId, KeyPair keyPair) {
+        return JWT.create()
+                .withIssuer(issuer)
+                .withKeyId(keyId)
+                .withClaim("preferred_username", "jwt_user")
+                .sign(Algorithm.RSA256((RSAPublicKey) keyPair.getPublic(), (RSAPrivateKey) keyPair.getPrivate()));
+    }
+}
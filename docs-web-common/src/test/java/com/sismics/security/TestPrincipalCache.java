@@ -0,0 +1,46 @@
+package com.sismics.security;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the authenticated users kept in memory.
+ *
+ * @author bgamard
+ */
+public class TestPrincipalCache {
+    @After
+    public void tearDown() {
+        PrincipalCache.invalidateAll();
+        PrincipalCache.flushInvalidations();
+    }
+
+    @Test
+    public void testTokenExpiration() {
+        UserPrincipal userPrincipal = new UserPrincipal("user1", "user1");
+        PrincipalCache.put("token1", userPrincipal, System.currentTimeMillis() + 60000);
+        Assert.assertSame(userPrincipal, PrincipalCache.get("token1"));
+
+        // A user is not taken from memory after the expiration of its token
+        PrincipalCache.put("token2", userPrincipal, System.currentTimeMillis() - 1);
+        Assert.assertNull(PrincipalCache.get("token2"));
+        Assert.assertEquals(1, PrincipalCache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        UserPrincipal userPrincipal = new UserPrincipal("user1", "user1");
+        PrincipalCache.put("token1", userPrincipal, Long.MAX_VALUE);
+        PrincipalCache.put("token2", userPrincipal, Long.MAX_VALUE);
+        PrincipalCache.put("token3", new UserPrincipal("user2", "user2"), Long.MAX_VALUE);
+
+        // A logout forgets only its token, a change of the user forgets all its tokens
+        PrincipalCache.invalidateToken("token1");
+        Assert.assertNull(PrincipalCache.get("token1"));
+        Assert.assertNotNull(PrincipalCache.get("token2"));
+        PrincipalCache.invalidateUser("user1");
+        Assert.assertNull(PrincipalCache.get("token2"));
+        Assert.assertNotNull(PrincipalCache.get("token3"));
+    }
+}
@@ -1,8 +1,11 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheStats;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
@@ -11,18 +14,24 @@ import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.service.FileProcessingService;
 import com.sismics.docs.core.service.InboxService;
 import com.sismics.docs.core.util.ConfigUtil;
-import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.EntityCache;
+import com.sismics.docs.core.util.indexing.RebuildIndexProgress;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.storage.StorageBackend;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
 import com.sismics.rest.util.ValidationUtil;
+import com.sismics.security.PrincipalCache;
 import com.sismics.util.JsonUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.EMF;
+import com.sismics.util.jpa.PooledConnectionProvider;
 import com.sismics.util.log4j.LogCriteria;
 import com.sismics.util.log4j.LogEntry;
 import com.sismics.util.log4j.MemoryAppender;
@@ -40,8 +49,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
 import java.text.MessageFormat;
 import java.util.*;
 
@@ -68,6 +75,29 @@ public class AppResource extends BaseResource {
      * @apiSuccess {Boolean} guest_login True if guest login is enabled
      * @apiSuccess {String} default_language Default platform language
      * @apiSuccess {Number} queued_tasks Number of queued tasks waiting to be processed
+     * @apiSuccess {Number} index_pending_operations Number of index operations not yet committed to the disk
+     * @apiSuccess {Object} file_processing File processing queue
+     * @apiSuccess {Number} file_processing.queued Number of files waiting to be processed
+     * @apiSuccess {Number} file_processing.queued_interactive Number of files added by users waiting to be processed
+     * @apiSuccess {Number} file_processing.queued_bulk Number of imported or reprocessed files waiting to be processed
+     * @apiSuccess {Number} file_processing.active Number of files being processed
+     * @apiSuccess {Number} file_processing.completed Number of processed files since the startup
+     * @apiSuccess {Number} file_processing.average_wait Average time spent in the queue (in milliseconds)
+     * @apiSuccess {Number} file_processing.max_wait Longest time spent in the queue (in milliseconds)
+     * @apiSuccess {Number} file_processing.average_processing Average processing time (in milliseconds)
+     * @apiSuccess {Object} principal_cache Authenticated users kept in memory
+     * @apiSuccess {Number} principal_cache.size Number of authenticated users in memory
+     * @apiSuccess {Number} principal_cache.hits Number of requests authenticated from the memory
+     * @apiSuccess {Number} principal_cache.misses Number of requests authenticated from the database
+     * @apiSuccess {Object} connection_pool Database connection pool, if the connections are pooled
+     * @apiSuccess {Number} connection_pool.active Number of connections in use
+     * @apiSuccess {Number} connection_pool.idle Number of idle connections
+     * @apiSuccess {Number} connection_pool.pending Number of requests waiting for a connection
+     * @apiSuccess {Number} connection_pool.max Maximum number of connections
+     * @apiSuccess {Number} connection_pool.average_wait Average time spent waiting for a connection (in milliseconds)
+     * @apiSuccess {Number} connection_pool.max_wait Longest time spent waiting for a connection (in milliseconds)
+     * @apiSuccess {Number} connection_pool.timeouts Number of requests which have not obtained a connection in time
+     * @apiSuccess {Number} connection_pool.leaks Number of connections used for too long
      * @apiSuccess {String} total_memory Allocated JVM memory (in bytes)
      * @apiSuccess {String} free_memory Free JVM memory (in bytes)
      * @apiSuccess {String} document_count Number of documents
@@ -89,6 +119,8 @@ public class AppResource extends BaseResource {
         String defaultLanguage = ConfigUtil.getConfigStringValue(ConfigType.DEFAULT_LANGUAGE);
         UserDao userDao = new UserDao();
         DocumentDao documentDao = new DocumentDao();
+        FileProcessingService fileProcessingService = AppContext.getInstance().getFileProcessingService();
+        CacheStats principalCacheStats = PrincipalCache.getStats();
         String globalQuotaStr = System.getenv(Constants.GLOBAL_QUOTA_ENV);
         long globalQuota = 0;
         if (!Strings.isNullOrEmpty(globalQuotaStr)) {
@@ -102,6 +134,20 @@ public class AppResource extends BaseResource {
                 .add("ocr_enabled", ocrEnabled)
                 .add("default_language", defaultLanguage)
                 .add("queued_tasks", AppContext.getInstance().getQueuedTaskCount())
+                .add("index_pending_operations", AppContext.getInstance().getIndexingHandler().getPendingOperationCount())
+                .add("file_processing", Json.createObjectBuilder()
+                        .add("queued", fileProcessingService.getQueuedCount())
+                        .add("queued_interactive", fileProcessingService.getQueuedCount(FileProcessingPriority.INTERACTIVE))
+                        .add("queued_bulk", fileProcessingService.getQueuedCount(FileProcessingPriority.BULK))
+                        .add("active", fileProcessingService.getActiveCount())
+                        .add("completed", fileProcessingService.getCompletedCount())
+                        .add("average_wait", fileProcessingService.getAverageWaitMillis())
+                        .add("max_wait", fileProcessingService.getMaxWaitMillis())
+                        .add("average_processing", fileProcessingService.getAverageProcessingMillis()))
+                .add("principal_cache", Json.createObjectBuilder()
+                        .add("size", PrincipalCache.size())
+                        .add("hits", principalCacheStats.hitCount())
+                        .add("misses", principalCacheStats.missCount()))
                 .add("total_memory", Runtime.getRuntime().totalMemory())
                 .add("free_memory", Runtime.getRuntime().freeMemory())
                 .add("document_count", documentDao.getDocumentCount())
@@ -110,6 +156,18 @@ public class AppResource extends BaseResource {
         if (globalQuota > 0) {
             response.add("global_storage_quota", globalQuota);
         }
+        PooledConnectionProvider connectionPool = EMF.getConnectionPool();
+        if (connectionPool != null) {
+            response.add("connection_pool", Json.createObjectBuilder()
+                    .add("active", connectionPool.getActiveCount())
+                    .add("idle", connectionPool.getIdleCount())
+                    .add("pending", connectionPool.getPendingCount())
+                    .add("max", connectionPool.getMaxSize())
+                    .add("average_wait", connectionPool.getAverageWaitMillis())
+                    .add("max_wait", connectionPool.getMaxWaitMillis())
+                    .add("timeouts", connectionPool.getTimeoutCount())
+                    .add("leaks", connectionPool.getLeakCount()));
+        }
 
         return Response.ok().entity(response.build()).build();
     }
@@ -601,6 +659,47 @@ public class AppResource extends BaseResource {
         return Response.ok().entity(response.build()).build();
     }
 
+    /**
+     * Get the statistics of the data kept in memory.
+     *
+     * @api {get} /app/cache Get the cache statistics
+     * @apiName GetAppCache
+     * @apiGroup App
+     * @apiSuccess {Object} config Configuration values
+     * @apiSuccess {Number} config.size Number of entries in memory
+     * @apiSuccess {Number} config.hits Number of reads from the memory
+     * @apiSuccess {Number} config.misses Number of reads from the database
+     * @apiSuccess {Number} config.evictions Number of entries evicted to free memory
+     * @apiSuccess {Object} tag Tags lists, same statistics
+     * @apiSuccess {Object} vocabulary Vocabulary entries, same statistics
+     * @apiSuccess {Object} metadata Metadata lists, same statistics
+     * @apiSuccess {Object} role_base_function Base functions of the roles, same statistics
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("cache")
+    public Response cache() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        JsonObjectBuilder response = Json.createObjectBuilder();
+        for (EntityCache.Region region : EntityCache.Region.values()) {
+            CacheStats stats = EntityCache.getStats(region);
+            response.add(region.name().toLowerCase(), Json.createObjectBuilder()
+                    .add("size", EntityCache.size(region))
+                    .add("hits", stats.hitCount())
+                    .add("misses", stats.missCount())
+                    .add("evictions", stats.evictionCount()));
+        }
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Destroy and rebuild the search index.
      *
@@ -632,6 +731,60 @@ public class AppResource extends BaseResource {
         return Response.ok().entity(response.build()).build();
     }
 
+    /**
+     * Get the progress of the index rebuild.
+     *
+     * @api {get} /app/batch/reindex Get the progress of the index rebuild
+     * @apiName GetAppBatchReindex
+     * @apiGroup App
+     * @apiSuccess {Boolean} running True if the index is being rebuilt
+     * @apiSuccess {Boolean} failed True if the last rebuild failed
+     * @apiSuccess {Number} start_date Start date of the last rebuild (timestamp)
+     * @apiSuccess {Number} end_date End date of the last rebuild (timestamp)
+     * @apiSuccess {Number} total_count Number of documents and files to index
+     * @apiSuccess {Number} indexed_count Number of documents and files indexed
+     * @apiSuccess {Number} rate Documents and files indexed per second
+     * @apiSuccess {Number} eta Estimated remaining time in seconds
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("batch/reindex")
+    public Response batchReindexStatus() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        RebuildIndexProgress progress = AppContext.getInstance().getRebuildIndexProgress();
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("running", progress.isRunning())
+                .add("failed", progress.isFailed())
+                .add("total_count", progress.getTotalCount())
+                .add("indexed_count", progress.getIndexedCount())
+                .add("rate", progress.getRate());
+        if (progress.getStartDate() == null) {
+            response.addNull("start_date");
+        } else {
+            response.add("start_date", progress.getStartDate().getTime());
+        }
+        if (progress.getEndDate() == null) {
+            response.addNull("end_date");
+        } else {
+            response.add("end_date", progress.getEndDate().getTime());
+        }
+        Long eta = progress.getEta();
+        if (eta == null) {
+            response.addNull("eta");
+        } else {
+            response.add("eta", eta);
+        }
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Clean storage.
      *
@@ -664,13 +817,13 @@ public class AppResource extends BaseResource {
         log.info("Checking {} files", fileMap.size());
 
         // Check if each stored file is valid
-        try (DirectoryStream<java.nio.file.Path> storedFileList = Files.newDirectoryStream(DirectoryUtil.getStorageDirectory())) {
-            for (java.nio.file.Path storedFile : storedFileList) {
-                String fileName = storedFile.getFileName().toString();
-                String[] fileNameArray = fileName.split("_");
-                if (!fileMap.containsKey(fileNameArray[0])) {
-                    log.info("Deleting orphan files at this location: {}", storedFile);
-                    Files.delete(storedFile);
+        StorageBackend storageBackend = AppContext.getInstance().getStorageBackend();
+        try {
+            for (String storageKey : storageBackend.list()) {
+                String[] storageKeyArray = storageKey.split("_");
+                if (!fileMap.containsKey(storageKeyArray[0])) {
+                    log.info("Deleting orphan file: {}", storageKey);
+                    storageBackend.delete(storageKey);
                 }
             }
         } catch (IOException e) {
@@ -702,6 +855,7 @@ public class AppResource extends BaseResource {
         q = em.createNativeQuery(sb.toString());
         q.setParameter("dateNow", new Date());
         log.info("Deleting {} orphan ACLs", q.executeUpdate());
+        new AclDao().rebuildEffectiveAcl();
 
         // Soft delete orphan comments
         q = em.createNativeQuery("update T_COMMENT set COM_DELETEDATE_D = :dateNow where COM_ID_C in (select c.COM_ID_C from T_COMMENT c left join T_DOCUMENT d on d.DOC_ID_C = c.COM_IDDOC_C and d.DOC_DELETEDATE_D is null where d.DOC_ID_C is null)");
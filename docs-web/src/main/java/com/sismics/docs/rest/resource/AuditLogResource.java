@@ -8,7 +8,6 @@ import com.sismics.docs.core.dao.criteria.AuditLogCriteria;
 import com.sismics.docs.core.dao.dto.AuditLogDto;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.util.JsonUtil;
@@ -37,7 +36,11 @@ public class AuditLogResource extends BaseResource {
      * @apiName GetAuditlog
      * @apiGroup Auditlog
      * @apiParam {String} [document] Document ID
+     * @apiParam {String} [cursor] Start after the previous page: <code>*</code> for the first page, then the <code>next_cursor</code> of the previous page
+     * @apiParam {Boolean} [total] With a cursor, if <code>true</code> counts all the logs, else <code>total</code> may be a lower bound
      * @apiSuccess {String} total Total number of logs
+     * @apiSuccess {Boolean} total_exact With a cursor, false if the total is a lower bound
+     * @apiSuccess {String} next_cursor With a cursor, token of the next page, null if this is the last page
      * @apiSuccess {Object[]} logs List of logs
      * @apiSuccess {String} logs.id ID
      * @apiSuccess {String} logs.username Username
@@ -51,17 +54,25 @@ public class AuditLogResource extends BaseResource {
      * @apiPermission user
      * @apiVersion 1.5.0
      *
+     * @param documentId Document ID
+     * @param cursor Continuation token
+     * @param total Count all the logs with a continuation token
      * @return Response
      */
     @GET
-    public Response list(@QueryParam("document") String documentId) {
+    public Response list(
+            @QueryParam("document") String documentId,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("total") Boolean total) {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
         
         // On a document or a user?
-        PaginatedList<AuditLogDto> paginatedList = PaginatedLists.create(20, 0);
         SortCriteria sortCriteria = new SortCriteria(1, false);
+        AuditLogDao auditLogDao = new AuditLogDao();
+        PaginatedList<AuditLogDto> paginatedList = createPaginatedList(20, 0, cursor, total, sortCriteria,
+                auditLogDao.getCursorKeyTypes(sortCriteria));
         AuditLogCriteria criteria = new AuditLogCriteria();
         if (Strings.isNullOrEmpty(documentId)) {
             // Search logs for a user
@@ -77,7 +88,6 @@ public class AuditLogResource extends BaseResource {
         }
         
         // Search the logs
-        AuditLogDao auditLogDao = new AuditLogDao();
         auditLogDao.findByCriteria(paginatedList, criteria, sortCriteria);
         
         // Assemble the results
@@ -97,6 +107,7 @@ public class AuditLogResource extends BaseResource {
         JsonObjectBuilder response = Json.createObjectBuilder()
                 .add("logs", logs)
                 .add("total", paginatedList.getResultCount());
+        addCursor(response, paginatedList);
         return Response.ok().entity(response.build()).build();
     }
 }
@@ -1,12 +1,21 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.collect.Lists;
+import com.sismics.docs.core.constant.FileProcessingPriority;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.constant.BaseFunction;
+import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
+import com.sismics.rest.exception.ServerBusyException;
 import com.sismics.security.IPrincipal;
 import com.sismics.security.UserPrincipal;
+import com.sismics.util.JsonUtil;
 import com.sismics.util.filter.SecurityFilter;
 
+import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.Produces;
@@ -106,6 +115,52 @@ public abstract class BaseResource {
         return baseFunctionSet != null && baseFunctionSet.contains(baseFunction.name());
     }
     
+    /**
+     * Checks if new files added by the user can be queued for processing. Throw an exception if the queue is full.
+     * The bulk files cannot fill the queue slots kept for the users.
+     */
+    void checkFileProcessingCapacity() {
+        if (!AppContext.getInstance().getFileProcessingService().hasCapacity(FileProcessingPriority.INTERACTIVE)) {
+            throw new ServerBusyException("ProcessingQueueFull", "Too many files waiting to be processed", 60);
+        }
+    }
+
+    /**
+     * Creates a paginated list, starting at an offset or after a continuation token.
+     * 
+     * @param limit Page size
+     * @param offset Page offset, ignored with a continuation token
+     * @param cursor Continuation token, null to paginate by offset
+     * @param total If true, the total number of results is counted with a continuation token
+     * @param sortCriteria Sort criteria
+     * @param keyTypeList Types of the sort key values in the continuation token
+     * @return Paginated list
+     */
+    <E> PaginatedList<E> createPaginatedList(Integer limit, Integer offset, String cursor, Boolean total, SortCriteria sortCriteria,
+                                             List<Class<?>> keyTypeList) {
+        if (cursor == null) {
+            return PaginatedLists.create(limit, offset);
+        }
+        try {
+            return PaginatedLists.create(limit, cursor, sortCriteria, Boolean.TRUE.equals(total), keyTypeList);
+        } catch (IllegalArgumentException e) {
+            throw new ClientException("ValidationError", "Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Adds the continuation token of the next page to a response.
+     * 
+     * @param response Response
+     * @param paginatedList Paginated list
+     */
+    void addCursor(JsonObjectBuilder response, PaginatedList<?> paginatedList) {
+        if (paginatedList.isCursor()) {
+            response.add("total_exact", paginatedList.isResultCountExact())
+                    .add("next_cursor", JsonUtil.nullable(paginatedList.getNextCursor()));
+        }
+    }
+
     /**
      * Returns a list of ACL target ID.
      * 
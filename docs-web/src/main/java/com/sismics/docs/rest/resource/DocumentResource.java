@@ -1,25 +1,18 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.collect.Lists;
-import com.sismics.docs.core.constant.AclType;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
-import com.sismics.docs.core.dao.ContributorDao;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.RelationDao;
-import com.sismics.docs.core.dao.RouteStepDao;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
 import com.sismics.docs.core.dao.criteria.TagCriteria;
-import com.sismics.docs.core.dao.dto.AclDto;
-import com.sismics.docs.core.dao.dto.ContributorDto;
 import com.sismics.docs.core.dao.dto.DocumentDto;
-import com.sismics.docs.core.dao.dto.RelationDto;
-import com.sismics.docs.core.dao.dto.RouteStepDto;
 import com.sismics.docs.core.dao.dto.TagDto;
 import com.sismics.docs.core.event.DocumentCreatedAsyncEvent;
 import com.sismics.docs.core.event.DocumentDeletedAsyncEvent;
@@ -31,17 +24,18 @@ import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.DocumentUtil;
+import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.MetadataUtil;
 import com.sismics.docs.core.util.PdfUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.util.DocumentSearchCriteriaUtil;
+import com.sismics.docs.rest.util.DocumentViewAssembler;
+import com.sismics.docs.rest.util.TagUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
-import com.sismics.rest.util.AclUtil;
 import com.sismics.rest.util.RestUtil;
 import com.sismics.rest.util.ValidationUtil;
 import com.sismics.util.EmailUtil;
@@ -106,6 +100,7 @@ public class DocumentResource extends BaseResource {
      * @apiParam {String} id Document ID
      * @apiParam {String} [share] Share ID
      * @apiParam {Boolean} [files] If true includes files information
+     * @apiParam {String} [fields] Comma separated list of sections to include, among tags, acls, inherited_acls, contributors, relations, route_step, metadata and files (default: all but files)
      * @apiSuccess {String} id ID
      * @apiSuccess {String} title Title
      * @apiSuccess {String} description Description
@@ -170,6 +165,8 @@ public class DocumentResource extends BaseResource {
      *
      * @param documentId Document ID
      * @param shareId Share ID
+     * @param files If true includes files information
+     * @param fields Sections to include
      * @return Response
      */
     @GET
@@ -177,7 +174,8 @@ public class DocumentResource extends BaseResource {
     public Response get(
             @PathParam("id") String documentId,
             @QueryParam("share") String shareId,
-            @QueryParam("files") Boolean files) {
+            @QueryParam("files") Boolean files,
+            @QueryParam("fields") String fields) {
         authenticate();
 
         DocumentDao documentDao = new DocumentDao();
@@ -196,92 +194,13 @@ public class DocumentResource extends BaseResource {
                 .add("rights", JsonUtil.nullable(documentDto.getRights()))
                 .add("source", JsonUtil.nullable(documentDto.getSource()))
                 .add("subject", JsonUtil.nullable(documentDto.getSubject()))
-                .add("type", JsonUtil.nullable(documentDto.getType()));
-
-        List<TagDto> tagDtoList = null;
-        if (principal.isAnonymous()) {
-            // No tags in anonymous mode (sharing)
-            document.add("tags", Json.createArrayBuilder());
-        } else {
-            // Add tags visible by the current user on this document
-            TagDao tagDao = new TagDao();
-            tagDtoList = tagDao.findByCriteria(
-                    new TagCriteria()
-                            .setTargetIdList(getTargetIdList(null)) // No tags for shares
-                            .setDocumentId(documentId),
-                    new SortCriteria(1, true));
-            document.add("tags", createTagsArrayBuilder(tagDtoList));
-        }
-
-        // Add ACL
-        AclUtil.addAcls(document, documentId, getTargetIdList(shareId));
-
-        // Add computed ACL
-        if (tagDtoList != null) {
-            JsonArrayBuilder aclList = Json.createArrayBuilder();
-            for (TagDto tagDto : tagDtoList) {
-                AclDao aclDao = new AclDao();
-                List<AclDto> aclDtoList = aclDao.getBySourceId(tagDto.getId(), AclType.USER);
-                for (AclDto aclDto : aclDtoList) {
-                    aclList.add(Json.createObjectBuilder()
-                            .add("perm", aclDto.getPerm().name())
-                            .add("source_id", tagDto.getId())
-                            .add("source_name", tagDto.getName())
-                            .add("source_color", tagDto.getColor())
-                            .add("id", aclDto.getTargetId())
-                            .add("name", JsonUtil.nullable(aclDto.getTargetName()))
-                            .add("type", aclDto.getTargetType()));
-                }
-            }
-            document.add("inherited_acls", aclList);
-        }
-
-        // Add contributors
-        ContributorDao contributorDao = new ContributorDao();
-        List<ContributorDto> contributorDtoList = contributorDao.getByDocumentId(documentId);
-        JsonArrayBuilder contributorList = Json.createArrayBuilder();
-        for (ContributorDto contributorDto : contributorDtoList) {
-            contributorList.add(Json.createObjectBuilder()
-                    .add("username", contributorDto.getUsername())
-                    .add("email", contributorDto.getEmail()));
-        }
-        document.add("contributors", contributorList);
-
-        // Add relations
-        RelationDao relationDao = new RelationDao();
-        List<RelationDto> relationDtoList = relationDao.getByDocumentId(documentId);
-        JsonArrayBuilder relationList = Json.createArrayBuilder();
-        for (RelationDto relationDto : relationDtoList) {
-            relationList.add(Json.createObjectBuilder()
-                    .add("id", relationDto.getId())
-                    .add("title", relationDto.getTitle())
-                    .add("source", relationDto.isSource()));
-        }
-        document.add("relations", relationList);
-
-        // Add current route step
-        RouteStepDto routeStepDto = new RouteStepDao().getCurrentStep(documentId);
-        if (routeStepDto != null && !principal.isAnonymous()) {
-            JsonObjectBuilder step = routeStepDto.toJson();
-            step.add("transitionable", getTargetIdList(null).contains(routeStepDto.getTargetId()));
-            document.add("route_step", step);
-        }
+                .add("type", JsonUtil.nullable(documentDto.getType()))
+                .add("writable", new AclDao().checkPermission(documentId, PermType.WRITE, getTargetIdList(shareId)));
 
-        // Add custom metadata
-        MetadataUtil.addMetadata(document, documentId);
-
-        // Add files
-        if (Boolean.TRUE == files) {
-            FileDao fileDao = new FileDao();
-            List<File> fileList = fileDao.getByDocumentsIds(Collections.singleton(documentId));
-
-            JsonArrayBuilder filesArrayBuilder = Json.createArrayBuilder();
-            for (File fileDb : fileList) {
-                filesArrayBuilder.add(RestUtil.fileToJsonObjectBuilder(fileDb));
-            }
-
-            document.add("files", filesArrayBuilder);
-        }
+        // Add the selected sections
+        new DocumentViewAssembler(documentId, DocumentViewAssembler.parseFields(fields, files),
+                principal.isAnonymous(), getTargetIdList(null))
+                .assemble(document);
 
         return Response.ok().entity(document.build()).build();
     }
@@ -338,7 +257,7 @@ public class DocumentResource extends BaseResource {
             // A file is always encrypted by the creator of it
             // Store its private key to decrypt it
             User user = userDao.getById(file.getUserId());
-            file.setPrivateKey(user.getPrivateKey());
+            file.setPrivateKey(EncryptionUtil.getPrivateKey(file, user));
         }
 
         // Convert to PDF
@@ -369,6 +288,8 @@ public class DocumentResource extends BaseResource {
      * @apiParam {Boolean} [asc] If <code>true</code> sorts in ascending order
      * @apiParam {String} [search] Search query (see "Document search syntax" on the top of the page for explanations) when the input is entered by a human.
      * @apiParam {Boolean} [files] If <code>true</code> includes files information
+     * @apiParam {String} [cursor] Start after the previous page instead of an offset: <code>*</code> for the first page, then the <code>next_cursor</code> of the previous page, with the same sort
+     * @apiParam {Boolean} [total] With a cursor, if <code>true</code> counts all the documents, else <code>total</code> may be a lower bound
      *
      * @apiParam {String} [search[after]] The document must have been created after or at the value moment, accepted format is <code>yyyy-MM-dd</code>
      * @apiParam {String} [search[before]] The document must have been created before or at the value moment, accepted format is <code>yyyy-MM-dd</code>
@@ -386,6 +307,8 @@ public class DocumentResource extends BaseResource {
      * @apiParam {String} [search[workflow]] If the value is <code>me</code> the document must have an active route, for other values the criteria is ignored
      *
      * @apiSuccess {Number} total Total number of documents
+     * @apiSuccess {Boolean} total_exact With a cursor, false if the total is a lower bound
+     * @apiSuccess {String} next_cursor With a cursor, token of the next page, null if this is the last page
      * @apiSuccess {Object[]} documents List of documents
      * @apiSuccess {String} documents.id ID
      * @apiSuccess {String} documents.highlight Search highlight (for fulltext search)
@@ -422,6 +345,8 @@ public class DocumentResource extends BaseResource {
      * @param asc Sorting
      * @param search Search query
      * @param files Files list
+     * @param cursor Continuation token
+     * @param total Count all the documents with a continuation token
      * @return Response
      */
     @GET
@@ -433,6 +358,8 @@ public class DocumentResource extends BaseResource {
             @QueryParam("asc") Boolean asc,
             @QueryParam("search") String search,
             @QueryParam("files") Boolean files,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("total") Boolean total,
 
             @QueryParam("search[after]") String searchCreatedAfter,
             @QueryParam("search[before]") String searchCreatedBefore,
@@ -457,9 +384,10 @@ public class DocumentResource extends BaseResource {
         JsonArrayBuilder documents = Json.createArrayBuilder();
 
         TagDao tagDao = new TagDao();
-        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(limit, offset);
-        List<String> suggestionList = Lists.newArrayList();
         SortCriteria sortCriteria = new SortCriteria(sortColumn, asc);
+        PaginatedList<DocumentDto> paginatedList = createPaginatedList(limit, offset, cursor, total, sortCriteria,
+                AppContext.getInstance().getIndexingHandler().getCursorKeyTypes(sortCriteria));
+        List<String> suggestionList = Lists.newArrayList();
 
         List<TagDto> allTagDtoList = tagDao.findByCriteria(new TagCriteria().setTargetIdList(getTargetIdList(null)), null);
 
@@ -490,7 +418,7 @@ public class DocumentResource extends BaseResource {
         }
 
         // Find the files of the documents
-        Iterable<String> documentsIds = CollectionUtils.collect(paginatedList.getResultList(), DocumentDto::getId);
+        Collection<String> documentsIds = CollectionUtils.collect(paginatedList.getResultList(), DocumentDto::getId);
         FileDao fileDao = new FileDao();
         List<File> filesList = null;
         Map<String, Long> filesCountByDocument = null;
@@ -500,11 +428,11 @@ public class DocumentResource extends BaseResource {
             filesCountByDocument = fileDao.countByDocumentsIds(documentsIds);
         }
 
+        // Find the tags of the documents accessible by the current user
+        Map<String, List<TagDto>> tagsByDocument = tagDao.getByDocumentsIds(documentsIds, getTargetIdList(null));
+
         for (DocumentDto documentDto : paginatedList.getResultList()) {
-            // Get tags accessible by the current user on this document
-            List<TagDto> tagDtoList = tagDao.findByCriteria(new TagCriteria()
-                    .setTargetIdList(getTargetIdList(null))
-                    .setDocumentId(documentDto.getId()), new SortCriteria(1, true));
+            List<TagDto> tagDtoList = tagsByDocument.getOrDefault(documentDto.getId(), Collections.emptyList());
 
             Long filesCount;
             Collection<File> filesOfDocument = null;
@@ -521,7 +449,7 @@ public class DocumentResource extends BaseResource {
                     .add("current_step_name", JsonUtil.nullable(documentDto.getCurrentStepName()))
                     .add("highlight", JsonUtil.nullable(documentDto.getHighlight()))
                     .add("file_count", filesCount)
-                    .add("tags", createTagsArrayBuilder(tagDtoList));
+                    .add("tags", TagUtil.createTagsArrayBuilder(tagDtoList));
 
             if (Boolean.TRUE == files) {
                 JsonArrayBuilder filesArrayBuilder = Json.createArrayBuilder();
@@ -541,6 +469,7 @@ public class DocumentResource extends BaseResource {
         response.add("total", paginatedList.getResultCount())
                 .add("documents", documents)
                 .add("suggestions", suggestions);
+        addCursor(response, paginatedList);
 
         return Response.ok().entity(response.build()).build();
     }
@@ -560,6 +489,8 @@ public class DocumentResource extends BaseResource {
      * @param asc        Sorting
      * @param search     Search query
      * @param files      Files list
+     * @param cursor     Continuation token
+     * @param total      Count all the documents with a continuation token
      * @return Response
      */
     @POST
@@ -571,6 +502,8 @@ public class DocumentResource extends BaseResource {
             @FormParam("asc") Boolean asc,
             @FormParam("search") String search,
             @FormParam("files") Boolean files,
+            @FormParam("cursor") String cursor,
+            @FormParam("total") Boolean total,
             @FormParam("search[after]") String searchCreatedAfter,
             @FormParam("search[before]") String searchCreatedBefore,
             @FormParam("search[by]") String searchBy,
@@ -593,6 +526,8 @@ public class DocumentResource extends BaseResource {
                 asc,
                 search,
                 files,
+                cursor,
+                total,
                 searchCreatedAfter,
                 searchCreatedBefore,
                 searchBy,
@@ -610,6 +545,57 @@ public class DocumentResource extends BaseResource {
         );
     }
 
+    /**
+     * Suggest search terms for typeahead.
+     *
+     * @api {get} /document/suggest Suggest search terms
+     * @apiDescription The last word of the search query is completed from the words of the documents titles.
+     * @apiName GetDocumentSuggest
+     * @apiGroup Document
+     * @apiParam {String} search Search query
+     * @apiParam {Number} [limit] Maximum number of suggestions (default 10, maximum 50)
+     * @apiSuccess {String[]} suggestions List of search suggestions
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (server) SearchError Error searching in documents
+     * @apiPermission user
+     * @apiVersion 1.12.0
+     *
+     * @param search Search query
+     * @param limit Maximum number of suggestions
+     * @return Response
+     */
+    @GET
+    @Path("suggest")
+    public Response suggest(
+            @QueryParam("search") String search,
+            @QueryParam("limit") Integer limit) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        search = ValidationUtil.validateLength(search, "search", 1, 200);
+        if (limit == null) {
+            limit = 10;
+        }
+        limit = Math.max(Math.min(limit, 50), 1);
+
+        List<String> suggestionList;
+        try {
+            suggestionList = AppContext.getInstance().getIndexingHandler().suggest(search, getTargetIdList(null), limit);
+        } catch (Exception e) {
+            throw new ServerException("SearchError", "Error searching in documents", e);
+        }
+
+        JsonArrayBuilder suggestions = Json.createArrayBuilder();
+        for (String suggestion : suggestionList) {
+            suggestions.add(suggestion);
+        }
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("suggestions", suggestions);
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Creates a new document.
      *
@@ -887,6 +873,7 @@ public class DocumentResource extends BaseResource {
      * @apiError (server) ErrorGuessMime Error guessing mime type
      * @apiError (client) QuotaReached Quota limit reached
      * @apiError (server) FileError Error adding a file
+     * @apiError (server) ProcessingQueueFull Too many files waiting to be processed, retry later
      * @apiPermission user
      * @apiVersion 1.5.0
      *
@@ -903,6 +890,7 @@ public class DocumentResource extends BaseResource {
 
         // Validate input data
         ValidationUtil.validateRequired(fileBodyPart, "file");
+        checkFileProcessingCapacity();
 
         // Save the file to a temporary file
         java.nio.file.Path unencryptedFile;
@@ -1086,15 +1074,4 @@ public class DocumentResource extends BaseResource {
                 .add("title", documentDto.getTitle())
                 .add("update_date", documentDto.getUpdateTimestamp());
     }
-
-    private static JsonArrayBuilder createTagsArrayBuilder(List<TagDto> tagDtoList) {
-        JsonArrayBuilder tags = Json.createArrayBuilder();
-        for (TagDto tagDto : tagDtoList) {
-            tags.add(Json.createObjectBuilder()
-                    .add("id", tagDto.getId())
-                    .add("name", tagDto.getName())
-                    .add("color", tagDto.getColor()));
-        }
-        return tags;
-    }
 }
@@ -6,6 +6,7 @@ import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.FileContentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.dto.DocumentDto;
@@ -15,9 +16,9 @@ import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.storage.StorageBackend;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -41,11 +42,13 @@ import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URISyntaxException;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.util.List;
@@ -80,6 +83,7 @@ public class FileResource extends BaseResource {
      * @apiError (server) ErrorGuessMime Error guessing mime type
      * @apiError (client) QuotaReached Quota limit reached
      * @apiError (server) FileError Error adding a file
+     * @apiError (server) ProcessingQueueFull Too many files waiting to be processed, retry later
      * @apiPermission user
      * @apiVersion 1.5.0
      *
@@ -99,6 +103,7 @@ public class FileResource extends BaseResource {
         
         // Validate input data
         ValidationUtil.validateRequired(fileBodyPart, "file");
+        checkFileProcessingCapacity();
 
         // Get the document
         DocumentDto documentDto = null;
@@ -155,6 +160,7 @@ public class FileResource extends BaseResource {
      * @apiError (client) ValidationError Validation error
      * @apiError (client) IllegalFile File not orphan
      * @apiError (server) AttachError Error attaching file to document
+     * @apiError (server) ProcessingQueueFull Too many files waiting to be processed, retry later
      * @apiPermission user
      * @apiVersion 1.5.0
      *
@@ -191,6 +197,9 @@ public class FileResource extends BaseResource {
             throw new ClientException("IllegalFile", MessageFormat.format("File not orphan: {0}", id));
         }
         
+        // The file is processed again once attached
+        checkFileProcessingCapacity();
+
         // Update the file
         file.setDocumentId(documentId);
         file.setOrder(fileDao.getByDocumentId(principal.getId(), documentId).size());
@@ -198,8 +207,8 @@ public class FileResource extends BaseResource {
         
         // Raise a new file updated event and document updated event (it wasn't sent during file creation)
         try {
-            java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
-            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(
+                    AppContext.getInstance().getStorageBackend().open(id), EncryptionUtil.getPrivateKey(file, user));
             FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent fileUpdatedAsyncEvent = new FileUpdatedAsyncEvent();
             fileUpdatedAsyncEvent.setUserId(principal.getId());
@@ -275,6 +284,7 @@ public class FileResource extends BaseResource {
      * @apiError (client) ForbiddenError Access denied
      * @apiError (client) ValidationError Validation error
      * @apiError (server) ProcessingError Processing error
+     * @apiError (server) ProcessingQueueFull Too many files waiting to be processed, retry later
      * @apiPermission user
      * @apiVersion 1.6.0
      *
@@ -305,9 +315,10 @@ public class FileResource extends BaseResource {
         User user = userDao.getById(file.getUserId());
 
         // Start the processing asynchronously
+        checkFileProcessingCapacity();
         try {
-            java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
-            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(
+                    AppContext.getInstance().getStorageBackend().open(id), EncryptionUtil.getPrivateKey(file, user));
             FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
             event.setUserId(principal.getId());
@@ -551,8 +562,13 @@ public class FileResource extends BaseResource {
      * @apiParam {String} id File ID
      * @apiParam {String} share Share ID
      * @apiParam {String="web","thumb","content"} [size] Size variation
-     * @apiSuccess {Object} file The file data is the whole response
+     * @apiHeader {String} [Range] Single range of bytes to return, e.g. bytes=0-1023
+     * @apiHeader {String} [If-Range] Entity tag, the range is returned only if the file data still matches it
+     * @apiHeader {String} [If-None-Match] Entity tags, nothing is returned if the file data matches one of them
+     * @apiSuccess {Object} file The file data is the whole response, or the requested range with a 206 status.
+     * Nothing is returned with a 304 status if the If-None-Match header matches.
      * @apiError (client) SizeError Size must be web or thumb
+     * @apiError (client) RangeNotSatisfiable The range starts after the end of the file or is empty
      * @apiError (client) ForbiddenError Access denied or document not visible
      * @apiError (client) NotFound File not found
      * @apiError (server) ServiceUnavailable Error reading the file
@@ -560,6 +576,11 @@ public class FileResource extends BaseResource {
      * @apiVersion 1.5.0
      *
      * @param fileId File ID
+     * @param shareId Share ID
+     * @param size Size variation
+     * @param range Range header
+     * @param ifRange If-Range header
+     * @param ifNoneMatch If-None-Match header
      * @return Response
      */
     @GET
@@ -568,7 +589,10 @@ public class FileResource extends BaseResource {
     public Response data(
             @PathParam("id") final String fileId,
             @QueryParam("share") String shareId,
-            @QueryParam("size") String size) {
+            @QueryParam("size") String size,
+            @HeaderParam("Range") String range,
+            @HeaderParam("If-Range") String ifRange,
+            @HeaderParam("If-None-Match") String ifNoneMatch) {
         authenticate();
         
         if (size != null && !Lists.newArrayList("web", "thumb", "content").contains(size)) {
@@ -580,75 +604,200 @@ public class FileResource extends BaseResource {
 
         // Get the stored file
         UserDao userDao = new UserDao();
-        java.nio.file.Path storedFile;
+        StorageBackend storageBackend = AppContext.getInstance().getStorageBackend();
+        String storageKey;
         String mimeType;
-        boolean decrypt;
-        if (size != null) {
-            if (size.equals("content")) {
-                return Response.ok(Strings.nullToEmpty(file.getContent()))
-                        .header(HttpHeaders.CONTENT_TYPE, "text/plain; charset=utf-8")
-                        .build();
-            }
-
-            storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_" + size);
-            mimeType = MimeType.IMAGE_JPEG; // Thumbnails are JPEG
-            decrypt = true; // Thumbnails are encrypted
-            if (!Files.exists(storedFile)) {
-                try {
-                    storedFile = Paths.get(getClass().getResource("/image/file-" + size + ".png").toURI());
-                } catch (URISyntaxException e) {
-                    // Ignore
+        boolean storedFileExists;
+        try {
+            if (size != null) {
+                if (size.equals("content")) {
+                    FileContentDao fileContentDao = new FileContentDao();
+                    return Response.ok(Strings.nullToEmpty(fileContentDao.getContent(file.getId())))
+                            .header(HttpHeaders.CONTENT_TYPE, "text/plain; charset=utf-8")
+                            .build();
                 }
-                mimeType = MimeType.IMAGE_PNG;
-                decrypt = false;
+
+                storageKey = fileId + "_" + size;
+                mimeType = MimeType.IMAGE_JPEG; // Thumbnails are JPEG
+                storedFileExists = storageBackend.exists(storageKey); // Thumbnails are generated asynchronously
+            } else {
+                storageKey = fileId;
+                mimeType = file.getMimeType();
+                storedFileExists = true; // Original files are stored on upload
             }
-        } else {
-            storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-            mimeType = file.getMimeType();
-            decrypt = true; // Original files are encrypted
+        } catch (IOException e) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).build();
         }
         
-        // Stream the output and decrypt it if necessary
-        StreamingOutput stream;
-        
-        // A file is always encrypted by the creator of it
-        User user = userDao.getById(file.getUserId());
-        
-        // Write the decrypted file to the output
-        try {
-            InputStream fileInputStream = Files.newInputStream(storedFile);
-            final InputStream responseInputStream = decrypt ?
-                    EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey()) : fileInputStream;
-                    
-            stream = outputStream -> {
-                try {
+        // The thumbnail is not generated yet, do not cache the temporary thumbnail
+        if (!storedFileExists) {
+            InputStream inputStream = getClass().getResourceAsStream("/image/file-" + size + ".png");
+            if (inputStream == null) {
+                return Response.status(Status.SERVICE_UNAVAILABLE).build();
+            }
+            StreamingOutput stream = outputStream -> {
+                try (InputStream responseInputStream = inputStream) {
                     ByteStreams.copy(responseInputStream, outputStream);
-                } finally {
-                    try {
-                        responseInputStream.close();
-                        outputStream.close();
-                    } catch (IOException e) {
-                        // Ignore
-                    }
                 }
             };
-        } catch (Exception e) {
+            return Response.ok(stream)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFullName("data") + "\"")
+                    .header(HttpHeaders.CONTENT_TYPE, MimeType.IMAGE_PNG)
+                    .header(HttpHeaders.CACHE_CONTROL, "no-store, must-revalidate")
+                    .header(HttpHeaders.EXPIRES, "0")
+                    .build();
+        }
+
+        // The data of a file version never changes, only the thumbnails can be generated again
+        String etag = "\"" + fileId + "-" + file.getVersion();
+        try {
+            if (size != null) {
+                etag += "-" + size + "-" + storageBackend.lastModified(storageKey);
+            }
+        } catch (IOException e) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).build();
+        }
+        etag += "\"";
+        if (matchesEtag(ifNoneMatch, etag)) {
+            return cacheHeaders(Response.notModified(), etag).build();
+        }
+
+        // A file is always encrypted by the creator of it
+        User user = userDao.getById(file.getUserId());
+
+        // The encrypted data has the same length as the original data
+        long length;
+        try {
+            length = storageBackend.size(storageKey);
+        } catch (IOException e) {
             return Response.status(Status.SERVICE_UNAVAILABLE).build();
         }
+        long[] byteRange = null;
+        if (range != null && (ifRange == null || ifRange.trim().equals(etag))) {
+            byteRange = parseRange(range, length);
+            if (byteRange != null && byteRange.length == 0) {
+                return cacheHeaders(Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE), etag)
+                        .header("Content-Range", "bytes */" + length)
+                        .build();
+            }
+        }
+        long start = byteRange == null ? 0 : byteRange[0];
+        long count = byteRange == null ? length : byteRange[1] - byteRange[0] + 1;
 
-        Response.ResponseBuilder builder = Response.ok(stream)
+        // Decrypt the requested range of the file, AES/CTR allows to start anywhere
+        // Unencrypted files are read directly
+        // The file is opened only when the response is written, so that nothing is left open if it is not
+        String privateKey = EncryptionUtil.getPrivateKey(file, user);
+        StreamingOutput stream = outputStream -> {
+            try (SeekableByteChannel responseChannel = EncryptionUtil.decryptChannel(storageBackend.open(storageKey), privateKey)) {
+                if (responseChannel instanceof FileChannel) {
+                    // Unencrypted file, copied by the operating system when possible
+                    FileChannel fileChannel = (FileChannel) responseChannel;
+                    WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+                    long position = start;
+                    long transferred = 1;
+                    while (position < start + count && transferred > 0) {
+                        transferred = fileChannel.transferTo(position, start + count - position, outputChannel);
+                        position += transferred;
+                    }
+                } else {
+                    responseChannel.position(start);
+                    ByteStreams.copy(ByteStreams.limit(Channels.newInputStream(responseChannel), count), outputStream);
+                }
+            }
+        };
+
+        Response.ResponseBuilder builder = byteRange == null ? Response.ok(stream) : Response.status(Status.PARTIAL_CONTENT).entity(stream);
+        if (byteRange != null) {
+            builder.header("Content-Range", "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + length);
+        }
+        return cacheHeaders(builder, etag)
                 .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFullName("data") + "\"")
-                .header(HttpHeaders.CONTENT_TYPE, mimeType);
-        if (decrypt) {
-            // Cache real files
-            builder.header(HttpHeaders.CACHE_CONTROL, "private")
-                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L));
-        } else {
-            // Do not cache the temporary thumbnail
-            builder.header(HttpHeaders.CACHE_CONTROL, "no-store, must-revalidate")
-                    .header(HttpHeaders.EXPIRES, "0");
+                .header(HttpHeaders.CONTENT_TYPE, mimeType)
+                .header(HttpHeaders.CONTENT_LENGTH, count)
+                .header("Accept-Ranges", "bytes")
+                .build();
+    }
+
+    /**
+     * Add the cache headers of the file data.
+     *
+     * @param builder Response builder
+     * @param etag Entity tag of the file data
+     * @return Response builder
+     */
+    private Response.ResponseBuilder cacheHeaders(Response.ResponseBuilder builder, String etag) {
+        return builder.header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.CACHE_CONTROL, "private")
+                .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L));
+    }
+
+    /**
+     * Returns true if an If-None-Match header matches an entity tag.
+     *
+     * @param ifNoneMatch If-None-Match header
+     * @param etag Entity tag
+     * @return True if matching
+     */
+    private boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a Range header, only a single range of bytes is supported.
+     *
+     * @param range Range header
+     * @param length Length of the data
+     * @return First and last byte positions, an empty array if not satisfiable, null to return the whole data
+     */
+    private long[] parseRange(String range, long length) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.contains(",")) {
+            return null;
+        }
+        String[] positions = range.substring("bytes=".length()).split("-", -1);
+        if (positions.length != 2) {
+            return null;
+        }
+
+        long start;
+        long end;
+        try {
+            if (positions[0].trim().isEmpty()) {
+                // Last bytes
+                long suffixLength = Long.parseLong(positions[1].trim());
+                if (suffixLength <= 0) {
+                    // No byte can be returned
+                    return new long[0];
+                }
+                start = Math.max(length - suffixLength, 0);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(positions[0].trim());
+                end = positions[1].trim().isEmpty() ? length - 1 : Math.min(Long.parseLong(positions[1].trim()), length - 1);
+                if (end < start && start < length) {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (start >= length) {
+            return new long[0];
         }
-        return builder.build();
+        return new long[] { start, end };
     }
 
     /**
@@ -729,13 +878,12 @@ public class FileResource extends BaseResource {
                 // Add each file to the ZIP stream
                 int index = 0;
                 for (File file : fileList) {
-                    java.nio.file.Path storedfile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-                    InputStream fileInputStream = Files.newInputStream(storedfile);
+                    InputStream fileInputStream = AppContext.getInstance().getStorageBackend().get(file.getId());
 
                     // Add the decrypted file to the ZIP stream
                     // Files are encrypted by the creator of them
                     User user = userDao.getById(file.getUserId());
-                    try (InputStream decryptedStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey())) {
+                    try (InputStream decryptedStream = EncryptionUtil.decryptInputStream(fileInputStream, EncryptionUtil.getPrivateKey(file, user))) {
                         ZipEntry zipEntry = new ZipEntry(index + "-" + file.getFullName(Integer.toString(index)));
                         zipOutputStream.putNextEntry(zipEntry);
                         ByteStreams.copy(decryptedStream, zipOutputStream);
@@ -19,6 +19,7 @@ import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.util.ValidationUtil;
+import com.sismics.security.PrincipalCache;
 import com.sismics.util.JsonUtil;
 
 import jakarta.json.Json;
@@ -148,6 +149,9 @@ public class GroupResource extends BaseResource {
             if (parentGroup == null) {
                 throw new ClientException("ParentGroupNotFound", MessageFormat.format("This group does not exists: {0}", parentName));
             }
+            if (groupDao.isDescendant(parentGroup.getId(), group.getId())) {
+                throw new ClientException("ValidationError", MessageFormat.format("This group is a subgroup of {0}: {1}", groupName, parentName));
+            }
             parentId = parentGroup.getId();
         }
 
@@ -162,6 +166,9 @@ public class GroupResource extends BaseResource {
         // Update the group
         groupDao.update(group.setName(name)
                 .setParentId(parentId), principal.getId());
+
+        // The inherited groups of the members may have changed
+        PrincipalCache.invalidateAll();
         
         // Always return OK
         JsonObjectBuilder response = Json.createObjectBuilder()
@@ -217,6 +224,7 @@ public class GroupResource extends BaseResource {
 
         // Delete the group
         groupDao.delete(group.getId(), principal.getId());
+        PrincipalCache.invalidateAll();
         
         // Always return OK
         JsonObjectBuilder response = Json.createObjectBuilder()
@@ -285,6 +293,7 @@ public class GroupResource extends BaseResource {
             userGroup.setGroupId(group.getId());
             userGroup.setUserId(user.getId());
             groupDao.addMember(userGroup);
+            PrincipalCache.invalidateUser(user.getId());
         }
         
         // Always return OK
@@ -341,6 +350,7 @@ public class GroupResource extends BaseResource {
         
         // Remove the membership
         groupDao.removeMember(group.getId(), user.getId());
+        PrincipalCache.invalidateUser(user.getId());
         
         // Always return OK
         JsonObjectBuilder response = Json.createObjectBuilder()
@@ -18,12 +18,14 @@ import com.sismics.docs.core.model.jpa.*;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.RoutingUtil;
 import com.sismics.docs.core.util.authentication.AuthenticationUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
 import com.sismics.rest.util.ValidationUtil;
+import com.sismics.security.PrincipalCache;
 import com.sismics.security.UserPrincipal;
 import com.sismics.util.JsonUtil;
 import com.sismics.util.context.ThreadLocalContext;
@@ -158,6 +160,7 @@ public class UserResource extends BaseResource {
             user.setEmail(email);
         }
         user = userDao.update(user, principal.getId());
+        PrincipalCache.invalidateUser(user.getId());
         
         // Change the password
         if (StringUtils.isNotBlank(password)) {
@@ -243,6 +246,7 @@ public class UserResource extends BaseResource {
             }
         }
         user = userDao.update(user, principal.getId());
+        PrincipalCache.invalidateUser(user.getId());
         
         // Change the password
         if (StringUtils.isNotBlank(password)) {
@@ -385,6 +389,7 @@ public class UserResource extends BaseResource {
         // Deletes the server token
         try {
             authenticationTokenDao.delete(authToken);
+            PrincipalCache.invalidateToken(authToken);
         } catch (Exception e) {
             throw new ServerException("AuthenticationTokenError", "Error deleting the authentication token: " + authToken, e);
         }
@@ -436,6 +441,7 @@ public class UserResource extends BaseResource {
         // Delete the user
         UserDao userDao = new UserDao();
         userDao.delete(principal.getName(), principal.getId());
+        PrincipalCache.invalidateUser(principal.getId());
         
         sendDeletionEvents(documentList, fileList);
 
@@ -504,6 +510,7 @@ public class UserResource extends BaseResource {
         
         // Delete the user
         userDao.delete(user.getUsername(), principal.getId());
+        PrincipalCache.invalidateUser(user.getId());
 
         sendDeletionEvents(documentList, fileList);
 
@@ -695,6 +702,9 @@ public class UserResource extends BaseResource {
      * @apiParam {Number} sort_column Column index to sort on
      * @apiParam {Boolean} asc If true, sort in ascending order
      * @apiParam {String} group Filter on this group
+     * @apiParam {String} [cursor] Return one page of users: <code>*</code> for the first page, then the <code>next_cursor</code> of the previous page, with the same sort
+     * @apiParam {Number} [limit] With a cursor, number of users to return (default is <code>10</code>)
+     * @apiParam {Boolean} [total] With a cursor, if <code>true</code> counts all the users
      * @apiSuccess {Object[]} users List of users
      * @apiSuccess {String} users.id ID
      * @apiSuccess {String} users.username Username
@@ -704,13 +714,20 @@ public class UserResource extends BaseResource {
      * @apiSuccess {Number} users.storage_current Quota used (in bytes)
      * @apiSuccess {Number} users.create_date Create date (timestamp)
      * @apiSuccess {Number} users.disabled True if the user is disabled
+     * @apiSuccess {Number} total With a cursor, total number of users
+     * @apiSuccess {Boolean} total_exact With a cursor, false if the total is a lower bound
+     * @apiSuccess {String} next_cursor With a cursor, token of the next page, null if this is the last page
      * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
      * @apiPermission user
      * @apiVersion 1.5.0
      *
      * @param sortColumn Sort index
      * @param asc If true, ascending sorting, else descending
      * @param groupName Only return users from this group
+     * @param cursor Continuation token
+     * @param limit Page size with a continuation token
+     * @param total Count all the users with a continuation token
      * @return Response
      */
     @GET
@@ -718,7 +735,10 @@ public class UserResource extends BaseResource {
     public Response list(
             @QueryParam("sort_column") Integer sortColumn,
             @QueryParam("asc") Boolean asc,
-            @QueryParam("group") String groupName) {
+            @QueryParam("group") String groupName,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("total") Boolean total) {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
@@ -737,7 +757,16 @@ public class UserResource extends BaseResource {
         }
         
         UserDao userDao = new UserDao();
-        List<UserDto> userDtoList = userDao.findByCriteria(new UserCriteria().setGroupId(groupId), sortCriteria);
+        UserCriteria userCriteria = new UserCriteria().setGroupId(groupId);
+        PaginatedList<UserDto> paginatedList = null;
+        List<UserDto> userDtoList;
+        if (cursor == null) {
+            userDtoList = userDao.findByCriteria(userCriteria, sortCriteria);
+        } else {
+            paginatedList = createPaginatedList(limit, null, cursor, total, sortCriteria, userDao.getCursorKeyTypes(sortCriteria));
+            userDao.findByCriteria(paginatedList, userCriteria, sortCriteria);
+            userDtoList = paginatedList.getResultList();
+        }
         for (UserDto userDto : userDtoList) {
             users.add(Json.createObjectBuilder()
                     .add("id", userDto.getId())
@@ -752,6 +781,10 @@ public class UserResource extends BaseResource {
         
         JsonObjectBuilder response = Json.createObjectBuilder()
                 .add("users", users);
+        if (paginatedList != null) {
+            response.add("total", paginatedList.getResultCount());
+            addCursor(response, paginatedList);
+        }
         return Response.ok().entity(response.build()).build();
     }
     
@@ -834,6 +867,7 @@ public class UserResource extends BaseResource {
         // Remove other tokens
         AuthenticationTokenDao authenticationTokenDao = new AuthenticationTokenDao();
         authenticationTokenDao.deleteByUserId(principal.getId(), authToken);
+        PrincipalCache.invalidateUser(principal.getId());
         
         // Always return OK
         JsonObjectBuilder response = Json.createObjectBuilder()
@@ -1,6 +1,7 @@
 package com.sismics.docs.rest.resource;
 
 import com.sismics.docs.core.dao.VocabularyDao;
+import com.sismics.docs.core.dao.dto.VocabularyDto;
 import com.sismics.docs.core.model.jpa.Vocabulary;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ForbiddenClientException;
@@ -48,9 +49,9 @@ public class VocabularyResource extends BaseResource {
         
         // Assemble results
         VocabularyDao vocabularyDao = new VocabularyDao();
-        List<Vocabulary> vocabularyList = vocabularyDao.getByName(name);
+        List<VocabularyDto> vocabularyList = vocabularyDao.getByName(name);
         JsonArrayBuilder entries = Json.createArrayBuilder();
-        for (Vocabulary vocabulary : vocabularyList) {
+        for (VocabularyDto vocabulary : vocabularyList) {
             entries.add(Json.createObjectBuilder()
                     .add("id", vocabulary.getId())
                     .add("name", vocabulary.getName())
@@ -0,0 +1,230 @@
+package com.sismics.docs.rest.util;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.ContributorDao;
+import com.sismics.docs.core.dao.DocumentMetadataDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.RelationDao;
+import com.sismics.docs.core.dao.RouteStepDao;
+import com.sismics.docs.core.dao.TagDao;
+import com.sismics.docs.core.dao.criteria.TagCriteria;
+import com.sismics.docs.core.dao.dto.AclDto;
+import com.sismics.docs.core.dao.dto.ContributorDto;
+import com.sismics.docs.core.dao.dto.RelationDto;
+import com.sismics.docs.core.dao.dto.RouteStepDto;
+import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.MetadataUtil;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import com.sismics.rest.exception.ClientException;
+import com.sismics.rest.util.RestUtil;
+import com.sismics.util.JsonUtil;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Assembles the sections of a document view.
+ * The ACL of the document and of its tags are fetched in a single query.
+ * All the sections are fetched in the request transaction, so they are read from the same connection
+ * and the same database state as the document.
+ *
+ * @author bgamard
+ */
+public class DocumentViewAssembler {
+    /**
+     * Sections returned when no field is selected.
+     */
+    private static final Set<String> DEFAULT_FIELDS = ImmutableSet.of(
+            "tags", "acls", "inherited_acls", "contributors", "relations", "route_step", "metadata");
+
+    /**
+     * All the sections.
+     */
+    private static final Set<String> ALL_FIELDS = ImmutableSet.<String>builder()
+            .addAll(DEFAULT_FIELDS)
+            .add("files")
+            .build();
+
+    /**
+     * Document ID.
+     */
+    private final String documentId;
+
+    /**
+     * Selected sections.
+     */
+    private final Set<String> fieldSet;
+
+    /**
+     * True if the document is viewed anonymously (sharing).
+     */
+    private final boolean anonymous;
+
+    /**
+     * Targets of the current user, without share.
+     */
+    private final List<String> userTargetIdList;
+
+    /**
+     * Constructor.
+     *
+     * @param documentId Document ID
+     * @param fieldSet Selected sections
+     * @param anonymous True if the document is viewed anonymously
+     * @param userTargetIdList Targets of the current user, without share
+     */
+    public DocumentViewAssembler(String documentId, Set<String> fieldSet, boolean anonymous, List<String> userTargetIdList) {
+        this.documentId = documentId;
+        this.fieldSet = fieldSet;
+        this.anonymous = anonymous;
+        this.userTargetIdList = userTargetIdList;
+    }
+
+    /**
+     * Parse the sections selected by a client.
+     *
+     * @param fields Comma separated list of sections, all the default sections if null
+     * @param files If true the files are included
+     * @return Selected sections
+     */
+    public static Set<String> parseFields(String fields, Boolean files) {
+        Set<String> fieldSet = new HashSet<>();
+        if (fields == null) {
+            fieldSet.addAll(DEFAULT_FIELDS);
+        } else {
+            for (String field : Splitter.on(',').trimResults().omitEmptyStrings().split(fields)) {
+                if (!ALL_FIELDS.contains(field)) {
+                    throw new ClientException("ValidationError", "Unknown field: " + field);
+                }
+                fieldSet.add(field);
+            }
+        }
+        if (Boolean.TRUE == files) {
+            fieldSet.add("files");
+        }
+        return fieldSet;
+    }
+
+    /**
+     * Add the selected sections to a document.
+     *
+     * @param document Document JSON
+     */
+    public void assemble(JsonObjectBuilder document) {
+        // Tags visible by the current user on this document, no tags in anonymous mode (sharing)
+        List<TagDto> tagDtoList = Collections.emptyList();
+        if (!anonymous && (fieldSet.contains("tags") || fieldSet.contains("inherited_acls"))) {
+            tagDtoList = new TagDao().findByCriteria(
+                    new TagCriteria()
+                            .setTargetIdList(userTargetIdList)
+                            .setDocumentId(documentId),
+                    new SortCriteria(1, true));
+        }
+        if (fieldSet.contains("tags")) {
+            document.add("tags", TagUtil.createTagsArrayBuilder(tagDtoList));
+        }
+
+        // ACL of the document and of its tags
+        if (fieldSet.contains("acls") || fieldSet.contains("inherited_acls")) {
+            List<String> sourceIdList = new ArrayList<>();
+            sourceIdList.add(documentId);
+            if (fieldSet.contains("inherited_acls")) {
+                for (TagDto tagDto : tagDtoList) {
+                    sourceIdList.add(tagDto.getId());
+                }
+            }
+            List<AclDto> aclDtoList = new AclDao().getBySourceIds(sourceIdList, AclType.USER);
+
+            if (fieldSet.contains("acls")) {
+                JsonArrayBuilder aclList = Json.createArrayBuilder();
+                for (AclDto aclDto : aclDtoList) {
+                    if (aclDto.getSourceId().equals(documentId)) {
+                        aclList.add(Json.createObjectBuilder()
+                                .add("perm", aclDto.getPerm().name())
+                                .add("id", aclDto.getTargetId())
+                                .add("name", JsonUtil.nullable(aclDto.getTargetName()))
+                                .add("type", aclDto.getTargetType()));
+                    }
+                }
+                document.add("acls", aclList);
+            }
+
+            // Computed ACL, in the tags order
+            if (fieldSet.contains("inherited_acls") && !anonymous) {
+                JsonArrayBuilder aclList = Json.createArrayBuilder();
+                for (TagDto tagDto : tagDtoList) {
+                    for (AclDto aclDto : aclDtoList) {
+                        if (aclDto.getSourceId().equals(tagDto.getId())) {
+                            aclList.add(Json.createObjectBuilder()
+                                    .add("perm", aclDto.getPerm().name())
+                                    .add("source_id", tagDto.getId())
+                                    .add("source_name", tagDto.getName())
+                                    .add("source_color", tagDto.getColor())
+                                    .add("id", aclDto.getTargetId())
+                                    .add("name", JsonUtil.nullable(aclDto.getTargetName()))
+                                    .add("type", aclDto.getTargetType()));
+                        }
+                    }
+                }
+                document.add("inherited_acls", aclList);
+            }
+        }
+
+        // Add contributors
+        if (fieldSet.contains("contributors")) {
+            JsonArrayBuilder contributorList = Json.createArrayBuilder();
+            for (ContributorDto contributorDto : new ContributorDao().getByDocumentId(documentId)) {
+                contributorList.add(Json.createObjectBuilder()
+                        .add("username", contributorDto.getUsername())
+                        .add("email", contributorDto.getEmail()));
+            }
+            document.add("contributors", contributorList);
+        }
+
+        // Add relations
+        if (fieldSet.contains("relations")) {
+            JsonArrayBuilder relationList = Json.createArrayBuilder();
+            for (RelationDto relationDto : new RelationDao().getByDocumentId(documentId)) {
+                relationList.add(Json.createObjectBuilder()
+                        .add("id", relationDto.getId())
+                        .add("title", relationDto.getTitle())
+                        .add("source", relationDto.isSource()));
+            }
+            document.add("relations", relationList);
+        }
+
+        // Add current route step
+        if (fieldSet.contains("route_step") && !anonymous) {
+            RouteStepDto routeStepDto = new RouteStepDao().getCurrentStep(documentId);
+            if (routeStepDto != null) {
+                JsonObjectBuilder step = routeStepDto.toJson();
+                step.add("transitionable", userTargetIdList.contains(routeStepDto.getTargetId()));
+                document.add("route_step", step);
+            }
+        }
+
+        // Add custom metadata
+        if (fieldSet.contains("metadata")) {
+            MetadataUtil.addMetadata(document, new DocumentMetadataDao().getByDocumentId(documentId));
+        }
+
+        // Add files
+        if (fieldSet.contains("files")) {
+            JsonArrayBuilder filesArrayBuilder = Json.createArrayBuilder();
+            for (File fileDb : new FileDao().getByDocumentsIds(Collections.singleton(documentId))) {
+                filesArrayBuilder.add(RestUtil.fileToJsonObjectBuilder(fileDb));
+            }
+            document.add("files", filesArrayBuilder);
+        }
+    }
+}
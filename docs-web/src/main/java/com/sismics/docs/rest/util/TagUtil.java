@@ -1,6 +1,8 @@
 package com.sismics.docs.rest.util;
 
 import com.sismics.docs.core.dao.dto.TagDto;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -52,4 +54,21 @@ public class TagUtil {
         }
         return tagDtoList;
     }
+
+    /**
+     * Create the JSON array of the tags of a document.
+     *
+     * @param tagDtoList List of tags
+     * @return Tags JSON array
+     */
+    public static JsonArrayBuilder createTagsArrayBuilder(List<TagDto> tagDtoList) {
+        JsonArrayBuilder tags = Json.createArrayBuilder();
+        for (TagDto tagDto : tagDtoList) {
+            tags.add(Json.createObjectBuilder()
+                    .add("id", tagDto.getId())
+                    .add("name", tagDto.getName())
+                    .add("color", tagDto.getColor()));
+        }
+        return tags;
+    }
 }
@@ -57,6 +57,9 @@ public class TestAppResource extends BaseJerseyTest {
         Long totalMemory = json.getJsonNumber("total_memory").longValue();
         Assert.assertTrue(totalMemory > 0 && totalMemory > freeMemory);
         Assert.assertEquals(0, json.getJsonNumber("queued_tasks").intValue());
+        Assert.assertEquals(0, json.getJsonObject("file_processing").getJsonNumber("queued").intValue());
+        Assert.assertTrue(json.containsKey("principal_cache"));
+        Assert.assertTrue(json.containsKey("index_pending_operations"));
         Assert.assertFalse(json.getBoolean("guest_login"));
         Assert.assertFalse(json.getBoolean("ocr_enabled"));
         Assert.assertEquals("eng", json.getString("default_language"));
@@ -69,6 +72,15 @@ public class TestAppResource extends BaseJerseyTest {
                 .post(Entity.form(new Form()));
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
 
+        // Check the index rebuild progress
+        json = target().path("/app/batch/reindex").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.getBoolean("running"));
+        Assert.assertFalse(json.getBoolean("failed"));
+        Assert.assertEquals(json.getJsonNumber("total_count").longValue(), json.getJsonNumber("indexed_count").longValue());
+        Assert.assertNotNull(json.getJsonNumber("end_date"));
+
         // Clean storage
         response = target().path("/app/batch/clean_storage").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
@@ -132,6 +144,51 @@ public class TestAppResource extends BaseJerseyTest {
         Assert.assertTrue(date3 >= date4);
     }
 
+    /**
+     * Test the data kept in memory.
+     */
+    @Test
+    public void testCacheResource() {
+        // Login admin
+        String adminToken = adminToken();
+
+        // Read the configuration twice
+        target().path("/app").request().get(JsonObject.class);
+        target().path("/app").request().get(JsonObject.class);
+
+        // Check the statistics
+        JsonObject json = target().path("/app/cache").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        JsonObject config = json.getJsonObject("config");
+        Assert.assertTrue(config.getJsonNumber("size").longValue() > 0);
+        Assert.assertTrue(config.getJsonNumber("hits").longValue() > 0);
+        Assert.assertTrue(json.containsKey("tag"));
+        Assert.assertTrue(json.containsKey("vocabulary"));
+        Assert.assertTrue(json.containsKey("metadata"));
+        Assert.assertTrue(json.containsKey("role_base_function"));
+
+        // Change the default language, the new value is read at once
+        target().path("/app/config").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .post(Entity.form(new Form().param("default_language", "fra")));
+        json = target().path("/app").request().get(JsonObject.class);
+        Assert.assertEquals("fra", json.getString("default_language"));
+        target().path("/app/config").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .post(Entity.form(new Form().param("default_language", "eng")));
+        json = target().path("/app").request().get(JsonObject.class);
+        Assert.assertEquals("eng", json.getString("default_language"));
+
+        // Only for admins
+        clientUtil.createUser("cache1");
+        String cache1Token = clientUtil.login("cache1");
+        Response response = target().path("/app/cache").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, cache1Token)
+                .get();
+        Assert.assertEquals(Status.FORBIDDEN, Status.fromStatusCode(response.getStatus()));
+    }
+
     /**
      * Test the guest login.
      */
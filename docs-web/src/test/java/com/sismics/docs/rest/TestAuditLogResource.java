@@ -67,6 +67,19 @@ public class TestAuditLogResource extends BaseJerseyTest {
         Assert.assertNotNull(logs.getJsonObject(0).getJsonNumber("create_date"));
         Assert.assertEquals("auditlog1", logs.getJsonObject(1).getString("username"));
         Assert.assertEquals("auditlog1", logs.getJsonObject(2).getString("username"));
+
+        // Get the same logs from a cursor
+        json = target().path("/auditlog")
+                .queryParam("document", document1Id)
+                .queryParam("cursor", "*")
+                .queryParam("total", true)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlog1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(3, json.getJsonArray("logs").size());
+        Assert.assertEquals(3, json.getJsonNumber("total").intValue());
+        Assert.assertTrue(json.getBoolean("total_exact"));
+        Assert.assertTrue(json.isNull("next_cursor"));
         
         // Get all logs for the current user
         json = target().path("/auditlog").request()
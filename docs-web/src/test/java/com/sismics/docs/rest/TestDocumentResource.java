@@ -1,12 +1,18 @@
 package com.sismics.docs.rest;
 
+import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import com.sismics.util.jpa.EMF;
 import com.sismics.util.filter.TokenBasedSecurityFilter;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import org.glassfish.jersey.media.multipart.file.StreamDataBodyPart;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.joda.time.format.DateTimeFormat;
 import org.junit.Assert;
 import org.junit.Test;
@@ -20,6 +26,8 @@ import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import java.io.InputStream;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Exhaustive test of the document resource.
@@ -189,12 +197,22 @@ public class TestDocumentResource extends BaseJerseyTest {
         String suggestion = json.getJsonArray("suggestions").getString(0);
         Assert.assertEquals("document", suggestion);
 
+        // Check typeahead suggestions
+        json = target().path("/document/suggest")
+                .queryParam("search", "my super docu")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals("document", json.getJsonArray("suggestions").getString(0));
+
         // Search documents
         Assert.assertEquals(1, searchDocuments("full:uranium full:einstein", document1Token));
         Assert.assertEquals(2, searchDocuments("tit*", document1Token));
         Assert.assertEquals(2, searchDocuments("docu*", document1Token));
         Assert.assertEquals(2, searchDocuments("full:title", document1Token));
         Assert.assertEquals(2, searchDocuments("title", document1Token));
+        Assert.assertEquals(2, searchDocuments("titles", document1Token));
+        Assert.assertEquals(1, searchDocuments("super descriptions", document1Token));
         Assert.assertEquals(1, searchDocuments("super description", document1Token));
         Assert.assertEquals(1, searchDocuments("subject", document1Token));
         Assert.assertEquals(1, searchDocuments("identifier", document1Token));
@@ -999,4 +1017,278 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals("BOOLEAN", meta.getString("type"));
         Assert.assertTrue(meta.getBoolean("value"));
     }
+
+    /**
+     * Test the pagination of the documents list by cursor.
+     */
+    @Test
+    public void testDocumentListCursor() {
+        // Login document_cursor
+        clientUtil.createUser("document_cursor");
+        String documentCursorToken = clientUtil.login("document_cursor");
+
+        // Create 5 documents with the same title
+        Set<String> documentIdSet = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            documentIdSet.add(clientUtil.createDocument(documentCursorToken));
+        }
+
+        // Browse the documents 2 by 2, sorted by title then by ID
+        Set<String> browsedIdSet = new HashSet<>();
+        String cursor = "*";
+        int pageCount = 0;
+        while (cursor != null) {
+            JsonObject json = target().path("/document/list")
+                    .queryParam("limit", 2)
+                    .queryParam("sort_column", 1)
+                    .queryParam("asc", true)
+                    .queryParam("cursor", cursor)
+                    .queryParam("total", pageCount == 0)
+                    .request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                    .get(JsonObject.class);
+            if (pageCount == 0) {
+                Assert.assertEquals(5, json.getJsonNumber("total").intValue());
+                Assert.assertTrue(json.getBoolean("total_exact"));
+            }
+            JsonArray documents = json.getJsonArray("documents");
+            for (int i = 0; i < documents.size(); i++) {
+                Assert.assertTrue(browsedIdSet.add(documents.getJsonObject(i).getString("id")));
+            }
+            cursor = json.isNull("next_cursor") ? null : json.getString("next_cursor");
+            pageCount++;
+        }
+        Assert.assertEquals(3, pageCount);
+        Assert.assertEquals(documentIdSet, browsedIdSet);
+
+        // A cursor is only valid with the sort it has been returned with
+        JsonObject json = target().path("/document/list")
+                .queryParam("limit", 2)
+                .queryParam("sort_column", 1)
+                .queryParam("cursor", "*")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get(JsonObject.class);
+        Response response = target().path("/document/list")
+                .queryParam("sort_column", 3)
+                .queryParam("cursor", json.getString("next_cursor"))
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+        response = target().path("/document/list")
+                .queryParam("cursor", "invalid")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+
+        // A cursor with sort values of another type is rejected
+        response = target().path("/document/list")
+                .queryParam("sort_column", 1)
+                .queryParam("cursor", PaginatedLists.encodeCursor(new SortCriteria(1, true), Lists.newArrayList("title", "id")))
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentCursorToken)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+    }
+
+    /**
+     * Test that listing documents runs the same number of queries whatever the page size.
+     */
+    @Test
+    public void testDocumentListQueryCount() {
+        // Login document_query
+        clientUtil.createUser("document_query");
+        String documentQueryToken = clientUtil.login("document_query");
+
+        // Create 2 tags
+        JsonObject json = target().path("/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentQueryToken)
+                .put(Entity.form(new Form()
+                        .param("name", "QueryTag1")
+                        .param("color", "#ff0000")), JsonObject.class);
+        String tag1Id = json.getString("id");
+        json = target().path("/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentQueryToken)
+                .put(Entity.form(new Form()
+                        .param("name", "QueryTag2")
+                        .param("color", "#00ff00")), JsonObject.class);
+        String tag2Id = json.getString("id");
+
+        // Create 5 documents with both tags
+        for (int i = 0; i < 5; i++) {
+            target().path("/document").request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentQueryToken)
+                    .put(Entity.form(new Form()
+                            .param("title", "Query document " + i)
+                            .param("language", "eng")
+                            .param("tags", tag2Id)
+                            .param("tags", tag1Id)), JsonObject.class);
+        }
+
+        // The tags of each document are returned
+        json = target().path("/document/list")
+                .queryParam("limit", 5)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentQueryToken)
+                .get(JsonObject.class);
+        JsonArray documents = json.getJsonArray("documents");
+        Assert.assertEquals(5, documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            JsonArray tags = documents.getJsonObject(i).getJsonArray("tags");
+            Assert.assertEquals(2, tags.size());
+            Assert.assertEquals("QueryTag1", tags.getJsonObject(0).getString("name"));
+            Assert.assertEquals("QueryTag2", tags.getJsonObject(1).getString("name"));
+        }
+
+        // The number of queries doesn't depend on the page size
+        Statistics statistics = EMF.get().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            Assert.assertEquals(countStatements(statistics, () -> listDocuments(1, documentQueryToken)),
+                    countStatements(statistics, () -> listDocuments(5, documentQueryToken)));
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    /**
+     * Test the selection of the sections of a document.
+     */
+    @Test
+    public void testDocumentViewFields() {
+        // Login document_view
+        clientUtil.createUser("document_view");
+        String documentViewToken = clientUtil.login("document_view");
+
+        // Create 2 tags
+        JsonObject json = target().path("/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentViewToken)
+                .put(Entity.form(new Form()
+                        .param("name", "ViewTag1")
+                        .param("color", "#ff0000")), JsonObject.class);
+        String tag1Id = json.getString("id");
+        json = target().path("/tag").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentViewToken)
+                .put(Entity.form(new Form()
+                        .param("name", "ViewTag2")
+                        .param("color", "#00ff00")), JsonObject.class);
+        String tag2Id = json.getString("id");
+
+        // Create a document with one tag, and a document with both tags
+        json = target().path("/document").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentViewToken)
+                .put(Entity.form(new Form()
+                        .param("title", "View document 1")
+                        .param("language", "eng")
+                        .param("tags", tag1Id)), JsonObject.class);
+        String document1Id = json.getString("id");
+        json = target().path("/document").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentViewToken)
+                .put(Entity.form(new Form()
+                        .param("title", "View document 2")
+                        .param("language", "eng")
+                        .param("tags", tag1Id)
+                        .param("tags", tag2Id)), JsonObject.class);
+        String document2Id = json.getString("id");
+
+        // All the sections but the files by default
+        json = target().path("/document/" + document2Id).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentViewToken)
+                .get(JsonObject.class);
+        Assert.assertEquals("View document 2", json.getString("title"));
+        Assert.assertTrue(json.getBoolean("writable"));
+        Assert.assertEquals(2, json.getJsonArray("tags").size());
+        Assert.assertEquals(2, json.getJsonArray("acls").size());
+        JsonArray inheritedAcls = json.getJsonArray("inherited_acls");
+        Assert.assertEquals(4, inheritedAcls.size());
+        Assert.assertEquals("ViewTag1", inheritedAcls.getJsonObject(0).getString("source_name"));
+        Assert.assertEquals("ViewTag2", inheritedAcls.getJsonObject(3).getString("source_name"));
+        Assert.assertEquals(1, json.getJsonArray("contributors").size());
+        Assert.assertEquals(0, json.getJsonArray("relations").size());
+        Assert.assertTrue(json.containsKey("metadata"));
+        Assert.assertFalse(json.containsKey("files"));
+
+        // Only the selected sections
+        json = target().path("/document/" + document2Id)
+                .queryParam("fields", "tags,files")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentViewToken)
+                .get(JsonObject.class);
+        Assert.assertEquals("View document 2", json.getString("title"));
+        Assert.assertTrue(json.getBoolean("writable"));
+        Assert.assertEquals(2, json.getJsonArray("tags").size());
+        Assert.assertEquals(0, json.getJsonArray("files").size());
+        Assert.assertFalse(json.containsKey("acls"));
+        Assert.assertFalse(json.containsKey("inherited_acls"));
+        Assert.assertFalse(json.containsKey("contributors"));
+        Assert.assertFalse(json.containsKey("relations"));
+        Assert.assertFalse(json.containsKey("metadata"));
+
+        // Unknown section
+        Response response = target().path("/document/" + document2Id)
+                .queryParam("fields", "tags,comments")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, documentViewToken)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+
+        // The number of queries doesn't depend on the number of tags
+        Statistics statistics = EMF.get().unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+        try {
+            Assert.assertEquals(countStatements(statistics, () -> getDocument(document1Id, documentViewToken)),
+                    countStatements(statistics, () -> getDocument(document2Id, documentViewToken)));
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+    }
+
+    /**
+     * List documents.
+     *
+     * @param limit Page size
+     * @param token Authentication token
+     */
+    private void listDocuments(int limit, String token) {
+        JsonObject json = target().path("/document/list")
+                .queryParam("limit", limit)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, token)
+                .get(JsonObject.class);
+        Assert.assertEquals(limit, json.getJsonArray("documents").size());
+    }
+
+    /**
+     * Get a document.
+     *
+     * @param documentId Document ID
+     * @param token Authentication token
+     */
+    private void getDocument(String documentId, String token) {
+        JsonObject json = target().path("/document/" + documentId)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, token)
+                .get(JsonObject.class);
+        Assert.assertEquals(documentId, json.getString("id"));
+    }
+
+    /**
+     * Count the SQL statements executed by a request.
+     * The background tasks can run statements at the same time, the lowest count of a few tries is kept.
+     *
+     * @param statistics Hibernate statistics
+     * @param request Request
+     * @return Number of statements
+     */
+    private long countStatements(Statistics statistics, Runnable request) {
+        long count = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long before = statistics.getPrepareStatementCount();
+            request.run();
+            count = Math.min(count, statistics.getPrepareStatementCount() - before);
+        }
+        return count;
+    }
 }
@@ -22,6 +22,7 @@ import jakarta.ws.rs.core.Response.Status;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.zip.ZipInputStream;
 
@@ -254,6 +255,92 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals(1, files.getJsonObject(0).getInt("version"));
     }
     
+    /**
+     * Test the partial and conditional downloads of a file.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testFileResourceRange() throws Exception {
+        // Login file_range
+        clientUtil.createUser("file_range");
+        String fileRangeToken = clientUtil.login("file_range");
+        String document1Id = clientUtil.createDocument(fileRangeToken);
+        String file1Id = clientUtil.addFileToDocument(FILE_PIA_00452_JPG, fileRangeToken, document1Id);
+
+        // Get the whole file data
+        Response response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+        String etag = response.getHeaderString("ETag");
+        Assert.assertNotNull(etag);
+        byte[] fileBytes = ByteStreams.toByteArray((InputStream) response.getEntity());
+        Assert.assertEquals(String.valueOf(fileBytes.length), response.getHeaderString("Content-Length"));
+
+        // Get a range of the file data, not aligned on the encryption blocks
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("Range", "bytes=10-109")
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("bytes 10-109/" + fileBytes.length, response.getHeaderString("Content-Range"));
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, 10, 110), ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // Get the end of the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("Range", "bytes=-50")
+                .header("If-Range", etag)
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, fileBytes.length - 50, fileBytes.length),
+                ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // The range is ignored if the file data has changed
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("Range", "bytes=10-109")
+                .header("If-Range", "\"other\"")
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertArrayEquals(fileBytes, ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // A range after the end of the file is not satisfiable
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("Range", "bytes=" + fileBytes.length + "-")
+                .get();
+        Assert.assertEquals(Status.REQUESTED_RANGE_NOT_SATISFIABLE, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("bytes */" + fileBytes.length, response.getHeaderString("Content-Range"));
+
+        // An empty suffix range is not satisfiable
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("Range", "bytes=-0")
+                .get();
+        Assert.assertEquals(Status.REQUESTED_RANGE_NOT_SATISFIABLE, Status.fromStatusCode(response.getStatus()));
+
+        // The file data is not sent again if not modified
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .header("If-None-Match", etag)
+                .get();
+        Assert.assertEquals(Status.NOT_MODIFIED, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals(etag, response.getHeaderString("ETag"));
+
+        // The thumbnail has its own entity tag
+        response = target().path("/file/" + file1Id + "/data")
+                .queryParam("size", "thumb")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileRangeToken)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertNotNull(response.getHeaderString("ETag"));
+        Assert.assertNotEquals(etag, response.getHeaderString("ETag"));
+    }
+
     @Test
     public void testFileResourceZip() throws Exception {
         // Login file_resources
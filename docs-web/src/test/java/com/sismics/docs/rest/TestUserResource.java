@@ -12,7 +12,9 @@ import jakarta.ws.rs.core.Form;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -58,6 +60,26 @@ public class TestUserResource extends BaseJerseyTest {
         Assert.assertFalse(user.getBoolean("totp_enabled"));
         Assert.assertFalse(user.getBoolean("disabled"));
 
+        // List all users one by one
+        Set<String> userIdSet = new HashSet<>();
+        String cursor = "*";
+        while (cursor != null) {
+            json = target().path("/user/list")
+                    .queryParam("sort_column", 2)
+                    .queryParam("asc", false)
+                    .queryParam("cursor", cursor)
+                    .queryParam("limit", 1)
+                    .request()
+                    .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                    .get(JsonObject.class);
+            Assert.assertTrue(json.getJsonArray("users").size() <= 1);
+            for (int i = 0; i < json.getJsonArray("users").size(); i++) {
+                Assert.assertTrue(userIdSet.add(json.getJsonArray("users").getJsonObject(i).getString("id")));
+            }
+            cursor = json.isNull("next_cursor") ? null : json.getString("next_cursor");
+        }
+        Assert.assertEquals(users.size(), userIdSet.size());
+
         // Create a user KO (login length validation)
         Response response = target().path("/user").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)